@@ -33,6 +33,7 @@ import android.widget.Toast;
 
 import androidx.preference.PreferenceManager;
 
+import com.dimowner.audiorecorder.app.lostrecords.InterruptedRecordsRecovery;
 import com.dimowner.audiorecorder.audio.player.PlayerContractNew;
 import com.dimowner.audiorecorder.data.Prefs;
 import com.dimowner.audiorecorder.util.AndroidUtils;
@@ -189,6 +190,11 @@ public class ARApplication extends Application {
 
 		initProofMode();
 
+		//Recording tasks run in order, so repair is done before a new recording is started.
+		injector.provideRecordingTasksQueue().postRunnable(new InterruptedRecordsRecovery(
+				injector.provideLocalRepository(getApplicationContext()),
+				injector.provideAppRecorder(getApplicationContext())));
+
 		IntentFilter intentFilter = new IntentFilter();
 		intentFilter.addAction(AUDIO_BECOMING_NOISY);
 		audioOutputChangeReceiver = new AudioOutputChangeReceiver();
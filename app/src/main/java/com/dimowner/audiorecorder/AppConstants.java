@@ -93,6 +93,12 @@ public class AppConstants {
 	 *  Used for long records visualisation algorithm. (longer than {@link AppConstants#LONG_RECORD_THRESHOLD_SECONDS} ) */
 	public static final int GRID_LINES_COUNT = 10;
 
+	/** Count of waveform values per one second of decoded record. */
+	public static final int DECODE_WAVEFORM_SAMPLES_PER_SECOND = 25;
+
+	/** Max count of waveform values for decoded record, doesn't depend on record duration. */
+	public static final int DECODE_WAVEFORM_MAX_SAMPLES = 1000;
+
 	//END-------------- Waveform visualisation constants ----------------------------------------
 
 	public static final int TIME_FORMAT_24H = 11;
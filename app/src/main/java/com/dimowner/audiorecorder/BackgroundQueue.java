@@ -1,75 +1,202 @@
 package com.dimowner.audiorecorder;
 
-import android.os.Handler;
-import android.os.Looper;
-import android.os.Message;
-
-import java.util.concurrent.CountDownLatch;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ScheduledFuture;
 
 import timber.log.Timber;
 
-public class BackgroundQueue extends Thread {
+/**
+ * Named queue of background tasks executed on the shared {@link TaskExecutor}.
+ * At most maxConcurrency tasks of the queue run at the same time, with maxConcurrency 1
+ * tasks are executed one by one in the order they were posted.
+ */
+public class BackgroundQueue {
+
+	private final String name;
+	private final TaskExecutor executor;
+	private final int priority;
+	private final int maxConcurrency;
 
-	private volatile Handler handler = null;
-	private final CountDownLatch countDownLatch = new CountDownLatch(1);
+	private final ArrayDeque<Task> pending = new ArrayDeque<>();
+	private final List<Task> delayed = new ArrayList<>();
+	private int running = 0;
+	private boolean closed = false;
 
-	public BackgroundQueue(final String threadName) {
-		setName(threadName);
-		start();
+	private int maxPendingCount = 0;
+	private long completedCount = 0;
+	private long totalWaitMills = 0;
+	private long maxWaitMills = 0;
+	private long totalRunMills = 0;
+
+	public BackgroundQueue(String name, TaskExecutor executor, int priority, int maxConcurrency) {
+		this.name = name;
+		this.executor = executor;
+		this.priority = priority;
+		this.maxConcurrency = Math.max(1, maxConcurrency);
 	}
 
-	public void postRunnable(Runnable runnable) {
-		postRunnable(runnable, 0);
+	public String getName() {
+		return name;
 	}
 
-	public void postRunnable(Runnable runnable, long delay) {
-		try {
-			countDownLatch.await();
+	public CancellationToken postRunnable(Runnable runnable) {
+		return postRunnable(runnable, 0);
+	}
+
+	public CancellationToken postRunnable(Runnable runnable, long delay) {
+		final Task task = new Task(runnable);
+		synchronized (this) {
+			if (closed) {
+				Timber.w("Queue %s is closed, task is ignored", name);
+				task.token.cancel();
+				return task.token;
+			}
 			if (delay <= 0) {
-				handler.post(runnable);
+				enqueue(task);
 			} else {
-				handler.postDelayed(runnable, delay);
+				delayed.add(task);
+				task.future = executor.schedule(() -> {
+					synchronized (BackgroundQueue.this) {
+						if (delayed.remove(task) && !task.token.isCancelled()) {
+							enqueue(task);
+						}
+					}
+				}, delay);
 			}
-		} catch (Exception e) {
-			Timber.e(e);
 		}
+		return task.token;
 	}
 
-	public void cancelRunnable(Runnable runnable) {
-		try {
-			countDownLatch.await();
-			handler.removeCallbacks(runnable);
-		} catch (Exception e) {
-			Timber.e(e);
-		}
+	public synchronized void cancelRunnable(Runnable runnable) {
+		cancel(pending.iterator(), runnable);
+		cancel(delayed.iterator(), runnable);
 	}
 
-	public void cleanupQueue() {
-		try {
-			countDownLatch.await();
-			handler.removeCallbacksAndMessages(null);
-		} catch (Exception e) {
-			Timber.e(e);
+	public synchronized void cleanupQueue() {
+		cancel(pending.iterator(), null);
+		cancel(delayed.iterator(), null);
+	}
+
+	/**
+	 * Drop all waiting tasks and stop accepting new ones. Running tasks are not interrupted.
+	 */
+	public synchronized void close() {
+		cleanupQueue();
+		closed = true;
+	}
+
+	public synchronized Stats getStats() {
+		return new Stats(name, pending.size() + delayed.size(), running, maxPendingCount, completedCount,
+				completedCount > 0 ? totalWaitMills / completedCount : 0, maxWaitMills,
+				completedCount > 0 ? totalRunMills / completedCount : 0);
+	}
+
+	private void cancel(Iterator<Task> iterator, Runnable runnable) {
+		while (iterator.hasNext()) {
+			Task task = iterator.next();
+			if (runnable == null || task.runnable == runnable) {
+				task.token.cancel();
+				if (task.future != null) {
+					task.future.cancel(false);
+				}
+				iterator.remove();
+			}
 		}
 	}
 
-	public void handleMessage(Message inputMessage) {
+	/** Must be called with the lock held. */
+	private void enqueue(Task task) {
+		task.enqueueTime = System.nanoTime();
+		if (running < maxConcurrency) {
+			running++;
+			submit(task);
+		} else {
+			pending.add(task);
+			maxPendingCount = Math.max(maxPendingCount, pending.size());
+		}
 	}
 
-	public void close() {
-		handler.getLooper().quit();
+	private void submit(final Task task) {
+		executor.execute(() -> runTask(task), priority);
 	}
 
-	@Override
-	public void run() {
-		Looper.prepare();
-		handler = new Handler() {
-			@Override
-			public void handleMessage(Message msg) {
-				BackgroundQueue.this.handleMessage(msg);
+	private void runTask(Task task) {
+		long start = System.nanoTime();
+		try {
+			if (!task.token.isCancelled()) {
+				task.runnable.run();
+			}
+		} finally {
+			long end = System.nanoTime();
+			synchronized (this) {
+				long waitMills = (start - task.enqueueTime) / 1000000;
+				totalWaitMills += waitMills;
+				maxWaitMills = Math.max(maxWaitMills, waitMills);
+				totalRunMills += (end - start) / 1000000;
+				completedCount++;
+				Task next = pending.poll();
+				if (next != null) {
+					submit(next);
+				} else {
+					running--;
+				}
 			}
-		};
-		countDownLatch.countDown();
-		Looper.loop();
+		}
+	}
+
+	private static class Task {
+		final Runnable runnable;
+		final CancellationToken token = new CancellationToken();
+		ScheduledFuture<?> future;
+		long enqueueTime;
+
+		Task(Runnable runnable) {
+			this.runnable = runnable;
+		}
+	}
+
+	/**
+	 * Snapshot of queue metrics.
+	 */
+	public static class Stats {
+		public final String name;
+		/** Count of tasks waiting for execution, including delayed. */
+		public final int pendingCount;
+		public final int runningCount;
+		public final int maxPendingCount;
+		public final long completedCount;
+		/** Average time between task enqueue and start. */
+		public final long avgWaitMills;
+		public final long maxWaitMills;
+		public final long avgRunMills;
+
+		Stats(String name, int pendingCount, int runningCount, int maxPendingCount, long completedCount,
+				long avgWaitMills, long maxWaitMills, long avgRunMills) {
+			this.name = name;
+			this.pendingCount = pendingCount;
+			this.runningCount = runningCount;
+			this.maxPendingCount = maxPendingCount;
+			this.completedCount = completedCount;
+			this.avgWaitMills = avgWaitMills;
+			this.maxWaitMills = maxWaitMills;
+			this.avgRunMills = avgRunMills;
+		}
+
+		@Override
+		public String toString() {
+			return "Stats{" +
+					"name='" + name + '\'' +
+					", pendingCount=" + pendingCount +
+					", runningCount=" + runningCount +
+					", maxPendingCount=" + maxPendingCount +
+					", completedCount=" + completedCount +
+					", avgWaitMills=" + avgWaitMills +
+					", maxWaitMills=" + maxWaitMills +
+					", avgRunMills=" + avgRunMills +
+					'}';
+		}
 	}
 }
@@ -0,0 +1,18 @@
+package com.dimowner.audiorecorder;
+
+/**
+ * Handle of a task posted into {@link BackgroundQueue}.
+ * Cancelled task is not started if it is still waiting in the queue.
+ */
+public class CancellationToken {
+
+	private volatile boolean cancelled = false;
+
+	public void cancel() {
+		cancelled = true;
+	}
+
+	public boolean isCancelled() {
+		return cancelled;
+	}
+}
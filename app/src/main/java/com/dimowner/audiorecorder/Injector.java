@@ -39,10 +39,14 @@ import com.dimowner.audiorecorder.audio.recorder.RecorderContract;
 import com.dimowner.audiorecorder.audio.recorder.WavRecorder;
 import com.dimowner.audiorecorder.data.FileRepository;
 import com.dimowner.audiorecorder.data.FileRepositoryImpl;
+import com.dimowner.audiorecorder.data.MediaHashCache;
 import com.dimowner.audiorecorder.data.Prefs;
 import com.dimowner.audiorecorder.data.PrefsImpl;
+import com.dimowner.audiorecorder.data.RecordFileLocks;
+import com.dimowner.audiorecorder.data.RecordInfoCache;
 import com.dimowner.audiorecorder.data.database.LocalRepository;
 import com.dimowner.audiorecorder.data.database.LocalRepositoryImpl;
+import com.dimowner.audiorecorder.data.database.MediaHashDataSource;
 import com.dimowner.audiorecorder.data.database.RecordsDataSource;
 import com.dimowner.audiorecorder.app.main.MainContract;
 import com.dimowner.audiorecorder.app.main.MainPresenter;
@@ -56,11 +60,17 @@ import org.witness.proofmode.storage.DefaultStorageProvider;
 import org.witness.proofmode.storage.StorageProvider;
 
 public class Injector {
+    /** Waveform decoding tasks are independent from each other and may run in parallel. */
+    private static final int PROCESSING_TASKS_CONCURRENCY =
+            Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+
+    private TaskExecutor taskExecutor;
     private BackgroundQueue loadingTasks;
     private BackgroundQueue recordingTasks;
     private BackgroundQueue importTasks;
     private BackgroundQueue processingTasks;
     private BackgroundQueue copyTasks;
+    private BackgroundQueue exportTasks;
 
     private MainContract.UserActionsListener mainPresenter;
     private RecordsContract.UserActionsListener recordsPresenter;
@@ -98,14 +108,30 @@ public class Injector {
         return TrashDataSource.getInstance(context);
     }
 
+    public MediaHashDataSource provideMediaHashDataSource(Context context) {
+        return MediaHashDataSource.getInstance(context);
+    }
+
+    public MediaHashCache provideMediaHashCache(Context context) {
+        return MediaHashCache.getInstance(provideMediaHashDataSource(context));
+    }
+
+    public RecordFileLocks provideRecordFileLocks() {
+        return RecordFileLocks.getInstance();
+    }
+
+    public RecordInfoCache provideRecordInfoCache() {
+        return RecordInfoCache.getInstance();
+    }
+
     public FileRepository provideFileRepository(Context context) {
-        return FileRepositoryImpl.getInstance(context, providePrefs(context));
+        return FileRepositoryImpl.getInstance(context, providePrefs(context), provideMediaHashCache(context));
     }
 
     public LocalRepository provideLocalRepository(Context context) {
         return LocalRepositoryImpl.getInstance(provideRecordsDataSource(context),
                 provideTrashDataSource(context),
-                provideFileRepository(context), providePrefs(context));
+                provideFileRepository(context), providePrefs(context), provideProcessingTasksQueue());
     }
 
     public AppRecorder provideAppRecorder(Context context) {
@@ -119,41 +145,64 @@ public class Injector {
         return new AudioWaveformVisualization(provideProcessingTasksQueue());
     }
 
+    public TaskExecutor provideTaskExecutor() {
+        if (taskExecutor == null) {
+            taskExecutor = new TaskExecutor();
+        }
+        return taskExecutor;
+    }
+
     public BackgroundQueue provideLoadingTasksQueue() {
         if (loadingTasks == null) {
-            loadingTasks = new BackgroundQueue("LoadingTasks");
+            loadingTasks = new BackgroundQueue("LoadingTasks", provideTaskExecutor(),
+                    TaskExecutor.PRIORITY_HIGH, 1);
         }
         return loadingTasks;
     }
 
     public BackgroundQueue provideRecordingTasksQueue() {
         if (recordingTasks == null) {
-            recordingTasks = new BackgroundQueue("RecordingTasks");
+            recordingTasks = new BackgroundQueue("RecordingTasks", provideTaskExecutor(),
+                    TaskExecutor.PRIORITY_NORMAL, 1);
         }
         return recordingTasks;
     }
 
     public BackgroundQueue provideImportTasksQueue() {
         if (importTasks == null) {
-            importTasks = new BackgroundQueue("ImportTasks");
+            importTasks = new BackgroundQueue("ImportTasks", provideTaskExecutor(),
+                    TaskExecutor.PRIORITY_LOW, 1);
         }
         return importTasks;
     }
 
     public BackgroundQueue provideProcessingTasksQueue() {
         if (processingTasks == null) {
-            processingTasks = new BackgroundQueue("ProcessingTasks");
+            processingTasks = new BackgroundQueue("ProcessingTasks", provideTaskExecutor(),
+                    TaskExecutor.PRIORITY_LOW, PROCESSING_TASKS_CONCURRENCY);
         }
         return processingTasks;
     }
 
     public BackgroundQueue provideCopyTasksQueue() {
         if (copyTasks == null) {
-            copyTasks = new BackgroundQueue("CopyTasks");
+            copyTasks = new BackgroundQueue("CopyTasks", provideTaskExecutor(),
+                    TaskExecutor.PRIORITY_LOW, 1);
         }
         return copyTasks;
     }
 
+    /**
+     * Proof exports are started by the user and wait for a share, so they don't queue behind record copies.
+     */
+    public BackgroundQueue provideExportTasksQueue() {
+        if (exportTasks == null) {
+            exportTasks = new BackgroundQueue("ExportTasks", provideTaskExecutor(),
+                    TaskExecutor.PRIORITY_NORMAL, 1);
+        }
+        return exportTasks;
+    }
+
     public ColorMap provideColorMap(Context context) {
         return ColorMap.getInstance(providePrefs(context));
     }
@@ -190,7 +239,8 @@ public class Injector {
             mainPresenter = new MainPresenter(providePrefs(context), provideFileRepository(context),
                     provideLocalRepository(context), provideAudioPlayer(), provideAppRecorder(context),
                     provideRecordingTasksQueue(), provideLoadingTasksQueue(), provideProcessingTasksQueue(),
-                    provideImportTasksQueue(), provideSettingsMapper(context),context);
+                    provideImportTasksQueue(), provideSettingsMapper(context), provideRecordFileLocks(),
+                    context);
         }
         return mainPresenter;
     }
@@ -199,7 +249,8 @@ public class Injector {
         if (recordsPresenter == null) {
             recordsPresenter = new RecordsPresenter(provideLocalRepository(context), provideFileRepository(context),
                     provideLoadingTasksQueue(), provideRecordingTasksQueue(),
-                    provideAudioPlayer(), provideAppRecorder(context), providePrefs(context));
+                    provideAudioPlayer(), provideAppRecorder(context), providePrefs(context),
+                    provideRecordFileLocks());
         }
         return recordsPresenter;
     }
@@ -255,8 +306,8 @@ public class Injector {
         if (fileBrowserPresenter == null) {
             fileBrowserPresenter = new FileBrowserPresenter(providePrefs(context),
                     provideAppRecorder(context), provideImportTasksQueue(),
-                    provideLoadingTasksQueue(), provideRecordingTasksQueue(),
-                    provideLocalRepository(context), provideFileRepository(context));
+                    provideLoadingTasksQueue(), provideRecordingTasksQueue(), provideProcessingTasksQueue(),
+                    provideLocalRepository(context), provideFileRepository(context), provideRecordInfoCache());
         }
         return fileBrowserPresenter;
     }
@@ -0,0 +1,92 @@
+package com.dimowner.audiorecorder;
+
+import android.os.Process;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Shared pool of background threads used by all {@link BackgroundQueue}s.
+ * Tasks are taken by priority first and by submission order within the same priority,
+ * so a busy low priority queue can't starve a high priority one.
+ */
+public class TaskExecutor {
+
+	public static final int PRIORITY_HIGH = 0;
+	public static final int PRIORITY_NORMAL = 1;
+	public static final int PRIORITY_LOW = 2;
+
+	/** Min threads count which lets every app queue run one task at the same time. */
+	private static final int MIN_THREADS_COUNT = 5;
+
+	private final ThreadPoolExecutor pool;
+	private final ScheduledExecutorService scheduler;
+	private final AtomicLong sequence = new AtomicLong(0);
+
+	public TaskExecutor() {
+		this(Math.max(MIN_THREADS_COUNT, Runtime.getRuntime().availableProcessors()));
+	}
+
+	public TaskExecutor(int threadsCount) {
+		AtomicInteger threadNumber = new AtomicInteger(1);
+		pool = new ThreadPoolExecutor(threadsCount, threadsCount, 30, TimeUnit.SECONDS,
+				new PriorityBlockingQueue<>(),
+				r -> new Thread(() -> {
+					Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+					r.run();
+				}, "BackgroundTask-" + threadNumber.getAndIncrement()));
+		pool.allowCoreThreadTimeOut(true);
+		scheduler = Executors.newSingleThreadScheduledExecutor(r -> new Thread(r, "BackgroundTaskScheduler"));
+	}
+
+	/**
+	 * Run task on the pool.
+	 * @param priority One of {@link #PRIORITY_HIGH}, {@link #PRIORITY_NORMAL}, {@link #PRIORITY_LOW}.
+	 */
+	public void execute(Runnable task, int priority) {
+		pool.execute(new PrioritizedTask(task, priority, sequence.getAndIncrement()));
+	}
+
+	/**
+	 * Run action on the scheduler thread after delay. Action should be short, e.g. submit a task to the pool.
+	 */
+	public ScheduledFuture<?> schedule(Runnable action, long delayMills) {
+		return scheduler.schedule(action, delayMills, TimeUnit.MILLISECONDS);
+	}
+
+	public int getThreadsCount() {
+		return pool.getMaximumPoolSize();
+	}
+
+	private static class PrioritizedTask implements Runnable, Comparable<PrioritizedTask> {
+
+		private final Runnable task;
+		private final int priority;
+		private final long order;
+
+		PrioritizedTask(Runnable task, int priority, long order) {
+			this.task = task;
+			this.priority = priority;
+			this.order = order;
+		}
+
+		@Override
+		public void run() {
+			task.run();
+		}
+
+		@Override
+		public int compareTo(PrioritizedTask o) {
+			if (priority != o.priority) {
+				return Integer.compare(priority, o.priority);
+			}
+			return Long.compare(order, o.order);
+		}
+	}
+}
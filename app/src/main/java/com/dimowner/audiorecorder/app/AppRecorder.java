@@ -16,7 +16,8 @@
 
 package com.dimowner.audiorecorder.app;
 
-import com.dimowner.audiorecorder.IntArrayList;
+import com.dimowner.audiorecorder.audio.LiveWaveformAccumulator;
+import com.dimowner.audiorecorder.audio.ProgressClock;
 import com.dimowner.audiorecorder.audio.recorder.RecorderContract;
 
 import java.io.File;
@@ -30,8 +31,13 @@ public interface AppRecorder {
 	void pauseRecording();
 	void resumeRecording();
 	void stopRecording();
-	IntArrayList getRecordingData();
+	LiveWaveformAccumulator getRecordingData();
 	long getRecordingDuration();
+
+	/**
+	 * Clock which ticks recording progress callbacks, screens which show progress request frames from it.
+	 */
+	ProgressClock getProgressClock();
 	boolean isRecording();
 	boolean isPaused();
 	File getRecordFile();
@@ -26,6 +26,9 @@ public interface AppRecorderCallback {
 	void onRecordingPaused();
 	void onRecordingResumed();
 	void onRecordingStopped(File file, Record record);
+	/**
+	 * Called on the main thread on every frame while a screen requested frames, otherwise about once a second.
+	 */
 	void onRecordingProgress(long mills, int amp);
 	void onError(AppException throwable);
 }
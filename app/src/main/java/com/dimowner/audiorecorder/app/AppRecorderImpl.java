@@ -19,9 +19,10 @@ package com.dimowner.audiorecorder.app;
 import com.dimowner.audiorecorder.ARApplication;
 import com.dimowner.audiorecorder.AppConstants;
 import com.dimowner.audiorecorder.BackgroundQueue;
-import com.dimowner.audiorecorder.IntArrayList;
 import com.dimowner.audiorecorder.app.info.RecordInfo;
 import com.dimowner.audiorecorder.audio.AudioDecoder;
+import com.dimowner.audiorecorder.audio.LiveWaveformAccumulator;
+import com.dimowner.audiorecorder.audio.ProgressClock;
 import com.dimowner.audiorecorder.audio.recorder.RecorderContract;
 import com.dimowner.audiorecorder.data.Prefs;
 import com.dimowner.audiorecorder.data.database.LocalRepository;
@@ -33,13 +34,9 @@ import com.dimowner.audiorecorder.util.AndroidUtils;
 import java.io.File;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Timer;
-import java.util.TimerTask;
 
 import timber.log.Timber;
 
-import static com.dimowner.audiorecorder.AppConstants.PLAYBACK_VISUALIZATION_INTERVAL;
-
 public class AppRecorderImpl implements AppRecorder {
 
 	private RecorderContract.Recorder audioRecorder;
@@ -49,12 +46,9 @@ public class AppRecorderImpl implements AppRecorder {
 	private final RecorderContract.RecorderCallback recorderCallback;
 	private final List<AppRecorderCallback> appCallbacks;
 	private final Prefs prefs;
-	private final IntArrayList recordingData;
+	private final LiveWaveformAccumulator recordingData;
 //	private long recordingDuration;
-	private final IntArrayList apmpPool;
-	private long durationMills = 0;
-	private long updateTime = 0;
-	private Timer timerProgress;
+	private final ProgressClock progressClock;
 	private String recordFilePath = null;
 
 	private volatile static AppRecorderImpl instance;
@@ -78,49 +72,61 @@ public class AppRecorderImpl implements AppRecorder {
 		this.recordingsTasks = tasks;
 		this.prefs = pr;
 		this.appCallbacks = new ArrayList<>();
-		this.recordingData = new IntArrayList();
-		this.apmpPool = new IntArrayList();
+		this.recordingData = new LiveWaveformAccumulator();
+		this.progressClock = new ProgressClock();
+		progressClock.setOnTickListener(() -> {
+			ProgressClock.Snapshot progress = progressClock.read();
+			if (!progress.isEmpty()) {
+				onRecordingProgress(progress.mills, progress.peak);
+			}
+		});
 
 		recorderCallback = new RecorderContract.RecorderCallback() {
 
 			@Override
 			public void onStartRecord(File output) {
 //				recordingDuration = 0;
-				durationMills = 0;
-				scheduleRecordingTimeUpdate();
+				progressClock.reset();
+				progressClock.start();
 				onRecordingStarted(output);
 			}
 
 			@Override
 			public void onPauseRecord() {
 				onRecordingPaused();
-				pauseRecordingTimer();
+				progressClock.stop();
 			}
 
 			@Override
 			public void onResumeRecord() {
-				scheduleRecordingTimeUpdate();
+				progressClock.start();
 				onRecordingResumed();
 			}
 
 			@Override
 			public void onRecordProgress(final long mills, final int amplitude) {
-				apmpPool.add(amplitude);
+				recordingData.add(amplitude);
+				progressClock.publish(mills, amplitude);
+			}
+
+			@Override
+			public void onBufferOverrun(long overrunCount, long droppedBytes) {
+				Timber.w("Recording buffer overrun: blocks = %d, bytes = %d", overrunCount, droppedBytes);
 			}
 
 			@Override
 			public void onStopRecord(final File output) {
-				stopRecordingTimer();
+				progressClock.stop();
+				final long recordedMills = progressClock.read().mills;
 				recordingsTasks.postRunnable(() -> {
 					RecordInfo info = AudioDecoder.readRecordInfo(output);
 					long duration = info.getDuration();
 					if (duration <= 0) {
-						duration = durationMills;
+						duration = recordedMills;
 					}
 //					recordingDuration = 0;
-					durationMills = 0;
 
-					int[] waveForm = convertRecordingData(recordingData, (int) (duration / 1000000f));
+					int[] waveForm = convertRecordingData(recordingData.getSummary(), (int) (duration / 1000000f));
 					final Record record = localRepository.getRecord((int) prefs.getActiveRecord());
 					if (record != null) {
 						final Record update = new Record(
@@ -168,22 +174,27 @@ public class AppRecorderImpl implements AppRecorder {
 		audioRecorder.setRecorderCallback(recorderCallback);
 	}
 
-	private int[] convertRecordingData(IntArrayList list, int durationSec) {
+	/**
+	 * @param list Summary of recorded amplitudes, its size is bounded, so conversion takes constant time.
+	 */
+	private int[] convertRecordingData(int[] list, int durationSec) {
 		if (durationSec > AppConstants.LONG_RECORD_THRESHOLD_SECONDS) {
 			int sampleCount = ARApplication.getLongWaveformSampleCount();
 			int[] waveForm = new int[sampleCount];
-			if (list.size() < sampleCount*2) {
-				float scale = (float) list.size() / (float) sampleCount;
+			if (list.length == 0) {
+				return waveForm;
+			}
+			float scale = (float) list.length / (float) sampleCount;
+			if (list.length < sampleCount*2) {
 				for (int i = 0; i < sampleCount; i++) {
-					waveForm[i] = convertAmp(list.get((int) Math.floor(i*scale)));
+					waveForm[i] = convertAmp(list[(int) Math.floor(i*scale)]);
 				}
 			} else {
-				float scale = (float) list.size() / (float) sampleCount;
+				int step = (int) Math.ceil(scale);
 				for (int i = 0; i < sampleCount; i++) {
 					int val = 0;
-					int step = (int) Math.ceil(scale);
 					for (int j = 0; j < step; j++) {
-						val += list.get((int)(i * scale + j));
+						val += list[Math.min(list.length - 1, (int)(i * scale + j))];
 					}
 					val = (int) ((float) val / scale);
 					waveForm[i] = convertAmp(val);
@@ -191,9 +202,9 @@ public class AppRecorderImpl implements AppRecorder {
 			}
 			return waveForm;
 		} else {
-			int[] waveForm = new int[list.size()];
-			for (int i = 0; i < list.size(); i++) {
-				waveForm[i] = convertAmp(list.get(i));
+			int[] waveForm = new int[list.length];
+			for (int i = 0; i < list.length; i++) {
+				waveForm[i] = convertAmp(list[i]);
 			}
 			return waveForm;
 		}
@@ -252,14 +263,19 @@ public class AppRecorderImpl implements AppRecorder {
 	}
 
 	@Override
-	public IntArrayList getRecordingData() {
+	public LiveWaveformAccumulator getRecordingData() {
 		return recordingData;
 	}
 
 	@Override
 	public long getRecordingDuration() {
 //		return recordingDuration;
-		return durationMills;
+		return progressClock.read().mills;
+	}
+
+	@Override
+	public ProgressClock getProgressClock() {
+		return progressClock;
 	}
 
 	@Override
@@ -282,9 +298,9 @@ public class AppRecorderImpl implements AppRecorder {
 
 	@Override
 	public void release() {
-		stopRecordingTimer();
+		progressClock.stop();
+		progressClock.reset();
 		recordingData.clear();
-		apmpPool.clear();
 		audioRecorder.stopRecording();
 		appCallbacks.clear();
 	}
@@ -336,46 +352,4 @@ public class AppRecorderImpl implements AppRecorder {
 			}
 		}
 	}
-
-	private void scheduleRecordingTimeUpdate() {
-		updateTime = System.currentTimeMillis();
-		timerProgress = new Timer();
-		timerProgress.schedule(new TimerTask() {
-			@Override
-			public void run() {
-				try {
-					readProgress();
-				} catch (IllegalStateException e) {
-					Timber.e(e);
-				}
-				long curTime = System.currentTimeMillis();
-				durationMills += curTime - updateTime;
-				updateTime = curTime;
-
-//				recordingDuration += VISUALIZATION_INTERVAL2;
-			}
-		}, 0, PLAYBACK_VISUALIZATION_INTERVAL);
-	}
-
-	private void readProgress() {
-		if (apmpPool.size() > 0) {
-			int amp = apmpPool.get(apmpPool.size()-1);
-			apmpPool.clear();
-			apmpPool.add(amp);
-			recordingData.add(amp);
-			onRecordingProgress(durationMills, amp);
-		}
-	}
-
-	private void stopRecordingTimer() {
-		timerProgress.cancel();
-		timerProgress.purge();
-		updateTime = 0;
-	}
-
-	private void pauseRecordingTimer() {
-		timerProgress.cancel();
-		timerProgress.purge();
-		updateTime = 0;
-	}
 }
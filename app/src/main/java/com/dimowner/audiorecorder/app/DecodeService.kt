@@ -21,6 +21,7 @@ import android.content.BroadcastReceiver
 import android.content.Context
 import android.content.Intent
 import android.graphics.Color
+import android.media.MediaFormat
 import android.os.Binder
 import android.os.Build
 import android.os.IBinder
@@ -32,12 +33,15 @@ import androidx.core.app.NotificationManagerCompat
 import androidx.core.content.ContextCompat
 import com.dimowner.audiorecorder.*
 import com.dimowner.audiorecorder.app.main.MainActivity
+import com.dimowner.audiorecorder.audio.AudioDecoder
 import com.dimowner.audiorecorder.audio.AudioDecodingListener
-import com.dimowner.audiorecorder.audio.AudioWaveformVisualization
+import com.dimowner.audiorecorder.data.FileRepository
+import com.dimowner.audiorecorder.data.RecordFileLocks
 import com.dimowner.audiorecorder.data.database.LocalRepository
 import com.dimowner.audiorecorder.data.database.Record
 import com.dimowner.audiorecorder.util.AndroidUtils
 import timber.log.Timber
+import java.util.concurrent.atomic.AtomicBoolean
 
 /**
  * Created on 02.02.2021.
@@ -53,7 +57,15 @@ class DecodeService : Service() {
 		const val ACTION_CANCEL_DECODE = "ACTION_CANCEL_DECODE"
 		const val EXTRAS_KEY_DECODE_INFO = "key_decode_info"
 		private const val NOTIF_ID = 104
+		/** Upper limit of simultaneously running decoders to keep memory usage reasonable. */
+		private const val MAX_PARALLEL_DECODES = 4
+		/** Count of decoded waveforms stored into the database with one update. */
+		private const val DB_WRITE_BATCH_SIZE = 10
 
+		/**
+		 * Decode waveform of the record. While decoding is running the record joins the current batch:
+		 * records are decoded in parallel by several decoders and the notification shows progress of the whole batch.
+		 */
 		fun startNotification(context: Context, recId: Int) {
 			val intent = Intent(context, DecodeService::class.java)
 			intent.action = ACTION_START_DECODING_SERVICE
@@ -71,10 +83,23 @@ class DecodeService : Service() {
 	lateinit var processingTasks: BackgroundQueue
 	lateinit var recordingsTasks: BackgroundQueue
 	lateinit var localRepository: LocalRepository
-	lateinit var waveformVisualization: AudioWaveformVisualization
+	lateinit var fileRepository: FileRepository
+	lateinit var recordFileLocks: RecordFileLocks
 	lateinit var colorMap: ColorMap
+	@Volatile
 	private var isCancel = false
 
+	private val lock = Any()
+	private val pendingIds = ArrayDeque<Int>()
+	/** Decode progress of records which are decoded now. */
+	private val activeProgress = HashMap<Int, Int>()
+	private val decodedRecords = ArrayList<Pair<Int, IntArray>>()
+	private var maxParallelDecodes = 1
+	private var isDecoding = false
+	private var totalCount = 0
+	private var finishedCount = 0
+	private var prevProgressTime: Long = 0
+
 	override fun onBind(intent: Intent): IBinder? {
 		return binder
 	}
@@ -85,7 +110,12 @@ class DecodeService : Service() {
 		processingTasks = ARApplication.getInjector().provideProcessingTasksQueue()
 		recordingsTasks = ARApplication.getInjector().provideRecordingTasksQueue()
 		localRepository = ARApplication.getInjector().provideLocalRepository(applicationContext)
-		waveformVisualization = ARApplication.getInjector().provideAudioWaveformVisualization()
+		fileRepository = ARApplication.getInjector().provideFileRepository(applicationContext)
+		recordFileLocks = ARApplication.getInjector().provideRecordFileLocks()
+		maxParallelDecodes = Runtime.getRuntime().availableProcessors()
+				.coerceAtMost(MAX_PARALLEL_DECODES)
+				.coerceAtMost(AudioDecoder.getMaxDecoderInstances(MediaFormat.MIMETYPE_AUDIO_AAC))
+				.coerceAtLeast(1)
 	}
 
 	override fun onStartCommand(intent: Intent?, flags: Int, startId: Int): Int {
@@ -100,10 +130,7 @@ class DecodeService : Service() {
 						}
 					}
 					ACTION_STOP_DECODING_SERVICE -> stopService()
-					ACTION_CANCEL_DECODE -> {
-						isCancel = true
-						stopService()
-					}
+					ACTION_CANCEL_DECODE -> cancelDecode()
 				}
 			}
 		}
@@ -111,70 +138,198 @@ class DecodeService : Service() {
 	}
 
 	private fun startDecode(id: Int) {
-		isCancel = false
-		startNotification()
-		processingTasks.postRunnable {
-			var prevTime: Long = 0
-			val rec = localRepository.getRecord(id)
-			if (rec != null && rec.duration / 1000 < AppConstants.DECODE_DURATION) {
-				waveformVisualization.decodeRecordWaveform(rec.path, object : AudioDecodingListener {
-					override fun isCanceled(): Boolean {
-						return isCancel
-					}
+		synchronized(lock) {
+			if (!isDecoding) {
+				isCancel = false
+				isDecoding = true
+				totalCount = 0
+				finishedCount = 0
+				prevProgressTime = 0
+				startNotification()
+				decodeListener?.onStartProcessing()
+			}
+			if (!pendingIds.contains(id) && !activeProgress.containsKey(id)) {
+				pendingIds.add(id)
+				totalCount++
+			}
+		}
+		scheduleNextDecodes()
+	}
 
-					override fun onStartProcessing(duration: Long, channelsCount: Int, sampleRate: Int) {
-						decodeListener?.onStartProcessing()
-					}
+	private fun cancelDecode() {
+		val decoding: Boolean
+		synchronized(lock) {
+			isCancel = true
+			decoding = isDecoding
+		}
+		if (decoding) {
+			scheduleNextDecodes()
+		} else {
+			stopService()
+		}
+	}
 
-					override fun onProcessingProgress(percent: Int) {
-						val curTime = System.currentTimeMillis()
-						if (percent == 100 || curTime > prevTime + 200) {
-							updateNotification(percent)
-							prevTime = curTime
-						}
+	/**
+	 * Start decoding of pending records while there are free decoder slots.
+	 */
+	private fun scheduleNextDecodes() {
+		while (true) {
+			val id: Int
+			synchronized(lock) {
+				if (isCancel || activeProgress.size >= maxParallelDecodes || pendingIds.isEmpty()) {
+					if (activeProgress.isEmpty() && (isCancel || pendingIds.isEmpty()) && isDecoding) {
+						isDecoding = false
+						pendingIds.clear()
+						flushDecodedRecords(true, isCancel)
 					}
+					return
+				}
+				id = pendingIds.removeFirst()
+				activeProgress[id] = 0
+			}
+			processingTasks.postRunnable { decodeRecord(id) }
+		}
+	}
 
-					override fun onProcessingCancel() {
-						Toast.makeText(applicationContext, R.string.processing_canceled, Toast.LENGTH_LONG).show()
-						decodeListener?.onFinishProcessing()
-						stopService()
-					}
+	/**
+	 * Holds the read lock of the record file until decoding ends, so the record is not renamed
+	 * and its file is not rewritten, e.g. by embedding content credentials, while it is decoded.
+	 * Decoding ends in one of the terminal decoder callbacks or with an error thrown by the decoder,
+	 * all of them go through one finish which releases the lock once.
+	 */
+	private fun decodeRecord(id: Int) {
+		val finished = AtomicBoolean(false)
+		val finish = { data: IntArray? ->
+			if (finished.compareAndSet(false, true)) {
+				recordFileLocks.unlockRead(id)
+				onDecodeFinished(id, data)
+			}
+		}
+		recordFileLocks.lockRead(id)
+		try {
+			val rec = localRepository.getRecord(id)
+			if (rec == null || rec.duration / 1000 >= AppConstants.DECODE_DURATION) {
+				finish(null)
+				return
+			}
+			//Already on the processing queue, the decoder is called directly so errors it throws are caught here.
+			AudioDecoder.decode(rec.path, object : AudioDecodingListener {
+				override fun isCanceled(): Boolean {
+					return isCancel
+				}
 
-					override fun onFinishProcessing(data: IntArray, duration: Long) {
-						recordingsTasks.postRunnable {
-							val rec1 = localRepository.getRecord(id)
-							if (rec1 != null) {
-								val decodedRecord = Record(
-										rec1.id,
-										rec1.name,
-										rec1.duration,
-										rec1.created,
-										rec1.added,
-										rec1.removed,
-										rec1.path,
-										rec1.format,
-										rec1.size,
-										rec1.sampleRate,
-										rec1.channelCount,
-										rec1.bitrate,
-										rec1.isBookmarked,
-										true,
-										data)
-								localRepository.updateRecord(decodedRecord)
-							}
-							decodeListener?.onFinishProcessing()
-							stopService()
-						}
-					}
+				override fun onStartProcessing(duration: Long, channelsCount: Int, sampleRate: Int) {}
 
-					override fun onError(exception: Exception) {
-						Timber.e(exception)
-						decodeListener?.onFinishProcessing()
+				override fun onProcessingProgress(percent: Int) {
+					onDecodeProgress(id, percent)
+				}
+
+				override fun onProcessingCancel() {
+					finish(null)
+				}
+
+				override fun onFinishProcessing(data: IntArray, duration: Long) {
+					finish(data)
+				}
+
+				override fun onError(exception: Exception) {
+					Timber.e(exception)
+					finish(null)
+				}
+			}, fileRepository.getWaveformFile(rec.path))
+		} catch (e: Throwable) {
+			//E.g. OutOfMemoryError of the decoder, which is not reported to the listener.
+			Timber.e(e)
+			finish(null)
+		}
+	}
+
+	private fun onDecodeProgress(id: Int, percent: Int) {
+		val progress: Int
+		synchronized(lock) {
+			if (!activeProgress.containsKey(id)) return
+			activeProgress[id] = percent
+			val curTime = System.currentTimeMillis()
+			if (curTime < prevProgressTime + 200) return
+			prevProgressTime = curTime
+			progress = calculateProgress()
+		}
+		updateNotification(progress)
+	}
+
+	private fun onDecodeFinished(id: Int, data: IntArray?) {
+		val progress: Int
+		synchronized(lock) {
+			activeProgress.remove(id)
+			finishedCount++
+			if (data != null) {
+				decodedRecords.add(Pair(id, data))
+				if (decodedRecords.size >= DB_WRITE_BATCH_SIZE) {
+					flushDecodedRecords(false, false)
+				}
+			}
+			progress = calculateProgress()
+		}
+		updateNotification(progress)
+		scheduleNextDecodes()
+	}
+
+	/** Aggregate progress of the whole batch. Must be called with the lock held. */
+	private fun calculateProgress(): Int {
+		if (totalCount == 0) return 100
+		var sum = finishedCount * 100L
+		for (percent in activeProgress.values) {
+			sum += percent
+		}
+		return (sum / totalCount).toInt()
+	}
+
+	/**
+	 * Store decoded waveforms into the database with one batched update.
+	 * Must be called with the lock held.
+	 */
+	private fun flushDecodedRecords(isLast: Boolean, isCanceled: Boolean) {
+		val decoded = ArrayList(decodedRecords)
+		decodedRecords.clear()
+		recordingsTasks.postRunnable {
+			val update = ArrayList<Record>(decoded.size)
+			for ((id, data) in decoded) {
+				val rec1 = localRepository.getRecord(id)
+				if (rec1 != null) {
+					update.add(Record(
+							rec1.id,
+							rec1.name,
+							rec1.duration,
+							rec1.created,
+							rec1.added,
+							rec1.removed,
+							rec1.path,
+							rec1.format,
+							rec1.size,
+							rec1.sampleRate,
+							rec1.channelCount,
+							rec1.bitrate,
+							rec1.isBookmarked,
+							true,
+							data))
+				}
+			}
+			if (update.isNotEmpty()) {
+				localRepository.updateRecords(update)
+			}
+			if (isLast) {
+				if (isCanceled) {
+					AndroidUtils.runOnUIThread {
+						Toast.makeText(applicationContext, R.string.processing_canceled, Toast.LENGTH_LONG).show()
+					}
+				}
+				decodeListener?.onFinishProcessing()
+				synchronized(lock) {
+					//New records might have been added while the database was updated.
+					if (!isDecoding) {
 						stopService()
 					}
-				})
-			} else {
-				stopService()
+				}
 			}
 		}
 	}
@@ -254,9 +409,19 @@ class DecodeService : Service() {
 		}
 	}
 
+	/**
+	 * Progress comes from callbacks of several decoders at once, while RemoteViews is not thread-safe,
+	 * so the notification is updated on the main thread.
+	 */
 	private fun updateNotification(percent: Int) {
-		remoteViewsSmall.setProgressBar(R.id.progress, 100, percent, false)
-		notificationManager.notify(NOTIF_ID, buildNotification())
+		AndroidUtils.runOnUIThread {
+			synchronized(lock) {
+				//Don't show the notification again after the batch is finished and the service is stopped.
+				if (!isDecoding) return@runOnUIThread
+			}
+			remoteViewsSmall.setProgressBar(R.id.progress, 100, percent, false)
+			notificationManager.notify(NOTIF_ID, buildNotification())
+		}
 	}
 
 	fun setDecodeListener(listener: DecodeServiceListener?) {
@@ -171,19 +171,19 @@ public class DownloadService extends Service {
 
 							@Override
 							public void onCanceled() {
-								Toast.makeText(getApplicationContext(), R.string.downloading_cancel, Toast.LENGTH_LONG).show();
+								AndroidUtils.runOnUIThread(() -> Toast.makeText(getApplicationContext(), R.string.downloading_cancel, Toast.LENGTH_LONG).show());
 								stopService();
 							}
 
 							@Override
 							public void onCopyFinish(String message) {
-								Toast.makeText(getApplicationContext(), message, Toast.LENGTH_LONG).show();
+								AndroidUtils.runOnUIThread(() -> Toast.makeText(getApplicationContext(), message, Toast.LENGTH_LONG).show());
 								stopService();
 							}
 
 							@Override
 							public void onError(String message) {
-								Toast.makeText(getApplicationContext(), message, Toast.LENGTH_LONG).show();
+								AndroidUtils.runOnUIThread(() -> Toast.makeText(getApplicationContext(), message, Toast.LENGTH_LONG).show());
 								stopService();
 							}
 						});
@@ -75,6 +75,7 @@ public class RecordingService extends Service {
 	public static final String ACTION_PAUSE_RECORDING = "ACTION_PAUSE_RECORDING";
 
 	private static final int NOTIF_ID = 101;
+	private static final long SPACE_CHECK_INTERVAL_MILLS = 10000;
 	private NotificationManager notificationManager;
 	private RemoteViews remoteViewsSmall;
 	private PendingIntent contentPendingIntent;
@@ -112,9 +113,10 @@ public class RecordingService extends Service {
 		fileRepository = ARApplication.getInjector().provideFileRepository(getApplicationContext());
 
 		appRecorderCallback = new AppRecorderCallback() {
-			boolean checkHasSpace = true;
+			long spaceCheckMills = 0;
 
 			@Override public void onRecordingStarted(File file) {
+				spaceCheckMills = -SPACE_CHECK_INTERVAL_MILLS;
 				updateNotificationResume();
 			}
 			@Override public void onRecordingPaused() {
@@ -133,17 +135,16 @@ public class RecordingService extends Service {
 			@Override
 			public void onRecordingProgress(long mills, int amp) {
 				try {
-					if (mills % 10000 < 1000) {
-						if (checkHasSpace && !fileRepository.hasAvailableSpace(getApplicationContext())) {
+					//Progress ticks about once a second while no screen shows it, so check by elapsed time.
+					if (mills - spaceCheckMills >= SPACE_CHECK_INTERVAL_MILLS) {
+						spaceCheckMills = mills;
+						if (!fileRepository.hasAvailableSpace(getApplicationContext())) {
 							stopRecording();
 							AndroidUtils.runOnUIThread(() -> {
 								Toast.makeText(getApplicationContext(), R.string.error_no_available_space, Toast.LENGTH_LONG).show();
 							});
 							showNoSpaceNotification();
 						}
-						checkHasSpace = false;
-					} else {
-						checkHasSpace = true;
 					}
 				} catch (IllegalArgumentException e) {
 					stopRecording();
@@ -173,6 +173,11 @@ public class FileBrowserActivity extends Activity implements FileBrowserContract
 		adapter.setData(items);
 	}
 
+	@Override
+	public void updateFileItems(List<RecordInfo> items) {
+		adapter.updateItems(items);
+	}
+
 	@Override
 	public void showSelectedPrivateDir() {
 		btnPrivateDir.setBackgroundResource(R.color.white_transparent_80);
@@ -37,7 +37,9 @@ import com.dimowner.audiorecorder.util.RippleUtils;
 import com.dimowner.audiorecorder.util.TimeUtils;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Created on 30.05.2020.
@@ -77,6 +79,23 @@ public class FileBrowserAdapter extends RecyclerView.Adapter<FileBrowserAdapter.
 		notifyDataSetChanged();
 	}
 
+	/**
+	 * Replace shown items which have the same location as the updated items.
+	 */
+	void updateItems(List<RecordInfo> items) {
+		Map<String, Integer> positions = new HashMap<>(data.size() * 2);
+		for (int i = 0; i < data.size(); i++) {
+			positions.put(data.get(i).getLocation(), i);
+		}
+		for (RecordInfo item : items) {
+			Integer pos = positions.get(item.getLocation());
+			if (pos != null) {
+				data.set(pos, item);
+				notifyItemChanged(pos);
+			}
+		}
+	}
+
 	void removeItem(String path) {
 		int pos = -1;
 		for (int i = 0; i < data.size(); i++) {
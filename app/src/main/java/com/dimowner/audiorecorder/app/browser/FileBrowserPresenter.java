@@ -29,6 +29,7 @@ import com.dimowner.audiorecorder.app.info.RecordInfo;
 import com.dimowner.audiorecorder.audio.AudioDecoder;
 import com.dimowner.audiorecorder.data.FileRepository;
 import com.dimowner.audiorecorder.data.Prefs;
+import com.dimowner.audiorecorder.data.RecordInfoCache;
 import com.dimowner.audiorecorder.data.database.LocalRepository;
 import com.dimowner.audiorecorder.data.database.Record;
 import com.dimowner.audiorecorder.exception.AppException;
@@ -39,6 +40,7 @@ import java.io.File;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
+import java.util.Set;
 
 import timber.log.Timber;
 
@@ -51,25 +53,35 @@ public class FileBrowserPresenter implements FileBrowserContract.UserActionsList
 	public static final int TAB_PRIVATE_DIR = 1;
 	public static final int TAB_PUBLIC_DIR = 2;
 
+	/** Count of files which metadata is read by one processing task. */
+	private static final int READ_INFO_CHUNK_SIZE = 32;
+
 	private FileBrowserContract.View view;
 	private final AppRecorder appRecorder;
 	private AppRecorderCallback appRecorderCallback;
 	private final BackgroundQueue importTasks;
 	private final BackgroundQueue loadingTasks;
 	private final BackgroundQueue recordingsTasks;
+	private final BackgroundQueue processingTasks;
 	private final LocalRepository localRepository;
 	private final FileRepository fileRepository;
+	private final RecordInfoCache recordInfoCache;
 	private int selectedTab;
+	/** Incremented on every files load, so results of a previous load are dropped. */
+	private volatile int loadGeneration = 0;
 
 	public FileBrowserPresenter(Prefs prefs, AppRecorder appRecorder, BackgroundQueue importTasks,
 										 BackgroundQueue loadingTasks, BackgroundQueue recordingsTasks,
-										 LocalRepository localRepository, FileRepository fileRepository) {
+										 BackgroundQueue processingTasks, LocalRepository localRepository,
+										 FileRepository fileRepository, RecordInfoCache recordInfoCache) {
 		this.appRecorder = appRecorder;
 		this.importTasks = importTasks;
 		this.loadingTasks = loadingTasks;
 		this.recordingsTasks = recordingsTasks;
+		this.processingTasks = processingTasks;
 		this.localRepository = localRepository;
 		this.fileRepository = fileRepository;
+		this.recordInfoCache = recordInfoCache;
 
 		if (prefs.isStoreDirPublic()) {
 			selectedTab = TAB_PUBLIC_DIR;
@@ -151,24 +163,32 @@ public class FileBrowserPresenter implements FileBrowserContract.UserActionsList
 		if (view != null) {
 			view.showProgress();
 		}
+		final int generation = ++loadGeneration;
+		final int tab = selectedTab;
 		loadingTasks.postRunnable(() -> {
 			File[] files;
-			if (selectedTab == TAB_PRIVATE_DIR) {
+			if (tab == TAB_PRIVATE_DIR) {
 				files = fileRepository.getPrivateDirFiles(context);
 			} else {
 				files = fileRepository.getPublicDirFiles();
 			}
+			final Set<String> recordPaths = localRepository.getAllRecordPaths();
 			final List<RecordInfo> items = new ArrayList<>();
+			final List<File> unknownFiles = new ArrayList<>();
 			if (files != null) {
-				for (int i = 0; i < files.length; i++) {
-					Record rec = localRepository.findRecordByPath(files[i].getAbsolutePath());
-					RecordInfo r = AudioDecoder.readRecordInfo(files[i]);
-					r.setInDatabase(rec != null);
-					items.add(r);
+				for (File file : files) {
+					RecordInfo info = recordInfoCache.getCachedRecordInfo(file);
+					if (info == null) {
+						//Show the file right away and read its metadata later.
+						info = AudioDecoder.readBasicRecordInfo(file);
+						unknownFiles.add(file);
+					}
+					info.setInDatabase(recordPaths.contains(info.getLocation()));
+					items.add(info);
 				}
 			}
 			AndroidUtils.runOnUIThread(() -> {
-				if (view != null) {
+				if (view != null && generation == loadGeneration) {
 					view.hideProgress();
 					if (items.isEmpty()) {
 						view.showEmpty();
@@ -178,6 +198,28 @@ public class FileBrowserPresenter implements FileBrowserContract.UserActionsList
 					}
 				}
 			});
+			for (int i = 0; i < unknownFiles.size(); i += READ_INFO_CHUNK_SIZE) {
+				final List<File> chunk = unknownFiles.subList(i, Math.min(i + READ_INFO_CHUNK_SIZE, unknownFiles.size()));
+				processingTasks.postRunnable(() -> readRecordsInfo(chunk, recordPaths, generation));
+			}
+		});
+	}
+
+	private void readRecordsInfo(List<File> files, Set<String> recordPaths, int generation) {
+		final List<RecordInfo> items = new ArrayList<>(files.size());
+		for (File file : files) {
+			if (generation != loadGeneration) {
+				//Files are loaded again, the result is not needed.
+				return;
+			}
+			RecordInfo info = recordInfoCache.getRecordInfo(file);
+			info.setInDatabase(recordPaths.contains(info.getLocation()));
+			items.add(info);
+		}
+		AndroidUtils.runOnUIThread(() -> {
+			if (view != null && generation == loadGeneration) {
+				view.updateFileItems(items);
+			}
 		});
 	}
 
@@ -0,0 +1,71 @@
+package com.dimowner.audiorecorder.app.lostrecords;
+
+import com.dimowner.audiorecorder.AppConstants;
+import com.dimowner.audiorecorder.app.AppRecorder;
+import com.dimowner.audiorecorder.app.info.RecordInfo;
+import com.dimowner.audiorecorder.audio.AudioDecoder;
+import com.dimowner.audiorecorder.audio.recorder.WavFileWriter;
+import com.dimowner.audiorecorder.data.database.LocalRepository;
+import com.dimowner.audiorecorder.data.database.Record;
+import com.dimowner.audiorecorder.data.database.RecordPath;
+
+import java.io.File;
+
+import timber.log.Timber;
+
+/**
+ * Repairs WAV records which were not finalized because the app was killed during recording.
+ * Run it once on app start on the recording tasks queue, so it is done before a new recording is inserted.
+ * Only records whose duration or size was never updated after recording are checked.
+ */
+public class InterruptedRecordsRecovery implements Runnable {
+
+	private final LocalRepository localRepository;
+	private final AppRecorder appRecorder;
+
+	public InterruptedRecordsRecovery(LocalRepository localRepository, AppRecorder appRecorder) {
+		this.localRepository = localRepository;
+		this.appRecorder = appRecorder;
+	}
+
+	@Override
+	public void run() {
+		for (RecordPath path : localRepository.getUnfinishedRecordPaths(AppConstants.FORMAT_WAV)) {
+			File file = new File(path.getPath());
+			if (!file.isFile() || isBeingRecorded(file)) {
+				continue;
+			}
+			WavFileWriter.recover(file);
+			//Update the record even if the file was finalized but the app was killed before the record update.
+			RecordInfo info = AudioDecoder.readRecordInfo(file);
+			Record record = localRepository.getRecord(path.getId());
+			if (record != null && info.getDuration() > 0) {
+				Timber.d("Repaired interrupted record: %s", file.getName());
+				localRepository.updateRecord(new Record(
+						record.getId(),
+						record.getName(),
+						info.getDuration(),
+						record.getCreated(),
+						record.getAdded(),
+						record.getRemoved(),
+						record.getPath(),
+						info.getFormat(),
+						info.getSize(),
+						info.getSampleRate(),
+						info.getChannelCount(),
+						info.getBitrate(),
+						record.isBookmarked(),
+						record.isWaveformProcessed(),
+						record.getAmps()));
+			}
+		}
+	}
+
+	private boolean isBeingRecorded(File file) {
+		if (appRecorder.isRecording()) {
+			File recordFile = appRecorder.getRecordFile();
+			return recordFile != null && recordFile.getAbsolutePath().equals(file.getAbsolutePath());
+		}
+		return false;
+	}
+}
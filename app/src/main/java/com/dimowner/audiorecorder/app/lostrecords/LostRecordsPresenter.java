@@ -23,6 +23,7 @@ import com.dimowner.audiorecorder.data.Prefs;
 import com.dimowner.audiorecorder.data.database.LocalRepository;
 import com.dimowner.audiorecorder.util.AndroidUtils;
 
+import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -60,7 +61,7 @@ public class LostRecordsPresenter implements LostRecordsContract.UserActionsList
 				}
 			}
 		}));
-		loadingTasks.postRunnable(localRepository::getAllRecords);
+		loadingTasks.postRunnable(localRepository::checkForLostRecords);
 	}
 
 	@Override
@@ -77,13 +78,15 @@ public class LostRecordsPresenter implements LostRecordsContract.UserActionsList
 	@Override
 	public void deleteRecords(final List<RecordItem> list) {
 		recordingsTasks.postRunnable(() -> {
+			List<Integer> ids = new ArrayList<>(list.size());
 			for (RecordItem rec : list) {
-				localRepository.deleteRecord(rec.getId());
+				ids.add(rec.getId());
 //				fileRepository.deleteRecordFile(rec.getPath());
 				if (prefs.getActiveRecord() == rec.getId()) {
 					prefs.setActiveRecord(-1);
 				}
 			}
+			localRepository.deleteRecords(ids);
 			AndroidUtils.runOnUIThread(() -> {
 				if (view != null) {
 					view.showEmpty();
@@ -25,7 +25,6 @@ import android.content.Context;
 import android.content.Intent;
 import android.content.ServiceConnection;
 import android.content.pm.PackageManager;
-import android.net.Uri;
 import android.os.Build;
 import android.os.Bundle;
 import android.os.IBinder;
@@ -51,7 +50,6 @@ import androidx.work.WorkManager;
 
 import com.dimowner.audiorecorder.ARApplication;
 import com.dimowner.audiorecorder.ColorMap;
-import com.dimowner.audiorecorder.IntArrayList;
 import com.dimowner.audiorecorder.R;
 import com.dimowner.audiorecorder.app.DecodeService;
 import com.dimowner.audiorecorder.app.DecodeServiceListener;
@@ -68,6 +66,8 @@ import com.dimowner.audiorecorder.app.welcome.WelcomeActivity;
 import com.dimowner.audiorecorder.app.widget.RecordingWaveformView;
 import com.dimowner.audiorecorder.app.widget.WaveformViewNew;
 import com.dimowner.audiorecorder.audio.AudioDecoder;
+import com.dimowner.audiorecorder.audio.LiveWaveformAccumulator;
+import com.dimowner.audiorecorder.audio.WaveformPyramid;
 import com.dimowner.audiorecorder.data.FileRepository;
 import com.dimowner.audiorecorder.data.database.Record;
 import com.dimowner.audiorecorder.exception.CantCreateFileException;
@@ -77,16 +77,16 @@ import com.dimowner.audiorecorder.util.AnimationUtil;
 import com.dimowner.audiorecorder.util.C2paUtils;
 import com.dimowner.audiorecorder.util.FileUtil;
 import com.dimowner.audiorecorder.util.TimeUtils;
+import org.proofmode.audio.export.ProofExportService;
+import org.proofmode.audio.export.ProofExportServiceListener;
 import org.proofmode.audio.utils.ProofModeUtils;
 
 import org.bouncycastle.openpgp.PGPException;
 import org.witness.proofmode.ProofModeConstants;
 import org.witness.proofmode.crypto.pgp.PgpUtils;
-import org.witness.proofmode.storage.StorageProvider;
 
 import java.io.File;
 import java.time.LocalDateTime;
-import java.util.Date;
 import java.util.List;
 
 import timber.log.Timber;
@@ -129,7 +129,6 @@ public class MainActivity extends Activity implements MainContract.View, View.On
     private LinearLayout pnlRecordProcessing;
     private ImageView ivPlaceholder;
     private MainContract.UserActionsListener presenter;
-    private StorageProvider storageProvider;
     private PgpUtils pgpUtils;
 
     private final ServiceConnection connection = new ServiceConnection() {
@@ -164,6 +163,29 @@ public class MainActivity extends Activity implements MainContract.View, View.On
             hideRecordProcessing();
         }
     };
+    private ProofExportService proofExportService;
+    private final ProofExportServiceListener proofExportListener = new ProofExportServiceListener() {
+        @Override public void onStartExport() { }
+
+        @Override
+        public void onProofShareReady(@NonNull File file) {
+            runOnUiThread(() -> ProofModeUtils.INSTANCE.shareZipFile(MainActivity.this, file, getPackageName()));
+        }
+
+        @Override public void onFinishExport() { }
+    };
+    private final ServiceConnection proofExportConnection = new ServiceConnection() {
+        @Override
+        public void onServiceConnected(ComponentName className, IBinder service) {
+            proofExportService = ((ProofExportService.LocalBinder) service).getService();
+            proofExportService.addExportListener(proofExportListener);
+        }
+
+        @Override
+        public void onServiceDisconnected(ComponentName name) {
+            proofExportService = null;
+        }
+    };
     private ColorMap colorMap;
     private FileRepository fileRepository;
     private ColorMap.OnThemeColorChangeListener onThemeColorChangeListener;
@@ -184,7 +206,6 @@ public class MainActivity extends Activity implements MainContract.View, View.On
             Timber.e(ex,"Error creating pgpUtils");
         }
 
-        storageProvider = ARApplication.getInjector().provideStorageProvider(getApplicationContext());
 
         setTheme(colorMap.getAppThemeResource());
         super.onCreate(savedInstanceState);
@@ -325,12 +346,18 @@ public class MainActivity extends Activity implements MainContract.View, View.On
 
         Intent intent = new Intent(this, DecodeService.class);
         bindService(intent, connection, Context.BIND_AUTO_CREATE);
+        bindService(new Intent(this, ProofExportService.class), proofExportConnection, Context.BIND_AUTO_CREATE);
     }
 
     @Override
     protected void onStop() {
         super.onStop();
         unbindService(connection);
+        if (proofExportService != null) {
+            proofExportService.removeExportListener(proofExportListener);
+            proofExportService = null;
+        }
+        unbindService(proofExportConnection);
         if (presenter != null) {
             presenter.unbindView();
         }
@@ -557,11 +584,9 @@ public class MainActivity extends Activity implements MainContract.View, View.On
     }
 
     @Override
-    public void onRecordingProgress(long mills, int amp) {
-        runOnUiThread(() -> {
-            txtProgress.setText(TimeUtils.formatTimeIntervalHourMinSec2(mills));
-            recordingWaveformView.addRecordAmp(amp, mills);
-        });
+    public void onRecordingProgress(long mills, LiveWaveformAccumulator data) {
+        txtProgress.setText(TimeUtils.formatTimeIntervalHourMinSec2(mills));
+        recordingWaveformView.addRecordingData(data, mills);
     }
 
     @Override
@@ -654,7 +679,18 @@ public class MainActivity extends Activity implements MainContract.View, View.On
 
     @Override
     public void showWaveForm(int[] waveForm, long duration, long playbackMills) {
-        if (waveForm.length > 0) {
+        showWaveformPanel(waveForm.length > 0);
+        waveformView.setWaveform(waveForm, duration / 1000, playbackMills);
+    }
+
+    @Override
+    public void showWaveForm(WaveformPyramid pyramid, long duration, long playbackMills) {
+        showWaveformPanel(pyramid.getLevelSize(0) > 0);
+        waveformView.setWaveform(pyramid, duration / 1000, playbackMills);
+    }
+
+    private void showWaveformPanel(boolean show) {
+        if (show) {
             btnPlay.setVisibility(View.VISIBLE);
             txtDuration.setVisibility(View.VISIBLE);
             txtZeroTime.setVisibility(View.VISIBLE);
@@ -667,7 +703,6 @@ public class MainActivity extends Activity implements MainContract.View, View.On
             ivPlaceholder.setVisibility(View.VISIBLE);
             waveformView.setVisibility(View.INVISIBLE);
         }
-        waveformView.setWaveform(waveForm, duration / 1000, playbackMills);
     }
 
     @Override
@@ -733,7 +768,7 @@ public class MainActivity extends Activity implements MainContract.View, View.On
     }
 
     @Override
-    public void updateRecordingView(IntArrayList data, long durationMills) {
+    public void updateRecordingView(LiveWaveformAccumulator data, long durationMills) {
         if (data != null) {
             recordingWaveformView.setRecordingData(data, durationMills);
         }
@@ -751,59 +786,12 @@ public class MainActivity extends Activity implements MainContract.View, View.On
 
     @Override
     public void shareRecordProof(Record record) {
-
-        try {
-            File proofZip = createProofZip(record);
-            ProofModeUtils.INSTANCE.shareZipFile(this,proofZip,getApplicationContext().getPackageName());
-        }catch (Exception ex) {
-            Toast.makeText(this,"There was an error sharing proof",Toast.LENGTH_LONG).show();
-        }
-
-
+        ProofExportService.Companion.shareProof(getApplicationContext(), record.getPath(), record.getName());
     }
 
     @Override
     public void saveRecordProofZip(Record record) {
-        saveProofZip(record);
-    }
-
-    public void saveProofZip(Record record){
-        String name = record.getName() +"-proof-"  + ProofModeUtils.INSTANCE.getDateFormat().format(new Date()) + ".zip";
-        Toast.makeText(this,"Saving proof to local storage:"+name,Toast.LENGTH_LONG).show();
-        Uri contentUri = ProofModeUtils.INSTANCE.getUriForFile(new File(record.getPath()), this, getApplicationContext().getPackageName()); //Uri.fromFile(new File(record.getPath()));
-        String hash = ProofModeUtils.INSTANCE.proofExistsForMedia(getApplicationContext(), contentUri);
-        if (hash != null) {
-            var proofSet = storageProvider.getProofSet(hash);
-            proofSet.add(contentUri);
-            Uri uri = ProofModeUtils.INSTANCE.createZipFileInDownloads(this,proofSet,name);
-            if (uri != null) {
-                Toast.makeText(this,"Proof saved to storage:"+ uri.getPath(),Toast.LENGTH_SHORT)
-                        .show();
-            } else  {
-                Toast.makeText(this,"Proof failed to save to storage:",Toast.LENGTH_SHORT)
-                        .show();
-            }
-        } else  {
-            Toast.makeText(this,"Error Saving proof to local storage:"+name,Toast.LENGTH_LONG).show();
-
-        }
-
-    }
-
-    private File createProofZip(Record record) {
-        Uri contentUri = ProofModeUtils.INSTANCE.getUriForFile(new File(record.getPath()), this, getApplicationContext().getPackageName()); //Uri.fromFile(new File(record.getPath()));
-        String hash = ProofModeUtils.INSTANCE.proofExistsForMedia(getApplicationContext(), contentUri);
-        File file;
-        if (hash != null) {
-            var proofSet = storageProvider.getProofSet(hash);
-            proofSet.add(contentUri);
-            file = new File(getFilesDir(),record.getName() +"-proof-"  + ProofModeUtils.INSTANCE.getDateFormat().format(new Date()) + ".zip");
-            ProofModeUtils.INSTANCE.createZipFileFromUris(getApplicationContext(),proofSet,file);
-        } else {
-            throw new RuntimeException("Could not create proof zip");
-            //Toast.makeText(this, "No hash found", Toast.LENGTH_SHORT).show();
-        }
-        return file;
+        ProofExportService.Companion.saveProof(getApplicationContext(), record.getPath(), record.getName());
     }
 
     @Override
@@ -22,8 +22,9 @@ import android.net.Uri;
 import androidx.work.OneTimeWorkRequest;
 
 import com.dimowner.audiorecorder.Contract;
-import com.dimowner.audiorecorder.IntArrayList;
 import com.dimowner.audiorecorder.app.info.RecordInfo;
+import com.dimowner.audiorecorder.audio.LiveWaveformAccumulator;
+import com.dimowner.audiorecorder.audio.WaveformPyramid;
 import com.dimowner.audiorecorder.audio.recorder.RecorderContract;
 import com.dimowner.audiorecorder.data.database.Record;
 
@@ -44,7 +45,7 @@ public interface MainContract {
 
         void showRecordingResume();
 
-        void onRecordingProgress(long mills, int amp);
+        void onRecordingProgress(long mills, LiveWaveformAccumulator data);
 
         void startWelcomeScreen();
 
@@ -75,6 +76,7 @@ public interface MainContract {
         void hideRecordProcessing();
 
         void showWaveForm(int[] waveForm, long duration, long playbackMills);
+        void showWaveForm(WaveformPyramid pyramid, long duration, long playbackMills);
 
         void waveFormToStart();
 
@@ -94,7 +96,7 @@ public interface MainContract {
 
         void showRecordInfo(RecordInfo info);
 
-        void updateRecordingView(IntArrayList data, long durationMills);
+        void updateRecordingView(LiveWaveformAccumulator data, long durationMills);
 
         void showRecordsLostMessage(List<Record> list);
 
@@ -41,17 +41,19 @@ import com.dimowner.audiorecorder.app.AppRecorderCallback;
 import com.dimowner.audiorecorder.app.info.RecordInfo;
 import com.dimowner.audiorecorder.app.settings.SettingsMapper;
 import com.dimowner.audiorecorder.audio.AudioDecoder;
+import com.dimowner.audiorecorder.audio.WaveformPyramid;
 import com.dimowner.audiorecorder.audio.player.PlayerContractNew;
 import com.dimowner.audiorecorder.audio.recorder.RecorderContract;
+import com.dimowner.audiorecorder.collections.IntArrayList;
 import com.dimowner.audiorecorder.data.FileRepository;
 import com.dimowner.audiorecorder.data.Prefs;
+import com.dimowner.audiorecorder.data.RecordFileLocks;
 import com.dimowner.audiorecorder.data.database.LocalRepository;
 import com.dimowner.audiorecorder.data.database.Record;
 import com.dimowner.audiorecorder.exception.AppException;
 import com.dimowner.audiorecorder.exception.CantCreateFileException;
 import com.dimowner.audiorecorder.exception.ErrorParser;
 import com.dimowner.audiorecorder.util.AndroidUtils;
-import com.dimowner.audiorecorder.util.C2paUtils;
 import com.dimowner.audiorecorder.util.FileUtil;
 import com.dimowner.audiorecorder.util.TimeUtils;
 import org.proofmode.audio.utils.ProofModeUtils;
@@ -60,6 +62,7 @@ import java.io.File;
 import java.io.FileDescriptor;
 import java.io.IOException;
 import java.lang.ref.WeakReference;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
 
@@ -77,6 +80,7 @@ public class MainPresenter implements MainContract.UserActionsListener {
     private final LocalRepository localRepository;
     private final Prefs prefs;
     private final SettingsMapper settingsMapper;
+    private final RecordFileLocks recordFileLocks;
     private MainContract.View view;
     private PlayerContractNew.PlayerCallback playerCallback;
     private AppRecorderCallback appRecorderCallback;
@@ -101,6 +105,7 @@ public class MainPresenter implements MainContract.UserActionsListener {
                          final BackgroundQueue processingTasks,
                          final BackgroundQueue importTasks,
                          SettingsMapper settingsMapper,
+                         RecordFileLocks recordFileLocks,
                          Context context) {
         this.prefs = prefs;
         this.fileRepository = fileRepository;
@@ -112,11 +117,16 @@ public class MainPresenter implements MainContract.UserActionsListener {
         this.audioPlayer = audioPlayer;
         this.appRecorder = appRecorder;
         this.settingsMapper = settingsMapper;
+        this.recordFileLocks = recordFileLocks;
         this.contextRef = new WeakReference<>(context.getApplicationContext());
     }
 
     @Override
     public void bindView(final MainContract.View v) {
+        if (this.view == null) {
+            appRecorder.getProgressClock().requestFrames();
+            audioPlayer.getProgressClock().requestFrames();
+        }
         this.view = v;
         if (showImportProgress) {
             view.showImportStart();
@@ -198,9 +208,7 @@ public class MainPresenter implements MainContract.UserActionsListener {
                             view.showOptionsMenu();
                         }
                         updateInformation(rec.getFormat(), rec.getSampleRate(), rec.getSize());
-                        //TODO: I am sure we have to generate proof here after updating the info
-                        onGenerateProof(contextRef.get().getApplicationContext(), record,true);
-                        generateContentCredentials(record,true);
+                        generateContentCredentialsAndProof(contextRef.get().getApplicationContext(), record, true, true);
                     }
                     if (view != null) {
                         view.keepScreenOn(false);
@@ -212,7 +220,7 @@ public class MainPresenter implements MainContract.UserActionsListener {
                 @Override
                 public void onRecordingProgress(final long mills, final int amp) {
                     if (view != null) {
-                        view.onRecordingProgress(mills, amp);
+                        view.onRecordingProgress(mills, appRecorder.getRecordingData());
                         File recFile = appRecorder.getRecordFile();
                         long curTime = System.currentTimeMillis();
                         if (recFile != null && curTime - prevTime > 3000) { //Update record info every second when recording.
@@ -321,7 +329,11 @@ public class MainPresenter implements MainContract.UserActionsListener {
                 0
         );
 
-        this.localRepository.setOnRecordsLostListener(list -> view.showRecordsLostMessage(list));
+        this.localRepository.setOnRecordsLostListener(list -> {
+            if (view != null) {
+                view.showRecordsLostMessage(list);
+            }
+        });
     }
 
     @Override
@@ -329,6 +341,8 @@ public class MainPresenter implements MainContract.UserActionsListener {
         if (view != null) {
             audioPlayer.removePlayerCallback(playerCallback);
             appRecorder.removeRecordingCallback(appRecorderCallback);
+            appRecorder.getProgressClock().releaseFrames();
+            audioPlayer.getProgressClock().releaseFrames();
             this.localRepository.setOnRecordsLostListener(null);
             this.view = null;
         }
@@ -460,78 +474,83 @@ public class MainPresenter implements MainContract.UserActionsListener {
         }
         final String name = FileUtil.removeUnallowedSignsFromName(newName);
         recordingsTasks.postRunnable(() -> {
-            final Record record = localRepository.getRecord((int) id);
-            if (record != null) {
-                String nameWithExt = name + AppConstants.EXTENSION_SEPARATOR + extension;
-                File file = new File(record.getPath());
-                File renamed = new File(file.getParentFile().getAbsolutePath() + File.separator + nameWithExt);
-                if (renamed.exists()) {
-                    AndroidUtils.runOnUIThread(() -> {
-                        if (view != null) {
-                            view.showError(R.string.error_file_exists);
-                        }
-                    });
-                } else {
-                    if (fileRepository.renameFile(record.getPath(), name, extension)) {
-                        MainPresenter.this.record = new Record(
-                                record.getId(),
-                                name,
-                                record.getDuration(),
-                                record.getCreated(),
-                                record.getAdded(),
-                                record.getRemoved(),
-                                renamed.getAbsolutePath(),
-                                record.getFormat(),
-                                record.getSize(),
-                                record.getSampleRate(),
-                                record.getChannelCount(),
-                                record.getBitrate(),
-                                record.isBookmarked(),
-                                record.isWaveformProcessed(),
-                                record.getAmps());
-                        if (localRepository.updateRecord(MainPresenter.this.record)) {
-                            AndroidUtils.runOnUIThread(() -> {
-                                if (view != null) {
-                                    view.hideProgress();
-                                    view.showName(name);
+            recordFileLocks.lockWrite((int) id);
+            try {
+                final Record record = localRepository.getRecord((int) id);
+                if (record != null) {
+                    String nameWithExt = name + AppConstants.EXTENSION_SEPARATOR + extension;
+                    File file = new File(record.getPath());
+                    File renamed = new File(file.getParentFile().getAbsolutePath() + File.separator + nameWithExt);
+                    if (renamed.exists()) {
+                        AndroidUtils.runOnUIThread(() -> {
+                            if (view != null) {
+                                view.showError(R.string.error_file_exists);
+                            }
+                        });
+                    } else {
+                        if (fileRepository.renameFile(record.getPath(), name, extension)) {
+                            MainPresenter.this.record = new Record(
+                                    record.getId(),
+                                    name,
+                                    record.getDuration(),
+                                    record.getCreated(),
+                                    record.getAdded(),
+                                    record.getRemoved(),
+                                    renamed.getAbsolutePath(),
+                                    record.getFormat(),
+                                    record.getSize(),
+                                    record.getSampleRate(),
+                                    record.getChannelCount(),
+                                    record.getBitrate(),
+                                    record.isBookmarked(),
+                                    record.isWaveformProcessed(),
+                                    record.getAmps());
+                            if (localRepository.updateRecord(MainPresenter.this.record)) {
+                                AndroidUtils.runOnUIThread(() -> {
+                                    if (view != null) {
+                                        view.hideProgress();
+                                        view.showName(name);
+                                    }
+                                });
+                            } else {
+                                AndroidUtils.runOnUIThread(() -> {
+                                    if (view != null) {
+                                        view.showError(R.string.error_failed_to_rename);
+                                    }
+                                });
+                                //Restore file name after fail update path in local database.
+                                if (renamed.exists()) {
+                                    //Try to rename 3 times;
+                                    if (!renamed.renameTo(file)) {
+                                        if (!renamed.renameTo(file)) {
+                                            renamed.renameTo(file);
+                                        }
+                                    }
                                 }
-                            });
+                            }
+
                         } else {
                             AndroidUtils.runOnUIThread(() -> {
                                 if (view != null) {
                                     view.showError(R.string.error_failed_to_rename);
                                 }
                             });
-                            //Restore file name after fail update path in local database.
-                            if (renamed.exists()) {
-                                //Try to rename 3 times;
-                                if (!renamed.renameTo(file)) {
-                                    if (!renamed.renameTo(file)) {
-                                        renamed.renameTo(file);
-                                    }
-                                }
-                            }
                         }
-
-                    } else {
-                        AndroidUtils.runOnUIThread(() -> {
-                            if (view != null) {
-                                view.showError(R.string.error_failed_to_rename);
-                            }
-                        });
                     }
+                    AndroidUtils.runOnUIThread(() -> {
+                        if (view != null) {
+                            view.hideProgress();
+                        }
+                    });
+                } else {
+                    AndroidUtils.runOnUIThread(() -> {
+                        if (view != null) {
+                            view.showError(R.string.error_failed_to_rename);
+                        }
+                    });
                 }
-                AndroidUtils.runOnUIThread(() -> {
-                    if (view != null) {
-                        view.hideProgress();
-                    }
-                });
-            } else {
-                AndroidUtils.runOnUIThread(() -> {
-                    if (view != null) {
-                        view.showError(R.string.error_failed_to_rename);
-                    }
-                });
+            } finally {
+                recordFileLocks.unlockWrite((int) id);
             }
         });
     }
@@ -554,6 +573,7 @@ public class MainPresenter implements MainContract.UserActionsListener {
             }
             loadingTasks.postRunnable(() -> {
                 final Record rec = localRepository.getRecord((int) prefs.getActiveRecord());
+                final WaveformPyramid pyramid = readWaveformPyramid(rec);
                 record = rec;
                 if (rec != null) {
                     songDuration = rec.getDuration();
@@ -564,10 +584,10 @@ public class MainPresenter implements MainContract.UserActionsListener {
                                 if (duration > 0) {
                                     long playProgressMills = audioPlayer.getPauseTime();
                                     view.onPlayProgress(playProgressMills, (int) (1000 * playProgressMills / duration));
-                                    view.showWaveForm(rec.getAmps(), songDuration, playProgressMills);
+                                    showWaveForm(rec, pyramid, playProgressMills);
                                 }
                             } else {
-                                view.showWaveForm(rec.getAmps(), songDuration, 0);
+                                showWaveForm(rec, pyramid, 0);
                             }
 
                             view.showName(rec.getName());
@@ -661,7 +681,7 @@ public class MainPresenter implements MainContract.UserActionsListener {
     public void onGenerateProof(Context context, Record record,boolean proofWasAutogenerated) {
         Uri contentUri = ProofModeUtils.INSTANCE.getUriForFile(new File(record.getPath()), context, context.getApplicationContext().getPackageName()); //Uri.fromFile(new File(record.getPath()));
         // Will change this line to set autogenerated being false when the file is imported
-        AndroidUtils.generateProofWithWorkManager(context, contentUri,proofWasAutogenerated);
+        AndroidUtils.generateProofWithWorkManager(context, contentUri,proofWasAutogenerated, record.getId());
 
     }
 
@@ -856,8 +876,7 @@ public class MainPresenter implements MainContract.UserActionsListener {
                             songDuration = info.getDuration();
 
                             // Audio was imported, so proof is manually generated
-                            onGenerateProof(context.getApplicationContext(),rec,false);
-                            generateContentCredentials(rec,false);
+                            generateContentCredentialsAndProof(context.getApplicationContext(), rec, false, false);
 
 
                             AndroidUtils.runOnUIThread(() -> {
@@ -903,70 +922,69 @@ public class MainPresenter implements MainContract.UserActionsListener {
     private void migrateDb3() {
         processingTasks.postRunnable(() -> {
             //Update records table.
-            List<Integer> ids = localRepository.getAllItemsIds();
+            IntArrayList ids = localRepository.getAllItemsIds();
+            List<Record> updated = new ArrayList<>(ids.size());
             Record rec;
             for (int i = 0; i < ids.size(); i++) {
-                if (ids.get(i) != null) {
-                    rec = localRepository.getRecord(ids.get(i));
-                    if (rec != null) {
-                        RecordInfo info = AudioDecoder.readRecordInfo(new File(rec.getPath()));
-                        localRepository.updateRecord(new Record(
-                                rec.getId(),
-                                FileUtil.removeFileExtension(rec.getName()),
-                                rec.getDuration(),
-                                rec.getCreated(),
-                                rec.getAdded(),
-                                rec.getRemoved(),
-                                rec.getPath(),
-                                info.getFormat(),
-                                info.getSize(),
-                                info.getSampleRate(),
-                                info.getChannelCount(),
-                                info.getBitrate(),
-                                rec.isBookmarked(),
-                                rec.isWaveformProcessed(),
-                                rec.getAmps()));
-                    }
+                rec = localRepository.getRecord(ids.get(i));
+                if (rec != null) {
+                    RecordInfo info = AudioDecoder.readRecordInfo(new File(rec.getPath()));
+                    updated.add(new Record(
+                            rec.getId(),
+                            FileUtil.removeFileExtension(rec.getName()),
+                            rec.getDuration(),
+                            rec.getCreated(),
+                            rec.getAdded(),
+                            rec.getRemoved(),
+                            rec.getPath(),
+                            info.getFormat(),
+                            info.getSize(),
+                            info.getSampleRate(),
+                            info.getChannelCount(),
+                            info.getBitrate(),
+                            rec.isBookmarked(),
+                            rec.isWaveformProcessed(),
+                            rec.getAmps()));
                 }
             }
+            localRepository.updateRecords(updated);
             //Update trash records table.
-            List<Integer> trashIds = localRepository.getTrashRecordsIds();
+            IntArrayList trashIds = localRepository.getTrashRecordsIds();
+            List<Record> updatedTrash = new ArrayList<>(trashIds.size());
             Record trashRecord;
             for (int i = 0; i < trashIds.size(); i++) {
-                if (trashIds.get(i) != null) {
-                    trashRecord = localRepository.getTrashRecord(trashIds.get(i));
-                    if (trashRecord != null) {
-                        RecordInfo info = AudioDecoder.readRecordInfo(new File(trashRecord.getPath()));
-                        localRepository.updateTrashRecord(new Record(
-                                trashRecord.getId(),
-                                FileUtil.removeFileExtension(trashRecord.getName()),
-                                trashRecord.getDuration(),
-                                trashRecord.getCreated(),
-                                trashRecord.getAdded(),
-                                trashRecord.getRemoved(),
-                                trashRecord.getPath(),
-                                info.getFormat(),
-                                info.getSize(),
-                                info.getSampleRate(),
-                                info.getChannelCount(),
-                                info.getBitrate(),
-                                trashRecord.isBookmarked(),
-                                trashRecord.isWaveformProcessed(),
-                                trashRecord.getAmps()));
-                    }
+                trashRecord = localRepository.getTrashRecord(trashIds.get(i));
+                if (trashRecord != null) {
+                    RecordInfo info = AudioDecoder.readRecordInfo(new File(trashRecord.getPath()));
+                    updatedTrash.add(new Record(
+                            trashRecord.getId(),
+                            FileUtil.removeFileExtension(trashRecord.getName()),
+                            trashRecord.getDuration(),
+                            trashRecord.getCreated(),
+                            trashRecord.getAdded(),
+                            trashRecord.getRemoved(),
+                            trashRecord.getPath(),
+                            info.getFormat(),
+                            info.getSize(),
+                            info.getSampleRate(),
+                            info.getChannelCount(),
+                            info.getBitrate(),
+                            trashRecord.isBookmarked(),
+                            trashRecord.isWaveformProcessed(),
+                            trashRecord.getAmps()));
                 }
             }
+            localRepository.updateTrashRecords(updatedTrash);
             prefs.migrateDb3Finished();
         });
     }
 
-    public void generateContentCredentials(Record record,boolean isDirectCapture) {
-        Context appCtx = contextRef.get().getApplicationContext();
-        C2paUtils.Companion.generateContentCredentials(
-                appCtx,
-                record.getPath(),
-                isDirectCapture,
-                false, null);
+    /**
+     * Sign the record with content credentials and generate proof for the signed file in the background.
+     */
+    private void generateContentCredentialsAndProof(Context context, Record record, boolean proofWasAutogenerated,
+                                                   boolean isDirectCapture) {
+        AndroidUtils.generateContentCredentialsAndProof(context, record, proofWasAutogenerated, isDirectCapture);
     }
 
     private String extractFileName(Context context, Uri uri) {
@@ -987,4 +1005,20 @@ public class MainPresenter implements MainContract.UserActionsListener {
         }
         return null;
     }
+
+    /** Multi-resolution waveform stored for the record, or null when it wasn't decoded yet. */
+    private WaveformPyramid readWaveformPyramid(Record rec) {
+        if (rec == null) {
+            return null;
+        }
+        return WaveformPyramid.readFrom(fileRepository.getWaveformFile(rec.getPath()), new File(rec.getPath()));
+    }
+
+    private void showWaveForm(Record rec, WaveformPyramid pyramid, long playbackMills) {
+        if (pyramid != null) {
+            view.showWaveForm(pyramid, rec.getDuration(), playbackMills);
+        } else {
+            view.showWaveForm(rec.getAmps(), rec.getDuration(), playbackMills);
+        }
+    }
 }
@@ -149,11 +149,13 @@ class MoveRecordsService : Service() {
 								}
 
 								override fun onCanceled() {
-									Toast.makeText(
-										applicationContext,
-										R.string.moving_record_cancel,
-										Toast.LENGTH_LONG
-									).show()
+									AndroidUtils.runOnUIThread {
+										Toast.makeText(
+											applicationContext,
+											R.string.moving_record_cancel,
+											Toast.LENGTH_LONG
+										).show()
+									}
 									moveListener?.onFinishMove()
 									stopService()
 								}
@@ -166,7 +168,9 @@ class MoveRecordsService : Service() {
 									fileRepository.deleteRecordFile(sourceFilePath)
 									if (copied + failed == list.size) {
 										val text = getResultMessage(message, copied, failed, list.size)
-										Toast.makeText(applicationContext, text, Toast.LENGTH_LONG).show()
+										AndroidUtils.runOnUIThread {
+											Toast.makeText(applicationContext, text, Toast.LENGTH_LONG).show()
+										}
 										moveListener?.onFinishMove()
 										if (!localRepository.hasRecordsWithPath(fileRepository.publicDir.absolutePath)) {
 											prefs.isPublicStorageMigrated = true
@@ -180,7 +184,9 @@ class MoveRecordsService : Service() {
 									copiedPercent += oneRecordProgress.toInt()
 									if (copied + failed == list.size) {
 										val text = getResultMessage(message, copied, failed, list.size)
-										Toast.makeText(applicationContext, text, Toast.LENGTH_LONG).show()
+										AndroidUtils.runOnUIThread {
+											Toast.makeText(applicationContext, text, Toast.LENGTH_LONG).show()
+										}
 										moveListener?.onFinishMove()
 										stopService()
 									}
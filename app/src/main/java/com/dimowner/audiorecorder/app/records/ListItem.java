@@ -168,10 +168,15 @@ public class ListItem implements Parcelable {
 		this.bookmarked = bookmarked;
 	}
 
+	/** Waveform of the record, null until it is loaded. */
 	public int[] getAmps() {
 		return amps;
 	}
 
+	public void setAmps(int[] amps) {
+		this.amps = amps;
+	}
+
 	private String convertTimeToStr(long time) {
 		return TimeUtils.formatDateTimeLocale(time);
 //		return TimeUtils.formatTime(time);
@@ -206,7 +211,7 @@ public class ListItem implements Parcelable {
 		addedTime = data[5];
 		createTime = data[6];
 		avatar_url = data[7];
-		in.readIntArray(amps);
+		amps = in.createIntArray();
 		boolean[] bools = new boolean[1];
 		in.readBooleanArray(bools);
 		bookmarked = bools[0];
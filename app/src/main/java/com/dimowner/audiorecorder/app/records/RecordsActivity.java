@@ -19,12 +19,14 @@ package com.dimowner.audiorecorder.app.records;
 import android.Manifest;
 import android.animation.Animator;
 import android.app.Activity;
+import android.content.ComponentName;
 import android.content.Context;
 import android.content.Intent;
+import android.content.ServiceConnection;
 import android.content.pm.PackageManager;
-import android.net.Uri;
 import android.os.Build;
 import android.os.Bundle;
+import android.os.IBinder;
 
 import androidx.annotation.NonNull;
 import androidx.recyclerview.widget.LinearLayoutManager;
@@ -54,17 +56,19 @@ import com.dimowner.audiorecorder.app.trash.TrashActivity;
 import com.dimowner.audiorecorder.app.widget.SimpleWaveformView;
 import com.dimowner.audiorecorder.app.widget.TouchLayout;
 import com.dimowner.audiorecorder.app.widget.WaveformViewNew;
+import com.dimowner.audiorecorder.audio.WaveformPyramid;
 import com.dimowner.audiorecorder.data.database.Record;
 import com.dimowner.audiorecorder.util.AndroidUtils;
 import com.dimowner.audiorecorder.util.AnimationUtil;
 import com.dimowner.audiorecorder.util.FileUtil;
 import com.dimowner.audiorecorder.util.TimeUtils;
 
+import org.proofmode.audio.export.ProofExportService;
+import org.proofmode.audio.export.ProofExportServiceListener;
 import org.proofmode.audio.utils.ProofModeUtils;
 
 import java.io.File;
 import java.util.ArrayList;
-import java.util.Date;
 import java.util.List;
 
 import timber.log.Timber;
@@ -102,9 +106,36 @@ public class RecordsActivity extends Activity implements RecordsContract.View, V
 	private ImageButton btnShareMulti;
 	private ImageButton btnDeleteMulti;
 	private ImageButton btnDownloadMulti;
+	private ImageButton btnProofMulti;
+	private ImageButton btnExportMulti;
 
 	private RecordsContract.UserActionsListener presenter;
 	private ColorMap colorMap;
+	private ProofExportService proofExportService;
+
+	private final ProofExportServiceListener proofExportListener = new ProofExportServiceListener() {
+		@Override public void onStartExport() { }
+
+		@Override
+		public void onProofShareReady(@NonNull File file) {
+			runOnUiThread(() -> ProofModeUtils.INSTANCE.shareZipFile(RecordsActivity.this, file, getPackageName()));
+		}
+
+		@Override public void onFinishExport() { }
+	};
+
+	private final ServiceConnection proofExportConnection = new ServiceConnection() {
+		@Override
+		public void onServiceConnected(ComponentName className, IBinder service) {
+			proofExportService = ((ProofExportService.LocalBinder) service).getService();
+			proofExportService.addExportListener(proofExportListener);
+		}
+
+		@Override
+		public void onServiceDisconnected(ComponentName name) {
+			proofExportService = null;
+		}
+	};
 
 	final private List<String> downloadRecords = new ArrayList<>();
 
@@ -167,9 +198,13 @@ public class RecordsActivity extends Activity implements RecordsContract.View, V
 		btnShareMulti = findViewById(R.id.btn_share_multi);
 		btnDeleteMulti = findViewById(R.id.btn_delete_multi);
 		btnDownloadMulti = findViewById(R.id.btn_download_multi);
+		btnProofMulti = findViewById(R.id.btn_proof_multi);
+		btnExportMulti = findViewById(R.id.btn_export_multi);
 		btnShareMulti.setOnClickListener(this);
 		btnDeleteMulti.setOnClickListener(this);
 		btnDownloadMulti.setOnClickListener(this);
+		btnProofMulti.setOnClickListener(this);
+		btnExportMulti.setOnClickListener(this);
 
 		playProgress = findViewById(R.id.play_progress);
 		txtProgress = findViewById(R.id.txt_progress);
@@ -313,6 +348,7 @@ public class RecordsActivity extends Activity implements RecordsContract.View, V
 				);
 			}
 		});
+		adapter.setOnWaveformRequestListener(id -> presenter.loadRecordWaveform(id));
 		adapter.setBtnTrashClickListener(() -> startActivity(TrashActivity.getStartIntent(getApplicationContext())));
 		adapter.setOnMultiSelectModeListener(new RecordsAdapter.OnMultiSelectModeListener() {
 			@Override
@@ -364,47 +400,11 @@ public class RecordsActivity extends Activity implements RecordsContract.View, V
 	}
 
 	private void shareProof (String path, String name) {
-
-		Uri contentUri = ProofModeUtils.INSTANCE.getUriForFile(new File(path), this, getApplicationContext().getPackageName()); //Uri.fromFile(new File(record.getPath()));
-		String hash = ProofModeUtils.INSTANCE.proofExistsForMedia(getApplicationContext(), contentUri);
-		if (hash != null) {
-			var storageProvider = ARApplication.getInjector().provideStorageProvider(getApplicationContext());
-			var proofSet = storageProvider.getProofSet(hash);
-			proofSet.add(contentUri);
-			File file = new File(getFilesDir(),name +"-proof-"  + ProofModeUtils.INSTANCE.getDateFormat().format(new Date()) + ".zip");
-			ProofModeUtils.INSTANCE.createZipFileFromUris(getApplicationContext(),proofSet,file);
-			ProofModeUtils.INSTANCE.shareZipFile(this,file,getApplicationContext().getPackageName());
-		} else {
-			Toast.makeText(this, "No hash found", Toast.LENGTH_SHORT).show();
-		}
-
+		ProofExportService.Companion.shareProof(getApplicationContext(), path, name);
 	}
 
 	public void saveProof(String path, String recordName) {
-
-		String name = recordName +"-proof-"  + ProofModeUtils.INSTANCE.getDateFormat().format(new Date()) + ".zip";
-		Toast.makeText(this,"Saving proof to local storage:"+name,Toast.LENGTH_LONG).show();
-		var storageProvider = ARApplication.getInjector().provideStorageProvider(getApplicationContext());
-
-		Uri contentUri = ProofModeUtils.INSTANCE.getUriForFile(new File(path), this, getApplicationContext().getPackageName()); //Uri.fromFile(new File(record.getPath()));
-		String hash = ProofModeUtils.INSTANCE.proofExistsForMedia(getApplicationContext(), contentUri);
-
-		if (hash != null) {
-			var proofSet = storageProvider.getProofSet(hash);
-			proofSet.add(contentUri);
-			Uri uri = ProofModeUtils.INSTANCE.createZipFileInDownloads(this,proofSet,name);
-			if (uri != null) {
-				Toast.makeText(this,"Proof saved to storage:"+ uri.getPath(),Toast.LENGTH_SHORT)
-						.show();
-			} else  {
-				Toast.makeText(this,"Proof failed to save to storage:",Toast.LENGTH_SHORT)
-						.show();
-			}
-		} else  {
-			Toast.makeText(this,"Error Saving proof to local storage:"+name,Toast.LENGTH_LONG).show();
-
-		}
-
+		ProofExportService.Companion.saveProof(getApplicationContext(), path, recordName);
 	}
 
 	@Override
@@ -572,6 +572,10 @@ public class RecordsActivity extends Activity implements RecordsContract.View, V
 			);
 		} else if (id == R.id.btn_share_multi) {
 			shareSelectedRecords();
+		} else if (id == R.id.btn_proof_multi) {
+			generateProofSelectedRecords();
+		} else if (id == R.id.btn_export_multi) {
+			exportEvidenceSelectedRecords();
 		} else if (id == R.id.btn_download_multi) {
 			int count = adapter.getSelected().size();
 			AndroidUtils.showDialogYesNo(
@@ -595,6 +599,31 @@ public class RecordsActivity extends Activity implements RecordsContract.View, V
 		cancelMultiSelect();
 	}
 
+	private void generateProofSelectedRecords() {
+		List<Integer> selected = adapter.getSelected();
+		List<Integer> ids = new ArrayList<>();
+		for (int i = 0; i < selected.size(); i++) {
+			ListItem item = adapter.getItem(selected.get(i));
+			ids.add((int) item.getId());
+		}
+		AndroidUtils.generateProofsWithWorkManager(getApplicationContext(), ids);
+		Toast.makeText(getApplicationContext(),
+				getResources().getQuantityString(R.plurals.generate_proof_selected_records, ids.size(), ids.size()),
+				Toast.LENGTH_SHORT).show();
+		cancelMultiSelect();
+	}
+
+	private void exportEvidenceSelectedRecords() {
+		List<Integer> selected = adapter.getSelected();
+		List<String> paths = new ArrayList<>();
+		for (int i = 0; i < selected.size(); i++) {
+			ListItem item = adapter.getItem(selected.get(i));
+			paths.add(item.getPath());
+		}
+		ProofExportService.Companion.exportEvidence(getApplicationContext(), paths);
+		cancelMultiSelect();
+	}
+
 	private void downloadSelectedRecords() {
 		downloadRecords.clear();
 		List<Integer> selected = adapter.getSelected();
@@ -679,11 +708,17 @@ public class RecordsActivity extends Activity implements RecordsContract.View, V
 		super.onStart();
 		presenter.bindView(this);
 		presenter.loadRecords();
+		bindService(new Intent(this, ProofExportService.class), proofExportConnection, Context.BIND_AUTO_CREATE);
 	}
 
 	@Override
 	protected void onStop() {
 		super.onStop();
+		if (proofExportService != null) {
+			proofExportService.removeExportListener(proofExportListener);
+			proofExportService = null;
+		}
+		unbindService(proofExportConnection);
 		if (presenter != null) {
 			presenter.unbindView();
 		}
@@ -770,6 +805,16 @@ public class RecordsActivity extends Activity implements RecordsContract.View, V
 		waveformView.setWaveform(waveForm, duration/1000, playbackMills);
 	}
 
+	@Override
+	public void showWaveForm(WaveformPyramid pyramid, long duration, long playbackMills) {
+		waveformView.setWaveform(pyramid, duration/1000, playbackMills);
+	}
+
+	@Override
+	public void showRecordWaveform(long id, int[] waveForm) {
+		adapter.setItemWaveform(id, waveForm);
+	}
+
 	@Override
 	public void showDuration(final String duration) {
 		txtProgress.setText(duration);
@@ -43,7 +43,9 @@ import com.dimowner.audiorecorder.util.TimeUtils;
 
 import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 public class RecordsAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder> {
 
@@ -62,6 +64,9 @@ public class RecordsAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder
 	private OnAddToBookmarkListener onAddToBookmarkListener = null;
 	private OnItemOptionListener onItemOptionListener = null;
 	private OnMultiSelectModeListener onMultiSelectModeListener = null;
+	private OnWaveformRequestListener onWaveformRequestListener = null;
+	/** Ids of items which waveforms were already requested. */
+	private final Set<Long> requestedWaveforms = new HashSet<>();
 
 	RecordsAdapter(SettingsMapper mapper) {
 		this.data = new ArrayList<>();
@@ -186,6 +191,9 @@ public class RecordsAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder
 			});
 			holder.btnMore.setOnClickListener(v -> showMenu(v, p));
 			holder.waveformView.setWaveform(item.getAmps());
+			if (item.getAmps() == null && onWaveformRequestListener != null && requestedWaveforms.add(item.getId())) {
+				onWaveformRequestListener.onWaveformRequest(item.getId());
+			}
 			if (isMultiSelectMode || item.getDuration() == 0) {
 				holder.btnMore.setVisibility(View.GONE);
 			} else {
@@ -297,9 +305,21 @@ public class RecordsAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder
 			data = d;
 		}
 		data.add(0, ListItem.createHeaderItem());
+		requestedWaveforms.clear();
 		notifyDataSetChanged();
 	}
 
+	/**
+	 * Show waveform which was loaded on demand.
+	 */
+	void setItemWaveform(long id, int[] amps) {
+		int pos = findPositionById(id);
+		if (pos >= 0) {
+			data.get(pos).setAmps(amps != null ? amps : new int[0]);
+			notifyItemChanged(pos);
+		}
+	}
+
 //	public void addData(List<ListItem> d) {
 //		this.data.addAll(addDateHeaders(d));
 //		notifyItemRangeInserted(data.size() - d.size(), d.size());
@@ -599,6 +619,10 @@ public class RecordsAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder
 		this.onMultiSelectModeListener = listener;
 	}
 
+	void setOnWaveformRequestListener(OnWaveformRequestListener listener) {
+		this.onWaveformRequestListener = listener;
+	}
+
 	interface OnAddToBookmarkListener {
 		void onAddToBookmarks(int id);
 		void onRemoveFromBookmarks(int id);
@@ -608,6 +632,11 @@ public class RecordsAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder
 		void onItemOptionSelected(int menuId, ListItem item);
 	}
 
+	/** Records list is loaded without waveforms, they are requested when an item is shown. */
+	interface OnWaveformRequestListener {
+		void onWaveformRequest(long id);
+	}
+
 	static class ItemViewHolder extends RecyclerView.ViewHolder {
 		TextView name;
 		TextView description;
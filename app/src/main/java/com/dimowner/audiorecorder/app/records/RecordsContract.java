@@ -18,6 +18,7 @@ package com.dimowner.audiorecorder.app.records;
 
 import com.dimowner.audiorecorder.Contract;
 import com.dimowner.audiorecorder.app.info.RecordInfo;
+import com.dimowner.audiorecorder.audio.WaveformPyramid;
 import com.dimowner.audiorecorder.data.database.Record;
 
 import java.util.List;
@@ -42,6 +43,8 @@ public interface RecordsContract {
 		void startPlaybackService();
 
 		void showWaveForm(int[] waveForm, long duration, long playbackMills);
+		void showWaveForm(WaveformPyramid pyramid, long duration, long playbackMills);
+		void showRecordWaveform(long id, int[] waveForm);
 		void showDuration(String duration);
 
 		void showRecords(List<ListItem> records, int order);
@@ -110,6 +113,8 @@ public interface RecordsContract {
 
 		void loadRecordsPage(int page);
 
+		void loadRecordWaveform(long id);
+
 		void decodeActiveRecord();
 
 		void applyBookmarksFilter();
@@ -23,9 +23,11 @@ import com.dimowner.audiorecorder.R;
 import com.dimowner.audiorecorder.app.AppRecorder;
 import com.dimowner.audiorecorder.app.AppRecorderCallback;
 import com.dimowner.audiorecorder.app.info.RecordInfo;
+import com.dimowner.audiorecorder.audio.WaveformPyramid;
 import com.dimowner.audiorecorder.audio.player.PlayerContractNew;
 import com.dimowner.audiorecorder.data.FileRepository;
 import com.dimowner.audiorecorder.data.Prefs;
+import com.dimowner.audiorecorder.data.RecordFileLocks;
 import com.dimowner.audiorecorder.data.database.LocalRepository;
 import com.dimowner.audiorecorder.data.database.Record;
 import com.dimowner.audiorecorder.exception.AppException;
@@ -35,6 +37,7 @@ import com.dimowner.audiorecorder.util.FileUtil;
 import com.dimowner.audiorecorder.util.TimeUtils;
 
 import java.io.File;
+import java.util.ArrayList;
 import java.util.List;
 
 import androidx.annotation.NonNull;
@@ -52,14 +55,18 @@ public class RecordsPresenter implements RecordsContract.UserActionsListener {
 	private final FileRepository fileRepository;
 	private final LocalRepository localRepository;
 	private final Prefs prefs;
+	private final RecordFileLocks recordFileLocks;
 
 	private Record activeRecord;
+	/** Last record of the loaded list, next page starts after it. Accessed only from loadingTasks. */
+	private Record lastLoadedRecord;
 	private boolean showBookmarks = false;
 	private boolean listenPlaybackProgress = true;
 
 	public RecordsPresenter(final LocalRepository localRepository, FileRepository fileRepository,
 									BackgroundQueue loadingTasks, BackgroundQueue recordingsTasks,
-									PlayerContractNew.Player player, AppRecorder appRecorder, Prefs prefs) {
+									PlayerContractNew.Player player, AppRecorder appRecorder, Prefs prefs,
+									RecordFileLocks recordFileLocks) {
 		this.localRepository = localRepository;
 		this.fileRepository = fileRepository;
 		this.loadingTasks = loadingTasks;
@@ -68,10 +75,14 @@ public class RecordsPresenter implements RecordsContract.UserActionsListener {
 		this.appRecorder = appRecorder;
 		this.playerCallback = null;
 		this.prefs = prefs;
+		this.recordFileLocks = recordFileLocks;
 	}
 
 	@Override
 	public void bindView(final RecordsContract.View v) {
+		if (this.view == null) {
+			audioPlayer.getProgressClock().requestFrames();
+		}
 		this.view = v;
 
 		if (appRecorderCallback == null) {
@@ -162,7 +173,11 @@ public class RecordsPresenter implements RecordsContract.UserActionsListener {
 			view.showSortType(prefs.getRecordsOrder());
 		}
 
-		this.localRepository.setOnRecordsLostListener(list -> view.showRecordsLostMessage(list));
+		this.localRepository.setOnRecordsLostListener(list -> {
+			if (view != null) {
+				view.showRecordsLostMessage(list);
+			}
+		});
 	}
 
 	@Override
@@ -170,6 +185,7 @@ public class RecordsPresenter implements RecordsContract.UserActionsListener {
 		if (view != null) {
 			audioPlayer.removePlayerCallback(playerCallback);
 			appRecorder.removeRecordingCallback(appRecorderCallback);
+			audioPlayer.getProgressClock().releaseFrames();
 			this.localRepository.setOnRecordsLostListener(null);
 			this.view = null;
 		}
@@ -274,17 +290,17 @@ public class RecordsPresenter implements RecordsContract.UserActionsListener {
 	@Override
 	public void deleteRecords(List<Long> ids) {
 		recordingsTasks.postRunnable(() -> {
-			for(Long id: ids) {
-				localRepository.deleteRecord(id.intValue());
-				AndroidUtils.runOnUIThread(() -> {
-					if (view != null) {
-						view.showTrashBtn();
-						view.onDeleteRecord(id);
-					}
-				});
+			List<Integer> intIds = new ArrayList<>(ids.size());
+			for (Long id : ids) {
+				intIds.add(id.intValue());
 			}
+			localRepository.deleteRecords(intIds);
 			AndroidUtils.runOnUIThread(() -> {
 				if (view != null) {
+					view.showTrashBtn();
+					for (Long id : ids) {
+						view.onDeleteRecord(id);
+					}
 					view.cancelMultiSelect();
 					view.showMessage(R.string.selected_records_moved_into_trash);
 				}
@@ -305,80 +321,85 @@ public class RecordsPresenter implements RecordsContract.UserActionsListener {
 		view.showProgress();
 		final String name = FileUtil.removeUnallowedSignsFromName(n);
 		recordingsTasks.postRunnable(() -> {
-			Record rec2 = localRepository.getRecord((int)id);
-			if (rec2 != null) {
-				String nameWithExt = name + AppConstants.EXTENSION_SEPARATOR + extension;
-				File file = new File(rec2.getPath());
-				File renamed = new File(file.getParentFile().getAbsolutePath() + File.separator + nameWithExt);
-
-				if (renamed.exists()) {
-					AndroidUtils.runOnUIThread(() -> {
-						if (view != null) {
-							view.showError(R.string.error_file_exists);
-						}
-					});
-				} else {
-					if (fileRepository.renameFile(rec2.getPath(), name, extension)) {
-						Record renamedRecord = new Record(
-								rec2.getId(),
-								name,
-								rec2.getDuration(),
-								rec2.getCreated(),
-								rec2.getAdded(),
-								rec2.getRemoved(),
-								renamed.getAbsolutePath(),
-								rec2.getFormat(),
-								rec2.getSize(),
-								rec2.getSampleRate(),
-								rec2.getChannelCount(),
-								rec2.getBitrate(),
-								rec2.isBookmarked(),
-								rec2.isWaveformProcessed(),
-								rec2.getAmps());
-						if (localRepository.updateRecord(renamedRecord)) {
-							AndroidUtils.runOnUIThread(() -> {
-								if (view != null) {
-									view.hideProgress();
-									loadRecords();
+			recordFileLocks.lockWrite((int) id);
+			try {
+				Record rec2 = localRepository.getRecord((int)id);
+				if (rec2 != null) {
+					String nameWithExt = name + AppConstants.EXTENSION_SEPARATOR + extension;
+					File file = new File(rec2.getPath());
+					File renamed = new File(file.getParentFile().getAbsolutePath() + File.separator + nameWithExt);
+
+					if (renamed.exists()) {
+						AndroidUtils.runOnUIThread(() -> {
+							if (view != null) {
+								view.showError(R.string.error_file_exists);
+							}
+						});
+					} else {
+						if (fileRepository.renameFile(rec2.getPath(), name, extension)) {
+							Record renamedRecord = new Record(
+									rec2.getId(),
+									name,
+									rec2.getDuration(),
+									rec2.getCreated(),
+									rec2.getAdded(),
+									rec2.getRemoved(),
+									renamed.getAbsolutePath(),
+									rec2.getFormat(),
+									rec2.getSize(),
+									rec2.getSampleRate(),
+									rec2.getChannelCount(),
+									rec2.getBitrate(),
+									rec2.isBookmarked(),
+									rec2.isWaveformProcessed(),
+									rec2.getAmps());
+							if (localRepository.updateRecord(renamedRecord)) {
+								AndroidUtils.runOnUIThread(() -> {
+									if (view != null) {
+										view.hideProgress();
+										loadRecords();
+									}
+								});
+							} else {
+								AndroidUtils.runOnUIThread(() -> {
+									if (view != null) {
+										view.showError(R.string.error_failed_to_rename);
+									}
+								});
+								//Restore file name after fail update path in local database.
+								if (renamed.exists()) {
+									//Try to rename 3 times;
+									if (!renamed.renameTo(file)) {
+										if (!renamed.renameTo(file)) {
+											renamed.renameTo(file);
+										}
+									}
 								}
-							});
+							}
+
 						} else {
 							AndroidUtils.runOnUIThread(() -> {
 								if (view != null) {
 									view.showError(R.string.error_failed_to_rename);
 								}
 							});
-							//Restore file name after fail update path in local database.
-							if (renamed.exists()) {
-								//Try to rename 3 times;
-								if (!renamed.renameTo(file)) {
-									if (!renamed.renameTo(file)) {
-										renamed.renameTo(file);
-									}
-								}
-							}
 						}
-
-					} else {
-						AndroidUtils.runOnUIThread(() -> {
-							if (view != null) {
-								view.showError(R.string.error_failed_to_rename);
-							}
-						});
 					}
+				} else {
+					AndroidUtils.runOnUIThread(() -> {
+						if (view != null) {
+							view.showError(R.string.error_failed_to_rename);
+						}
+					});
 				}
-			} else {
 				AndroidUtils.runOnUIThread(() -> {
 					if (view != null) {
-						view.showError(R.string.error_failed_to_rename);
+						view.hideProgress();
 					}
 				});
+			} finally {
+				recordFileLocks.unlockWrite((int) id);
 			}
-			AndroidUtils.runOnUIThread(() -> {
-				if (view != null) {
-					view.hideProgress();
-				}
-			});
 		});
 	}
 
@@ -389,8 +410,10 @@ public class RecordsPresenter implements RecordsContract.UserActionsListener {
 			view.showPanelProgress();
 			loadingTasks.postRunnable(() -> {
 				final int order = prefs.getRecordsOrder();
-				final List<Record> recordList = localRepository.getRecords(0, order);
+				final List<Record> recordList = localRepository.getRecordsAfter(null, order);
+				lastLoadedRecord = recordList.isEmpty() ? null : recordList.get(recordList.size() - 1);
 				final Record rec = localRepository.getRecord((int) prefs.getActiveRecord());
+				final WaveformPyramid pyramid = readWaveformPyramid(rec);
 				activeRecord = rec;
 				AndroidUtils.runOnUIThread(() -> {
 					if (view != null) {
@@ -402,10 +425,10 @@ public class RecordsPresenter implements RecordsContract.UserActionsListener {
 									if (duration > 0) {
 										long playProgressMills = audioPlayer.getPauseTime();
 										view.onPlayProgress(playProgressMills, (int) (1000 * playProgressMills / duration));
-										view.showWaveForm(rec.getAmps(), rec.getDuration(), playProgressMills);
+										showWaveForm(rec, pyramid, playProgressMills);
 									}
 								} else {
-									view.showWaveForm(rec.getAmps(), rec.getDuration(), 0);
+									showWaveForm(rec, pyramid, 0);
 								}
 								view.showDuration(TimeUtils.formatTimeIntervalHourMinSec2(rec.getDuration() / 1000));
 								view.showRecordName(rec.getName());
@@ -448,7 +471,12 @@ public class RecordsPresenter implements RecordsContract.UserActionsListener {
 			view.showPanelProgress();
 			loadingTasks.postRunnable(() -> {
 				final int order = prefs.getRecordsOrder();
-				final List<Record> recordList = localRepository.getRecords(page, order);
+				final List<Record> recordList = lastLoadedRecord != null
+						? localRepository.getRecordsAfter(lastLoadedRecord, order)
+						: new ArrayList<>();
+				if (!recordList.isEmpty()) {
+					lastLoadedRecord = recordList.get(recordList.size() - 1);
+				}
 				AndroidUtils.runOnUIThread(() -> {
 					if (view != null) {
 						view.addRecords(Mapper.recordsToListItems(recordList), order);
@@ -461,6 +489,18 @@ public class RecordsPresenter implements RecordsContract.UserActionsListener {
 		}
 	}
 
+	@Override
+	public void loadRecordWaveform(final long id) {
+		loadingTasks.postRunnable(() -> {
+			final int[] amps = localRepository.getRecordWaveform((int) id);
+			AndroidUtils.runOnUIThread(() -> {
+				if (view != null) {
+					view.showRecordWaveform(id, amps);
+				}
+			});
+		});
+	}
+
 	@Override
 	public void decodeActiveRecord() {
 		if (view != null && activeRecord != null) {
@@ -567,11 +607,12 @@ public class RecordsPresenter implements RecordsContract.UserActionsListener {
 			}
 			loadingTasks.postRunnable(() -> {
 				final Record rec = localRepository.getRecord((int) id);
+				final WaveformPyramid pyramid = readWaveformPyramid(rec);
 				activeRecord = rec;
 				if (rec != null) {
 					AndroidUtils.runOnUIThread(() -> {
 						if (view != null) {
-							view.showWaveForm(rec.getAmps(), rec.getDuration(), 0);
+							showWaveForm(rec, pyramid, 0);
 							view.showDuration(TimeUtils.formatTimeIntervalHourMinSec2(rec.getDuration() / 1000));
 							view.showRecordName(rec.getName());
 							callback.onSuccess();
@@ -640,4 +681,20 @@ public class RecordsPresenter implements RecordsContract.UserActionsListener {
 	public void enablePlaybackProgressListener() {
 		listenPlaybackProgress = true;
 	}
+
+	/** Multi-resolution waveform stored for the record, or null when it wasn't decoded yet. */
+	private WaveformPyramid readWaveformPyramid(Record rec) {
+		if (rec == null) {
+			return null;
+		}
+		return WaveformPyramid.readFrom(fileRepository.getWaveformFile(rec.getPath()), new File(rec.getPath()));
+	}
+
+	private void showWaveForm(Record rec, WaveformPyramid pyramid, long playbackMills) {
+		if (pyramid != null) {
+			view.showWaveForm(pyramid, rec.getDuration(), playbackMills);
+		} else {
+			view.showWaveForm(rec.getAmps(), rec.getDuration(), playbackMills);
+		}
+	}
 }
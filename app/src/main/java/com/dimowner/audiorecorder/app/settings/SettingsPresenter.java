@@ -22,6 +22,7 @@ import com.dimowner.audiorecorder.AppConstants;
 import com.dimowner.audiorecorder.BackgroundQueue;
 import com.dimowner.audiorecorder.app.AppRecorder;
 import com.dimowner.audiorecorder.app.AppRecorderCallback;
+import com.dimowner.audiorecorder.collections.LongArrayList;
 import com.dimowner.audiorecorder.data.FileRepository;
 import com.dimowner.audiorecorder.data.Prefs;
 import com.dimowner.audiorecorder.data.database.LocalRepository;
@@ -34,7 +35,6 @@ import com.dimowner.audiorecorder.util.TimeUtils;
 import java.io.File;
 import java.text.DecimalFormat;
 import java.text.DecimalFormatSymbols;
-import java.util.List;
 import java.util.Locale;
 
 public class SettingsPresenter implements SettingsContract.UserActionsListener {
@@ -74,12 +74,8 @@ public class SettingsPresenter implements SettingsContract.UserActionsListener {
 			view.showProgress();
 		}
 		loadingTasks.postRunnable(() -> {
-			final List<Long> durations = localRepository.getRecordsDurations();
-			long totalDuration = 0;
-			for (int i = 0; i < durations.size(); i++) {
-				totalDuration += durations.get(i);
-			}
-			final long finalTotalDuration = totalDuration;
+			final LongArrayList durations = localRepository.getRecordsDurations();
+			final long finalTotalDuration = durations.sum();
 			AndroidUtils.runOnUIThread(() -> {
 				if (view != null) {
 					view.showTotalRecordsDuration(TimeUtils.formatTimeIntervalHourMinSec(finalTotalDuration / 1000));
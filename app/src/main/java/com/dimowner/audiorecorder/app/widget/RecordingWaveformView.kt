@@ -24,14 +24,15 @@ import android.util.AttributeSet
 import android.view.View
 import androidx.core.content.ContextCompat
 import com.dimowner.audiorecorder.AppConstants
-import com.dimowner.audiorecorder.IntArrayList
 import com.dimowner.audiorecorder.R
+import com.dimowner.audiorecorder.audio.LiveWaveformAccumulator
+import com.dimowner.audiorecorder.collections.IntRingBuffer
 import com.dimowner.audiorecorder.util.AndroidUtils
 import com.dimowner.audiorecorder.util.TimeUtils
-import java.util.*
 import kotlin.math.ceil
 
 private const val DEFAULT_GRID_STEP = 2000L //Milliseconds
+private const val INITIAL_RECORDING_DATA_CAPACITY = 1024
 
 class RecordingWaveformView @JvmOverloads constructor(
 		context: Context,
@@ -54,7 +55,7 @@ class RecordingWaveformView @JvmOverloads constructor(
 	private var viewWidthPx = 0
 	private var viewHeightPx = 0
 
-	private val recordingData: MutableList<Int> = LinkedList<Int>()
+	private val recordingData = IntRingBuffer(INITIAL_RECORDING_DATA_CAPACITY)
 	lateinit var drawLinesArray: FloatArray
 	private var totalRecordingSize: Int = 0
 
@@ -93,30 +94,29 @@ class RecordingWaveformView @JvmOverloads constructor(
 		textPaint.textSize = textHeight
 	}
 
-	fun addRecordAmp(amp: Int, mills: Long) {
-		recordingData.add(convertAmp(amp.toDouble()))
-		totalRecordingSize++
+	/**
+	 * Add amplitudes which came since the previous call, so the view may be updated at any rate.
+	 */
+	fun addRecordingData(data: LiveWaveformAccumulator, mills: Long) {
+		for (amp in data.getTailFrom(totalRecordingSize)) {
+			recordingData.add(convertAmp(amp.toDouble()))
+			totalRecordingSize++
+		}
 		updateValues(totalRecordingSize, mills)
-		if (recordingData.size > pxToSample(viewWidthPx / 2)) {
-			recordingData.removeAt(0)
+		while (recordingData.size() > pxToSample(viewWidthPx / 2)) {
+			recordingData.removeFirst()
 		}
 		invalidate()
 	}
 
-	fun setRecordingData(data: IntArrayList, durationMills: Long) {
+	fun setRecordingData(data: LiveWaveformAccumulator, durationMills: Long) {
 		post {
 			recordingData.clear()
 			totalRecordingSize = data.size()
 			updateValues(totalRecordingSize, durationMills)
 			val count = pxToSample(viewWidthPx / 2).toInt()
-			if (data.size() > count) {
-				for (i in data.size() - count until data.size()) {
-					recordingData.add(convertAmp(data[i].toDouble()))
-				}
-			} else {
-				for (i in 0 until data.size()) {
-					recordingData.add(convertAmp(data[i].toDouble()))
-				}
+			for (amp in data.getTail(count)) {
+				recordingData.add(convertAmp(amp.toDouble()))
 			}
 			requestLayout()
 		}
@@ -219,7 +219,7 @@ class RecordingWaveformView @JvmOverloads constructor(
 	}
 
 	private fun drawRecordingWaveform(canvas: Canvas) {
-		if (recordingData.isNotEmpty()) {
+		if (!recordingData.isEmpty) {
 			clearDrawLines()
 			val half = viewHeightPx / 2
 			val halfWidth = viewWidthPx / 2
@@ -227,15 +227,15 @@ class RecordingWaveformView @JvmOverloads constructor(
 			var step = 0
 			for (index in 0 until endPx ) {
 				var sampleIndex = pxToSample(index).toInt()
-				if (sampleIndex >= recordingData.size) {
-					sampleIndex = recordingData.size - 1
+				if (sampleIndex >= recordingData.size()) {
+					sampleIndex = recordingData.size() - 1
 				}
 				val xPos = (viewWidthPx / 2 - index).toFloat()
 				if (xPos >= 0 && xPos <= viewWidthPx && step + 3 < drawLinesArray.size) {  // Draw only visible part of waveform
 					drawLinesArray[step] = xPos
-					drawLinesArray[step + 1] = (half + recordingData[recordingData.size - 1 - sampleIndex] + 1).toFloat()
+					drawLinesArray[step + 1] = (half + recordingData[recordingData.size() - 1 - sampleIndex] + 1).toFloat()
 					drawLinesArray[step + 2] = xPos
-					drawLinesArray[step + 3] = (half - recordingData[recordingData.size - 1 - sampleIndex] - 1).toFloat()
+					drawLinesArray[step + 3] = (half - recordingData[recordingData.size() - 1 - sampleIndex] - 1).toFloat()
 					step += 4
 				}
 			}
@@ -29,8 +29,8 @@ import android.view.View;
 import android.view.animation.DecelerateInterpolator;
 
 import com.dimowner.audiorecorder.AppConstants;
-import com.dimowner.audiorecorder.IntArrayList;
 import com.dimowner.audiorecorder.R;
+import com.dimowner.audiorecorder.collections.IntArrayList;
 import com.dimowner.audiorecorder.util.AndroidUtils;
 import com.dimowner.audiorecorder.util.TimeUtils;
 
@@ -28,6 +28,7 @@ import android.view.animation.DecelerateInterpolator
 import androidx.core.content.ContextCompat
 import com.dimowner.audiorecorder.AppConstants
 import com.dimowner.audiorecorder.R
+import com.dimowner.audiorecorder.audio.WaveformPyramid
 import com.dimowner.audiorecorder.util.AndroidUtils
 import com.dimowner.audiorecorder.util.TimeUtils
 
@@ -64,6 +65,7 @@ class WaveformViewNew @JvmOverloads constructor(
 	private var viewHeightPx = 0
 
 	private var originalData: IntArray = IntArray(0)
+	private var pyramid: WaveformPyramid? = null
 	private var waveformData: IntArray = IntArray(0)
 	lateinit var drawLinesArray: FloatArray
 
@@ -190,6 +192,7 @@ class WaveformViewNew @JvmOverloads constructor(
 
 	fun setWaveform(frameGains: IntArray, durationMills: Long, playbackMills: Long) {
 		post {
+			pyramid = null
 			originalData = frameGains
 			viewWidthPx = width
 			viewHeightPx = height
@@ -199,6 +202,22 @@ class WaveformViewNew @JvmOverloads constructor(
 		}
 	}
 
+	/**
+	 * Show multi-resolution waveform. The level is chosen by the waveform width in pixels,
+	 * so the amount of work doesn't depend on the record length.
+	 */
+	fun setWaveform(pyramid: WaveformPyramid, durationMills: Long, playbackMills: Long) {
+		post {
+			this.pyramid = pyramid
+			viewWidthPx = width
+			viewHeightPx = height
+			playProgressMills = playbackMills
+			originalData = pyramid.getGains((viewWidthPx * calculateScale(durationMills)).toInt())
+			updateWaveform(originalData, durationMills, playbackMills)
+			requestLayout()
+		}
+	}
+
 	private fun updateWaveform(frameGains: IntArray, durationMills: Long, playbackMills: Long) {
 		drawLinesArray = FloatArray(viewWidthPx * 4)
 		updateValues(frameGains.size, durationMills)
@@ -275,6 +294,9 @@ class WaveformViewNew @JvmOverloads constructor(
 		super.onLayout(changed, left, top, right, bottom)
 		viewWidthPx = width
 		viewHeightPx = height
+		pyramid?.let {
+			originalData = it.getGains((viewWidthPx * calculateScale(durationMills)).toInt())
+		}
 		updateWaveform(originalData, durationMills, playProgressMills)
 	}
 
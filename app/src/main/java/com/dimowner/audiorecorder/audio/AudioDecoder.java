@@ -17,12 +17,14 @@
 package com.dimowner.audiorecorder.audio;
 
 import android.media.MediaCodec;
+import android.media.MediaCodecInfo;
+import android.media.MediaCodecList;
 import android.media.MediaExtractor;
 import android.media.MediaFormat;
+import android.os.Handler;
+import android.os.HandlerThread;
 
-import com.dimowner.audiorecorder.ARApplication;
 import com.dimowner.audiorecorder.AppConstants;
-import com.dimowner.audiorecorder.IntArrayList;
 import com.dimowner.audiorecorder.app.info.RecordInfo;
 import com.dimowner.audiorecorder.util.FileUtil;
 
@@ -30,9 +32,11 @@ import java.io.File;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
 import java.util.Arrays;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import timber.log.Timber;
 
 import static com.dimowner.audiorecorder.AppConstants.SUPPORTED_EXT;
@@ -45,22 +49,29 @@ public class AudioDecoder {
 	private static final int QUEUE_INPUT_BUFFER_EFFECTIVE = 1; // Most effective and fastest
 	private static final int QUEUE_INPUT_BUFFER_SIMPLE = 2;	// Less effective and slower
 
-	private float dpPerSec = AppConstants.SHORT_RECORD_DP_PER_SECOND;
-
 	private int sampleRate;
 	private int channelCount;
-	private int[] oneFrameAmps;
-	private int frameIndex = 0;
 
 	private long duration;
 	private static final String TRASH_EXT = "del";
 
-	private IntArrayList gains;
+	private WaveformReducer reducer;
+	private WaveformPyramid.Builder pyramidBuilder;
+	private File pyramidFile;
 
 	private AudioDecoder() {
 	}
 
 	public static void decode(@NonNull String fileName, @NonNull AudioDecodingListener decodeListener) {
+		decode(fileName, decodeListener, null);
+	}
+
+	/**
+	 * Decode record waveform.
+	 * @param pyramidFile When not null multi-resolution waveform is written into the file before finish.
+	 */
+	public static void decode(@NonNull String fileName, @NonNull AudioDecodingListener decodeListener,
+			@Nullable File pyramidFile) {
 		try {
 			File file = new File(fileName);
 			if (!file.exists()) {
@@ -74,20 +85,31 @@ public class AudioDecoder {
 			if (!Arrays.asList(SUPPORTED_EXT).contains(components[components.length - 1])) {
 				throw new IOException();
 			}
+			MediaHeaderReader.Header header = MediaHeaderReader.read(file);
+			if (PcmWaveformDecoder.isSupported(header)) {
+				//PCM WAV doesn't need a codec, samples are read straight from the file.
+				PcmWaveformDecoder.decode(file, header, decodeListener, pyramidFile);
+				return;
+			}
 			AudioDecoder decoder = new AudioDecoder();
+			decoder.pyramidFile = pyramidFile;
 			decoder.decodeFile(file, decodeListener, QUEUE_INPUT_BUFFER_EFFECTIVE);
 		} catch (Exception e) {
 			decodeListener.onError(e);
 		}
 	}
 
-	private int calculateSamplesPerFrame() {
-		return (int)(sampleRate / dpPerSec);
+	/**
+	 * Count of waveform values for record of the duration.
+	 * @param duration Record duration in microseconds.
+	 */
+	public static int calculateWaveformSize(long duration) {
+		long size = duration * AppConstants.DECODE_WAVEFORM_SAMPLES_PER_SECOND / 1000000;
+		return (int) Math.max(1, Math.min(AppConstants.DECODE_WAVEFORM_MAX_SAMPLES, size));
 	}
 
 	private void decodeFile(@NonNull final File mInputFile, @NonNull final AudioDecodingListener decodeListener, final int queueType)
 			throws IOException, OutOfMemoryError, IllegalStateException {
-		gains = new IntArrayList();
 		final MediaExtractor extractor = new MediaExtractor();
 		MediaFormat format = null;
 		int i;
@@ -111,13 +133,18 @@ public class AudioDecoder {
 
 		duration = format.getLong(MediaFormat.KEY_DURATION);
 
-		//TODO: Make waveform independent from dpPerSec!!!
-		dpPerSec = ARApplication.getDpPerSecond((float) duration/1000000f);
-		oneFrameAmps = new int[calculateSamplesPerFrame() * channelCount];
+		reducer = new WaveformReducer(calculateWaveformSize(duration),
+				duration * sampleRate / 1000000, channelCount);
+		if (pyramidFile != null) {
+			pyramidBuilder = new WaveformPyramid.Builder(channelCount);
+		}
 
 		String mimeType = format.getString(MediaFormat.KEY_MIME);
 		//Start decoding
 		MediaCodec decoder = MediaCodec.createDecoderByType(mimeType);
+		//Codec callbacks need a Looper, background task threads don't have one.
+		final HandlerThread callbackThread = new HandlerThread("AudioDecoder");
+		callbackThread.start();
 
 		decodeListener.onStartProcessing(duration, channelCount, sampleRate);
 		decoder.setCallback(new MediaCodec.Callback() {
@@ -131,9 +158,11 @@ public class AudioDecoder {
 			@Override
 			public void onError(@NonNull MediaCodec codec, @NonNull MediaCodec.CodecException exception) {
 				Timber.e(exception);
+				callbackThread.quitSafely();
 				if (queueType == QUEUE_INPUT_BUFFER_EFFECTIVE) {
 					try {
 						AudioDecoder decoder = new AudioDecoder();
+						decoder.pyramidFile = pyramidFile;
 						decoder.decodeFile(mInputFile, decodeListener, QUEUE_INPUT_BUFFER_SIMPLE);
 					} catch (IllegalStateException | IOException | OutOfMemoryError e) {
 						decodeListener.onError(exception);
@@ -208,29 +237,13 @@ public class AudioDecoder {
 				try {
 					ByteBuffer outputBuffer = codec.getOutputBuffer(index);
 					if (outputBuffer != null) {
-						outputBuffer.rewind();
-						outputBuffer.order(ByteOrder.LITTLE_ENDIAN);
-						while (outputBuffer.remaining() > 0) {
-							oneFrameAmps[frameIndex] = outputBuffer.getShort();
-							frameIndex++;
-							if (frameIndex >= oneFrameAmps.length - 1) {
-								int j;
-								int gain, value;
-								gain = -1;
-								for (j = 0; j < oneFrameAmps.length; j += channelCount) {
-									value = 0;
-									for (int k = 0; k < channelCount; k++) {
-										value += oneFrameAmps[j + k];
-									}
-									value /= channelCount;
-									if (gain < value) {
-										gain = value;
-									}
-								}
-								gains.add((int) Math.sqrt(gain));
-								frameIndex = 0;
-							}
+						outputBuffer.limit(info.offset + info.size);
+						outputBuffer.position(info.offset);
+						ShortBuffer samples = outputBuffer.order(ByteOrder.LITTLE_ENDIAN).asShortBuffer();
+						if (pyramidBuilder != null) {
+							pyramidBuilder.process(samples.duplicate());
 						}
+						reducer.process(samples);
 					}
 
 					mOutputEOS |= ((info.flags & MediaCodec.BUFFER_FLAG_END_OF_STREAM) != 0);
@@ -241,21 +254,69 @@ public class AudioDecoder {
 							decodeListener.onProcessingCancel();
 						} else {
 							decodeListener.onProcessingProgress(100);
-							decodeListener.onFinishProcessing(gains.getData(), duration);
+							writePyramid(mInputFile);
+							decodeListener.onFinishProcessing(reducer.getGains(), duration);
 						}
 						codec.stop();
 						codec.release();
 						extractor.release();
+						callbackThread.quitSafely();
 					}
 				} catch (IllegalStateException e) {
 					Timber.e(e);
 				}
 			}
-		});
+		}, new Handler(callbackThread.getLooper()));
 		decoder.configure(format, null, null, 0);
 		decoder.start();
 	}
 
+	private void writePyramid(File inputFile) {
+		if (pyramidBuilder != null) {
+			try {
+				pyramidBuilder.build(inputFile, duration).writeTo(pyramidFile);
+			} catch (IOException e) {
+				Timber.e(e);
+			}
+		}
+	}
+
+	/**
+	 * Max count of decoder instances for the mime type which can run at the same time.
+	 */
+	public static int getMaxDecoderInstances(@NonNull String mimeType) {
+		try {
+			MediaCodecList codecList = new MediaCodecList(MediaCodecList.REGULAR_CODECS);
+			for (MediaCodecInfo info : codecList.getCodecInfos()) {
+				if (info.isEncoder()) {
+					continue;
+				}
+				for (String type : info.getSupportedTypes()) {
+					if (type.equalsIgnoreCase(mimeType)) {
+						return Math.max(1, info.getCapabilitiesForType(type).getMaxSupportedInstances());
+					}
+				}
+			}
+		} catch (IllegalArgumentException e) {
+			Timber.e(e);
+		}
+		return 1;
+	}
+
+	/**
+	 * Record info from the file name and attributes only, without reading the file.
+	 * Duration, sample rate, channel count and bitrate are 0.
+	 */
+	public static RecordInfo readBasicRecordInfo(@NonNull final File inputFile) {
+		String name = inputFile.getName();
+		int extIndex = name.lastIndexOf(AppConstants.EXTENSION_SEPARATOR);
+		boolean isInTrash = extIndex >= 0 && TRASH_EXT.equalsIgnoreCase(name.substring(extIndex + 1));
+		return new RecordInfo(
+				FileUtil.removeFileExtension(name), readFileFormat(inputFile, null), 0, inputFile.length(),
+				inputFile.getAbsolutePath(), inputFile.lastModified(), 0, 0, 0, isInTrash
+		);
+	}
+
 	public static RecordInfo readRecordInfo(@NonNull final File inputFile)
 			throws OutOfMemoryError, IllegalStateException {
 
@@ -274,6 +335,22 @@ public class AudioDecoder {
 				throw new IOException();
 			}
 
+			MediaHeaderReader.Header header = MediaHeaderReader.read(inputFile);
+			if (header != null) {
+				return new RecordInfo(
+						FileUtil.removeFileExtension(inputFile.getName()),
+						readFileFormat(inputFile, header.mime),
+						header.duration,
+						inputFile.length(),
+						inputFile.getAbsolutePath(),
+						inputFile.lastModified(),
+						header.sampleRate,
+						header.channelCount,
+						header.bitrate,
+						isInTrash
+				);
+			}
+
 			final MediaExtractor extractor = new MediaExtractor();
 			MediaFormat format = null;
 			int i;
@@ -366,6 +443,11 @@ public class AudioDecoder {
 				throw new IOException();
 			}
 
+			MediaHeaderReader.Header header = MediaHeaderReader.read(inputFile);
+			if (header != null) {
+				return header.mime;
+			}
+
 			final MediaExtractor extractor = new MediaExtractor();
 			MediaFormat format = null;
 			int i;
@@ -1,6 +1,7 @@
 package com.dimowner.audiorecorder.audio
 
 import com.dimowner.audiorecorder.BackgroundQueue
+import java.io.File
 import java.lang.Exception
 
 /**
@@ -11,7 +12,10 @@ class AudioWaveformVisualization(
 		private val processingTasks: BackgroundQueue
 ) {
 
-	fun decodeRecordWaveform(path: String, listener: AudioDecodingListener? = null) {
+	/**
+	 * @param pyramidFile Sidecar file for multi-resolution waveform, not written when null.
+	 */
+	fun decodeRecordWaveform(path: String, listener: AudioDecodingListener? = null, pyramidFile: File? = null) {
 		processingTasks.postRunnable {
 			AudioDecoder.decode(path, object : AudioDecodingListener {
 				override fun isCanceled(): Boolean {
@@ -37,7 +41,7 @@ class AudioWaveformVisualization(
 				override fun onError(exception: Exception) {
 					listener?.onError(exception)
 				}
-			})
+			}, pyramidFile)
 		}
 	}
 }
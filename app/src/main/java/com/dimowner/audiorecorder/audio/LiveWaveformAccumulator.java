@@ -0,0 +1,104 @@
+package com.dimowner.audiorecorder.audio;
+
+import com.dimowner.audiorecorder.collections.IntRingBuffer;
+
+/**
+ * Amplitudes of the record which is being recorded, kept in constant memory however long the record is.
+ * Recent amplitudes are kept as is in a ring buffer for the live waveform. The whole record is kept in a
+ * summary of bounded size: every summary value is the average of 2^level amplitudes, and when the summary
+ * is full neighbour values are averaged in pairs and the level grows, so the summary always covers
+ * the whole record with at least half of its capacity.
+ * Amplitudes are added on the recording thread and read on other threads, so all methods are synchronized.
+ */
+public class LiveWaveformAccumulator {
+
+	/** Summary keeps amplitudes as is for records up to about 2 minutes. */
+	private static final int SUMMARY_CAPACITY = 4096;
+	/** Enough for half of the widest screen at the recording waveform scale. */
+	private static final int TAIL_CAPACITY = 4096;
+
+	private final int[] summary = new int[SUMMARY_CAPACITY];
+	private int summarySize = 0;
+	private int level = 0;
+	private long pendingSum = 0;
+	private int pendingCount = 0;
+
+	private final IntRingBuffer tail = new IntRingBuffer(TAIL_CAPACITY);
+
+	private int size = 0;
+
+	public synchronized void add(int amp) {
+		size++;
+		if (tail.size() == TAIL_CAPACITY) {
+			tail.removeFirst();
+		}
+		tail.add(amp);
+		pendingSum += amp;
+		pendingCount++;
+		if (pendingCount == 1 << level) {
+			if (summarySize == SUMMARY_CAPACITY) {
+				fold();
+				//Pending amplitudes are a half of a value of the new level now.
+				return;
+			}
+			summary[summarySize++] = (int) (pendingSum >> level);
+			pendingSum = 0;
+			pendingCount = 0;
+		}
+	}
+
+	/**
+	 * Average neighbour summary values in pairs, so every value covers twice more amplitudes.
+	 */
+	private void fold() {
+		int half = summarySize / 2;
+		for (int i = 0; i < half; i++) {
+			summary[i] = (summary[2 * i] + summary[2 * i + 1]) / 2;
+		}
+		summarySize = half;
+		level++;
+	}
+
+	/** Count of all added amplitudes. */
+	public synchronized int size() {
+		return size;
+	}
+
+	/**
+	 * The last added amplitudes, from the oldest to the newest.
+	 * @param count Max count of amplitudes to return.
+	 */
+	public synchronized int[] getTail(int count) {
+		return tail.toArray(count);
+	}
+
+	/**
+	 * Amplitudes added after the first {@code from} ones which are still in the tail, from the oldest to the newest.
+	 */
+	public synchronized int[] getTailFrom(int from) {
+		return tail.toArray(size - from);
+	}
+
+	/**
+	 * Amplitudes of the whole record: all of them while the record is short,
+	 * otherwise averages of equal groups of neighbour amplitudes. Size is at most {@link #SUMMARY_CAPACITY} + 1.
+	 */
+	public synchronized int[] getSummary() {
+		int n = summarySize + (pendingCount > 0 ? 1 : 0);
+		int[] result = new int[n];
+		System.arraycopy(summary, 0, result, 0, summarySize);
+		if (pendingCount > 0) {
+			result[summarySize] = (int) (pendingSum / pendingCount);
+		}
+		return result;
+	}
+
+	public synchronized void clear() {
+		summarySize = 0;
+		level = 0;
+		pendingSum = 0;
+		pendingCount = 0;
+		tail.clear();
+		size = 0;
+	}
+}
@@ -0,0 +1,461 @@
+package com.dimowner.audiorecorder.audio;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import timber.log.Timber;
+
+/**
+ * Reads audio track metadata straight from RIFF/WAVE and MP4/3GP (ISO base media) headers,
+ * which is much cheaper than creating a MediaExtractor. Only header bytes are read: WAVE chunks
+ * and MP4 boxes which are not needed are skipped by seeking over them.
+ * Values are the same as MediaExtractor reports for the first audio track: duration is in microseconds,
+ * bitrate in bits per second. Returns null for anything else, the caller should use MediaExtractor then.
+ */
+final class MediaHeaderReader {
+
+	static final String MIME_RAW = "audio/raw";
+	static final String MIME_AAC = "audio/mp4a-latm";
+	static final String MIME_AMR_NB = "audio/3gpp";
+	static final String MIME_AMR_WB = "audio/amr-wb";
+
+	private static final int RIFF = fourCC("RIFF");
+	private static final int WAVE = fourCC("WAVE");
+	private static final int FMT = fourCC("fmt ");
+	private static final int DATA = fourCC("data");
+
+	private static final int WAVE_FORMAT_PCM = 1;
+	private static final int WAVE_FORMAT_IEEE_FLOAT = 3;
+	private static final int WAVE_FORMAT_EXTENSIBLE = 0xFFFE;
+
+	private static final int FTYP = fourCC("ftyp");
+	private static final int MOOV = fourCC("moov");
+	private static final int MVHD = fourCC("mvhd");
+	private static final int TRAK = fourCC("trak");
+	private static final int MDIA = fourCC("mdia");
+	private static final int MDHD = fourCC("mdhd");
+	private static final int HDLR = fourCC("hdlr");
+	private static final int MINF = fourCC("minf");
+	private static final int STBL = fourCC("stbl");
+	private static final int STSD = fourCC("stsd");
+	private static final int SOUN = fourCC("soun");
+	private static final int MP4A = fourCC("mp4a");
+	private static final int SAMR = fourCC("samr");
+	private static final int SAWB = fourCC("sawb");
+	private static final int ESDS = fourCC("esds");
+
+	private static final int WAVE_HEADER_SIZE = 12;
+	private static final int CHUNK_HEADER_SIZE = 8;
+	/** Boxes which are read into memory are tiny, anything larger is a broken file. */
+	private static final int MAX_BOX_READ_SIZE = 64 * 1024;
+	private static final int MAX_DEPTH = 8;
+
+	private static final int[] AAC_SAMPLE_RATES = {
+			96000, 88200, 64000, 48000, 44100, 32000, 24000, 22050, 16000, 12000, 11025, 8000, 7350
+	};
+
+	static final class Header {
+		final String mime;
+		final int sampleRate;
+		final int channelCount;
+		final int bitrate;
+		final long duration;
+		/** Layout of WAVE sample data, 0 for other containers. */
+		final int bitsPerSample;
+		final int blockAlign;
+		final long dataOffset;
+		final long dataSize;
+
+		Header(String mime, int sampleRate, int channelCount, int bitrate, long duration) {
+			this(mime, sampleRate, channelCount, bitrate, duration, 0, 0, 0, 0);
+		}
+
+		Header(String mime, int sampleRate, int channelCount, int bitrate, long duration,
+				int bitsPerSample, int blockAlign, long dataOffset, long dataSize) {
+			this.mime = mime;
+			this.sampleRate = sampleRate;
+			this.channelCount = channelCount;
+			this.bitrate = bitrate;
+			this.duration = duration;
+			this.bitsPerSample = bitsPerSample;
+			this.blockAlign = blockAlign;
+			this.dataOffset = dataOffset;
+			this.dataSize = dataSize;
+		}
+
+		/** Interleaved 16-bit PCM, which can be used without decoding. Float samples are always 32-bit. */
+		boolean isPcm16() {
+			return MIME_RAW.equals(mime) && bitsPerSample == 16 && blockAlign == channelCount * 2;
+		}
+	}
+
+	/** Audio track of an MP4 file while it is parsed. */
+	private static final class Track {
+		boolean isAudio;
+		long timescale;
+		long duration;
+		String mime;
+		int sampleRate;
+		int channelCount;
+		int bitrate;
+		/** Set when the values MediaExtractor reports can't be taken from the header. */
+		boolean unsupported;
+	}
+
+	private MediaHeaderReader() {
+	}
+
+	/**
+	 * Read header of the file.
+	 * @return Audio track metadata or null when the container is not known or the header is broken.
+	 */
+	@Nullable
+	static Header read(@NonNull File file) {
+		try (RandomAccessFile input = new RandomAccessFile(file, "r")) {
+			if (input.length() < WAVE_HEADER_SIZE) {
+				return null;
+			}
+			byte[] start = new byte[WAVE_HEADER_SIZE];
+			input.readFully(start);
+			ByteBuffer buffer = ByteBuffer.wrap(start);
+			if (buffer.getInt(0) == RIFF && buffer.getInt(8) == WAVE) {
+				return readWave(input);
+			} else if (buffer.getInt(4) == FTYP) {
+				return readMp4(input);
+			}
+		} catch (IOException | RuntimeException e) {
+			Timber.w(e, "Failed to read header of %s", file.getName());
+		}
+		return null;
+	}
+
+	private static Header readWave(RandomAccessFile input) throws IOException {
+		long length = input.length();
+		long position = WAVE_HEADER_SIZE;
+		ByteBuffer fmt = null;
+		byte[] chunkHeader = new byte[CHUNK_HEADER_SIZE];
+		while (position + CHUNK_HEADER_SIZE <= length) {
+			input.seek(position);
+			input.readFully(chunkHeader);
+			ByteBuffer header = ByteBuffer.wrap(chunkHeader);
+			int id = header.getInt(0);
+			long size = header.order(ByteOrder.LITTLE_ENDIAN).getInt(4) & 0xFFFFFFFFL;
+			long dataStart = position + CHUNK_HEADER_SIZE;
+			if (id == FMT) {
+				if (size < 16 || size > MAX_BOX_READ_SIZE) {
+					return null;
+				}
+				byte[] data = new byte[(int) size];
+				input.readFully(data);
+				fmt = ByteBuffer.wrap(data).order(ByteOrder.LITTLE_ENDIAN);
+			} else if (id == DATA) {
+				if (fmt == null) {
+					return null;
+				}
+				//Size is not patched yet while the file is recorded, data goes till the end then.
+				if (size == 0 || size > length - dataStart) {
+					size = length - dataStart;
+				}
+				return waveHeader(fmt, dataStart, size);
+			}
+			//Chunks are padded to even size.
+			position = dataStart + size + (size & 1);
+		}
+		return null;
+	}
+
+	private static Header waveHeader(ByteBuffer fmt, long dataOffset, long dataSize) {
+		int format = fmt.getShort(0) & 0xFFFF;
+		if (format == WAVE_FORMAT_EXTENSIBLE && fmt.capacity() >= 26) {
+			//The first two bytes of the sub-format GUID are the actual format.
+			format = fmt.getShort(24) & 0xFFFF;
+		}
+		if (format != WAVE_FORMAT_PCM && format != WAVE_FORMAT_IEEE_FLOAT) {
+			return null;
+		}
+		int channelCount = fmt.getShort(2) & 0xFFFF;
+		int sampleRate = fmt.getInt(4);
+		int blockAlign = fmt.getShort(12) & 0xFFFF;
+		int bitsPerSample = fmt.getShort(14) & 0xFFFF;
+		if (channelCount == 0 || sampleRate <= 0 || blockAlign == 0) {
+			return null;
+		}
+		long frames = dataSize / blockAlign;
+		long duration = frames * 1000000L / sampleRate;
+		int bitrate = sampleRate * channelCount * bitsPerSample;
+		return new Header(MIME_RAW, sampleRate, channelCount, bitrate, duration,
+				bitsPerSample, blockAlign, dataOffset, dataSize);
+	}
+
+	private static Header readMp4(RandomAccessFile input) throws IOException {
+		long[] moov = findBox(input, 0, input.length(), MOOV);
+		if (moov == null) {
+			return null;
+		}
+		long movieTimescale = 0;
+		long movieDuration = 0;
+		long position = moov[0];
+		while (position < moov[1]) {
+			long[] box = readBoxHeader(input, position, moov[1]);
+			if (box == null) {
+				break;
+			}
+			if (box[2] == MVHD) {
+				ByteBuffer mvhd = readBox(input, box);
+				long[] time = readTime(mvhd);
+				movieTimescale = time[0];
+				movieDuration = time[1];
+			} else if (box[2] == TRAK) {
+				Track track = new Track();
+				readContainer(input, box[0], box[1], track, 0);
+				if (track.isAudio) {
+					if (track.unsupported || track.mime == null) {
+						return null;
+					}
+					long duration = toMicroseconds(track.duration, track.timescale);
+					if (duration <= 0) {
+						duration = toMicroseconds(movieDuration, movieTimescale);
+					}
+					if (duration <= 0) {
+						//Fragmented file, the duration is in fragments.
+						return null;
+					}
+					return new Header(track.mime, track.sampleRate, track.channelCount, track.bitrate, duration);
+				}
+			}
+			position = box[1];
+		}
+		return null;
+	}
+
+	/**
+	 * Walk boxes of a track and collect audio metadata from mdhd, hdlr and the first stsd entry.
+	 */
+	private static void readContainer(RandomAccessFile input, long start, long end, Track track, int depth)
+			throws IOException {
+		if (depth > MAX_DEPTH) {
+			return;
+		}
+		long position = start;
+		while (position < end) {
+			long[] box = readBoxHeader(input, position, end);
+			if (box == null) {
+				return;
+			}
+			int type = (int) box[2];
+			if (type == MDIA || type == MINF || type == STBL) {
+				readContainer(input, box[0], box[1], track, depth + 1);
+			} else if (type == MDHD) {
+				long[] time = readTime(readBox(input, box));
+				track.timescale = time[0];
+				track.duration = time[1];
+			} else if (type == HDLR) {
+				ByteBuffer hdlr = readBox(input, box);
+				track.isAudio = hdlr.capacity() >= 12 && hdlr.getInt(8) == SOUN;
+			} else if (type == STSD && track.isAudio) {
+				readSampleDescription(readBox(input, box), track);
+			}
+			position = box[1];
+		}
+	}
+
+	private static void readSampleDescription(ByteBuffer stsd, Track track) {
+		//Full box header and entry count, then the first sample entry.
+		int entry = 8;
+		if (stsd.capacity() < entry + 36) {
+			return;
+		}
+		long entrySize = stsd.getInt(entry) & 0xFFFFFFFFL;
+		int format = stsd.getInt(entry + 4);
+		if (format == MP4A) {
+			track.mime = MIME_AAC;
+		} else if (format == SAMR) {
+			track.mime = MIME_AMR_NB;
+		} else if (format == SAWB) {
+			track.mime = MIME_AMR_WB;
+		} else {
+			return;
+		}
+		//Audio sample entry: box header, 6 reserved, data reference index, 8 reserved,
+		//channel count, sample size, 4 reserved and 16.16 fixed point sample rate.
+		track.channelCount = stsd.getShort(entry + 24) & 0xFFFF;
+		track.sampleRate = (int) ((stsd.getInt(entry + 32) & 0xFFFFFFFFL) >>> 16);
+		if (format == SAMR || format == SAWB) {
+			//AMR frames are 20ms, the bitrate depends on the mode of every frame.
+			return;
+		}
+		int entryEnd = (int) Math.min(stsd.capacity(), entry + entrySize);
+		//QuickTime sound description version 1 has 4 more fields before child boxes.
+		int soundVersion = stsd.getShort(entry + 16) & 0xFFFF;
+		if (soundVersion > 1) {
+			track.unsupported = true;
+			return;
+		}
+		int position = entry + 36 + (soundVersion == 1 ? 16 : 0);
+		while (position + CHUNK_HEADER_SIZE <= entryEnd) {
+			int size = stsd.getInt(position);
+			if (size < CHUNK_HEADER_SIZE || position + size > entryEnd) {
+				return;
+			}
+			if (stsd.getInt(position + 4) == ESDS) {
+				readEsds(stsd, position + 12, position + size, track);
+				return;
+			}
+			position += size;
+		}
+	}
+
+	/**
+	 * Read average bitrate and the audio specific config from ES descriptor.
+	 */
+	private static void readEsds(ByteBuffer buffer, int position, int end, Track track) {
+		while (position + 2 <= end) {
+			int tag = buffer.get(position++) & 0xFF;
+			int size = 0;
+			for (int i = 0; i < 4 && position < end; i++) {
+				int b = buffer.get(position++) & 0xFF;
+				size = (size << 7) | (b & 0x7F);
+				if ((b & 0x80) == 0) {
+					break;
+				}
+			}
+			if (tag == 0x03) {
+				//ES descriptor: ES id, flags and optional fields, then nested descriptors.
+				if (position + 3 > end) {
+					return;
+				}
+				int flags = buffer.get(position + 2) & 0xFF;
+				position += 3;
+				if ((flags & 0x80) != 0) {
+					position += 2;
+				}
+				if ((flags & 0x40) != 0 && position < end) {
+					position += 1 + (buffer.get(position) & 0xFF);
+				}
+				if ((flags & 0x20) != 0) {
+					position += 2;
+				}
+			} else if (tag == 0x04) {
+				//Decoder config: object type, stream type, buffer size, max and average bitrate.
+				if (position + 13 > end) {
+					return;
+				}
+				int avgBitrate = buffer.getInt(position + 9);
+				if (avgBitrate > 0) {
+					track.bitrate = avgBitrate;
+				}
+				position += 13;
+			} else if (tag == 0x05) {
+				readAudioSpecificConfig(buffer, position, Math.min(end, position + size), track);
+				return;
+			} else {
+				position += size;
+			}
+		}
+	}
+
+	private static void readAudioSpecificConfig(ByteBuffer buffer, int position, int end, Track track) {
+		if (position + 2 > end) {
+			return;
+		}
+		int bits = ((buffer.get(position) & 0xFF) << 8) | (buffer.get(position + 1) & 0xFF);
+		int objectType = bits >>> 11;
+		int frequencyIndex = (bits >>> 7) & 0x0F;
+		int channelConfig = (bits >>> 3) & 0x0F;
+		if (objectType == 5 || objectType == 29 || objectType == 31 || frequencyIndex >= AAC_SAMPLE_RATES.length) {
+			//HE-AAC, escaped object type or explicit frequency, leave it to MediaExtractor.
+			track.unsupported = true;
+			return;
+		}
+		track.sampleRate = AAC_SAMPLE_RATES[frequencyIndex];
+		if (channelConfig > 0 && channelConfig < 7) {
+			track.channelCount = channelConfig;
+		} else if (channelConfig == 7) {
+			track.channelCount = 8;
+		}
+	}
+
+	/**
+	 * Find a box of the type among boxes of the range.
+	 * @return Content start, box end and type, or null when there is no such box.
+	 */
+	private static long[] findBox(RandomAccessFile input, long start, long end, int type) throws IOException {
+		long position = start;
+		while (position < end) {
+			long[] box = readBoxHeader(input, position, end);
+			if (box == null) {
+				return null;
+			}
+			if (box[2] == type) {
+				return box;
+			}
+			position = box[1];
+		}
+		return null;
+	}
+
+	/**
+	 * @return Content start, box end and type, or null when the header is broken.
+	 */
+	private static long[] readBoxHeader(RandomAccessFile input, long position, long end) throws IOException {
+		if (position + CHUNK_HEADER_SIZE > end) {
+			return null;
+		}
+		input.seek(position);
+		long size = input.readInt() & 0xFFFFFFFFL;
+		int type = input.readInt();
+		long contentStart = position + CHUNK_HEADER_SIZE;
+		if (size == 1) {
+			size = input.readLong();
+			contentStart += 8;
+		} else if (size == 0) {
+			size = end - position;
+		}
+		if (size < contentStart - position || position + size > end) {
+			return null;
+		}
+		return new long[] {contentStart, position + size, type};
+	}
+
+	private static ByteBuffer readBox(RandomAccessFile input, long[] box) throws IOException {
+		long size = box[1] - box[0];
+		if (size > MAX_BOX_READ_SIZE) {
+			throw new IOException("Box is too large: " + size);
+		}
+		byte[] data = new byte[(int) size];
+		input.seek(box[0]);
+		input.readFully(data);
+		return ByteBuffer.wrap(data);
+	}
+
+	/**
+	 * Read timescale and duration of mvhd or mdhd box.
+	 */
+	private static long[] readTime(ByteBuffer box) {
+		int version = box.get(0) & 0xFF;
+		if (version == 1) {
+			//Full box header, 64 bit creation and modification time.
+			return new long[] {box.getInt(20) & 0xFFFFFFFFL, box.getLong(24)};
+		} else {
+			long duration = box.getInt(16) & 0xFFFFFFFFL;
+			//All ones means unknown duration.
+			return new long[] {box.getInt(12) & 0xFFFFFFFFL, duration == 0xFFFFFFFFL ? 0 : duration};
+		}
+	}
+
+	private static long toMicroseconds(long duration, long timescale) {
+		if (timescale <= 0 || duration <= 0) {
+			return 0;
+		}
+		return duration / timescale * 1000000L + duration % timescale * 1000000L / timescale;
+	}
+
+	private static int fourCC(String value) {
+		return (value.charAt(0) << 24) | (value.charAt(1) << 16) | (value.charAt(2) << 8) | value.charAt(3);
+	}
+}
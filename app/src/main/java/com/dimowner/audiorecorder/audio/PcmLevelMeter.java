@@ -0,0 +1,35 @@
+package com.dimowner.audiorecorder.audio;
+
+import java.nio.ShortBuffer;
+
+/**
+ * Computes mean absolute level of 16-bit PCM blocks, the level the recording waveform shows.
+ * Instance is reusable and allocates nothing per measured block, so it is safe to call
+ * from the audio capture thread for every buffer.
+ */
+public class PcmLevelMeter {
+
+	private int meanAbs = 0;
+
+	/**
+	 * Measure first {@code count} samples of the buffer using absolute reads,
+	 * buffer position and limit are not modified.
+	 */
+	public void measure(ShortBuffer samples, int count) {
+		if (count <= 0) {
+			meanAbs = 0;
+			return;
+		}
+		long sumAbs = 0;
+		for (int i = 0; i < count; i++) {
+			int s = samples.get(i);
+			sumAbs += s < 0 ? -s : s;
+		}
+		meanAbs = (int) (sumAbs / count);
+	}
+
+	/** Mean absolute sample value of the last measured block. */
+	public int getMeanAbs() {
+		return meanAbs;
+	}
+}
@@ -0,0 +1,160 @@
+package com.dimowner.audiorecorder.audio;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLong;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import timber.log.Timber;
+
+/**
+ * Waveform of 16-bit PCM WAV files without MediaCodec. Sample data is split into ranges which are
+ * memory mapped and reduced in parallel on the common fork-join pool, then range results are merged in order.
+ * Ranges are aligned to pyramid buckets, so the merged waveform is the same as a sequential pass gives.
+ */
+final class PcmWaveformDecoder {
+
+	/** Bytes of sample data reduced by one task. */
+	private static final int RANGE_BYTES = 4 * 1024 * 1024;
+
+	private final File file;
+	private final MediaHeaderReader.Header header;
+	private final AudioDecodingListener listener;
+	private final int bucketCount;
+	private final long totalFrames;
+	private final long rangeFrames;
+	private final WaveformReducer[] reducers;
+	private final WaveformPyramid.Builder[] builders;
+	private final AtomicLong processedFrames = new AtomicLong();
+	private int percent = 0;
+
+	private PcmWaveformDecoder(File file, MediaHeaderReader.Header header, AudioDecodingListener listener,
+			boolean buildPyramid) {
+		this.file = file;
+		this.header = header;
+		this.listener = listener;
+		bucketCount = AudioDecoder.calculateWaveformSize(header.duration);
+		totalFrames = header.dataSize / header.blockAlign;
+		int pyramidBucket = WaveformPyramid.LEVEL_SAMPLES_PER_BUCKET[0];
+		rangeFrames = Math.max(1, RANGE_BYTES / header.blockAlign / pyramidBucket) * pyramidBucket;
+		int rangeCount = (int) Math.max(1, (totalFrames + rangeFrames - 1) / rangeFrames);
+		reducers = new WaveformReducer[rangeCount];
+		builders = buildPyramid ? new WaveformPyramid.Builder[rangeCount] : null;
+	}
+
+	static boolean isSupported(@Nullable MediaHeaderReader.Header header) {
+		return header != null && header.isPcm16();
+	}
+
+	/**
+	 * Decode waveform of the file on the calling thread, listener is called the same way as for MediaCodec decoding.
+	 * @param header Header of the file, {@link #isSupported} has to be true for it.
+	 */
+	static void decode(@NonNull File file, @NonNull MediaHeaderReader.Header header,
+			@NonNull AudioDecodingListener listener, @Nullable File pyramidFile) {
+		new PcmWaveformDecoder(file, header, listener, pyramidFile != null).decode(pyramidFile);
+	}
+
+	private void decode(@Nullable File pyramidFile) {
+		listener.onStartProcessing(header.duration, header.channelCount, header.sampleRate);
+		try (FileInputStream input = new FileInputStream(file)) {
+			ForkJoinPool.commonPool().invoke(new RangesTask(input.getChannel(), 0, reducers.length));
+		} catch (IOException | UncheckedIOException e) {
+			listener.onError(e instanceof UncheckedIOException ? ((UncheckedIOException) e).getCause() : e);
+			return;
+		}
+		if (listener.isCanceled()) {
+			listener.onProcessingCancel();
+			return;
+		}
+		WaveformReducer reducer = new WaveformReducer(bucketCount, totalFrames, header.channelCount);
+		WaveformPyramid.Builder builder = builders != null ? new WaveformPyramid.Builder(header.channelCount) : null;
+		for (int i = 0; i < reducers.length; i++) {
+			if (reducers[i] != null) {
+				reducer.merge(reducers[i]);
+			}
+			if (builder != null && builders[i] != null) {
+				builder.append(builders[i]);
+			}
+		}
+		listener.onProcessingProgress(100);
+		if (builder != null) {
+			try {
+				builder.build(file, header.duration).writeTo(pyramidFile);
+			} catch (IOException e) {
+				Timber.e(e);
+			}
+		}
+		listener.onFinishProcessing(reducer.getGains(), header.duration);
+	}
+
+	private void reduceRange(FileChannel channel, int index) throws IOException {
+		if (listener.isCanceled()) {
+			return;
+		}
+		long startFrame = index * rangeFrames;
+		long endFrame = Math.min(totalFrames, startFrame + rangeFrames);
+		if (endFrame <= startFrame) {
+			return;
+		}
+		MappedByteBuffer data = channel.map(FileChannel.MapMode.READ_ONLY,
+				header.dataOffset + startFrame * header.blockAlign, (endFrame - startFrame) * header.blockAlign);
+		data.order(ByteOrder.LITTLE_ENDIAN);
+		WaveformReducer reducer = new WaveformReducer(bucketCount, totalFrames, header.channelCount,
+				startFrame, endFrame);
+		reducer.process(data.asShortBuffer());
+		reducers[index] = reducer;
+		if (builders != null) {
+			WaveformPyramid.Builder builder = new WaveformPyramid.Builder(header.channelCount);
+			builder.process(data.asShortBuffer());
+			builders[index] = builder;
+		}
+		updateProgress(processedFrames.addAndGet(endFrame - startFrame));
+	}
+
+	private synchronized void updateProgress(long frames) {
+		int value = (int) (100 * frames / Math.max(1, totalFrames));
+		if (value > percent) {
+			percent = value;
+			listener.onProcessingProgress(percent);
+		}
+	}
+
+	/**
+	 * Reduces ranges from start to end index by splitting them in halves until one range is left.
+	 */
+	private class RangesTask extends RecursiveAction {
+
+		private final FileChannel channel;
+		private final int start;
+		private final int end;
+
+		RangesTask(FileChannel channel, int start, int end) {
+			this.channel = channel;
+			this.start = start;
+			this.end = end;
+		}
+
+		@Override
+		protected void compute() {
+			if (end - start == 1) {
+				try {
+					reduceRange(channel, start);
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			} else {
+				int middle = (start + end) >>> 1;
+				invokeAll(new RangesTask(channel, start, middle), new RangesTask(channel, middle, end));
+			}
+		}
+	}
+}
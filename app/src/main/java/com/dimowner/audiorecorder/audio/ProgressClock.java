@@ -0,0 +1,159 @@
+package com.dimowner.audiorecorder.audio;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.view.Choreographer;
+
+/**
+ * Progress of recording or playback shared between its producer and readers.
+ * Producer publishes immutable snapshots from any thread without locks. Readers are ticked on the main thread:
+ * on every display frame while any screen requested frames, otherwise at a slow cadence which is enough for services,
+ * so nothing wakes the main thread often while the screen is off.
+ */
+public class ProgressClock {
+
+	public static final long SLOW_TICK_INTERVAL_MILLS = 1000;
+
+	private final Handler handler = new Handler(Looper.getMainLooper());
+	private final Runnable slowTick = this::onSlowTick;
+	private final Choreographer.FrameCallback frameTick = frameTimeNanos -> onFrameTick();
+
+	private volatile Snapshot snapshot = Snapshot.EMPTY;
+	private OnTickListener listener;
+	private boolean running = false;
+	private int frameRequests = 0;
+	private boolean frameTickScheduled = false;
+	private boolean slowTickScheduled = false;
+
+	/**
+	 * Publish new progress, may be called on any thread.
+	 * @param mills Position of the recording or playback.
+	 * @param peak Amplitude of the latest audio or 0 if it is unknown.
+	 */
+	public void publish(long mills, int peak) {
+		snapshot = new Snapshot(mills, peak);
+	}
+
+	/**
+	 * The latest published progress, may be called on any thread.
+	 */
+	public Snapshot read() {
+		return snapshot;
+	}
+
+	public void reset() {
+		snapshot = Snapshot.EMPTY;
+	}
+
+	public void setOnTickListener(OnTickListener listener) {
+		this.listener = listener;
+	}
+
+	/**
+	 * Start ticking the listener, it is called on the main thread.
+	 */
+	public void start() {
+		if (!isMainThread()) {
+			handler.post(this::start);
+			return;
+		}
+		running = true;
+		schedule();
+	}
+
+	public void stop() {
+		if (!isMainThread()) {
+			handler.post(this::stop);
+			return;
+		}
+		running = false;
+		schedule();
+	}
+
+	/**
+	 * Tick on every display frame until {@link #releaseFrames()} is called, e.g. while a screen which shows progress is visible.
+	 */
+	public void requestFrames() {
+		if (!isMainThread()) {
+			handler.post(this::requestFrames);
+			return;
+		}
+		frameRequests++;
+		schedule();
+	}
+
+	public void releaseFrames() {
+		if (!isMainThread()) {
+			handler.post(this::releaseFrames);
+			return;
+		}
+		if (frameRequests > 0) {
+			frameRequests--;
+		}
+		schedule();
+	}
+
+	private void schedule() {
+		boolean frames = running && frameRequests > 0;
+		boolean slow = running && frameRequests == 0;
+		if (frames && !frameTickScheduled) {
+			frameTickScheduled = true;
+			Choreographer.getInstance().postFrameCallback(frameTick);
+		} else if (!frames && frameTickScheduled) {
+			frameTickScheduled = false;
+			Choreographer.getInstance().removeFrameCallback(frameTick);
+		}
+		if (slow && !slowTickScheduled) {
+			slowTickScheduled = true;
+			handler.postDelayed(slowTick, SLOW_TICK_INTERVAL_MILLS);
+		} else if (!slow && slowTickScheduled) {
+			slowTickScheduled = false;
+			handler.removeCallbacks(slowTick);
+		}
+	}
+
+	private void onFrameTick() {
+		frameTickScheduled = false;
+		tick();
+	}
+
+	private void onSlowTick() {
+		slowTickScheduled = false;
+		tick();
+	}
+
+	private void tick() {
+		if (running && listener != null) {
+			listener.onTick();
+		}
+		schedule();
+	}
+
+	private static boolean isMainThread() {
+		return Looper.myLooper() == Looper.getMainLooper();
+	}
+
+	public interface OnTickListener {
+		void onTick();
+	}
+
+	public static final class Snapshot {
+
+		static final Snapshot EMPTY = new Snapshot(0, 0);
+
+		public final long mills;
+		public final int peak;
+
+		Snapshot(long mills, int peak) {
+			this.mills = mills;
+			this.peak = peak;
+		}
+
+		/**
+		 * True if nothing was published since start or reset.
+		 */
+		public boolean isEmpty() {
+			return this == EMPTY;
+		}
+	}
+}
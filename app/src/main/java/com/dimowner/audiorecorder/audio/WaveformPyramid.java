@@ -0,0 +1,273 @@
+package com.dimowner.audiorecorder.audio;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ShortBuffer;
+import java.util.Arrays;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import timber.log.Timber;
+
+/**
+ * Multi-resolution record waveform. Every level keeps one unsigned byte per bucket of
+ * {@link #LEVEL_SAMPLES_PER_BUCKET} frames, the value is square root of the bucket peak,
+ * the same scale as record waveform gains. Stored in a binary sidecar file, so a view can
+ * take the level closest to its pixel width instead of resampling the whole waveform.
+ */
+public class WaveformPyramid {
+
+	/** Frames per bucket on each level, from the finest to the coarsest. */
+	public static final int[] LEVEL_SAMPLES_PER_BUCKET = {64, 256, 1024, 4096};
+
+	private static final int MAGIC = 0x57465059; // "WFPY"
+	private static final int VERSION = 2;
+	private static final int MAX_GAIN = 255;
+
+	private final long sourceLength;
+	private final long sourceModified;
+	private final long duration;
+	private final byte[][] levels;
+
+	private WaveformPyramid(long sourceLength, long sourceModified, long duration, byte[][] levels) {
+		this.sourceLength = sourceLength;
+		this.sourceModified = sourceModified;
+		this.duration = duration;
+		this.levels = levels;
+	}
+
+	/** Size of the audio file which the waveform was built from. */
+	public long getSourceLength() {
+		return sourceLength;
+	}
+
+	/** Last modification time of the audio file which the waveform was built from. */
+	public long getSourceModified() {
+		return sourceModified;
+	}
+
+	/** Record duration in microseconds. */
+	public long getDuration() {
+		return duration;
+	}
+
+	public int getLevelCount() {
+		return levels.length;
+	}
+
+	public int getLevelSize(int level) {
+		return levels[level].length;
+	}
+
+	public int getValue(int level, int index) {
+		return levels[level][index] & 0xFF;
+	}
+
+	/**
+	 * Coarsest level which still has at least one bucket per pixel, so drawing it costs O(pixels).
+	 * @param widthPx Waveform width in pixels.
+	 */
+	public int selectLevel(int widthPx) {
+		for (int i = levels.length - 1; i > 0; i--) {
+			if (levels[i].length >= widthPx) {
+				return i;
+			}
+		}
+		return 0;
+	}
+
+	/**
+	 * Waveform gains of the level which suits the width.
+	 * @param widthPx Waveform width in pixels.
+	 */
+	public int[] getGains(int widthPx) {
+		byte[] data = levels[selectLevel(widthPx)];
+		int[] gains = new int[data.length];
+		for (int i = 0; i < data.length; i++) {
+			gains[i] = data[i] & 0xFF;
+		}
+		return gains;
+	}
+
+	/**
+	 * Write pyramid into the file. Data is written into a temp file first and then renamed,
+	 * so readers never see a partially written sidecar.
+	 */
+	public void writeTo(@NonNull File file) throws IOException {
+		File dir = file.getParentFile();
+		if (dir != null && !dir.exists() && !dir.mkdirs()) {
+			throw new IOException("Failed to create dir " + dir.getAbsolutePath());
+		}
+		File tmp = new File(file.getAbsolutePath() + ".tmp");
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeLong(sourceLength);
+			out.writeLong(sourceModified);
+			out.writeLong(duration);
+			out.writeInt(levels.length);
+			for (int i = 0; i < levels.length; i++) {
+				out.writeInt(LEVEL_SAMPLES_PER_BUCKET[i]);
+				out.writeInt(levels[i].length);
+				out.write(levels[i]);
+			}
+		}
+		if (!tmp.renameTo(file)) {
+			tmp.delete();
+			throw new IOException("Failed to write " + file.getAbsolutePath());
+		}
+	}
+
+	/**
+	 * Read pyramid from the sidecar file.
+	 * @param source Record file, the sidecar is ignored if size or modification time of the record changed.
+	 * @return Pyramid or null when the file is absent, outdated or damaged.
+	 */
+	@Nullable
+	public static WaveformPyramid readFrom(@NonNull File file, @NonNull File source) {
+		if (!file.isFile()) {
+			return null;
+		}
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+			if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+				return null;
+			}
+			long length = in.readLong();
+			long modified = in.readLong();
+			if (length != source.length() || modified != source.lastModified()) {
+				return null;
+			}
+			long duration = in.readLong();
+			int count = in.readInt();
+			if (count != LEVEL_SAMPLES_PER_BUCKET.length) {
+				return null;
+			}
+			byte[][] levels = new byte[count][];
+			for (int i = 0; i < count; i++) {
+				if (in.readInt() != LEVEL_SAMPLES_PER_BUCKET[i]) {
+					return null;
+				}
+				int size = in.readInt();
+				if (size < 0 || size > file.length()) {
+					return null;
+				}
+				levels[i] = new byte[size];
+				in.readFully(levels[i]);
+			}
+			return new WaveformPyramid(length, modified, duration, levels);
+		} catch (IOException e) {
+			Timber.e(e);
+			return null;
+		}
+	}
+
+	/**
+	 * Collects the finest level from streamed interleaved 16-bit PCM,
+	 * coarser levels are derived from it on {@link #build(File, long)}.
+	 */
+	public static class Builder {
+
+		private static final int CHUNK_SIZE = 4096;
+
+		private final int channelCount;
+		private final short[] chunk = new short[CHUNK_SIZE];
+
+		private byte[] level0 = new byte[1024];
+		private int level0Size = 0;
+
+		private int channelIndex = 0;
+		private int frameSum = 0;
+		private int bucketFrames = 0;
+		private int bucketPeak = 0;
+
+		public Builder(int channelCount) {
+			this.channelCount = Math.max(1, channelCount);
+		}
+
+		/**
+		 * Consume all remaining samples of the buffer.
+		 */
+		public void process(ShortBuffer samples) {
+			while (samples.hasRemaining()) {
+				int count = Math.min(CHUNK_SIZE, samples.remaining());
+				samples.get(chunk, 0, count);
+				for (int i = 0; i < count; i++) {
+					frameSum += chunk[i];
+					channelIndex++;
+					if (channelIndex == channelCount) {
+						int value = Math.abs(frameSum / channelCount);
+						if (value > bucketPeak) {
+							bucketPeak = value;
+						}
+						channelIndex = 0;
+						frameSum = 0;
+						bucketFrames++;
+						if (bucketFrames == LEVEL_SAMPLES_PER_BUCKET[0]) {
+							appendBucket();
+						}
+					}
+				}
+			}
+		}
+
+		/**
+		 * Append values collected from the samples which follow the samples of this builder.
+		 * Samples of this builder have to end on a bucket boundary.
+		 */
+		void append(Builder next) {
+			if (bucketFrames > 0 || channelIndex > 0) {
+				throw new IllegalStateException("Builder doesn't end on a bucket boundary");
+			}
+			if (level0Size + next.level0Size > level0.length) {
+				level0 = Arrays.copyOf(level0, Math.max(level0.length * 2, level0Size + next.level0Size));
+			}
+			System.arraycopy(next.level0, 0, level0, level0Size, next.level0Size);
+			level0Size += next.level0Size;
+			channelIndex = next.channelIndex;
+			frameSum = next.frameSum;
+			bucketFrames = next.bucketFrames;
+			bucketPeak = next.bucketPeak;
+		}
+
+		private void appendBucket() {
+			if (level0Size == level0.length) {
+				level0 = Arrays.copyOf(level0, level0.length * 2);
+			}
+			level0[level0Size++] = (byte) Math.min(MAX_GAIN, (int) Math.sqrt(bucketPeak));
+			bucketFrames = 0;
+			bucketPeak = 0;
+		}
+
+		/**
+		 * @param source Decoded record file, its size and modification time are stored to detect stale sidecars.
+		 * @param duration Record duration in microseconds.
+		 */
+		public WaveformPyramid build(@NonNull File source, long duration) {
+			if (bucketFrames > 0) {
+				appendBucket();
+			}
+			int count = LEVEL_SAMPLES_PER_BUCKET.length;
+			byte[][] levels = new byte[count][];
+			levels[0] = Arrays.copyOf(level0, level0Size);
+			for (int i = 1; i < count; i++) {
+				int ratio = LEVEL_SAMPLES_PER_BUCKET[i] / LEVEL_SAMPLES_PER_BUCKET[i - 1];
+				byte[] prev = levels[i - 1];
+				byte[] level = new byte[(prev.length + ratio - 1) / ratio];
+				for (int j = 0; j < prev.length; j++) {
+					int k = j / ratio;
+					if ((prev[j] & 0xFF) > (level[k] & 0xFF)) {
+						level[k] = prev[j];
+					}
+				}
+				levels[i] = level;
+			}
+			return new WaveformPyramid(source.length(), source.lastModified(), duration, levels);
+		}
+	}
+}
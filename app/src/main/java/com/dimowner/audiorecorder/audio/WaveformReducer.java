@@ -0,0 +1,157 @@
+package com.dimowner.audiorecorder.audio;
+
+import java.nio.ShortBuffer;
+
+/**
+ * Streaming reducer of interleaved 16-bit PCM into a fixed count of waveform buckets.
+ * Bucket count is defined up front, so memory usage doesn't depend on the record length.
+ * For every bucket min, max, peak and RMS of channel averaged samples are collected.
+ * A reducer can also cover only a range of the stream, range reducers are combined with {@link #merge}.
+ */
+public class WaveformReducer {
+
+	private static final int CHUNK_SIZE = 4096;
+
+	private final int bucketCount;
+	private final int channelCount;
+	private final long totalFrames;
+	/** Index of the first bucket kept in arrays, not 0 for range reducers. */
+	private final int firstBucket;
+	private final int lastBucket;
+
+	private final int[] min;
+	private final int[] max;
+	private final long[] sumSquares;
+	private final int[] frameCounts;
+	private final short[] chunk = new short[CHUNK_SIZE];
+
+	private long frameIndex;
+	private int channelIndex = 0;
+	private int frameSum = 0;
+
+	/**
+	 * @param bucketCount Count of waveform values to produce.
+	 * @param totalFrames Expected count of frames (samples per channel) in the stream.
+	 * @param channelCount Count of interleaved channels.
+	 */
+	public WaveformReducer(int bucketCount, long totalFrames, int channelCount) {
+		this(bucketCount, totalFrames, channelCount, 0, -1);
+	}
+
+	/**
+	 * Reducer of frames from startFrame to endFrame (exclusive) of the stream, only buckets of the range are kept.
+	 * Values of a range reducer are read after it is merged into a reducer of the whole stream.
+	 * @param endFrame End of the range or -1 for the whole remaining stream.
+	 */
+	WaveformReducer(int bucketCount, long totalFrames, int channelCount, long startFrame, long endFrame) {
+		this.bucketCount = Math.max(1, bucketCount);
+		this.totalFrames = Math.max(1, totalFrames);
+		this.channelCount = Math.max(1, channelCount);
+		this.frameIndex = startFrame;
+		firstBucket = bucketOf(startFrame);
+		lastBucket = endFrame < 0 ? this.bucketCount - 1 : bucketOf(Math.max(startFrame, endFrame - 1));
+		int size = lastBucket - firstBucket + 1;
+		min = new int[size];
+		max = new int[size];
+		sumSquares = new long[size];
+		frameCounts = new int[size];
+	}
+
+	/**
+	 * Consume all remaining samples of the buffer.
+	 */
+	public void process(ShortBuffer samples) {
+		while (samples.hasRemaining()) {
+			int count = Math.min(CHUNK_SIZE, samples.remaining());
+			samples.get(chunk, 0, count);
+			process(chunk, count);
+		}
+	}
+
+	private void process(short[] data, int count) {
+		for (int i = 0; i < count; i++) {
+			frameSum += data[i];
+			channelIndex++;
+			if (channelIndex == channelCount) {
+				int value = frameSum / channelCount;
+				int bucket = Math.min(lastBucket, bucketOf(frameIndex)) - firstBucket;
+				if (frameCounts[bucket] == 0) {
+					min[bucket] = value;
+					max[bucket] = value;
+				} else if (value < min[bucket]) {
+					min[bucket] = value;
+				} else if (value > max[bucket]) {
+					max[bucket] = value;
+				}
+				sumSquares[bucket] += (long) value * value;
+				frameCounts[bucket]++;
+				frameIndex++;
+				channelIndex = 0;
+				frameSum = 0;
+			}
+		}
+	}
+
+	private int bucketOf(long frame) {
+		return (int) Math.min(bucketCount - 1, frame * bucketCount / totalFrames);
+	}
+
+	/**
+	 * Add values collected by a reducer of a part of the same stream.
+	 */
+	void merge(WaveformReducer other) {
+		for (int i = 0; i < other.frameCounts.length; i++) {
+			if (other.frameCounts[i] == 0) {
+				continue;
+			}
+			int bucket = other.firstBucket + i - firstBucket;
+			if (frameCounts[bucket] == 0) {
+				min[bucket] = other.min[i];
+				max[bucket] = other.max[i];
+			} else {
+				min[bucket] = Math.min(min[bucket], other.min[i]);
+				max[bucket] = Math.max(max[bucket], other.max[i]);
+			}
+			sumSquares[bucket] += other.sumSquares[i];
+			frameCounts[bucket] += other.frameCounts[i];
+		}
+		frameIndex = Math.max(frameIndex, other.frameIndex);
+	}
+
+	public int getBucketCount() {
+		return bucketCount;
+	}
+
+	public long getProcessedFrames() {
+		return frameIndex;
+	}
+
+	public int getMin(int bucket) {
+		return min[bucket];
+	}
+
+	public int getMax(int bucket) {
+		return max[bucket];
+	}
+
+	/** Max absolute value in the bucket. */
+	public int getPeak(int bucket) {
+		return Math.max(Math.abs(min[bucket]), Math.abs(max[bucket]));
+	}
+
+	public int getRms(int bucket) {
+		int count = frameCounts[bucket];
+		return count > 0 ? (int) Math.sqrt((double) sumSquares[bucket] / count) : 0;
+	}
+
+	/**
+	 * Waveform gains in the same scale which is used for record waveform: square root of bucket peak.
+	 */
+	public int[] getGains() {
+		int[] gains = new int[bucketCount];
+		for (int i = 0; i < bucketCount; i++) {
+			gains[i] = (int) Math.sqrt(getPeak(i));
+		}
+		return gains;
+	}
+}
@@ -18,8 +18,7 @@ package com.dimowner.audiorecorder.audio.player
 import android.media.AudioManager
 import android.media.MediaPlayer
 import android.media.MediaPlayer.OnPreparedListener
-import android.os.Handler
-import com.dimowner.audiorecorder.AppConstants
+import com.dimowner.audiorecorder.audio.ProgressClock
 import com.dimowner.audiorecorder.exception.AppException
 import com.dimowner.audiorecorder.exception.PlayerDataSourceException
 import com.dimowner.audiorecorder.exception.PlayerInitException
@@ -34,7 +33,11 @@ class AudioPlayerNew: PlayerContractNew.Player, OnPreparedListener {
 	private var playerState = PlayerState.STOPPED
 	private var pauseTimeMills: Long = 0
 	private var prevPosMills: Long = 0
-	private val handler = Handler()
+	private val progressClock = ProgressClock()
+
+	init {
+		progressClock.setOnTickListener { updatePlaybackTime() }
+	}
 
 	override fun addPlayerCallback(callback: PlayerContractNew.PlayerCallback) {
 		actionsListeners.add(callback)
@@ -89,7 +92,7 @@ class AudioPlayerNew: PlayerContractNew.Player, OnPreparedListener {
 		mediaPlayer.setOnCompletionListener {
 			stop()
 		}
-		schedulePlaybackTimeUpdate()
+		progressClock.start()
 	}
 
 	override fun seek(mills: Long) {
@@ -126,7 +129,7 @@ class AudioPlayerNew: PlayerContractNew.Player, OnPreparedListener {
 			mediaPlayer.setOnCompletionListener {
 				stop()
 			}
-			schedulePlaybackTimeUpdate()
+			progressClock.start()
 		}
 	}
 
@@ -159,29 +162,31 @@ class AudioPlayerNew: PlayerContractNew.Player, OnPreparedListener {
 		return playerState == PlayerState.PLAYING
 	}
 
-	private fun schedulePlaybackTimeUpdate() {
-		handler.postDelayed({
-			try {
-				if (playerState == PlayerState.PLAYING) {
-					var pos = mediaPlayer.currentPosition.toLong()
-					if (pos < prevPosMills) {
-						pos = prevPosMills
-					} else {
-						prevPosMills = pos
-					}
-					onPlayProgress(pos)
+	override fun getProgressClock(): ProgressClock {
+		return progressClock
+	}
 
+	private fun updatePlaybackTime() {
+		try {
+			if (playerState == PlayerState.PLAYING) {
+				var pos = mediaPlayer.currentPosition.toLong()
+				if (pos < prevPosMills) {
+					pos = prevPosMills
+				} else {
+					prevPosMills = pos
 				}
-				schedulePlaybackTimeUpdate()
-			} catch (e: IllegalStateException) {
-				Timber.e(e, "Player is not initialized!")
-				onError(PlayerInitException())
+				progressClock.publish(pos, 0)
+				onPlayProgress(pos)
 			}
-		}, AppConstants.PLAYBACK_VISUALIZATION_INTERVAL.toLong())
+		} catch (e: IllegalStateException) {
+			Timber.e(e, "Player is not initialized!")
+			stopPlaybackTimeUpdate()
+			onError(PlayerInitException())
+		}
 	}
 
 	private fun stopPlaybackTimeUpdate() {
-		handler.removeCallbacksAndMessages(null)
+		progressClock.stop()
 	}
 
 	private fun onStartPlay() {
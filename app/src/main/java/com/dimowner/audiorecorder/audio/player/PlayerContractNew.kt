@@ -16,6 +16,7 @@
 
 package com.dimowner.audiorecorder.audio.player
 
+import com.dimowner.audiorecorder.audio.ProgressClock
 import com.dimowner.audiorecorder.exception.AppException
 
 interface PlayerContractNew {
@@ -40,6 +41,11 @@ interface PlayerContractNew {
 		fun getPauseTime(): Long
 		fun isPaused(): Boolean
 		fun isPlaying(): Boolean
+
+		/**
+		 * Clock which ticks play progress callbacks, screens which show progress request frames from it.
+		 */
+		fun getProgressClock(): ProgressClock
 	}
 }
 
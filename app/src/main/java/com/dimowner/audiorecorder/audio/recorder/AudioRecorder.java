@@ -16,7 +16,7 @@
 
 package com.dimowner.audiorecorder.audio.recorder;
 
-import static com.dimowner.audiorecorder.AppConstants.RECORDING_VISUALIZATION_INTERVAL;
+import static com.dimowner.audiorecorder.AppConstants.PLAYBACK_VISUALIZATION_INTERVAL;
 
 import android.content.Context;
 import android.media.MediaRecorder;
@@ -164,6 +164,9 @@ public class AudioRecorder implements RecorderContract.Recorder {
         }
     }
 
+    /**
+     * MediaRecorder gives amplitude only by polling, so it is polled once per visualization interval.
+     */
     private void scheduleRecordingTimeUpdate() {
         handler.postDelayed(() -> {
             if (recorderCallback != null && recorder != null) {
@@ -177,7 +180,7 @@ public class AudioRecorder implements RecorderContract.Recorder {
                 }
                 scheduleRecordingTimeUpdate();
             }
-        }, RECORDING_VISUALIZATION_INTERVAL);
+        }, PLAYBACK_VISUALIZATION_INTERVAL);
     }
 
     private void stopRecordingTimer() {
@@ -0,0 +1,140 @@
+package com.dimowner.audiorecorder.audio.recorder;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free single-producer/single-consumer ring of preallocated PCM blocks.
+ * Producer (capture thread) claims a free block, fills it and publishes it.
+ * Consumer (writer thread) polls published blocks and releases them after use.
+ * When all blocks are in use the producer does not wait, it registers an overrun instead,
+ * so a slow consumer never delays reading from the audio source.
+ */
+public class PcmRingBuffer {
+
+	private final Block[] blocks;
+	private final int mask;
+
+	/** Index of the next block to consume. Written only by the consumer. */
+	private final AtomicLong head = new AtomicLong(0);
+	/** Index of the next block to produce. Written only by the producer. */
+	private final AtomicLong tail = new AtomicLong(0);
+
+	private final AtomicLong overrunCount = new AtomicLong(0);
+	private final AtomicLong droppedBytes = new AtomicLong(0);
+	private volatile boolean closed = false;
+
+	/**
+	 * @param minBlockCount Min count of blocks, it is rounded up to the power of two.
+	 * @param blockSize Size of one block in bytes.
+	 */
+	public PcmRingBuffer(int minBlockCount, int blockSize) {
+		int count = Integer.highestOneBit(Math.max(2, minBlockCount) - 1) << 1;
+		blocks = new Block[count];
+		for (int i = 0; i < count; i++) {
+			blocks[i] = new Block(blockSize);
+		}
+		mask = count - 1;
+	}
+
+	/**
+	 * Producer side. Returns next free block or null when the ring is full.
+	 */
+	public Block claim() {
+		long t = tail.get();
+		if (t - head.get() >= blocks.length) {
+			return null;
+		}
+		Block block = blocks[(int) (t & mask)];
+		block.data.clear();
+		block.length = 0;
+		return block;
+	}
+
+	/**
+	 * Producer side. Makes the block returned by the last {@link #claim()} visible to the consumer.
+	 */
+	public void publish(int length) {
+		long t = tail.get();
+		blocks[(int) (t & mask)].length = length;
+		tail.lazySet(t + 1);
+	}
+
+	/**
+	 * Producer side. Registers block of data which was dropped because the ring was full.
+	 */
+	public void registerOverrun(int bytes) {
+		overrunCount.incrementAndGet();
+		droppedBytes.addAndGet(bytes);
+	}
+
+	/**
+	 * Producer side. Marks that no more blocks will be published.
+	 */
+	public void close() {
+		closed = true;
+	}
+
+	/**
+	 * Consumer side. Returns the oldest published block or null when the ring is empty.
+	 * Block data is prepared for reading: position 0 and limit equal to published length.
+	 */
+	public Block poll() {
+		long h = head.get();
+		if (h == tail.get()) {
+			return null;
+		}
+		Block block = blocks[(int) (h & mask)];
+		block.data.limit(block.length);
+		block.data.position(0);
+		return block;
+	}
+
+	/**
+	 * Consumer side. Returns the block obtained by the last {@link #poll()} to the producer.
+	 */
+	public void release() {
+		head.lazySet(head.get() + 1);
+	}
+
+	public boolean isClosed() {
+		return closed;
+	}
+
+	public int getCapacity() {
+		return blocks.length;
+	}
+
+	public int size() {
+		return (int) (tail.get() - head.get());
+	}
+
+	/** Count of blocks dropped because the consumer didn't keep up. */
+	public long getOverrunCount() {
+		return overrunCount.get();
+	}
+
+	/** Count of bytes dropped because the consumer didn't keep up. */
+	public long getDroppedBytes() {
+		return droppedBytes.get();
+	}
+
+	public static class Block {
+		/** Native ordered direct buffer which can be filled by AudioRecord without copying. */
+		public final ByteBuffer data;
+		/** 16-bit samples view of {@link #data}. */
+		public final ShortBuffer samples;
+		int length = 0;
+
+		public Block(int size) {
+			data = ByteBuffer.allocateDirect(size).order(ByteOrder.nativeOrder());
+			samples = data.asShortBuffer();
+		}
+
+		public int getLength() {
+			return length;
+		}
+	}
+}
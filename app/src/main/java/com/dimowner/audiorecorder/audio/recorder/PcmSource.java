@@ -0,0 +1,54 @@
+package com.dimowner.audiorecorder.audio.recorder;
+
+import android.media.AudioRecord;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Source of 16-bit PCM which {@link WavRecorder} captures. Methods follow {@link AudioRecord},
+ * which is the source in the app, and are called only from the capture thread after start.
+ */
+interface PcmSource {
+
+	/**
+	 * @throws IllegalStateException when the source can't be started.
+	 */
+	void startRecording();
+
+	/**
+	 * @throws IllegalStateException when the source can't be stopped.
+	 */
+	void stop();
+
+	/**
+	 * Blocks until data is read.
+	 * @return Count of bytes read or a negative error code.
+	 */
+	int read(ByteBuffer buffer, int size);
+
+	void release();
+
+	static PcmSource of(AudioRecord record) {
+		return new PcmSource() {
+			@Override
+			public void startRecording() {
+				record.startRecording();
+			}
+
+			@Override
+			public void stop() {
+				record.stop();
+			}
+
+			@Override
+			public int read(ByteBuffer buffer, int size) {
+				return record.read(buffer, size);
+			}
+
+			@Override
+			public void release() {
+				record.release();
+			}
+		};
+	}
+}
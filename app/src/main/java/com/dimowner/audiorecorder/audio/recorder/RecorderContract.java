@@ -26,7 +26,22 @@ public interface RecorderContract {
 		void onStartRecord(File output);
 		void onPauseRecord();
 		void onResumeRecord();
+		/**
+		 * Called once per visualization interval of recorded audio, may be called on the recording thread.
+		 * @param mills Duration of recorded audio.
+		 * @param amp Amplitude of the interval.
+		 */
 		void onRecordProgress(long mills, int amp);
+		/**
+		 * Called when recorded data was dropped because it couldn't be written to the disk in time.
+		 * @param overrunCount Total count of dropped blocks since recording start.
+		 * @param droppedBytes Total count of dropped bytes since recording start.
+		 */
+		void onBufferOverrun(long overrunCount, long droppedBytes);
+		/**
+		 * Called when the record file is finalized.
+		 * @param output Record file.
+		 */
 		void onStopRecord(File output);
 		void onError(AppException throwable);
 	}
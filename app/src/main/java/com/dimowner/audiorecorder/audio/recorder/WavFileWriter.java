@@ -0,0 +1,267 @@
+package com.dimowner.audiorecorder.audio.recorder;
+
+import android.system.ErrnoException;
+import android.system.Os;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+import timber.log.Timber;
+
+/**
+ * Writes 16-bit PCM into a WAV file through {@link FileChannel}.
+ * Header is written in front of the data at start and RIFF/data sizes are patched in place
+ * every {@link #HEADER_COMMIT_INTERVAL_MILLS} of audio, so if the process is killed during
+ * recording the file stays playable up to the last commit. File space is preallocated by
+ * large extents to reduce fragmentation and metadata updates on long recordings,
+ * unused preallocated space is truncated on close.
+ */
+public class WavFileWriter implements Closeable {
+
+	public static final int HEADER_SIZE = 44;
+	private static final int HEADER_COMMIT_INTERVAL_MILLS = 2000;
+	private static final long PREALLOCATE_EXTENT_BYTES = 4 * 1024 * 1024;
+	/** Linux value of lseek whence, OsConstants doesn't have it. */
+	private static final int SEEK_HOLE = 4;
+
+	private final RandomAccessFile raf;
+	private final FileChannel channel;
+	private final int sampleRate;
+	private final int channels;
+	private final int bitsPerSample;
+	private final long commitIntervalBytes;
+	private final ByteBuffer sizeBuffer = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+
+	private long dataSize = 0;
+	private long committedDataSize = 0;
+	private long allocatedSize = 0;
+	private boolean preallocationSupported = true;
+
+	public WavFileWriter(File file, int sampleRate, int channels, int bitsPerSample) throws IOException {
+		this.sampleRate = sampleRate;
+		this.channels = channels;
+		this.bitsPerSample = bitsPerSample;
+		this.commitIntervalBytes = (long) getByteRate(sampleRate, channels, bitsPerSample)
+				* HEADER_COMMIT_INTERVAL_MILLS / 1000;
+		raf = new RandomAccessFile(file, "rw");
+		raf.setLength(0);
+		channel = raf.getChannel();
+		ByteBuffer header = ByteBuffer.wrap(generateHeader(0, sampleRate, channels, bitsPerSample));
+		while (header.hasRemaining()) {
+			channel.write(header, header.position());
+		}
+	}
+
+	/**
+	 * Append all remaining bytes of the buffer to the data chunk.
+	 */
+	public void write(ByteBuffer data) throws IOException {
+		long end = HEADER_SIZE + dataSize + data.remaining();
+		if (end > allocatedSize) {
+			preallocate(end);
+		}
+		while (data.hasRemaining()) {
+			dataSize += channel.write(data, HEADER_SIZE + dataSize);
+		}
+		if (dataSize - committedDataSize >= commitIntervalBytes) {
+			commitHeader();
+		}
+	}
+
+	/**
+	 * Patch RIFF and data chunk sizes with the size of data written so far.
+	 */
+	public void commitHeader() throws IOException {
+		writeSize(4, HEADER_SIZE - 8 + dataSize);
+		writeSize(HEADER_SIZE - 4, dataSize);
+		committedDataSize = dataSize;
+	}
+
+	public long getDataSize() {
+		return dataSize;
+	}
+
+	public int getSampleRate() {
+		return sampleRate;
+	}
+
+	public int getChannels() {
+		return channels;
+	}
+
+	public int getBitsPerSample() {
+		return bitsPerSample;
+	}
+
+	/**
+	 * Commit final header, drop unused preallocated space and close the file.
+	 */
+	@Override
+	public void close() throws IOException {
+		try {
+			commitHeader();
+			channel.truncate(HEADER_SIZE + dataSize);
+		} finally {
+			raf.close();
+		}
+	}
+
+	private void preallocate(long requiredSize) {
+		long newSize = Math.max(requiredSize, allocatedSize + PREALLOCATE_EXTENT_BYTES);
+		if (preallocationSupported) {
+			try {
+				Os.posix_fallocate(raf.getFD(), allocatedSize, newSize - allocatedSize);
+			} catch (ErrnoException | IOException e) {
+				//Some file systems (FUSE, sdcardfs) don't support it. Plain writes are fine there.
+				Timber.w(e, "Failed to preallocate file space");
+				preallocationSupported = false;
+			}
+		}
+		allocatedSize = newSize;
+	}
+
+	private void writeSize(long position, long value) throws IOException {
+		sizeBuffer.clear();
+		sizeBuffer.putInt((int) value);
+		sizeBuffer.flip();
+		while (sizeBuffer.hasRemaining()) {
+			channel.write(sizeBuffer, position + sizeBuffer.position());
+		}
+	}
+
+	/**
+	 * Repair WAV file which was not finalized because recording was interrupted.
+	 * Data written after the last header commit is restored up to the end of written pages, so silence
+	 * at the end of the take is kept while the preallocated tail, which was never written, is truncated.
+	 * Data after the commit is also bound by two commit intervals, as the writer commits every interval.
+	 * Header sizes are patched. Only files with the header layout written by this class are handled.
+	 * @return true if the file was repaired, false if it is consistent or can't be repaired.
+	 */
+	public static boolean recover(File file) {
+		if (file == null || !file.isFile() || file.length() < HEADER_SIZE) {
+			return false;
+		}
+		try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+			FileChannel fc = raf.getChannel();
+			ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+			while (header.hasRemaining()) {
+				if (fc.read(header, header.position()) < 0) {
+					return false;
+				}
+			}
+			if (header.getInt(0) != fourCC("RIFF") || header.getInt(8) != fourCC("WAVE")
+					|| header.getInt(12) != fourCC("fmt ") || header.getInt(36) != fourCC("data")) {
+				return false;
+			}
+			int blockAlign = header.getShort(32) & 0xffff;
+			if (blockAlign == 0) {
+				return false;
+			}
+			long byteRate = header.getInt(28) & 0xffffffffL;
+			long available = fc.size() - HEADER_SIZE;
+			long committed = Math.min(header.getInt(40) & 0xffffffffL, available);
+			long writtenEnd = findWrittenEnd(raf, HEADER_SIZE + committed) - HEADER_SIZE;
+			long dataEnd = Math.min(Math.min(available, writtenEnd),
+					committed + 2 * byteRate * HEADER_COMMIT_INTERVAL_MILLS / 1000);
+			//Written pages end on a file system block, the last partial frame is not audio.
+			dataEnd = Math.max(committed, dataEnd / blockAlign * blockAlign);
+			if (dataEnd == (header.getInt(40) & 0xffffffffL) && dataEnd == available
+					&& (header.getInt(4) & 0xffffffffL) == HEADER_SIZE - 8 + dataEnd) {
+				return false;
+			}
+			fc.truncate(HEADER_SIZE + dataEnd);
+			ByteBuffer size = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+			size.putInt(0, (int) (HEADER_SIZE - 8 + dataEnd));
+			fc.write(size, 4);
+			size.clear();
+			size.putInt(0, (int) dataEnd);
+			fc.write(size, HEADER_SIZE - 4);
+			Timber.d("Recovered WAV file: %s data size: %d", file.getName(), dataEnd);
+			return true;
+		} catch (IOException e) {
+			Timber.e(e);
+			return false;
+		}
+	}
+
+	/**
+	 * End of written pages at or after the position. Preallocated extents which were never written
+	 * are holes to SEEK_HOLE on ext4 and f2fs, written pages are data even if they hold zeros.
+	 * File systems without SEEK_HOLE report the file end, they don't support preallocation either,
+	 * so their files end with the written data.
+	 */
+	private static long findWrittenEnd(RandomAccessFile raf, long from) throws IOException {
+		try {
+			return Os.lseek(raf.getFD(), from, SEEK_HOLE);
+		} catch (ErrnoException e) {
+			//ENXIO when there is no data after the position.
+			return raf.length();
+		}
+	}
+
+	private static int fourCC(String id) {
+		return (id.charAt(0)) | (id.charAt(1) << 8) | (id.charAt(2) << 16) | (id.charAt(3) << 24);
+	}
+
+	private static int getByteRate(int sampleRate, int channels, int bitsPerSample) {
+		return sampleRate * channels * (bitsPerSample / 8);
+	}
+
+	static byte[] generateHeader(long totalAudioLen, long longSampleRate, int channels, int bitsPerSample) {
+		long totalDataLen = totalAudioLen + 36;
+		long byteRate = getByteRate((int) longSampleRate, channels, bitsPerSample);
+
+		byte[] header = new byte[HEADER_SIZE];
+
+		header[0] = 'R'; // RIFF/WAVE header
+		header[1] = 'I';
+		header[2] = 'F';
+		header[3] = 'F';
+		header[4] = (byte) (totalDataLen & 0xff);
+		header[5] = (byte) ((totalDataLen >> 8) & 0xff);
+		header[6] = (byte) ((totalDataLen >> 16) & 0xff);
+		header[7] = (byte) ((totalDataLen >> 24) & 0xff);
+		header[8] = 'W';
+		header[9] = 'A';
+		header[10] = 'V';
+		header[11] = 'E';
+		header[12] = 'f'; // 'fmt ' chunk
+		header[13] = 'm';
+		header[14] = 't';
+		header[15] = ' ';
+		header[16] = 16; //16 for PCM. 4 bytes: size of 'fmt ' chunk
+		header[17] = 0;
+		header[18] = 0;
+		header[19] = 0;
+		header[20] = 1; // format = 1
+		header[21] = 0;
+		header[22] = (byte) channels;
+		header[23] = 0;
+		header[24] = (byte) (longSampleRate & 0xff);
+		header[25] = (byte) ((longSampleRate >> 8) & 0xff);
+		header[26] = (byte) ((longSampleRate >> 16) & 0xff);
+		header[27] = (byte) ((longSampleRate >> 24) & 0xff);
+		header[28] = (byte) (byteRate & 0xff);
+		header[29] = (byte) ((byteRate >> 8) & 0xff);
+		header[30] = (byte) ((byteRate >> 16) & 0xff);
+		header[31] = (byte) ((byteRate >> 24) & 0xff);
+		header[32] = (byte) (channels * (bitsPerSample / 8)); // block align
+		header[33] = 0;
+		header[34] = (byte) bitsPerSample; // bits per sample
+		header[35] = 0;
+		header[36] = 'd';
+		header[37] = 'a';
+		header[38] = 't';
+		header[39] = 'a';
+		header[40] = (byte) (totalAudioLen & 0xff);
+		header[41] = (byte) ((totalAudioLen >> 8) & 0xff);
+		header[42] = (byte) ((totalAudioLen >> 16) & 0xff);
+		header[43] = (byte) ((totalAudioLen >> 24) & 0xff);
+		return header;
+	}
+}
@@ -16,7 +16,7 @@
 
 package com.dimowner.audiorecorder.audio.recorder;
 
-import static com.dimowner.audiorecorder.AppConstants.RECORDING_VISUALIZATION_INTERVAL;
+import static com.dimowner.audiorecorder.AppConstants.PLAYBACK_VISUALIZATION_INTERVAL;
 
 import android.media.AudioFormat;
 import android.media.AudioRecord;
@@ -24,46 +24,69 @@ import android.media.MediaRecorder;
 import android.os.Handler;
 
 import com.dimowner.audiorecorder.AppConstants;
+import com.dimowner.audiorecorder.audio.PcmLevelMeter;
 import com.dimowner.audiorecorder.exception.InvalidOutputFile;
 import com.dimowner.audiorecorder.exception.RecorderInitException;
 import com.dimowner.audiorecorder.exception.RecordingException;
-import com.dimowner.audiorecorder.util.AndroidUtils;
 
 import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.RandomAccessFile;
-import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
-import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
 
 import timber.log.Timber;
 
+/**
+ * Records 16-bit PCM WAV. Control methods change {@link State} and hand off to the capture thread,
+ * which is the only thread using AudioRecord after start: it stops AudioRecord and parks while paused,
+ * starts it again on resume and releases it on stop. Writer thread also parks while paused,
+ * so a paused recorder doesn't use CPU. Writer thread finishes the recording: it drains the ring,
+ * closes the file, reports stop and only then the recorder is idle again.
+ */
 public class WavRecorder implements RecorderContract.Recorder {
 
     private static final int RECORDER_BPP = 16; //bits per sample
-    private final AtomicBoolean isRecording = new AtomicBoolean(false);
-    private final AtomicBoolean isPaused = new AtomicBoolean(false);
-    private final Handler handler = new Handler();
+    /** Duration of audio which can be buffered between capture and writer threads. */
+    private static final int RING_BUFFER_DURATION_MILLS = 4000;
+    private static final long WRITER_IDLE_PARK_NANOS = 5_000_000;
+    /** Max time to wait for the capture thread to release AudioRecord on stop. */
+    private static final long STOP_TIMEOUT_MILLS = 1000;
+    /** AudioRecord which fails this many reads in a row is dead, e.g. the audio server was restarted. */
+    private static final int MAX_READ_ERRORS = 3;
+
+    private enum State {
+        IDLE,
+        RECORDING,
+        PAUSED,
+        /** Stop is requested, capture thread is releasing AudioRecord and writer thread is finishing the file. */
+        STOPPING
+    }
+
+    private final AtomicReference<State> state = new AtomicReference<>(State.IDLE);
+    private final Executor callbackExecutor;
     private AudioRecord recorder = null;
     private File recordFile = null;
     private int bufferSize = 0;
-    private long updateTime = 0;
-    private long durationMills = 0;
     private Thread recordingThread;
+    private Thread writerThread;
+    private PcmRingBuffer ringBuffer;
+    private long reportedOverrunCount = 0;
     private int channelCount = 1;
 
-    /**
-     * Value for recording used visualisation.
-     */
-    private int lastVal = 0;
-
     private int sampleRate = AppConstants.RECORD_SAMPLE_RATE_44100;
 
     private RecorderContract.RecorderCallback recorderCallback;
 
     private WavRecorder() {
+        this(new Handler()::post);
+    }
+
+    /**
+     * @param callbackExecutor Executor of callbacks which are reported from recorder threads.
+     */
+    WavRecorder(Executor callbackExecutor) {
+        this.callbackExecutor = callbackExecutor;
     }
 
     public static WavRecorder getInstance() {
@@ -77,6 +100,13 @@ public class WavRecorder implements RecorderContract.Recorder {
 
     @Override
     public void startRecording(String outputFile, int channelCount, int sampleRate, int bitrate) {
+        if (state.get() != State.IDLE) {
+            Timber.e("Previous recording hasn't finished yet, state = %s", state.get());
+            if (recorderCallback != null) {
+                recorderCallback.onError(new RecorderInitException());
+            }
+            return;
+        }
         this.sampleRate = sampleRate;
 //		this.framesPerVisInterval = (int)((VISUALIZATION_INTERVAL/1000f)/(1f/sampleRate));
         this.channelCount = channelCount;
@@ -106,17 +136,7 @@ public class WavRecorder implements RecorderContract.Recorder {
                 }
             }
             if (recorder != null && recorder.getState() == AudioRecord.STATE_INITIALIZED) {
-                recorder.startRecording();
-                updateTime = System.currentTimeMillis();
-                isRecording.set(true);
-                recordingThread = new Thread(this::writeAudioDataToFile, "AudioRecorder Thread");
-
-                recordingThread.start();
-                scheduleRecordingTimeUpdate();
-                if (recorderCallback != null) {
-                    recorderCallback.onStartRecord(recordFile);
-                }
-                isPaused.set(false);
+                startCapture(PcmSource.of(recorder), recordFile, bufferSize);
             } else {
                 Timber.e("prepare() failed");
                 if (recorderCallback != null) {
@@ -130,217 +150,275 @@ public class WavRecorder implements RecorderContract.Recorder {
         }
     }
 
+    /**
+     * Start capture and writer threads. Sample rate and channel count of the recording must be set.
+     * @param source Started here and released by the capture thread on stop.
+     */
+    void startCapture(PcmSource source, File file, int bufferSize) {
+        this.bufferSize = bufferSize;
+        source.startRecording();
+        state.set(State.RECORDING);
+        int bytesPerSecond = sampleRate * channelCount * (RECORDER_BPP / 8);
+        final PcmRingBuffer ring = new PcmRingBuffer(
+                (int) ((long) bytesPerSecond * RING_BUFFER_DURATION_MILLS / 1000 / bufferSize) + 1,
+                bufferSize);
+        ringBuffer = ring;
+        reportedOverrunCount = 0;
+        writerThread = new Thread(() -> writeAudioDataToFile(ring, file), "AudioWriter Thread");
+        final Thread writer = writerThread;
+        recordingThread = new Thread(() -> captureAudioData(source, ring, writer), "AudioRecorder Thread");
+
+        writerThread.start();
+        recordingThread.start();
+        if (recorderCallback != null) {
+            recorderCallback.onStartRecord(file);
+        }
+    }
+
     @Override
     public void resumeRecording() {
-        if (recorder != null && recorder.getState() == AudioRecord.STATE_INITIALIZED) {
-            if (isPaused.get()) {
-                updateTime = System.currentTimeMillis();
-                scheduleRecordingTimeUpdate();
-                recorder.startRecording();
-                if (recorderCallback != null) {
-                    recorderCallback.onResumeRecord();
-                }
-                isPaused.set(false);
+        if (state.compareAndSet(State.PAUSED, State.RECORDING)) {
+            //Capture thread starts AudioRecord again by itself.
+            LockSupport.unpark(recordingThread);
+            LockSupport.unpark(writerThread);
+            if (recorderCallback != null) {
+                recorderCallback.onResumeRecord();
             }
         }
     }
 
     @Override
     public void pauseRecording() {
-        if (isRecording.get()) {
-            recorder.stop();
-            durationMills += System.currentTimeMillis() - updateTime;
-            pauseRecordingTimer();
-
-            isPaused.set(true);
+        if (state.compareAndSet(State.RECORDING, State.PAUSED)) {
+            //Capture thread stops AudioRecord after the current read and parks.
             if (recorderCallback != null) {
                 recorderCallback.onPauseRecord();
             }
         }
     }
 
+    /**
+     * Blocks until the capture thread released AudioRecord, which takes at most one read.
+     * Writer thread drains the ring, finalizes the file and reports stop by itself.
+     */
     @Override
     public void stopRecording() {
-        if (recorder != null) {
-            isRecording.set(false);
-            isPaused.set(false);
-            stopRecordingTimer();
-            if (recorder.getState() == AudioRecord.STATE_INITIALIZED) {
-                try {
-                    recorder.stop();
-                } catch (IllegalStateException e) {
-                    Timber.e(e, "stopRecording() problems");
-                }
+        State current = state.get();
+        if ((current == State.RECORDING || current == State.PAUSED)
+                && state.compareAndSet(current, State.STOPPING)) {
+            Thread thread = recordingThread;
+            LockSupport.unpark(thread);
+            try {
+                thread.join(STOP_TIMEOUT_MILLS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
             }
-            durationMills = 0;
-            recorder.release();
-            recordingThread.interrupt();
-            if (recorderCallback != null) {
-                recorderCallback.onStopRecord(recordFile);
-                //AndroidUtils.generateProofWithWorkManager(context,recordFile);
+            if (thread.isAlive()) {
+                Timber.e("Capture thread didn't stop in %d ms", STOP_TIMEOUT_MILLS);
             }
+            recorder = null;
+            reportBufferOverrun();
         }
     }
 
     @Override
     public boolean isRecording() {
-        return isRecording.get();
+        State current = state.get();
+        return current == State.RECORDING || current == State.PAUSED;
     }
 
     @Override
     public boolean isPaused() {
-        return isPaused.get();
+        return state.get() == State.PAUSED;
     }
 
-    private void writeAudioDataToFile() {
-        byte[] data = new byte[bufferSize];
-        FileOutputStream fos;
-        try {
-            fos = new FileOutputStream(recordFile);
-        } catch (FileNotFoundException e) {
-            Timber.e(e);
-            fos = null;
-        }
-        if (null != fos) {
-            int chunksCount = 0;
-            ByteBuffer shortBuffer = ByteBuffer.allocate(2);
-            shortBuffer.order(ByteOrder.LITTLE_ENDIAN);
-            //TODO: Disable loop while pause.
-            while (isRecording.get()) {
-                if (!isPaused.get()) {
-                    chunksCount += recorder.read(data, 0, bufferSize);
-                    if (AudioRecord.ERROR_INVALID_OPERATION != chunksCount) {
-                        long sum = 0;
-                        for (int i = 0; i < bufferSize; i += 2) {
-                            //TODO: find a better way to covert bytes into shorts.
-                            shortBuffer.put(data[i]);
-                            shortBuffer.put(data[i + 1]);
-                            sum += Math.abs(shortBuffer.getShort(0));
-                            shortBuffer.clear();
+    /**
+     * True when the previous recording is finished and its file is closed.
+     */
+    boolean isIdle() {
+        return state.get() == State.IDLE;
+    }
+
+    /**
+     * Progress is reported from this thread once per visualization interval of captured audio,
+     * so recording position comes from frames and no timer is needed.
+     */
+    private void captureAudioData(PcmSource record, PcmRingBuffer ring, Thread writer) {
+        PcmLevelMeter levelMeter = new PcmLevelMeter();
+        long framesPerProgress = Math.max(1, (long) sampleRate * PLAYBACK_VISUALIZATION_INTERVAL / 1000);
+        long capturedFrames = 0;
+        long framesSinceProgress = 0;
+        int peak = 0;
+        int readErrors = 0;
+        //AudioRecord is started in startRecording.
+        boolean capturing = true;
+        //Data which doesn't fit into the ring still has to be read out of AudioRecord to keep it running.
+        PcmRingBuffer.Block overrunBlock = new PcmRingBuffer.Block(bufferSize);
+        while (true) {
+            State current = state.get();
+            if (current == State.PAUSED) {
+                if (capturing) {
+                    capturing = !stopAudioRecord(record);
+                    //Let the writer drain the last block before it parks too.
+                    LockSupport.unpark(writer);
+                }
+                //Unparked by resume or stop, spurious wakeups just go around the loop.
+                LockSupport.park(this);
+                continue;
+            } else if (current != State.RECORDING) {
+                break;
+            }
+            if (!capturing) {
+                try {
+                    record.startRecording();
+                    capturing = true;
+                } catch (IllegalStateException e) {
+                    Timber.e(e, "Failed to resume AudioRecord");
+                    //Finish the record with the data captured before pause.
+                    state.set(State.STOPPING);
+                    callbackExecutor.execute(() -> {
+                        if (recorderCallback != null) {
+                            recorderCallback.onError(new RecordingException());
                         }
-                        lastVal = (int) (sum / (bufferSize / 16));
-                        try {
-                            fos.write(data);
-                        } catch (IOException e) {
-                            Timber.e(e);
-                            AndroidUtils.runOnUIThread(() -> {
-                                recorderCallback.onError(new RecordingException());
-                                stopRecording();
-                            });
+                    });
+                    break;
+                }
+            }
+            PcmRingBuffer.Block block = ring.claim();
+            boolean overrun = block == null;
+            if (overrun) {
+                block = overrunBlock;
+                block.data.clear();
+            }
+            int read = record.read(block.data, bufferSize);
+            if (read <= 0) {
+                Timber.e("AudioRecord read failed: %d", read);
+                //Reads fail at once without blocking, retrying a dead source forever would spin the core.
+                if (++readErrors >= MAX_READ_ERRORS && state.compareAndSet(State.RECORDING, State.STOPPING)) {
+                    //Finish the record with the data captured before the failure.
+                    callbackExecutor.execute(() -> {
+                        if (recorderCallback != null) {
+                            recorderCallback.onError(new RecordingException());
+                        }
+                    });
+                    break;
+                }
+            } else {
+                readErrors = 0;
+                levelMeter.measure(block.samples, read / 2);
+                //Keep the same visualization scale as before: mean amplitude multiplied by 8.
+                peak = Math.max(peak, levelMeter.getMeanAbs() * 8);
+                if (overrun) {
+                    ring.registerOverrun(read);
+                } else {
+                    ring.publish(read);
+                }
+                long frames = read / (2 * channelCount);
+                capturedFrames += frames;
+                framesSinceProgress += frames;
+                if (framesSinceProgress >= framesPerProgress) {
+                    reportBufferOverrun();
+                    //One amplitude per interval keeps waveform density independent of the buffer size.
+                    RecorderContract.RecorderCallback callback = recorderCallback;
+                    while (framesSinceProgress >= framesPerProgress) {
+                        framesSinceProgress -= framesPerProgress;
+                        if (callback != null) {
+                            callback.onRecordProgress(capturedFrames * 1000 / sampleRate, peak);
                         }
                     }
+                    peak = 0;
                 }
             }
-
-            try {
-                fos.close();
-            } catch (IOException e) {
-                Timber.e(e);
-            }
-            setWaveFileHeader(recordFile, channelCount);
         }
+        if (capturing) {
+            stopAudioRecord(record);
+        }
+        record.release();
+        ring.close();
+        LockSupport.unpark(writer);
     }
 
-    private void setWaveFileHeader(File file, int channels) {
-        long fileSize = file.length() - 8;
-        long totalSize = fileSize + 36;
-        long byteRate = sampleRate * channels * (RECORDER_BPP / 8); //2 byte per 1 sample for 1 channel.
-
+    /**
+     * @return True if AudioRecord is stopped.
+     */
+    private boolean stopAudioRecord(PcmSource record) {
         try {
-            final RandomAccessFile wavFile = randomAccessFile(file);
-            wavFile.seek(0); // to the beginning
-            wavFile.write(generateHeader(fileSize, totalSize, sampleRate, channels, byteRate));
-            wavFile.close();
-        } catch (FileNotFoundException e) {
-            Timber.e(e);
-        } catch (IOException e) {
-            Timber.e(e);
+            record.stop();
+            return true;
+        } catch (IllegalStateException e) {
+            Timber.e(e, "Failed to stop AudioRecord");
+            return false;
         }
     }
 
-    private RandomAccessFile randomAccessFile(File file) {
-        RandomAccessFile randomAccessFile;
+    private void writeAudioDataToFile(PcmRingBuffer ring, File file) {
+        WavFileWriter writer;
         try {
-            randomAccessFile = new RandomAccessFile(file, "rw");
-        } catch (FileNotFoundException e) {
-            throw new RuntimeException(e);
+            writer = new WavFileWriter(file, sampleRate, channelCount, RECORDER_BPP);
+        } catch (IOException e) {
+            Timber.e(e);
+            writer = null;
         }
-        return randomAccessFile;
-    }
-
-    private byte[] generateHeader(
-            long totalAudioLen, long totalDataLen, long longSampleRate, int channels,
-            long byteRate) {
-
-        byte[] header = new byte[44];
-
-        header[0] = 'R'; // RIFF/WAVE header
-        header[1] = 'I';
-        header[2] = 'F';
-        header[3] = 'F';
-        header[4] = (byte) (totalDataLen & 0xff);
-        header[5] = (byte) ((totalDataLen >> 8) & 0xff);
-        header[6] = (byte) ((totalDataLen >> 16) & 0xff);
-        header[7] = (byte) ((totalDataLen >> 24) & 0xff);
-        header[8] = 'W';
-        header[9] = 'A';
-        header[10] = 'V';
-        header[11] = 'E';
-        header[12] = 'f'; // 'fmt ' chunk
-        header[13] = 'm';
-        header[14] = 't';
-        header[15] = ' ';
-        header[16] = 16; //16 for PCM. 4 bytes: size of 'fmt ' chunk
-        header[17] = 0;
-        header[18] = 0;
-        header[19] = 0;
-        header[20] = 1; // format = 1
-        header[21] = 0;
-        header[22] = (byte) channels;
-        header[23] = 0;
-        header[24] = (byte) (longSampleRate & 0xff);
-        header[25] = (byte) ((longSampleRate >> 8) & 0xff);
-        header[26] = (byte) ((longSampleRate >> 16) & 0xff);
-        header[27] = (byte) ((longSampleRate >> 24) & 0xff);
-        header[28] = (byte) (byteRate & 0xff);
-        header[29] = (byte) ((byteRate >> 8) & 0xff);
-        header[30] = (byte) ((byteRate >> 16) & 0xff);
-        header[31] = (byte) ((byteRate >> 24) & 0xff);
-        header[32] = (byte) (channels * (RECORDER_BPP / 8)); // block align
-        header[33] = 0;
-        header[34] = RECORDER_BPP; // bits per sample
-        header[35] = 0;
-        header[36] = 'd';
-        header[37] = 'a';
-        header[38] = 't';
-        header[39] = 'a';
-        header[40] = (byte) (totalAudioLen & 0xff);
-        header[41] = (byte) ((totalAudioLen >> 8) & 0xff);
-        header[42] = (byte) ((totalAudioLen >> 16) & 0xff);
-        header[43] = (byte) ((totalAudioLen >> 24) & 0xff);
-        return header;
-    }
-
-    private void scheduleRecordingTimeUpdate() {
-        handler.postDelayed(() -> {
-            if (recorderCallback != null && recorder != null) {
-                long curTime = System.currentTimeMillis();
-                durationMills += curTime - updateTime;
-                updateTime = curTime;
-                recorderCallback.onRecordProgress(durationMills, lastVal);
-                scheduleRecordingTimeUpdate();
+        boolean writeFailed = writer == null;
+        while (true) {
+            //Read closed flag before poll, so an empty poll after close means that all data is written.
+            boolean finished = ring.isClosed();
+            PcmRingBuffer.Block block = ring.poll();
+            if (block == null) {
+                if (finished) {
+                    break;
+                }
+                if (state.get() == State.PAUSED) {
+                    //Unparked by resume or by the capture thread when it closes the ring.
+                    LockSupport.park(this);
+                } else {
+                    LockSupport.parkNanos(WRITER_IDLE_PARK_NANOS);
+                }
+                continue;
             }
-        }, RECORDING_VISUALIZATION_INTERVAL);
-    }
+            if (!writeFailed) {
+                try {
+                    writer.write(block.data);
+                } catch (IOException e) {
+                    Timber.e(e);
+                    writeFailed = true;
+                    callbackExecutor.execute(() -> {
+                        if (recorderCallback != null) {
+                            recorderCallback.onError(new RecordingException());
+                        }
+                        stopRecording();
+                    });
+                }
+            }
+            ring.release();
+        }
 
-    private void stopRecordingTimer() {
-        handler.removeCallbacksAndMessages(null);
-        updateTime = 0;
+        if (null != writer) {
+            try {
+                writer.close();
+            } catch (IOException e) {
+                Timber.e(e);
+            }
+        }
+        callbackExecutor.execute(() -> {
+            if (recorderCallback != null) {
+                recorderCallback.onStopRecord(file);
+                //AndroidUtils.generateProofWithWorkManager(context,recordFile);
+            }
+        });
+        //The file is closed, a new recording may start now.
+        state.compareAndSet(State.STOPPING, State.IDLE);
     }
 
-    private void pauseRecordingTimer() {
-        handler.removeCallbacksAndMessages(null);
-        updateTime = 0;
+    private synchronized void reportBufferOverrun() {
+        PcmRingBuffer ring = ringBuffer;
+        if (ring != null && recorderCallback != null) {
+            long overrunCount = ring.getOverrunCount();
+            if (overrunCount != reportedOverrunCount) {
+                reportedOverrunCount = overrunCount;
+                recorderCallback.onBufferOverrun(overrunCount, ring.getDroppedBytes());
+            }
+        }
     }
 
     private static class WavRecorderSingletonHolder {
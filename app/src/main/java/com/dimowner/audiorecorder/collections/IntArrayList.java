@@ -0,0 +1,82 @@
+/*
+ * Copyright 2018 Dmytro Ponomarenko
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.dimowner.audiorecorder.collections;
+
+import java.nio.IntBuffer;
+import java.util.Arrays;
+
+/**
+ * Growable list of int values without boxing.
+ */
+public class IntArrayList {
+
+	private static final int DEFAULT_CAPACITY = 16;
+
+	private int[] data;
+	private int size = 0;
+
+	public IntArrayList() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	public IntArrayList(int capacity) {
+		data = new int[Math.max(1, capacity)];
+	}
+
+	public void add(int val) {
+		if (data.length == size) {
+			data = Arrays.copyOf(data, data.length * 2);
+		}
+		data[size++] = val;
+	}
+
+	public int get(int index) {
+		if (index >= size) {
+			throw new IndexOutOfBoundsException("Index: " + index + ", size: " + size);
+		}
+		return data[index];
+	}
+
+	/**
+	 * Copy of the values.
+	 */
+	public int[] toArray() {
+		return Arrays.copyOf(data, size);
+	}
+
+	/**
+	 * Read only view of the values without copying. The view is invalid after the list is changed.
+	 */
+	public IntBuffer asReadOnlyBuffer() {
+		return IntBuffer.wrap(data, 0, size).asReadOnlyBuffer();
+	}
+
+	/**
+	 * Remove all values, allocated capacity is kept.
+	 */
+	public void clear() {
+		size = 0;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+}
@@ -0,0 +1,87 @@
+package com.dimowner.audiorecorder.collections;
+
+/**
+ * Queue of int values over a circular array: values are added at the end and removed from the start
+ * in constant time, and any value is read by index without walking the queue.
+ * Grows when it is full, so keep it bounded by removing from the start.
+ */
+public class IntRingBuffer {
+
+	private int[] data;
+	private int start = 0;
+	private int size = 0;
+
+	/**
+	 * @param capacity Count of values the buffer holds without growing.
+	 */
+	public IntRingBuffer(int capacity) {
+		data = new int[Math.max(1, capacity)];
+	}
+
+	public void add(int val) {
+		if (size == data.length) {
+			grow();
+		}
+		data[(start + size) % data.length] = val;
+		size++;
+	}
+
+	public int removeFirst() {
+		if (size == 0) {
+			throw new IndexOutOfBoundsException("Buffer is empty");
+		}
+		int val = data[start];
+		start = (start + 1) % data.length;
+		size--;
+		return val;
+	}
+
+	/**
+	 * @param index Index of the value, 0 is the oldest one.
+	 */
+	public int get(int index) {
+		if (index >= size || index < 0) {
+			throw new IndexOutOfBoundsException("Index: " + index + ", size: " + size);
+		}
+		return data[(start + index) % data.length];
+	}
+
+	/**
+	 * Copy of the last values, from the oldest to the newest.
+	 * @param count Max count of values to copy.
+	 */
+	public int[] toArray(int count) {
+		int n = Math.max(0, Math.min(count, size));
+		int[] result = new int[n];
+		int from = (start + size - n) % data.length;
+		int firstPart = Math.min(n, data.length - from);
+		System.arraycopy(data, from, result, 0, firstPart);
+		System.arraycopy(data, 0, result, firstPart, n - firstPart);
+		return result;
+	}
+
+	/**
+	 * Remove all values, allocated capacity is kept.
+	 */
+	public void clear() {
+		start = 0;
+		size = 0;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	private void grow() {
+		int[] grown = new int[data.length * 2];
+		int firstPart = Math.min(size, data.length - start);
+		System.arraycopy(data, start, grown, 0, firstPart);
+		System.arraycopy(data, 0, grown, firstPart, size - firstPart);
+		data = grown;
+		start = 0;
+	}
+}
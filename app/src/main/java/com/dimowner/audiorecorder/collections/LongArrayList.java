@@ -0,0 +1,74 @@
+package com.dimowner.audiorecorder.collections;
+
+import java.nio.LongBuffer;
+import java.util.Arrays;
+
+/**
+ * Growable list of long values without boxing.
+ */
+public class LongArrayList {
+
+	private static final int DEFAULT_CAPACITY = 16;
+
+	private long[] data;
+	private int size = 0;
+
+	public LongArrayList() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	public LongArrayList(int capacity) {
+		data = new long[Math.max(1, capacity)];
+	}
+
+	public void add(long val) {
+		if (data.length == size) {
+			data = Arrays.copyOf(data, data.length * 2);
+		}
+		data[size++] = val;
+	}
+
+	public long get(int index) {
+		if (index >= size) {
+			throw new IndexOutOfBoundsException("Index: " + index + ", size: " + size);
+		}
+		return data[index];
+	}
+
+	public long sum() {
+		long sum = 0;
+		for (int i = 0; i < size; i++) {
+			sum += data[i];
+		}
+		return sum;
+	}
+
+	/**
+	 * Copy of the values.
+	 */
+	public long[] toArray() {
+		return Arrays.copyOf(data, size);
+	}
+
+	/**
+	 * Read only view of the values without copying. The view is invalid after the list is changed.
+	 */
+	public LongBuffer asReadOnlyBuffer() {
+		return LongBuffer.wrap(data, 0, size).asReadOnlyBuffer();
+	}
+
+	/**
+	 * Remove all values, allocated capacity is kept.
+	 */
+	public void clear() {
+		size = 0;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+}
@@ -53,4 +53,9 @@ public interface FileRepository {
 	void updateRecordingDir(Context context, Prefs prefs);
 
 	boolean hasAvailableSpace(Context context) throws IllegalArgumentException;
+
+	/**
+	 * Sidecar file of multi-resolution waveform for the record file.
+	 */
+	File getWaveformFile(String recordPath);
 }
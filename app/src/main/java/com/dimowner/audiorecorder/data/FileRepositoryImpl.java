@@ -20,6 +20,9 @@ import android.content.Context;
 
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 
 import timber.log.Timber;
 
@@ -30,21 +33,28 @@ import com.dimowner.audiorecorder.util.FileUtil;
 
 public class FileRepositoryImpl implements FileRepository {
 
+	private static final String WAVEFORMS_DIR = "waveforms";
+	private static final String WAVEFORM_EXT = "wfp";
+
 	private File recordDirectory;
+	private final File waveformDirectory;
 	private final Prefs prefs;
+	private final MediaHashCache mediaHashes;
 
 	private volatile static FileRepositoryImpl instance;
 
-	private FileRepositoryImpl(Context context, Prefs prefs) {
+	private FileRepositoryImpl(Context context, Prefs prefs, MediaHashCache mediaHashes) {
 		updateRecordingDir(context, prefs);
 		this.prefs = prefs;
+		this.mediaHashes = mediaHashes;
+		this.waveformDirectory = new File(context.getFilesDir(), WAVEFORMS_DIR);
 	}
 
-	public static FileRepositoryImpl getInstance(Context context, Prefs prefs) {
+	public static FileRepositoryImpl getInstance(Context context, Prefs prefs, MediaHashCache mediaHashes) {
 		if (instance == null) {
 			synchronized (FileRepositoryImpl.class) {
 				if (instance == null) {
-					instance = new FileRepositoryImpl(context, prefs);
+					instance = new FileRepositoryImpl(context, prefs, mediaHashes);
 				}
 			}
 		}
@@ -155,6 +165,11 @@ public class FileRepositoryImpl implements FileRepository {
 	@Override
 	public boolean deleteRecordFile(String path) {
 		if (path != null) {
+			File waveform = getWaveformFile(path);
+			if (waveform.exists()) {
+				FileUtil.deleteFile(waveform);
+			}
+			mediaHashes.invalidate(path);
 			return FileUtil.deleteFile(new File(path));
 		}
 		return false;
@@ -164,6 +179,8 @@ public class FileRepositoryImpl implements FileRepository {
 	public String markAsTrashRecord(String path) {
 		String trashLocation = FileUtil.addExtension(path, AppConstants.TRASH_MARK_EXTENSION);
 		if (FileUtil.renameFile(new File(path), new File(trashLocation))) {
+			moveWaveformFile(path, trashLocation);
+			mediaHashes.moveHash(path, trashLocation);
 			return trashLocation;
 		}
 		return null;
@@ -173,6 +190,8 @@ public class FileRepositoryImpl implements FileRepository {
 	public String unmarkTrashRecord(String path) {
 		String restoredFile = FileUtil.removeFileExtension(path);
 		if (FileUtil.renameFile(new File(path), new File(restoredFile))) {
+			moveWaveformFile(path, restoredFile);
+			mediaHashes.moveHash(path, restoredFile);
 			return restoredFile;
 		}
 		return null;
@@ -186,7 +205,43 @@ public class FileRepositoryImpl implements FileRepository {
 
 	@Override
 	public boolean renameFile(String path, String newName, String extension) {
-		return FileUtil.renameFile(new File(path), newName, extension);
+		File file = new File(path);
+		if (FileUtil.renameFile(file, newName, extension)) {
+			String newPath = file.getParentFile().getAbsolutePath() + File.separator
+					+ newName + AppConstants.EXTENSION_SEPARATOR + extension;
+			moveWaveformFile(path, newPath);
+			mediaHashes.moveHash(path, newPath);
+			return true;
+		}
+		return false;
+	}
+
+	@Override
+	public File getWaveformFile(String recordPath) {
+		return new File(waveformDirectory, pathKey(recordPath) + AppConstants.EXTENSION_SEPARATOR + WAVEFORM_EXT);
+	}
+
+	/**
+	 * SHA-1 of the record path, unlike {@link String#hashCode()} it doesn't let different records share a sidecar.
+	 */
+	private static String pathKey(String recordPath) {
+		try {
+			byte[] hash = MessageDigest.getInstance("SHA-1").digest(recordPath.getBytes(StandardCharsets.UTF_8));
+			StringBuilder key = new StringBuilder(hash.length * 2);
+			for (byte b : hash) {
+				key.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+			}
+			return key.toString();
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private void moveWaveformFile(String oldPath, String newPath) {
+		File waveform = getWaveformFile(oldPath);
+		if (waveform.exists() && !waveform.renameTo(getWaveformFile(newPath))) {
+			FileUtil.deleteFile(waveform);
+		}
 	}
 
 	public void updateRecordingDir(Context context, Prefs prefs) {
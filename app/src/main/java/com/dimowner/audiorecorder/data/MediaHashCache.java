@@ -0,0 +1,94 @@
+package com.dimowner.audiorecorder.data;
+
+import android.system.ErrnoException;
+import android.system.Os;
+
+import com.dimowner.audiorecorder.data.database.MediaHash;
+import com.dimowner.audiorecorder.data.database.MediaHashDataSource;
+
+import org.witness.proofmode.crypto.HashUtils;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import androidx.annotation.Nullable;
+import timber.log.Timber;
+
+/**
+ * Persistent cache of media file SHA-256 hashes. Cached hash is used while the file path, size,
+ * last modified time and inode are the same, otherwise the file is hashed again.
+ * Code which moves or rewrites media files reports it through {@link #moveHash} and {@link #invalidate}.
+ */
+public class MediaHashCache {
+
+	private final MediaHashDataSource dataSource;
+
+	private volatile static MediaHashCache instance;
+
+	public static MediaHashCache getInstance(MediaHashDataSource dataSource) {
+		if (instance == null) {
+			synchronized (MediaHashCache.class) {
+				if (instance == null) {
+					instance = new MediaHashCache(dataSource);
+				}
+			}
+		}
+		return instance;
+	}
+
+	private MediaHashCache(MediaHashDataSource dataSource) {
+		this.dataSource = dataSource;
+	}
+
+	/**
+	 * Get SHA-256 of the file. Reads the whole file if there is no valid cached hash,
+	 * so should not be called on the main thread.
+	 * @return Hash in hex or null if the file can't be read.
+	 */
+	@Nullable
+	public String getHash(File file) {
+		String path = file.getAbsolutePath();
+		long size = file.length();
+		long lastModified = file.lastModified();
+		long inode = getInode(path);
+		MediaHash cached = dataSource.getMediaHash(path);
+		if (cached != null && cached.matches(size, lastModified, inode)) {
+			return cached.getHash();
+		}
+		String hash;
+		try (InputStream in = new FileInputStream(file)) {
+			hash = HashUtils.getSHA256FromFileContent(in);
+		} catch (IOException e) {
+			Timber.e(e);
+			return null;
+		}
+		if (hash != null && size == file.length() && lastModified == file.lastModified()) {
+			dataSource.putMediaHash(new MediaHash(0, path, size, lastModified, inode, hash));
+		}
+		return hash;
+	}
+
+	/**
+	 * File was renamed or moved without changing content.
+	 */
+	public void moveHash(String oldPath, String newPath) {
+		dataSource.moveMediaHash(new File(oldPath).getAbsolutePath(), new File(newPath).getAbsolutePath());
+	}
+
+	/**
+	 * File was rewritten or deleted, its cached hash must not be used anymore.
+	 */
+	public void invalidate(String path) {
+		dataSource.deleteMediaHash(new File(path).getAbsolutePath());
+	}
+
+	private static long getInode(String path) {
+		try {
+			return Os.stat(path).st_ino;
+		} catch (ErrnoException e) {
+			return MediaHash.NO_INODE;
+		}
+	}
+}
@@ -0,0 +1,125 @@
+package com.dimowner.audiorecorder.data;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Read/write locks of record files by record id. Code which renames a record or rewrites its file in place,
+ * e.g. embeds content credentials, holds the write lock. Code which resolves the record path and then reads
+ * the file, e.g. waveform decoding or media hashing, holds the read lock, so it never reads a file
+ * which is being rewritten or opens a path which is being renamed.
+ * Locks are held only while the file is accessed, never over network calls, because renames wait for them.
+ * Locks are not owned by a thread: a lock taken on one thread may be released on another one,
+ * e.g. in a decoder callback.
+ */
+public class RecordFileLocks {
+
+	/** Records which are locked now, the entry is removed when the last holder releases it. */
+	private final Map<Integer, RecordLock> locks = new HashMap<>();
+
+	private volatile static RecordFileLocks instance;
+
+	public static RecordFileLocks getInstance() {
+		if (instance == null) {
+			synchronized (RecordFileLocks.class) {
+				if (instance == null) {
+					instance = new RecordFileLocks();
+				}
+			}
+		}
+		return instance;
+	}
+
+	RecordFileLocks() {
+	}
+
+	/**
+	 * Blocks while the record file is being renamed or rewritten.
+	 */
+	public synchronized void lockRead(int recordId) {
+		boolean interrupted = false;
+		RecordLock lock = locks.get(recordId);
+		while (lock != null && lock.writing) {
+			interrupted |= await();
+			lock = locks.get(recordId);
+		}
+		if (lock == null) {
+			lock = new RecordLock();
+			locks.put(recordId, lock);
+		}
+		lock.readers++;
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * @throws IllegalStateException when the record is not locked for reading.
+	 */
+	public synchronized void unlockRead(int recordId) {
+		RecordLock lock = locks.get(recordId);
+		if (lock == null || lock.readers == 0) {
+			throw new IllegalStateException("Record " + recordId + " is not locked for reading");
+		}
+		lock.readers--;
+		release(recordId, lock);
+	}
+
+	/**
+	 * Blocks while the record file is being read, renamed or rewritten.
+	 */
+	public synchronized void lockWrite(int recordId) {
+		boolean interrupted = false;
+		RecordLock lock = locks.get(recordId);
+		while (lock != null) {
+			interrupted |= await();
+			lock = locks.get(recordId);
+		}
+		lock = new RecordLock();
+		lock.writing = true;
+		locks.put(recordId, lock);
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * @throws IllegalStateException when the record is not locked for writing.
+	 */
+	public synchronized void unlockWrite(int recordId) {
+		RecordLock lock = locks.get(recordId);
+		if (lock == null || !lock.writing) {
+			throw new IllegalStateException("Record " + recordId + " is not locked for writing");
+		}
+		lock.writing = false;
+		release(recordId, lock);
+	}
+
+	synchronized boolean isLocked(int recordId) {
+		return locks.containsKey(recordId);
+	}
+
+	private void release(int recordId, RecordLock lock) {
+		if (lock.readers == 0 && !lock.writing) {
+			locks.remove(recordId);
+			notifyAll();
+		}
+	}
+
+	/**
+	 * @return True when the thread was interrupted while waiting.
+	 */
+	private boolean await() {
+		try {
+			wait();
+			return false;
+		} catch (InterruptedException e) {
+			return true;
+		}
+	}
+
+	private static class RecordLock {
+		int readers = 0;
+		boolean writing = false;
+	}
+}
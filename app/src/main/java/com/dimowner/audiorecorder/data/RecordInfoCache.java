@@ -0,0 +1,66 @@
+package com.dimowner.audiorecorder.data;
+
+import android.util.LruCache;
+
+import com.dimowner.audiorecorder.app.info.RecordInfo;
+import com.dimowner.audiorecorder.audio.AudioDecoder;
+
+import java.io.File;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * In memory cache of media metadata read with {@link AudioDecoder#readRecordInfo}.
+ * Cached info is used while the file path, size and last modified time are the same.
+ */
+public class RecordInfoCache {
+
+	/** Enough for directories of several thousands records, one entry takes about 200 bytes. */
+	private static final int MAX_ENTRIES = 8192;
+
+	private final LruCache<String, RecordInfo> cache = new LruCache<>(MAX_ENTRIES);
+
+	private volatile static RecordInfoCache instance;
+
+	public static RecordInfoCache getInstance() {
+		if (instance == null) {
+			synchronized (RecordInfoCache.class) {
+				if (instance == null) {
+					instance = new RecordInfoCache();
+				}
+			}
+		}
+		return instance;
+	}
+
+	private RecordInfoCache() {
+	}
+
+	/**
+	 * Get cached metadata of the file without reading it.
+	 * @return Cached info or null when there is no info or the file was changed.
+	 */
+	@Nullable
+	public RecordInfo getCachedRecordInfo(@NonNull File file) {
+		RecordInfo info = cache.get(file.getAbsolutePath());
+		if (info != null && info.getSize() == file.length() && info.getCreated() == file.lastModified()) {
+			return info;
+		}
+		return null;
+	}
+
+	/**
+	 * Get metadata of the file. The file is read when there is no valid cached info,
+	 * so should not be called on the main thread.
+	 */
+	@NonNull
+	public RecordInfo getRecordInfo(@NonNull File file) {
+		RecordInfo info = getCachedRecordInfo(file);
+		if (info == null) {
+			info = AudioDecoder.readRecordInfo(file);
+			cache.put(info.getLocation(), info);
+		}
+		return info;
+	}
+}
@@ -17,17 +17,22 @@
 package com.dimowner.audiorecorder.data.database;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import android.content.ContentValues;
 import android.content.Context;
 import android.database.Cursor;
 import android.database.SQLException;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
 import android.util.Log;
 
 import com.dimowner.audiorecorder.AppConstants;
 import com.dimowner.audiorecorder.BuildConfig;
+import com.dimowner.audiorecorder.collections.IntArrayList;
+import com.dimowner.audiorecorder.collections.LongArrayList;
 
 /**
  * Base class to communicate with some table T in database.
@@ -47,6 +52,9 @@ public abstract class DataSource<T> {
 	/** Tag for logging messages. */
 	private final String LOG_TAG = getClass().getSimpleName();
 
+	/** Compiled statements of the opened connection, keyed by SQL. Guarded by this. */
+	private final Map<String, SQLiteStatement> statements = new HashMap<>();
+
 
 	/**
 	 * Constructor.
@@ -61,14 +69,16 @@ public abstract class DataSource<T> {
 	/**
 	 * Open connection to SQLite database.
 	 */
-	public void open() {
+	public synchronized void open() {
+		releaseStatements();
 		db = dbHelper.getWritableDatabase();
 	}
 
 	/**
 	 * Close connection to SQLite database.
 	 */
-	public void close() {
+	public synchronized void close() {
+		releaseStatements();
 		db.close();
 		dbHelper.close();
 	}
@@ -100,13 +110,69 @@ public abstract class DataSource<T> {
 	 */
 	public abstract ContentValues itemToContentValues(T item);
 
+	/**
+	 * Insert several items into database for table T within one transaction.
+	 * Statements are compiled once per set of columns and reused for every item.
+	 * @param items Items that will be inserted.
+	 * @return Ids of inserted items, -1 for items which were not inserted.
+	 */
+	public synchronized List<Integer> insertItems(List<T> items) {
+		List<Integer> ids = new ArrayList<>(items.size());
+		db.beginTransaction();
+		try {
+			for (T item : items) {
+				ContentValues values = itemToContentValues(item);
+				if (values != null) {
+					List<String> columns = new ArrayList<>(values.keySet());
+					SQLiteStatement statement = getStatement(insertSql(columns));
+					statement.clearBindings();
+					for (int i = 0; i < columns.size(); i++) {
+						bindValue(statement, i + 1, values.get(columns.get(i)));
+					}
+					ids.add((int) statement.executeInsert());
+				} else {
+					Log.e(LOG_TAG, "Unable to write empty item!");
+					ids.add(-1);
+				}
+			}
+			db.setTransactionSuccessful();
+		} finally {
+			db.endTransaction();
+		}
+		Log.d(LOG_TAG, "Insert into " + tableName + " count = " + ids.size());
+		return ids;
+	}
+
 	/**
 	 * Delete item from database for table T.
 	 * @param id Item id of element that will be deleted from table T.
 	 */
 	public int deleteItem(int id) {
 		Log.d(LOG_TAG, tableName + " deleted ID = " + id);
-		return db.delete(tableName, SQLiteHelper.COLUMN_ID + " = " + id, null);
+		return db.delete(tableName, SQLiteHelper.COLUMN_ID + " = ?", new String[] {String.valueOf(id)});
+	}
+
+	/**
+	 * Delete several items from database for table T within one transaction.
+	 * @param ids Ids of items that will be deleted.
+	 * @return Count of deleted items.
+	 */
+	public synchronized int deleteItems(List<Integer> ids) {
+		SQLiteStatement statement = getStatement("DELETE FROM " + tableName
+				+ " WHERE " + SQLiteHelper.COLUMN_ID + " = ?");
+		int count = 0;
+		db.beginTransaction();
+		try {
+			for (Integer id : ids) {
+				statement.bindLong(1, id);
+				count += statement.executeUpdateDelete();
+			}
+			db.setTransactionSuccessful();
+		} finally {
+			db.endTransaction();
+		}
+		Log.d(LOG_TAG, tableName + " deleted count = " + count);
+		return count;
 	}
 
 	/**
@@ -116,9 +182,8 @@ public abstract class DataSource<T> {
 	public int updateItem(T item) {
 		ContentValues values = itemToContentValues(item);
 		if (values != null && values.containsKey(SQLiteHelper.COLUMN_ID)) {
-			String where = SQLiteHelper.COLUMN_ID + " = "
-					+ values.get(SQLiteHelper.COLUMN_ID);
-			int n = db.update(tableName, values, where, null);
+			int n = db.update(tableName, values, SQLiteHelper.COLUMN_ID + " = ?",
+					new String[] {values.getAsString(SQLiteHelper.COLUMN_ID)});
 			Log.d(LOG_TAG, "Updated records count = " + n);
 			return n;
 		} else {
@@ -127,6 +192,40 @@ public abstract class DataSource<T> {
 		}
 	}
 
+	/**
+	 * Update several items in database for table T within one transaction.
+	 * Statements are compiled once per set of columns and reused for every item.
+	 * @param items Items that will be updated.
+	 * @return Count of updated records.
+	 */
+	public synchronized int updateItems(List<T> items) {
+		int count = 0;
+		db.beginTransaction();
+		try {
+			for (T item : items) {
+				ContentValues values = itemToContentValues(item);
+				if (values != null && values.containsKey(SQLiteHelper.COLUMN_ID)) {
+					List<String> columns = new ArrayList<>(values.keySet());
+					columns.remove(SQLiteHelper.COLUMN_ID);
+					SQLiteStatement statement = getStatement(updateSql(columns));
+					statement.clearBindings();
+					for (int i = 0; i < columns.size(); i++) {
+						bindValue(statement, i + 1, values.get(columns.get(i)));
+					}
+					bindValue(statement, columns.size() + 1, values.get(SQLiteHelper.COLUMN_ID));
+					count += statement.executeUpdateDelete();
+				} else {
+					Log.e(LOG_TAG, "Unable to update empty item!");
+				}
+			}
+			db.setTransactionSuccessful();
+		} finally {
+			db.endTransaction();
+		}
+		Log.d(LOG_TAG, "Updated records count = " + count);
+		return count;
+	}
+
 	/**
 	 * Get all records from database for table T.
 	 * @return List that contains all records of table T.
@@ -140,7 +239,7 @@ public abstract class DataSource<T> {
 	 * Get all records from database for table T.
 	 * @return List that contains all records of table T.
 	 */
-	public ArrayList<Integer> getAllItemsIds() {
+	public IntArrayList getAllItemsIds() {
 		Cursor cursor = queryLocal("SELECT " + SQLiteHelper.COLUMN_ID + " FROM " + tableName + " ORDER BY " + SQLiteHelper.COLUMN_DATE_ADDED + " DESC");
 		return convertCursorIds(cursor);
 	}
@@ -183,6 +282,31 @@ public abstract class DataSource<T> {
 		return convertCursor(cursor);
 	}
 
+	/**
+	 * Get records page from database for table T using keyset pagination.
+	 * @param columns Comma separated list of columns to select.
+	 * @return List of records of table T.
+	 */
+	ArrayList<T> getRecordsAfter(String columns, KeysetPage page) {
+		return convertCursor(queryLocal(page.getQuery(tableName, columns, AppConstants.DEFAULT_PER_PAGE), page.getArgs()));
+	}
+
+	/**
+	 * Get waveform data of the item from table T.
+	 * @param id Item id to select.
+	 * @return Waveform data or null if item not found.
+	 */
+	public byte[] getItemData(int id) {
+		Cursor cursor = queryLocal("SELECT " + SQLiteHelper.COLUMN_DATA + " FROM " + tableName
+				+ " WHERE " + SQLiteHelper.COLUMN_ID + " = ?", new String[] {String.valueOf(id)});
+		byte[] data = null;
+		if (cursor.moveToFirst()) {
+			data = cursor.getBlob(0);
+		}
+		cursor.close();
+		return data;
+	}
+
 	/**
 	 * Delete all records from the table
 	 * @throws SQLException on error
@@ -209,7 +333,7 @@ public abstract class DataSource<T> {
 	 */
 	public T getItem(int id) {
 		Cursor cursor = queryLocal("SELECT * FROM " + tableName
-				+ " WHERE " + SQLiteHelper.COLUMN_ID + " = " + id);
+				+ " WHERE " + SQLiteHelper.COLUMN_ID + " = ?", new String[] {String.valueOf(id)});
 		List<T> list = convertCursor(cursor);
 		if (list.size() > 0) {
 			return list.get(0);
@@ -217,6 +341,67 @@ public abstract class DataSource<T> {
 		return null;
 	}
 
+	/**
+	 * Get compiled statement for the SQL. Statements are cached until the connection is reopened.
+	 * Must be called with the lock of this DataSource held, statements are not thread safe.
+	 */
+	protected SQLiteStatement getStatement(String sql) {
+		SQLiteStatement statement = statements.get(sql);
+		if (statement == null) {
+			statement = db.compileStatement(sql);
+			statements.put(sql, statement);
+		}
+		return statement;
+	}
+
+	private void releaseStatements() {
+		for (SQLiteStatement statement : statements.values()) {
+			statement.close();
+		}
+		statements.clear();
+	}
+
+	private String insertSql(List<String> columns) {
+		StringBuilder sql = new StringBuilder("INSERT INTO ").append(tableName).append(" (");
+		StringBuilder params = new StringBuilder();
+		for (int i = 0; i < columns.size(); i++) {
+			if (i > 0) {
+				sql.append(", ");
+				params.append(", ");
+			}
+			sql.append(columns.get(i));
+			params.append("?");
+		}
+		return sql.append(") VALUES (").append(params).append(")").toString();
+	}
+
+	private String updateSql(List<String> columns) {
+		StringBuilder sql = new StringBuilder("UPDATE ").append(tableName).append(" SET ");
+		for (int i = 0; i < columns.size(); i++) {
+			if (i > 0) {
+				sql.append(", ");
+			}
+			sql.append(columns.get(i)).append(" = ?");
+		}
+		return sql.append(" WHERE ").append(SQLiteHelper.COLUMN_ID).append(" = ?").toString();
+	}
+
+	private static void bindValue(SQLiteStatement statement, int index, Object value) {
+		if (value == null) {
+			statement.bindNull(index);
+		} else if (value instanceof byte[]) {
+			statement.bindBlob(index, (byte[]) value);
+		} else if (value instanceof Float || value instanceof Double) {
+			statement.bindDouble(index, ((Number) value).doubleValue());
+		} else if (value instanceof Number) {
+			statement.bindLong(index, ((Number) value).longValue());
+		} else if (value instanceof Boolean) {
+			statement.bindLong(index, (Boolean) value ? 1 : 0);
+		} else {
+			statement.bindString(index, value.toString());
+		}
+	}
+
 	/**
 	 * Convert {@link android.database.Cursor Cursor} into item T
 	 * @param cursor Cursor.
@@ -241,17 +426,15 @@ public abstract class DataSource<T> {
 	 * @param cursor Cursor.
 	 * @return T item which corresponds some table in database.
 	 */
-	public ArrayList<Integer> convertCursorIds(Cursor cursor) {
-		ArrayList<Integer> items = new ArrayList<>();
+	public IntArrayList convertCursorIds(Cursor cursor) {
+		IntArrayList items = new IntArrayList(Math.max(1, cursor.getCount()));
+		int column = cursor.getColumnIndex(SQLiteHelper.COLUMN_ID);
 		cursor.moveToFirst();
 		while (!cursor.isAfterLast() && !cursor.isBeforeFirst()) {
-			items.add(cursor.getInt(cursor.getColumnIndex(SQLiteHelper.COLUMN_ID)));
+			items.add(cursor.getInt(column));
 			cursor.moveToNext();
 		}
 		cursor.close();
-		if (items.size() > 0) {
-			return items;
-		}
 		return items;
 	}
 
@@ -268,8 +451,18 @@ public abstract class DataSource<T> {
 	 * @return Cursor that contains query result.
 	 */
 	protected Cursor queryLocal(String query) {
+		return queryLocal(query, null);
+	}
+
+	/**
+	 * Query to local SQLite database with bound arguments.
+	 * @param query Query string with ? placeholders.
+	 * @param args Values of the placeholders.
+	 * @return Cursor that contains query result.
+	 */
+	protected Cursor queryLocal(String query, String[] args) {
 		Log.d(LOG_TAG, "queryLocal: " + query);
-		Cursor c = db.rawQuery(query, null);
+		Cursor c = db.rawQuery(query, args);
 		if (BuildConfig.DEBUG) {
 			StringBuilder data = new StringBuilder("Cursor[");
 			if (c.moveToFirst()) {
@@ -310,18 +503,16 @@ public abstract class DataSource<T> {
 	}
 
 	//TODO: move this method
-	public List<Long> getRecordsDurations() {
+	public LongArrayList getRecordsDurations() {
 		Cursor cursor = queryLocal("SELECT " + SQLiteHelper.COLUMN_DURATION + " FROM " + tableName);
-		ArrayList<Long> items = new ArrayList<>();
+		LongArrayList items = new LongArrayList(Math.max(1, cursor.getCount()));
+		int column = cursor.getColumnIndex(SQLiteHelper.COLUMN_DURATION);
 		cursor.moveToFirst();
 		while (!cursor.isAfterLast()) {
-			items.add(cursor.getLong(cursor.getColumnIndex(SQLiteHelper.COLUMN_DURATION)));
+			items.add(cursor.getLong(column));
 			cursor.moveToNext();
 		}
 		cursor.close();
-		if (items.size() > 0) {
-			return items;
-		}
 		return items;
 	}
 }
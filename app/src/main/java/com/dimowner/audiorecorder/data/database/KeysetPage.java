@@ -0,0 +1,88 @@
+package com.dimowner.audiorecorder.data.database;
+
+import com.dimowner.audiorecorder.AppConstants;
+
+/**
+ * Page of a keyset paginated list. Rows are ordered by (column, id), the page starts right after
+ * the key of the last loaded row, so rows with equal sort values are neither skipped nor repeated
+ * and the cost of a page doesn't depend on how deep it is. Needs an index on (column, id).
+ */
+final class KeysetPage {
+
+	final String column;
+	final boolean ascending;
+	/** Sort column value of the last loaded row or null for the first page. */
+	final String afterValue;
+	final int afterId;
+
+	KeysetPage(String column, boolean ascending, String afterValue, int afterId) {
+		this.column = column;
+		this.ascending = ascending;
+		this.afterValue = afterValue;
+		this.afterId = afterId;
+	}
+
+	/**
+	 * Records list page for one of AppConstants.SORT_* orders.
+	 * @param lastRecord The last loaded record or null to load the first page.
+	 */
+	static KeysetPage forOrder(int order, Record lastRecord) {
+		String column;
+		boolean ascending;
+		String afterValue = null;
+		switch (order) {
+			case AppConstants.SORT_NAME:
+			case AppConstants.SORT_NAME_DESC:
+				column = SQLiteHelper.COLUMN_NAME;
+				ascending = order == AppConstants.SORT_NAME;
+				if (lastRecord != null) {
+					afterValue = lastRecord.getName();
+				}
+				break;
+			case AppConstants.SORT_DURATION:
+			case AppConstants.SORT_DURATION_DESC:
+				column = SQLiteHelper.COLUMN_DURATION;
+				ascending = order == AppConstants.SORT_DURATION_DESC;
+				if (lastRecord != null) {
+					afterValue = String.valueOf(lastRecord.getDuration());
+				}
+				break;
+			case AppConstants.SORT_DATE_DESC:
+			case AppConstants.SORT_DATE:
+			default:
+				column = SQLiteHelper.COLUMN_DATE_ADDED;
+				ascending = order == AppConstants.SORT_DATE_DESC;
+				if (lastRecord != null) {
+					afterValue = String.valueOf(lastRecord.getAdded());
+				}
+		}
+		return new KeysetPage(column, ascending, afterValue, lastRecord != null ? lastRecord.getId() : Record.NO_ID);
+	}
+
+	/**
+	 * Select query of the page, bind {@link #getArgs()} to it.
+	 * @param columns Comma separated list of columns to select.
+	 */
+	String getQuery(String tableName, String columns, int limit) {
+		String direction = ascending ? " ASC" : " DESC";
+		String compare = ascending ? " > ?" : " < ?";
+		StringBuilder query = new StringBuilder("SELECT ").append(columns).append(" FROM ").append(tableName);
+		if (afterValue != null) {
+			//The inclusive bound alone seeks the index, "a > ? OR (a = ? AND id > ?)" is scanned from the start.
+			query.append(" WHERE ").append(column).append(ascending ? " >= ?" : " <= ?")
+					.append(" AND (").append(column).append(compare)
+					.append(" OR ").append(SQLiteHelper.COLUMN_ID).append(compare).append(")");
+		}
+		query.append(" ORDER BY ").append(column).append(direction)
+				.append(", ").append(SQLiteHelper.COLUMN_ID).append(direction)
+				.append(" LIMIT ").append(limit);
+		return query.toString();
+	}
+
+	String[] getArgs() {
+		if (afterValue == null) {
+			return null;
+		}
+		return new String[] {afterValue, afterValue, String.valueOf(afterId)};
+	}
+}
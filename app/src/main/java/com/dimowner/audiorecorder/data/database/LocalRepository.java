@@ -16,10 +16,13 @@
 
 package com.dimowner.audiorecorder.data.database;
 
+import com.dimowner.audiorecorder.collections.IntArrayList;
+import com.dimowner.audiorecorder.collections.LongArrayList;
 import com.dimowner.audiorecorder.exception.FailedToRestoreRecord;
 
 import java.io.IOException;
 import java.util.List;
+import java.util.Set;
 
 public interface LocalRepository {
 
@@ -35,15 +38,34 @@ public interface LocalRepository {
 
 	boolean hasRecordsWithPath(String path);
 
+	/**
+	 * Paths of all records, read with a single query. Use instead of looking up records by path one by one.
+	 */
+	Set<String> getAllRecordPaths();
+
+	/**
+	 * Records of the format which were never finalized after recording, read without waveform data.
+	 */
+	List<RecordPath> getUnfinishedRecordPaths(String format);
+
 	Record getTrashRecord(int id);
 
 	List<Record> getAllRecords();
 
-	List<Integer> getAllItemsIds();
+	IntArrayList getAllItemsIds();
 
 	List<Record> getRecords(int page);
 
-	List<Record> getRecords(int page, int order);
+	/**
+	 * Get next records page for the records list. Pages are selected by the sort key of the last
+	 * loaded record, not by offset. Records are loaded without waveform data,
+	 * use {@link #getRecordWaveform(int)} to load it when needed.
+	 * @param lastRecord Last record of the previous page or null to load the first page.
+	 * @param order One of AppConstants.SORT_* values.
+	 */
+	List<Record> getRecordsAfter(Record lastRecord, int order);
+
+	int[] getRecordWaveform(int id);
 
 	boolean deleteAllRecords();
 
@@ -53,15 +75,24 @@ public interface LocalRepository {
 
 	boolean updateRecord(Record record);
 
+	boolean updateRecords(List<Record> records);
+
 	boolean updateTrashRecord(Record record);
 
+	boolean updateTrashRecords(List<Record> records);
+
 	Record insertEmptyFile(String filePath) throws IOException;
 
 	void deleteRecord(int id);
 
+	/**
+	 * Move several records into trash. Database is updated with one transaction per table.
+	 */
+	void deleteRecords(List<Integer> ids);
+
 	void deleteRecordForever(int id);
 
-	List<Long> getRecordsDurations();
+	LongArrayList getRecordsDurations();
 
 	boolean addToBookmarks(int id);
 
@@ -71,7 +102,7 @@ public interface LocalRepository {
 
 	List<Record> getTrashRecords();
 
-	List<Integer> getTrashRecordsIds();
+	IntArrayList getTrashRecordsIds();
 
 	int getTrashRecordsCount();
 
@@ -83,5 +114,15 @@ public interface LocalRepository {
 
 	void removeOutdatedTrashRecords();
 
+	/**
+	 * Check in the background for records whose files were changed since the last check.
+	 * Lost records are reported to {@link OnRecordsLostListener}.
+	 */
+	void checkForLostRecords();
+
+	/**
+	 * Set listener of lost records, it is called on the main thread.
+	 * Setting a listener starts the check for lost records.
+	 */
 	void setOnRecordsLostListener(OnRecordsLostListener listener);
 }
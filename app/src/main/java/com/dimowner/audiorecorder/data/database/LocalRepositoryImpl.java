@@ -21,6 +21,9 @@ import android.database.SQLException;
 
 import com.dimowner.audiorecorder.ARApplication;
 import com.dimowner.audiorecorder.AppConstants;
+import com.dimowner.audiorecorder.BackgroundQueue;
+import com.dimowner.audiorecorder.collections.IntArrayList;
+import com.dimowner.audiorecorder.collections.LongArrayList;
 import com.dimowner.audiorecorder.data.FileRepository;
 import com.dimowner.audiorecorder.data.Prefs;
 import com.dimowner.audiorecorder.exception.FailedToRestoreRecord;
@@ -30,7 +33,9 @@ import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Date;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 import timber.log.Timber;
 
@@ -66,20 +71,26 @@ public class LocalRepositoryImpl implements LocalRepository {
 
 	private volatile static LocalRepositoryImpl instance;
 
-	private OnRecordsLostListener onLostRecordsListener;
+	private final LostRecordsReconciler lostRecordsReconciler;
 
-	private LocalRepositoryImpl(RecordsDataSource dataSource, TrashDataSource trashDataSource, FileRepository fileRepository, Prefs prefs) {
+	private LocalRepositoryImpl(RecordsDataSource dataSource, TrashDataSource trashDataSource, FileRepository fileRepository,
+			Prefs prefs, BackgroundQueue tasks) {
 		this.dataSource = dataSource;
 		this.trashDataSource = trashDataSource;
 		this.fileRepository = fileRepository;
 		this.prefs = prefs;
+		this.lostRecordsReconciler = new LostRecordsReconciler(dataSource, tasks);
 	}
 
-	public static LocalRepositoryImpl getInstance(RecordsDataSource source, TrashDataSource trashSource, FileRepository fileRepository, Prefs prefs) {
+	/**
+	 * @param tasks Queue to check for lost records in the background.
+	 */
+	public static LocalRepositoryImpl getInstance(RecordsDataSource source, TrashDataSource trashSource, FileRepository fileRepository,
+			Prefs prefs, BackgroundQueue tasks) {
 		if (instance == null) {
 			synchronized (LocalRepositoryImpl.class) {
 				if (instance == null) {
-					instance = new LocalRepositoryImpl(source, trashSource, fileRepository, prefs);
+					instance = new LocalRepositoryImpl(source, trashSource, fileRepository, prefs, tasks);
 					instance.removeOutdatedTrashRecords();
 				}
 			}
@@ -101,14 +112,7 @@ public class LocalRepositoryImpl implements LocalRepository {
 		if (!dataSource.isOpen()) {
 			dataSource.open();
 		}
-		Record r = dataSource.getItem(id);
-		if (r != null) {
-			List<Record> l = new ArrayList<>(1);
-			l.add(r);
-			checkForLostRecords(l);
-			return r;
-		}
-		return null;
+		return dataSource.getItem(id);
 	}
 
 	@Override
@@ -150,6 +154,27 @@ public class LocalRepositoryImpl implements LocalRepository {
 		return records.size() > 0;
 	}
 
+	@Override
+	public Set<String> getAllRecordPaths() {
+		if (!dataSource.isOpen()) {
+			dataSource.open();
+		}
+		List<RecordPath> records = dataSource.getRecordPaths();
+		Set<String> paths = new HashSet<>(records.size() * 2);
+		for (RecordPath record : records) {
+			paths.add(record.getPath());
+		}
+		return paths;
+	}
+
+	@Override
+	public List<RecordPath> getUnfinishedRecordPaths(String format) {
+		if (!dataSource.isOpen()) {
+			dataSource.open();
+		}
+		return dataSource.getUnfinishedRecordPaths(format);
+	}
+
 	@Override
 	public Record getTrashRecord(int id) {
 		if (!trashDataSource.isOpen()) {
@@ -174,6 +199,14 @@ public class LocalRepositoryImpl implements LocalRepository {
 		return (dataSource.updateItem(record) > 0);
 	}
 
+	@Override
+	public boolean updateRecords(List<Record> records) {
+		if (!dataSource.isOpen()) {
+			dataSource.open();
+		}
+		return (dataSource.updateItems(records) == records.size());
+	}
+
 	@Override
 	public boolean updateTrashRecord(Record record) {
 		if (!trashDataSource.isOpen()) {
@@ -183,6 +216,14 @@ public class LocalRepositoryImpl implements LocalRepository {
 		return (trashDataSource.updateItem(record) > 0);
 	}
 
+	@Override
+	public boolean updateTrashRecords(List<Record> records) {
+		if (!trashDataSource.isOpen()) {
+			trashDataSource.open();
+		}
+		return (trashDataSource.updateItems(records) == records.size());
+	}
+
 	@Override
 	public Record insertEmptyFile(String path) throws IOException {
 		if (path != null && !path.isEmpty()) {
@@ -220,13 +261,11 @@ public class LocalRepositoryImpl implements LocalRepository {
 		if (!dataSource.isOpen()) {
 			dataSource.open();
 		}
-		List<Record> list = dataSource.getAll();
-		checkForLostRecords(list);
-		return list;
+		return dataSource.getAll();
 	}
 
 	@Override
-	public List<Integer> getAllItemsIds() {
+	public IntArrayList getAllItemsIds() {
 		if (!dataSource.isOpen()) {
 			dataSource.open();
 		}
@@ -238,40 +277,23 @@ public class LocalRepositoryImpl implements LocalRepository {
 		if (!dataSource.isOpen()) {
 			dataSource.open();
 		}
-		List<Record> list = dataSource.getRecords(page);
-		checkForLostRecords(list);
-		return list;
+		return dataSource.getRecords(page);
 	}
 
 	@Override
-	public List<Record> getRecords(int page, int order) {
+	public List<Record> getRecordsAfter(Record lastRecord, int order) {
 		if (!dataSource.isOpen()) {
 			dataSource.open();
 		}
-		String orderStr;
-		switch (order) {
-			case AppConstants.SORT_NAME:
-				orderStr = SQLiteHelper.COLUMN_NAME + " ASC";
-				break;
-			case AppConstants.SORT_NAME_DESC:
-				orderStr = SQLiteHelper.COLUMN_NAME + " DESC";
-				break;
-			case AppConstants.SORT_DURATION:
-				orderStr = SQLiteHelper.COLUMN_DURATION + " DESC";
-				break;
-			case AppConstants.SORT_DURATION_DESC:
-				orderStr = SQLiteHelper.COLUMN_DURATION + " ASC";
-				break;
-			case AppConstants.SORT_DATE_DESC:
-				orderStr = SQLiteHelper.COLUMN_DATE_ADDED + " ASC";
-				break;
-			case AppConstants.SORT_DATE:
-			default:
-				orderStr = SQLiteHelper.COLUMN_DATE_ADDED + " DESC";
-		}
-		List<Record> list = dataSource.getRecords(page, orderStr);
-		checkForLostRecords(list);
-		return list;
+		return dataSource.getRecordsWithoutData(KeysetPage.forOrder(order, lastRecord));
+	}
+
+	@Override
+	public int[] getRecordWaveform(int id) {
+		if (!dataSource.isOpen()) {
+			dataSource.open();
+		}
+		return Record.byte2int(dataSource.getItemData(id));
 	}
 
 	@Override
@@ -284,9 +306,7 @@ public class LocalRepositoryImpl implements LocalRepository {
 		if (c != null && c.moveToFirst()) {
 			Record r = dataSource.recordToItem(c);
 			if (!isFileExists(r.getPath())) {
-				List<Record> l = new ArrayList<>(1);
-				l.add(r);
-				checkForLostRecords(l);
+				lostRecordsReconciler.requestReconcile();
 			}
 			return r;
 		} else {
@@ -307,24 +327,43 @@ public class LocalRepositoryImpl implements LocalRepository {
 		}
 		Record recordToDelete = dataSource.getItem(id);
 		if (recordToDelete != null) {
-			String renamed = fileRepository.markAsTrashRecord(recordToDelete.getPath());
-			if (renamed != null) {
-				recordToDelete.setPath(renamed);
-				trashDataSource.insertItem(recordToDelete);
-			} else {
-				renamed = fileRepository.markAsTrashRecord(recordToDelete.getPath());
-				if (renamed != null) {
-					recordToDelete.setPath(renamed);
-					trashDataSource.insertItem(recordToDelete);
-				} else {
-					trashDataSource.insertItem(recordToDelete);
-//					fileRepository.deleteRecordFile(recordToDelete.getPath());
-				}
-			}
+			markRecordFileAsTrash(recordToDelete);
+			trashDataSource.insertItem(recordToDelete);
 		}
 		dataSource.deleteItem(id);
 	}
 
+	@Override
+	public void deleteRecords(List<Integer> ids) {
+		if (!dataSource.isOpen()) {
+			dataSource.open();
+		}
+		if (!trashDataSource.isOpen()) {
+			trashDataSource.open();
+		}
+		List<Record> recordsToDelete = new ArrayList<>(ids.size());
+		for (Integer id : ids) {
+			Record record = dataSource.getItem(id);
+			if (record != null) {
+				markRecordFileAsTrash(record);
+				recordsToDelete.add(record);
+			}
+		}
+		trashDataSource.insertItems(recordsToDelete);
+		dataSource.deleteItems(ids);
+	}
+
+	private void markRecordFileAsTrash(Record record) {
+		String renamed = fileRepository.markAsTrashRecord(record.getPath());
+		if (renamed == null) {
+			//Try again.
+			renamed = fileRepository.markAsTrashRecord(record.getPath());
+		}
+		if (renamed != null) {
+			record.setPath(renamed);
+		}
+	}
+
 	@Override
 	public void deleteRecordForever(int id) {
 		if (!dataSource.isOpen()) {
@@ -334,7 +373,7 @@ public class LocalRepositoryImpl implements LocalRepository {
 	}
 
 	@Override
-	public List<Long> getRecordsDurations() {
+	public LongArrayList getRecordsDurations() {
 		if (!dataSource.isOpen()) {
 			dataSource.open();
 		}
@@ -406,7 +445,7 @@ public class LocalRepositoryImpl implements LocalRepository {
 	}
 
 	@Override
-	public List<Integer> getTrashRecordsIds() {
+	public IntArrayList getTrashRecordsIds() {
 		if (!trashDataSource.isOpen()) {
 			trashDataSource.open();
 		}
@@ -485,12 +524,16 @@ public class LocalRepositoryImpl implements LocalRepository {
 		}
 		long curTime = new Date().getTime();
 		List<Record> list = trashDataSource.getAll();
+		List<Integer> outdated = new ArrayList<>();
 		for (int i = 0; i < list.size(); i++) {
 			if (list.get(i).getRemoved() + AppConstants.RECORD_IN_TRASH_MAX_DURATION < curTime) {
 				fileRepository.deleteRecordFile(list.get(i).getPath());
-				trashDataSource.deleteItem(list.get(i).getId());
+				outdated.add(list.get(i).getId());
 			}
 		}
+		if (!outdated.isEmpty()) {
+			trashDataSource.deleteItems(outdated);
+		}
 	}
 
 	@Override
@@ -508,20 +551,13 @@ public class LocalRepositoryImpl implements LocalRepository {
 //		}
 	}
 
-	private void checkForLostRecords(List<Record> list) {
-		List<Record> lost = new ArrayList<>();
-		for (int i = 0; i < list.size(); i++) {
-			if (!isFileExists(list.get(i).getPath())) {
-				lost.add(list.get(i));
-			}
-		}
-		if (onLostRecordsListener != null && !lost.isEmpty()) {
-			onLostRecordsListener.onLostRecords(lost);
-		}
+	@Override
+	public void checkForLostRecords() {
+		lostRecordsReconciler.requestReconcile();
 	}
 
 	@Override
 	public void setOnRecordsLostListener(OnRecordsLostListener onLostRecordsListener) {
-		this.onLostRecordsListener = onLostRecordsListener;
+		lostRecordsReconciler.setOnRecordsLostListener(onLostRecordsListener);
 	}
 }
@@ -0,0 +1,189 @@
+package com.dimowner.audiorecorder.data.database;
+
+import android.os.FileObserver;
+
+import com.dimowner.audiorecorder.BackgroundQueue;
+import com.dimowner.audiorecorder.util.AndroidUtils;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import timber.log.Timber;
+
+/**
+ * Finds records whose files are gone without probing every record on each records load.
+ * Directories with records are watched with {@link FileObserver}, so a deleted or moved away file is checked
+ * as soon as it happens and records of watched directories are not checked again on reconciliation.
+ * Every record keeps the time its file was last seen, it is used only for directories which are not watched yet,
+ * e.g. on cold start: a record file is checked when its directory changed after that time.
+ * Lost records are reported on the main thread.
+ */
+class LostRecordsReconciler {
+
+	private static final int WATCH_EVENTS = FileObserver.DELETE | FileObserver.MOVED_FROM
+			| FileObserver.DELETE_SELF | FileObserver.MOVE_SELF;
+	/** The app moves record files itself and updates the database right after, give it time to do that. */
+	private static final long EVENT_VERIFY_DELAY_MILLS = 1000;
+
+	private final RecordsDataSource dataSource;
+	private final BackgroundQueue tasks;
+	/** Watched directories, kept here because observer stops watching when it is garbage collected. */
+	private final Map<String, FileObserver> observers = new HashMap<>();
+	private final Set<Integer> lostIds = new HashSet<>();
+
+	private volatile OnRecordsLostListener onLostRecordsListener;
+
+	LostRecordsReconciler(RecordsDataSource dataSource, BackgroundQueue tasks) {
+		this.dataSource = dataSource;
+		this.tasks = tasks;
+	}
+
+	void setOnRecordsLostListener(OnRecordsLostListener listener) {
+		this.onLostRecordsListener = listener;
+		if (listener != null) {
+			requestReconcile();
+		}
+	}
+
+	void requestReconcile() {
+		tasks.postRunnable(this::reconcile);
+	}
+
+	private synchronized void reconcile() {
+		if (!dataSource.isOpen()) {
+			dataSource.open();
+		}
+		//Taken before the check, so a file removed while checking is seen by the next reconciliation.
+		long time = System.currentTimeMillis();
+		List<RecordPath> records = dataSource.getRecordPaths();
+		Set<String> watched = new HashSet<>(observers.keySet());
+		//Start watching before the check, so nothing removed during the check is missed.
+		Map<String, Long> dirsModified = updateObservers(records);
+		List<RecordPath> changed = new ArrayList<>();
+		for (RecordPath record : records) {
+			String dir = new File(record.getPath()).getParent();
+			if (lostIds.contains(record.getId())) {
+				//Lost file might be restored.
+				changed.add(record);
+			} else if (!watched.contains(dir)) {
+				//Last modified is 0 when the directory doesn't exist.
+				long modified = dirsModified.get(dir);
+				if (modified == 0 || modified >= record.getLastVerified()) {
+					changed.add(record);
+				}
+			}
+		}
+		Timber.v("Reconcile records, changed: %d", changed.size());
+		verify(changed, time);
+		reportLostRecords();
+	}
+
+	/**
+	 * Directory is deleted or moved away, its records are checked as not watched ones.
+	 */
+	private synchronized void onDirGone(String dir) {
+		FileObserver observer = observers.remove(dir);
+		if (observer != null) {
+			observer.stopWatching();
+		}
+		reconcile();
+	}
+
+	private synchronized void verifyPath(String path) {
+		if (!dataSource.isOpen()) {
+			dataSource.open();
+		}
+		int lostCount = lostIds.size();
+		verify(dataSource.getRecordPaths(path), System.currentTimeMillis());
+		if (lostIds.size() > lostCount) {
+			reportLostRecords();
+		}
+	}
+
+	private void verify(List<RecordPath> records, long time) {
+		List<Integer> found = new ArrayList<>();
+		for (RecordPath record : records) {
+			if (new File(record.getPath()).exists()) {
+				found.add(record.getId());
+				lostIds.remove(record.getId());
+			} else {
+				lostIds.add(record.getId());
+			}
+		}
+		dataSource.setLastVerified(found, time);
+	}
+
+	private void reportLostRecords() {
+		OnRecordsLostListener listener = onLostRecordsListener;
+		if (listener == null || lostIds.isEmpty()) {
+			return;
+		}
+		List<Record> lost = new ArrayList<>(lostIds.size());
+		Iterator<Integer> iterator = lostIds.iterator();
+		while (iterator.hasNext()) {
+			Record record = dataSource.getItem(iterator.next());
+			if (record != null) {
+				lost.add(record);
+			} else {
+				//Record was deleted.
+				iterator.remove();
+			}
+		}
+		if (!lost.isEmpty()) {
+			AndroidUtils.runOnUIThread(() -> listener.onLostRecords(lost));
+		}
+	}
+
+	/**
+	 * Watch directories which contain records and stop watching the others.
+	 * @return Last modified time of every directory with records.
+	 */
+	private Map<String, Long> updateObservers(List<RecordPath> records) {
+		Map<String, Long> dirsModified = new HashMap<>();
+		for (RecordPath record : records) {
+			String dir = new File(record.getPath()).getParent();
+			if (!dirsModified.containsKey(dir)) {
+				dirsModified.put(dir, dir != null ? new File(dir).lastModified() : 0);
+			}
+		}
+		Iterator<Map.Entry<String, FileObserver>> iterator = observers.entrySet().iterator();
+		while (iterator.hasNext()) {
+			Map.Entry<String, FileObserver> entry = iterator.next();
+			if (!dirsModified.containsKey(entry.getKey())) {
+				entry.getValue().stopWatching();
+				iterator.remove();
+			}
+		}
+		for (Map.Entry<String, Long> entry : dirsModified.entrySet()) {
+			String dir = entry.getKey();
+			if (dir != null && entry.getValue() > 0 && !observers.containsKey(dir)) {
+				FileObserver observer = createObserver(dir);
+				observer.startWatching();
+				observers.put(dir, observer);
+			}
+		}
+		return dirsModified;
+	}
+
+	@SuppressWarnings("deprecation")
+	private FileObserver createObserver(String dir) {
+		return new FileObserver(dir, WATCH_EVENTS) {
+			@Override
+			public void onEvent(int event, String name) {
+				int type = event & FileObserver.ALL_EVENTS;
+				if (type == FileObserver.DELETE_SELF || type == FileObserver.MOVE_SELF) {
+					tasks.postRunnable(() -> onDirGone(dir), EVENT_VERIFY_DELAY_MILLS);
+				} else if (name != null) {
+					String path = dir + File.separator + name;
+					tasks.postRunnable(() -> verifyPath(path), EVENT_VERIFY_DELAY_MILLS);
+				}
+			}
+		};
+	}
+}
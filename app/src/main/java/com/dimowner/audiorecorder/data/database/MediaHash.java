@@ -0,0 +1,69 @@
+package com.dimowner.audiorecorder.data.database;
+
+/**
+ * SHA-256 of a media file together with the file state it was calculated for.
+ * Hash is valid while path, size, last modified time and inode of the file stay the same.
+ */
+public class MediaHash {
+
+	public static final long NO_INODE = 0;
+
+	private final int id;
+	private final String path;
+	private final long size;
+	private final long lastModified;
+	private final long inode;
+	private final String hash;
+
+	public MediaHash(int id, String path, long size, long lastModified, long inode, String hash) {
+		this.id = id;
+		this.path = path;
+		this.size = size;
+		this.lastModified = lastModified;
+		this.inode = inode;
+		this.hash = hash;
+	}
+
+	public int getId() {
+		return id;
+	}
+
+	public String getPath() {
+		return path;
+	}
+
+	public long getSize() {
+		return size;
+	}
+
+	public long getLastModified() {
+		return lastModified;
+	}
+
+	public long getInode() {
+		return inode;
+	}
+
+	public String getHash() {
+		return hash;
+	}
+
+	/**
+	 * Check that the hash was calculated for the same file state.
+	 */
+	public boolean matches(long size, long lastModified, long inode) {
+		return this.size == size && this.lastModified == lastModified
+				&& (this.inode == NO_INODE || inode == NO_INODE || this.inode == inode);
+	}
+
+	@Override
+	public String toString() {
+		return "MediaHash{" +
+				"path='" + path + '\'' +
+				", size=" + size +
+				", lastModified=" + lastModified +
+				", inode=" + inode +
+				", hash='" + hash + '\'' +
+				'}';
+	}
+}
@@ -0,0 +1,109 @@
+package com.dimowner.audiorecorder.data.database;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import java.util.List;
+
+/**
+ * Class to communicate with table: {@link SQLiteHelper#TABLE_MEDIA_HASHES} in database.
+ * There is at most one row per file path.
+ */
+public class MediaHashDataSource extends DataSource<MediaHash> {
+
+	private volatile static MediaHashDataSource instance;
+
+	public static MediaHashDataSource getInstance(Context context) {
+		if (instance == null) {
+			synchronized (MediaHashDataSource.class) {
+				if (instance == null) {
+					instance = new MediaHashDataSource(context);
+				}
+			}
+		}
+		return instance;
+	}
+
+	private MediaHashDataSource(Context context) {
+		super(context, SQLiteHelper.TABLE_MEDIA_HASHES);
+	}
+
+	@Override
+	public ContentValues itemToContentValues(MediaHash item) {
+		ContentValues values = new ContentValues();
+		values.put(SQLiteHelper.COLUMN_PATH, item.getPath());
+		values.put(SQLiteHelper.COLUMN_SIZE, item.getSize());
+		values.put(SQLiteHelper.COLUMN_LAST_MODIFIED, item.getLastModified());
+		values.put(SQLiteHelper.COLUMN_INODE, item.getInode());
+		values.put(SQLiteHelper.COLUMN_HASH, item.getHash());
+		return values;
+	}
+
+	@Override
+	public MediaHash recordToItem(Cursor cursor) {
+		return new MediaHash(
+				cursor.getInt(cursor.getColumnIndex(SQLiteHelper.COLUMN_ID)),
+				cursor.getString(cursor.getColumnIndex(SQLiteHelper.COLUMN_PATH)),
+				cursor.getLong(cursor.getColumnIndex(SQLiteHelper.COLUMN_SIZE)),
+				cursor.getLong(cursor.getColumnIndex(SQLiteHelper.COLUMN_LAST_MODIFIED)),
+				cursor.getLong(cursor.getColumnIndex(SQLiteHelper.COLUMN_INODE)),
+				cursor.getString(cursor.getColumnIndex(SQLiteHelper.COLUMN_HASH))
+		);
+	}
+
+	/**
+	 * Get stored hash of the file.
+	 * @param path File path.
+	 * @return Stored hash or null if there is none.
+	 */
+	public synchronized MediaHash getMediaHash(String path) {
+		openIfClosed();
+		List<MediaHash> list = convertCursor(queryLocal("SELECT * FROM " + tableName
+				+ " WHERE " + SQLiteHelper.COLUMN_PATH + " = ?", new String[] {path}));
+		if (list.size() > 0) {
+			return list.get(0);
+		}
+		return null;
+	}
+
+	/**
+	 * Store hash of the file, replaces previous hash stored for the same path.
+	 */
+	public synchronized void putMediaHash(MediaHash item) {
+		openIfClosed();
+		db.insertWithOnConflict(tableName, null, itemToContentValues(item), SQLiteDatabase.CONFLICT_REPLACE);
+	}
+
+	/**
+	 * Move stored hash to the new path of the file. Previous hash of the new path is dropped.
+	 */
+	public synchronized void moveMediaHash(String oldPath, String newPath) {
+		openIfClosed();
+		db.beginTransaction();
+		try {
+			db.delete(tableName, SQLiteHelper.COLUMN_PATH + " = ?", new String[] {newPath});
+			ContentValues values = new ContentValues();
+			values.put(SQLiteHelper.COLUMN_PATH, newPath);
+			db.update(tableName, values, SQLiteHelper.COLUMN_PATH + " = ?", new String[] {oldPath});
+			db.setTransactionSuccessful();
+		} finally {
+			db.endTransaction();
+		}
+	}
+
+	/**
+	 * Remove stored hash of the file.
+	 */
+	public synchronized void deleteMediaHash(String path) {
+		openIfClosed();
+		db.delete(tableName, SQLiteHelper.COLUMN_PATH + " = ?", new String[] {path});
+	}
+
+	private void openIfClosed() {
+		if (!isOpen()) {
+			open();
+		}
+	}
+}
@@ -89,7 +89,10 @@ public class Record {
 		this.data = amps;
 	}
 
-	public byte[] int2byte(int[] amps) {
+	public static byte[] int2byte(int[] amps) {
+		if (amps == null) {
+			return null;
+		}
 		byte[] bytes = new byte[amps.length];
 		for (int i = 0; i < amps.length; i++) {
 			if (amps[i] >= 255) {
@@ -103,7 +106,10 @@ public class Record {
 		return bytes;
 	}
 
-	public int[] byte2int(byte[] amps) {
+	public static int[] byte2int(byte[] amps) {
+		if (amps == null) {
+			return null;
+		}
 		int[] ints = new int[amps.length];
 		for (int i = 0; i < amps.length; i++) {
 			ints[i] = amps[i]+128;
@@ -163,6 +169,10 @@ public class Record {
 		return bitrate;
 	}
 
+	/**
+	 * Waveform of the record. Null for records loaded for list without waveform,
+	 * use {@link LocalRepository#getRecordWaveform(int)} to load it.
+	 */
 	public int[] getAmps() {
 		return amps;
 	}
@@ -0,0 +1,29 @@
+package com.dimowner.audiorecorder.data.database;
+
+/**
+ * Record file path with the time the file was last seen on the storage.
+ */
+public class RecordPath {
+
+	private final int id;
+	private final String path;
+	private final long lastVerified;
+
+	public RecordPath(int id, String path, long lastVerified) {
+		this.id = id;
+		this.path = path;
+		this.lastVerified = lastVerified;
+	}
+
+	public int getId() {
+		return id;
+	}
+
+	public String getPath() {
+		return path;
+	}
+
+	public long getLastVerified() {
+		return lastVerified;
+	}
+}
@@ -19,9 +19,13 @@ package com.dimowner.audiorecorder.data.database;
 import android.content.ContentValues;
 import android.content.Context;
 import android.database.Cursor;
+import android.database.sqlite.SQLiteStatement;
 
 import com.dimowner.audiorecorder.util.FileUtil;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import timber.log.Timber;
 
 /**
@@ -30,6 +34,9 @@ import timber.log.Timber;
  */
 public class RecordsDataSource extends DataSource<Record> {
 
+	private static final String RECORD_PATH_COLUMNS = SQLiteHelper.COLUMN_ID + ", " + SQLiteHelper.COLUMN_PATH
+			+ ", " + SQLiteHelper.COLUMN_LAST_VERIFIED;
+
 	private volatile static RecordsDataSource instance;
 
 	public static RecordsDataSource getInstance(Context context) {
@@ -66,7 +73,10 @@ public class RecordsDataSource extends DataSource<Record> {
 			values.put(SQLiteHelper.COLUMN_BITRATE, item.getBitrate());
 			values.put(SQLiteHelper.COLUMN_BOOKMARK, item.isBookmarked() ? 1 : 0);
 			values.put(SQLiteHelper.COLUMN_WAVEFORM_PROCESSED, item.isWaveformProcessed() ? 1 : 0);
-			values.put(SQLiteHelper.COLUMN_DATA, item.getData());
+			//Records loaded without waveform must not erase the stored one.
+			if (item.getData() != null) {
+				values.put(SQLiteHelper.COLUMN_DATA, item.getData());
+			}
 			//TODO: Remove this field from database.
 			values.put(SQLiteHelper.COLUMN_DATA_STR, "");
 			return values;
@@ -76,8 +86,71 @@ public class RecordsDataSource extends DataSource<Record> {
 		}
 	}
 
+	/**
+	 * Get records page without waveform data.
+	 */
+	ArrayList<Record> getRecordsWithoutData(KeysetPage page) {
+		return getRecordsAfter(SQLiteHelper.RECORDS_LIST_COLUMNS, page);
+	}
+
+	/**
+	 * Id, path and last verification time of all records, without reading other columns.
+	 */
+	public List<RecordPath> getRecordPaths() {
+		return convertCursorPaths(queryLocal("SELECT " + RECORD_PATH_COLUMNS + " FROM " + tableName));
+	}
+
+	public List<RecordPath> getRecordPaths(String path) {
+		return convertCursorPaths(queryLocal("SELECT " + RECORD_PATH_COLUMNS + " FROM " + tableName
+				+ " WHERE " + SQLiteHelper.COLUMN_PATH + " = ?", new String[] {path}));
+	}
+
+	/**
+	 * Id and path of records of the format which were never finalized: duration or size is still 0,
+	 * e.g. because the app was killed while recording.
+	 */
+	public List<RecordPath> getUnfinishedRecordPaths(String format) {
+		return convertCursorPaths(queryLocal("SELECT " + RECORD_PATH_COLUMNS + " FROM " + tableName
+				+ " WHERE " + SQLiteHelper.COLUMN_FORMAT + " = ? AND (" + SQLiteHelper.COLUMN_DURATION + " <= 0 OR "
+				+ SQLiteHelper.COLUMN_SIZE + " <= 0)", new String[] {format}));
+	}
+
+	/**
+	 * Mark record files as seen on the storage at the specified time.
+	 */
+	public synchronized void setLastVerified(List<Integer> ids, long time) {
+		if (ids.isEmpty()) {
+			return;
+		}
+		SQLiteStatement statement = getStatement("UPDATE " + tableName + " SET "
+				+ SQLiteHelper.COLUMN_LAST_VERIFIED + " = ? WHERE " + SQLiteHelper.COLUMN_ID + " = ?");
+		db.beginTransaction();
+		try {
+			for (Integer id : ids) {
+				statement.bindLong(1, time);
+				statement.bindLong(2, id);
+				statement.executeUpdateDelete();
+			}
+			db.setTransactionSuccessful();
+		} finally {
+			db.endTransaction();
+		}
+	}
+
+	private List<RecordPath> convertCursorPaths(Cursor cursor) {
+		List<RecordPath> items = new ArrayList<>(cursor.getCount());
+		if (cursor.moveToFirst()) {
+			do {
+				items.add(new RecordPath(cursor.getInt(0), cursor.getString(1), cursor.getLong(2)));
+			} while (cursor.moveToNext());
+		}
+		cursor.close();
+		return items;
+	}
+
 	@Override
 	public Record recordToItem(Cursor cursor) {
+		int dataIndex = cursor.getColumnIndex(SQLiteHelper.COLUMN_DATA);
 		return new Record(
 				cursor.getInt(cursor.getColumnIndex(SQLiteHelper.COLUMN_ID)),
 				cursor.getString(cursor.getColumnIndex(SQLiteHelper.COLUMN_NAME)),
@@ -93,7 +166,7 @@ public class RecordsDataSource extends DataSource<Record> {
 				cursor.getInt(cursor.getColumnIndex(SQLiteHelper.COLUMN_BITRATE)),
 				cursor.getInt(cursor.getColumnIndex(SQLiteHelper.COLUMN_BOOKMARK)) != 0,
 				cursor.getInt(cursor.getColumnIndex(SQLiteHelper.COLUMN_WAVEFORM_PROCESSED)) != 0,
-				cursor.getBlob(cursor.getColumnIndex(SQLiteHelper.COLUMN_DATA))
+				dataIndex >= 0 ? cursor.getBlob(dataIndex) : null
 //				Record.stringToArray(
 //						cursor.getString(cursor.getColumnIndex(SQLiteHelper.COLUMN_DATA_STR)))
 		);
@@ -35,6 +35,17 @@ public class SQLiteHelper extends SQLiteOpenHelper {
 	public void onCreate(SQLiteDatabase db) {
 		db.execSQL(CREATE_RECORDS_TABLE_SCRIPT);
 		db.execSQL(CREATE_TRASH_TABLE_SCRIPT);
+		db.execSQL(CREATE_MEDIA_HASHES_TABLE_SCRIPT);
+		createIndexes(db);
+	}
+
+	/**
+	 * Indexes on (sort column, id) used by records list keyset pagination and trash ordering.
+	 */
+	private void createIndexes(SQLiteDatabase db) {
+		for (String script : CREATE_INDEXES_SCRIPTS) {
+			db.execSQL(script);
+		}
 	}
 
 	@Override
@@ -48,7 +59,7 @@ public class SQLiteHelper extends SQLiteOpenHelper {
 			onCreate(db);
 		} else if (newVersion == 2) {
 			db.execSQL(CREATE_TRASH_TABLE_SCRIPT);
-		} else if (oldVersion == 1 && newVersion == 3) {
+		} else if (oldVersion == 1 && newVersion >= 3) {
 			db.beginTransaction();
 
 			db.execSQL(CREATE_TRASH_TABLE_SCRIPT);
@@ -62,7 +73,7 @@ public class SQLiteHelper extends SQLiteOpenHelper {
 
 			db.setTransactionSuccessful();
 			db.endTransaction();
-		} else if (oldVersion == 2 && newVersion == 3) {
+		} else if (oldVersion == 2 && newVersion >= 3) {
 			db.beginTransaction();
 
 			//Add new fields to the table Records.
@@ -82,15 +93,25 @@ public class SQLiteHelper extends SQLiteOpenHelper {
 			db.setTransactionSuccessful();
 			db.endTransaction();
 		}
+		if (oldVersion < 4 && newVersion >= 4) {
+			createIndexes(db);
+		}
+		if (oldVersion < 5 && newVersion >= 5) {
+			db.execSQL(CREATE_MEDIA_HASHES_TABLE_SCRIPT);
+		}
+		if (oldVersion < 6 && newVersion >= 6) {
+			db.execSQL("ALTER TABLE " + TABLE_RECORDS + " ADD COLUMN " + COLUMN_LAST_VERIFIED + " LONG NOT NULL DEFAULT 0;");
+		}
 	}
 
 
 	private static final String DATABASE_NAME = "records.db";
-	private static final int DATABASE_VERSION = 3;
+	private static final int DATABASE_VERSION = 6;
 
 	//Tables names
 	static final String TABLE_RECORDS = "records";
 	static final String TABLE_TRASH = "trash";
+	static final String TABLE_MEDIA_HASHES = "media_hashes";
 
 	//Fields for table Records
 	static final String COLUMN_ID = "_id";
@@ -110,9 +131,22 @@ public class SQLiteHelper extends SQLiteOpenHelper {
 	static final String COLUMN_SAMPLE_RATE = "sample_rate";
 	static final String COLUMN_CHANNEL_COUNT = "channel_count";
 	static final String COLUMN_BITRATE = "bitrate";
+	/** Time when the record file was last seen on the storage. */
+	static final String COLUMN_LAST_VERIFIED = "last_verified";
+
+	//Fields for table Media hashes
+	static final String COLUMN_LAST_MODIFIED = "last_modified";
+	static final String COLUMN_INODE = "inode";
+	static final String COLUMN_HASH = "hash";
+
+	/** Columns of table Records without waveform BLOBs, enough to show records list. */
+	static final String RECORDS_LIST_COLUMNS = COLUMN_ID + ", " + COLUMN_NAME + ", " + COLUMN_DURATION + ", "
+			+ COLUMN_CREATION_DATE + ", " + COLUMN_DATE_ADDED + ", " + COLUMN_PATH + ", " + COLUMN_FORMAT + ", "
+			+ COLUMN_SIZE + ", " + COLUMN_SAMPLE_RATE + ", " + COLUMN_CHANNEL_COUNT + ", " + COLUMN_BITRATE + ", "
+			+ COLUMN_BOOKMARK + ", " + COLUMN_WAVEFORM_PROCESSED;
 
 	//Create records table sql statement
-	private static final String CREATE_RECORDS_TABLE_SCRIPT =
+	static final String CREATE_RECORDS_TABLE_SCRIPT =
 			"CREATE TABLE " + TABLE_RECORDS + " ("
 					+ COLUMN_ID + " INTEGER PRIMARY KEY AUTOINCREMENT, "
 					+ COLUMN_NAME + " TEXT NOT NULL, "
@@ -128,8 +162,17 @@ public class SQLiteHelper extends SQLiteOpenHelper {
 					+ COLUMN_DATA + " BLOB NOT NULL, "
 					+ COLUMN_BOOKMARK + " INTEGER NOT NULL DEFAULT 0, "
 					+ COLUMN_WAVEFORM_PROCESSED + " INTEGER NOT NULL DEFAULT 0, "
+					+ COLUMN_LAST_VERIFIED + " LONG NOT NULL DEFAULT 0, "
 					+ COLUMN_DATA_STR + " BLOB NOT NULL);";
 
+	static final String[] CREATE_INDEXES_SCRIPTS = {
+			"CREATE INDEX IF NOT EXISTS records_name_idx ON " + TABLE_RECORDS + " (" + COLUMN_NAME + ", " + COLUMN_ID + ");",
+			"CREATE INDEX IF NOT EXISTS records_duration_idx ON " + TABLE_RECORDS + " (" + COLUMN_DURATION + ", " + COLUMN_ID + ");",
+			"CREATE INDEX IF NOT EXISTS records_added_idx ON " + TABLE_RECORDS + " (" + COLUMN_DATE_ADDED + ", " + COLUMN_ID + ");",
+			"CREATE INDEX IF NOT EXISTS trash_added_idx ON " + TABLE_TRASH + " (" + COLUMN_DATE_ADDED + ", " + COLUMN_ID + ");",
+			"CREATE INDEX IF NOT EXISTS trash_removed_idx ON " + TABLE_TRASH + " (" + COLUMN_DATE_REMOVED + ");"
+	};
+
 	//Create trash table sql statement
 	private static final String CREATE_TRASH_TABLE_SCRIPT =
 			"CREATE TABLE " + TABLE_TRASH + " ("
@@ -149,4 +192,14 @@ public class SQLiteHelper extends SQLiteOpenHelper {
 					+ COLUMN_BOOKMARK + " INTEGER NOT NULL DEFAULT 0, "
 					+ COLUMN_WAVEFORM_PROCESSED + " INTEGER NOT NULL DEFAULT 0, "
 					+ COLUMN_DATA_STR + " BLOB NOT NULL);";
+
+	//Create media hashes table sql statement
+	private static final String CREATE_MEDIA_HASHES_TABLE_SCRIPT =
+			"CREATE TABLE IF NOT EXISTS " + TABLE_MEDIA_HASHES + " ("
+					+ COLUMN_ID + " INTEGER PRIMARY KEY AUTOINCREMENT, "
+					+ COLUMN_PATH + " TEXT NOT NULL UNIQUE, "
+					+ COLUMN_SIZE + " LONG NOT NULL, "
+					+ COLUMN_LAST_MODIFIED + " LONG NOT NULL, "
+					+ COLUMN_INODE + " LONG NOT NULL DEFAULT 0, "
+					+ COLUMN_HASH + " TEXT NOT NULL);";
 }
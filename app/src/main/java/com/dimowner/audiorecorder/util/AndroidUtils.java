@@ -68,6 +68,7 @@ import androidx.work.Constraints;
 import androidx.work.Data;
 import androidx.work.ExistingWorkPolicy;
 import androidx.work.OneTimeWorkRequest;
+import androidx.work.WorkContinuation;
 import androidx.work.WorkInfo;
 import androidx.work.WorkManager;
 
@@ -79,6 +80,8 @@ import com.dimowner.audiorecorder.app.lostrecords.LostRecordsActivity;
 import com.dimowner.audiorecorder.app.lostrecords.RecordItem;
 import com.dimowner.audiorecorder.data.database.Record;
 import org.proofmode.audio.utils.ProofModeUtils;
+import org.proofmode.audio.worker.BatchProofWorker;
+import org.proofmode.audio.worker.ContentCredentialsWorker;
 import org.proofmode.audio.worker.GenerateProofWorker;
 
 import java.io.File;
@@ -127,9 +130,17 @@ public class AndroidUtils {
     }*/
 
     public static LiveData<List<WorkInfo>> generateProofWithWorkManager(Context context, Uri uri,boolean proofWasAutogenerated) {
+        return generateProofWithWorkManager(context, uri, proofWasAutogenerated, Record.NO_ID);
+    }
+
+    /**
+     * @param recordId Id of the record behind the uri, the worker resolves its current path when it runs.
+     */
+    public static LiveData<List<WorkInfo>> generateProofWithWorkManager(Context context, Uri uri,boolean proofWasAutogenerated,
+                                                                        int recordId) {
         String uriString = uri.toString();
         var workerMap = new HashMap<String,Object>();
-        Data data = ProofModeUtils.INSTANCE.createDataForProofWorker(uriString,proofWasAutogenerated);
+        Data data = ProofModeUtils.INSTANCE.createDataForProofWorker(uriString,proofWasAutogenerated,recordId);
         OneTimeWorkRequest workRequest = new OneTimeWorkRequest.Builder(GenerateProofWorker.class)
                 .setInputData(data)
                 .setConstraints(new Constraints.Builder()
@@ -140,6 +151,66 @@ public class AndroidUtils {
         return workManager.getWorkInfosForUniqueWorkLiveData(uriString);
     }
 
+    /**
+     * Embed C2PA content credentials into the record with {@link ContentCredentialsWorker} and then generate proof
+     * for the signed media. Both run as one unique work, so the media is hashed once, after the manifest is embedded.
+     * Workers get the record id and resolve its path when they run, so the record may be renamed meanwhile.
+     */
+    public static LiveData<List<WorkInfo>> generateContentCredentialsAndProof(Context context, Record record,
+                                                                              boolean proofWasAutogenerated, boolean isDirectCapture) {
+        String uriString = ProofModeUtils.INSTANCE.getUriForFile(new File(record.getPath()), context, context.getPackageName()).toString();
+        OneTimeWorkRequest credentialsRequest = new OneTimeWorkRequest.Builder(ContentCredentialsWorker.class)
+                .setInputData(new Data.Builder()
+                        .putInt(ProofModeUtils.RECORD_ID_KEY, record.getId())
+                        .putBoolean(ProofModeUtils.DIRECT_CAPTURE_KEY, isDirectCapture)
+                        .build())
+                .build();
+        OneTimeWorkRequest proofRequest = new OneTimeWorkRequest.Builder(GenerateProofWorker.class)
+                .setInputData(ProofModeUtils.INSTANCE.createDataForProofWorker(uriString, proofWasAutogenerated,
+                        record.getId()))
+                .setConstraints(new Constraints.Builder()
+                        .setRequiresStorageNotLow(true).build())
+                .build();
+        WorkManager workManager = WorkManager.getInstance(context);
+        workManager.beginUniqueWork(uriString, ExistingWorkPolicy.REPLACE, credentialsRequest)
+                .then(proofRequest)
+                .enqueue();
+        return workManager.getWorkInfosForUniqueWorkLiveData(uriString);
+    }
+
+    /**
+     * Generate proof for many records with a chain of {@link BatchProofWorker}s, each handles
+     * up to {@link ProofModeUtils#BATCH_PROOF_SIZE} records. New batches are appended to the running chain
+     * instead of starting a worker per record.
+     * @param recordIds Ids of records to generate proof for.
+     */
+    public static LiveData<List<WorkInfo>> generateProofsWithWorkManager(Context context, List<Integer> recordIds) {
+        WorkManager workManager = WorkManager.getInstance(context);
+        WorkContinuation continuation = null;
+        for (int start = 0; start < recordIds.size(); start += ProofModeUtils.BATCH_PROOF_SIZE) {
+            List<Integer> batch = recordIds.subList(start, Math.min(recordIds.size(), start + ProofModeUtils.BATCH_PROOF_SIZE));
+            int[] ids = new int[batch.size()];
+            for (int i = 0; i < ids.length; i++) {
+                ids[i] = batch.get(i);
+            }
+            OneTimeWorkRequest workRequest = new OneTimeWorkRequest.Builder(BatchProofWorker.class)
+                    .setInputData(new Data.Builder().putIntArray(ProofModeUtils.RECORD_IDS_KEY, ids).build())
+                    .setConstraints(new Constraints.Builder()
+                            .setRequiresStorageNotLow(true).build())
+                    .build();
+            if (continuation == null) {
+                continuation = workManager.beginUniqueWork(ProofModeUtils.BATCH_PROOF_WORK_NAME,
+                        ExistingWorkPolicy.APPEND_OR_REPLACE, workRequest);
+            } else {
+                continuation = continuation.then(workRequest);
+            }
+        }
+        if (continuation != null) {
+            continuation.enqueue();
+        }
+        return workManager.getWorkInfosForUniqueWorkLiveData(ProofModeUtils.BATCH_PROOF_WORK_NAME);
+    }
+
     /**
      * Convert density independent pixels value (dip) into pixels value (px).
      *
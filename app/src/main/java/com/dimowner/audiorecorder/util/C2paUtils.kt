@@ -3,6 +3,8 @@ package com.dimowner.audiorecorder.util
 import android.content.Context
 import android.content.pm.PackageManager
 import android.os.Build
+import android.os.SystemClock
+import com.dimowner.audiorecorder.ARApplication
 import info.guardianproject.simple_c2pa.*
 import java.io.File
 import java.io.FileInputStream
@@ -27,6 +29,8 @@ class C2paUtils {
         private var _identityEmail = "info@proofmode.org"
         private var _identityKey = "0x00000000"
 
+        /** Signing identity parsed once and kept for the next signings. */
+        @Volatile
         private var userCert : Certificate? = null
 
         const val IDENTITY_URI_KEY = "id_uri"
@@ -57,18 +61,23 @@ class C2paUtils {
 
 
 
+        /**
+         * Embed signed manifest into the media file. Reads keys and may create certificates on the first call,
+         * so should not be called on the main thread.
+         * @return Duration of signing phases or null when there is no media file.
+         */
         fun generateContentCredentials(context: Context,
                                        inputAudioFilePath:String,
                                        isDirectCapture: Boolean = true,
                                        allowMachineLearning: Boolean=false,
-                                       fileOutDir: File? = null):File {
+                                       fileOutDir: File? = null):C2paTimings? {
             val fileMedia = File(inputAudioFilePath)
 
             /**
              * Let us just add the content credentials to the file and not create a new one
              */
             if (fileMedia.exists()) {
-                addContentCredentials(
+                return addContentCredentials(
                     context,
                     _identityEmail,
                     _identityKey,
@@ -81,7 +90,7 @@ class C2paUtils {
                 )
 
             }
-            return fileMedia
+            return null
 
         }
 
@@ -90,6 +99,7 @@ class C2paUtils {
         /**
          * Reset all variables and delete all local credential files
          */
+        @Synchronized
         fun resetCredentials (mContext : Context) {
 
             val fileUserCert = File(mContext.filesDir, C2PA_CERT_PATH)
@@ -110,6 +120,7 @@ class C2paUtils {
         /**
          * initialize the private keys and certificates for signing C2PA data
          */
+        @Synchronized
         fun initCredentials (mContext : Context, emailAddress: String, pgpFingerprint: String) {
 
             val fileUserCert = File(mContext.filesDir, C2PA_CERT_PATH)
@@ -181,10 +192,17 @@ class C2paUtils {
                                   isDirectCapture: Boolean,
                                   allowMachineLearning: Boolean,
                                   fileIn: File,
-                                  fileOut: File) {
+                                  fileOut: File): C2paTimings {
 
-            if (userCert == null)
-                initCredentials(mContext, emailAddress, pgpFingerprint)
+            var phaseStart = SystemClock.elapsedRealtime()
+            if (userCert == null) {
+                synchronized(this) {
+                    if (userCert == null)
+                        initCredentials(mContext, emailAddress, pgpFingerprint)
+                }
+            }
+            val credentialsTime = SystemClock.elapsedRealtime() - phaseStart
+            phaseStart = SystemClock.elapsedRealtime()
 
             val appLabel = getAppName(mContext)
             val appVersion = getAppVersionName(mContext)
@@ -237,7 +255,12 @@ class C2paUtils {
                 null, null, exifMake, exifModel, null,
                 null, null)
             contentCreds?.addExifAssertion(exifData)
+            val assertionsTime = SystemClock.elapsedRealtime() - phaseStart
+            phaseStart = SystemClock.elapsedRealtime()
             contentCreds?.embedManifest(fileOut.absolutePath)
+            //Manifest is embedded into the media, so its cached hash is outdated.
+            ARApplication.getInjector().provideMediaHashCache(mContext).invalidate(fileOut.absolutePath)
+            return C2paTimings(credentialsTime, assertionsTime, SystemClock.elapsedRealtime() - phaseStart)
         }
 
 
@@ -280,3 +303,9 @@ class C2paUtils {
 
     }
 }
+
+/**
+ * Duration of content credentials phases in milliseconds: loading the signing identity,
+ * collecting assertions and embedding the signed manifest.
+ */
+class C2paTimings(val credentials: Long, val assertions: Long, val embed: Long)
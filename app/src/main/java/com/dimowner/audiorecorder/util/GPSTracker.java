@@ -10,6 +10,7 @@ import android.location.Location;
 import android.location.LocationListener;
 import android.location.LocationManager;
 import android.os.Bundle;
+import android.os.Looper;
 import android.provider.Settings;
 
 import androidx.core.app.ActivityCompat;
@@ -70,10 +71,11 @@ public final class GPSTracker implements LocationListener {
         isNetworkEnabled = locationManager
                 .isProviderEnabled(LocationManager.NETWORK_PROVIDER);
 
+        //Updates are delivered on the main looper, so location can be requested from worker threads too.
         if (isGPSEnabled)
-            locationManager.requestLocationUpdates(LocationManager.GPS_PROVIDER,60000,0,this);
+            locationManager.requestLocationUpdates(LocationManager.GPS_PROVIDER,60000,0,this, Looper.getMainLooper());
         else if (isNetworkEnabled)
-            locationManager.requestLocationUpdates(LocationManager.NETWORK_PROVIDER,60000,0,this);
+            locationManager.requestLocationUpdates(LocationManager.NETWORK_PROVIDER,60000,0,this, Looper.getMainLooper());
     }
 
     public void stopUpdateLocation () {
@@ -0,0 +1,399 @@
+package org.proofmode.audio.export
+
+import android.app.Notification
+import android.app.NotificationChannel
+import android.app.NotificationManager
+import android.app.PendingIntent
+import android.app.Service
+import android.content.BroadcastReceiver
+import android.content.Context
+import android.content.Intent
+import android.graphics.Color
+import android.net.Uri
+import android.os.Binder
+import android.os.Build
+import android.os.IBinder
+import android.widget.RemoteViews
+import android.widget.Toast
+import androidx.annotation.RequiresApi
+import androidx.core.app.NotificationCompat
+import androidx.core.app.NotificationManagerCompat
+import androidx.core.content.ContextCompat
+import com.dimowner.audiorecorder.ARApplication
+import com.dimowner.audiorecorder.BackgroundQueue
+import com.dimowner.audiorecorder.ColorMap
+import com.dimowner.audiorecorder.R
+import com.dimowner.audiorecorder.app.main.MainActivity
+import com.dimowner.audiorecorder.util.AndroidUtils
+import org.proofmode.audio.utils.ProofModeUtils
+import org.proofmode.audio.utils.ZipCanceledException
+import org.proofmode.audio.utils.ZipProgressListener
+import org.witness.proofmode.storage.StorageProvider
+import timber.log.Timber
+import java.io.File
+import java.util.Date
+import java.util.concurrent.CopyOnWriteArrayList
+
+/**
+ * Hashes records and writes proof zips in the background with progress shown in a notification.
+ * Exports are executed one after another, cancel from the notification drops the running export
+ * and all pending ones. Screens bind to the service to receive bundles which are ready to share.
+ */
+class ProofExportService : Service() {
+
+    companion object {
+        private const val CHANNEL_NAME = "ProofExport"
+        private const val CHANNEL_ID = "org.proofmode.audio.ProofExport.Notification"
+        const val ACTION_SHARE_PROOF = "ACTION_SHARE_PROOF"
+        const val ACTION_SAVE_PROOF = "ACTION_SAVE_PROOF"
+        const val ACTION_EXPORT_EVIDENCE = "ACTION_EXPORT_EVIDENCE"
+        const val ACTION_CANCEL_PROOF_EXPORT = "ACTION_CANCEL_PROOF_EXPORT"
+        const val EXTRAS_KEY_PATHS = "key_paths"
+        const val EXTRAS_KEY_NAME = "key_name"
+        private const val NOTIF_ID = 108
+        private const val PROGRESS_UPDATE_INTERVAL = 200
+
+        /**
+         * Write proof bundle of the record into the cache and pass it to the listener to share.
+         */
+        fun shareProof(context: Context, path: String, name: String) {
+            startExport(context, ACTION_SHARE_PROOF, listOf(path), name)
+        }
+
+        /**
+         * Write proof bundle of the record into Downloads.
+         */
+        fun saveProof(context: Context, path: String, name: String) {
+            startExport(context, ACTION_SAVE_PROOF, listOf(path), name)
+        }
+
+        /**
+         * Write evidence package of several records into Downloads.
+         */
+        fun exportEvidence(context: Context, paths: List<String>) {
+            startExport(context, ACTION_EXPORT_EVIDENCE, paths, "evidence")
+        }
+
+        private fun startExport(context: Context, action: String, paths: List<String>, name: String) {
+            val intent = Intent(context, ProofExportService::class.java)
+            intent.action = action
+            intent.putStringArrayListExtra(EXTRAS_KEY_PATHS, ArrayList(paths))
+            intent.putExtra(EXTRAS_KEY_NAME, name)
+            context.startService(intent)
+        }
+    }
+
+    private class Export(val action: String, val paths: List<String>, val name: String)
+
+    private val listeners = CopyOnWriteArrayList<ProofExportServiceListener>()
+    private val binder = LocalBinder()
+
+    private lateinit var notificationManager: NotificationManagerCompat
+    private lateinit var remoteViewsSmall: RemoteViews
+    private lateinit var contentPendingIntent: PendingIntent
+    private lateinit var exportTasks: BackgroundQueue
+    private lateinit var storageProvider: StorageProvider
+    private lateinit var colorMap: ColorMap
+    @Volatile
+    private var isCancel = false
+
+    private val lock = Any()
+    private var pendingCount = 0
+    private var lastStartId = 0
+    private var prevProgressTime: Long = 0
+
+    override fun onBind(intent: Intent): IBinder? {
+        return binder
+    }
+
+    override fun onCreate() {
+        super.onCreate()
+        colorMap = ARApplication.getInjector().provideColorMap(applicationContext)
+        exportTasks = ARApplication.getInjector().provideExportTasksQueue()
+        storageProvider = ARApplication.getInjector().provideStorageProvider(applicationContext)
+    }
+
+    override fun onStartCommand(intent: Intent?, flags: Int, startId: Int): Int {
+        synchronized(lock) {
+            lastStartId = startId
+        }
+        if (intent != null) {
+            val action = intent.action
+            if (action != null && action.isNotEmpty()) {
+                when (action) {
+                    ACTION_SHARE_PROOF, ACTION_SAVE_PROOF, ACTION_EXPORT_EVIDENCE -> {
+                        val paths = intent.getStringArrayListExtra(EXTRAS_KEY_PATHS)
+                        if (!paths.isNullOrEmpty()) {
+                            startExport(Export(action, paths, intent.getStringExtra(EXTRAS_KEY_NAME) ?: ""))
+                        }
+                    }
+                    ACTION_CANCEL_PROOF_EXPORT -> cancelExport()
+                }
+            }
+        }
+        return super.onStartCommand(intent, flags, startId)
+    }
+
+    private fun startExport(export: Export) {
+        synchronized(lock) {
+            if (pendingCount == 0) {
+                isCancel = false
+                startNotification()
+                for (listener in listeners) {
+                    listener.onStartExport()
+                }
+            }
+            pendingCount++
+        }
+        exportTasks.postRunnable { runExport(export) }
+    }
+
+    private fun cancelExport() {
+        synchronized(lock) {
+            isCancel = true
+            stopIfIdle()
+        }
+    }
+
+    private fun runExport(export: Export) {
+        if (!isCancel) {
+            updateNotificationText(export.name)
+            try {
+                when (export.action) {
+                    ACTION_SHARE_PROOF -> shareProof(export)
+                    ACTION_SAVE_PROOF -> saveProof(export)
+                    ACTION_EXPORT_EVIDENCE -> exportEvidence(export)
+                }
+            } catch (e: ZipCanceledException) {
+                Timber.d("Proof export canceled: %s", export.name)
+            } catch (e: Exception) {
+                Timber.e(e)
+                showToast(getString(R.string.proof_save_failed, export.name))
+            }
+        }
+        val isLast: Boolean
+        synchronized(lock) {
+            pendingCount--
+            isLast = pendingCount == 0
+        }
+        if (isLast) {
+            if (isCancel) {
+                showToast(getString(R.string.proof_export_canceled))
+            }
+            for (listener in listeners) {
+                listener.onFinishExport()
+            }
+            synchronized(lock) {
+                //An export could be started while the listeners were notified.
+                stopIfIdle()
+            }
+        }
+    }
+
+    /**
+     * Stop the service when no export is pending. Must be called with the lock held, so an export which
+     * starts meanwhile is either counted here or starts the foreground notification after the stop.
+     * Start which is delivered but not handled yet keeps the service running, as its start id is newer.
+     */
+    private fun stopIfIdle() {
+        if (pendingCount == 0) {
+            stopForeground(true)
+            stopSelfResult(lastStartId)
+        }
+    }
+
+    private fun shareProof(export: Export) {
+        val proofSet = getProofSet(export.paths[0])
+        if (proofSet == null) {
+            showToast(getString(R.string.proof_not_found, export.name))
+            return
+        }
+        val file = ProofModeUtils.createZipFileForSharing(applicationContext, proofSet,
+                getZipName(export.name), createProgressListener(getTotalLength(proofSet)))
+        //Only the screen which subscribed last shows the chooser.
+        val listener = listeners.lastOrNull()
+        if (listener != null) {
+            listener.onProofShareReady(file)
+        } else {
+            ProofModeUtils.shareZipFile(applicationContext, file, packageName)
+        }
+    }
+
+    private fun saveProof(export: Export) {
+        val proofSet = getProofSet(export.paths[0])
+        if (proofSet == null) {
+            showToast(getString(R.string.proof_not_found, export.name))
+            return
+        }
+        val name = getZipName(export.name)
+        val uri = ProofModeUtils.createZipFileInDownloads(applicationContext, proofSet, name,
+                createProgressListener(getTotalLength(proofSet)))
+        if (uri != null) {
+            showToast(getString(R.string.proof_saved, uri.path))
+        } else {
+            showToast(getString(R.string.proof_save_failed, name))
+        }
+    }
+
+    private fun exportEvidence(export: Export) {
+        val files = export.paths.map { File(it) }
+        val name = getZipName(export.name)
+        //Proof files are small next to the media, progress counts the media only.
+        val uri = ProofModeUtils.createEvidencePackageInDownloads(applicationContext, files, name,
+                createProgressListener(files.sumOf { it.length() }))
+        if (uri != null) {
+            showToast(getString(R.string.proof_saved, uri.path))
+        } else {
+            showToast(getString(R.string.proof_save_failed, name))
+        }
+    }
+
+    /**
+     * Proof files of the record and the record itself, null when there is no proof.
+     * Hashes the record when its cached hash is outdated.
+     */
+    private fun getProofSet(path: String): MutableList<Uri>? {
+        val mediaFile = File(path)
+        val hash = ProofModeUtils.proofExistsForMediaFile(applicationContext, mediaFile) ?: return null
+        val proofSet = storageProvider.getProofSet(hash)
+        proofSet.add(ProofModeUtils.getUriForFile(mediaFile, applicationContext, packageName))
+        return proofSet
+    }
+
+    private fun getTotalLength(uris: List<Uri>): Long {
+        return uris.sumOf { ProofModeUtils.getContentLength(applicationContext, it) }
+    }
+
+    private fun getZipName(name: String): String {
+        return name + "-proof-" + ProofModeUtils.dateFormat.format(Date()) + ".zip"
+    }
+
+    private fun createProgressListener(total: Long): ZipProgressListener {
+        return object : ZipProgressListener {
+            override fun isCanceled(): Boolean {
+                return isCancel
+            }
+
+            override fun onBytesWritten(bytes: Long) {
+                val curTime = System.currentTimeMillis()
+                if (total > 0 && curTime >= prevProgressTime + PROGRESS_UPDATE_INTERVAL) {
+                    prevProgressTime = curTime
+                    updateNotification((bytes * 100 / total).toInt().coerceAtMost(100))
+                }
+            }
+        }
+    }
+
+    private fun showToast(text: String) {
+        AndroidUtils.runOnUIThread {
+            Toast.makeText(applicationContext, text, Toast.LENGTH_LONG).show()
+        }
+    }
+
+    private fun startNotification() {
+        notificationManager = NotificationManagerCompat.from(this)
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            createNotificationChannel(CHANNEL_ID, CHANNEL_NAME)
+        }
+        remoteViewsSmall = RemoteViews(packageName, R.layout.layout_progress_notification)
+        remoteViewsSmall.setOnClickPendingIntent(
+                R.id.btn_close,
+                getCancelExportPendingIntent(applicationContext)
+        )
+        remoteViewsSmall.setTextViewText(
+                R.id.txt_name,
+                resources.getString(R.string.exporting_proof, "")
+        )
+        remoteViewsSmall.setInt(
+                R.id.container,
+                "setBackgroundColor",
+                ContextCompat.getColor(applicationContext, colorMap.primaryColorRes)
+        )
+
+        // Create notification default intent.
+        val intent = Intent(applicationContext, MainActivity::class.java)
+        intent.flags = Intent.FLAG_ACTIVITY_PREVIOUS_IS_TOP
+        contentPendingIntent = PendingIntent.getActivity(applicationContext, 0, intent, AndroidUtils.getIntentFlag())
+        startForeground(NOTIF_ID, buildNotification())
+    }
+
+    private fun buildNotification(): Notification {
+        val builder = NotificationCompat.Builder(this, CHANNEL_ID)
+        builder.setWhen(System.currentTimeMillis())
+        builder.setContentTitle(resources.getString(R.string.app_name))
+        builder.setSmallIcon(R.drawable.ic_drive_file_move)
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
+            builder.priority = NotificationManagerCompat.IMPORTANCE_DEFAULT
+        } else {
+            builder.priority = NotificationCompat.PRIORITY_DEFAULT
+        }
+        builder.setContentIntent(contentPendingIntent)
+        builder.setCustomContentView(remoteViewsSmall)
+        builder.setOngoing(true)
+        builder.setOnlyAlertOnce(true)
+        builder.setDefaults(0)
+        builder.setSound(null)
+        return builder.build()
+    }
+
+    private fun getCancelExportPendingIntent(context: Context): PendingIntent {
+        val intent = Intent(context, StopProofExportReceiver::class.java)
+        intent.action = ACTION_CANCEL_PROOF_EXPORT
+        return PendingIntent.getBroadcast(context, 19, intent, AndroidUtils.getIntentFlag())
+    }
+
+    @RequiresApi(Build.VERSION_CODES.O)
+    private fun createNotificationChannel(channelId: String, channelName: String) {
+        val channel = notificationManager.getNotificationChannel(channelId)
+        if (channel == null) {
+            val chan = NotificationChannel(channelId, channelName, NotificationManager.IMPORTANCE_DEFAULT)
+            chan.lightColor = Color.BLUE
+            chan.lockscreenVisibility = NotificationCompat.VISIBILITY_PUBLIC
+            chan.setSound(null, null)
+            chan.enableLights(false)
+            chan.enableVibration(false)
+            notificationManager.createNotificationChannel(chan)
+        } else {
+            Timber.v("Channel already exists: %s", CHANNEL_ID)
+        }
+    }
+
+    private fun updateNotification(percent: Int) {
+        remoteViewsSmall.setProgressBar(R.id.progress, 100, percent, false)
+        notificationManager.notify(NOTIF_ID, buildNotification())
+    }
+
+    private fun updateNotificationText(text: String) {
+        remoteViewsSmall.setTextViewText(R.id.txt_name, resources.getString(R.string.exporting_proof, text))
+        remoteViewsSmall.setProgressBar(R.id.progress, 100, 0, false)
+        notificationManager.notify(NOTIF_ID, buildNotification())
+    }
+
+    fun addExportListener(listener: ProofExportServiceListener) {
+        listeners.addIfAbsent(listener)
+    }
+
+    fun removeExportListener(listener: ProofExportServiceListener) {
+        listeners.remove(listener)
+    }
+
+    class StopProofExportReceiver : BroadcastReceiver() {
+        override fun onReceive(context: Context, intent: Intent) {
+            val stopIntent = Intent(context, ProofExportService::class.java)
+            stopIntent.action = intent.action
+            context.startService(stopIntent)
+        }
+    }
+
+    inner class LocalBinder : Binder() {
+        fun getService(): ProofExportService = this@ProofExportService
+    }
+}
+
+interface ProofExportServiceListener {
+    fun onStartExport()
+
+    /** Called on a background thread when the proof bundle to share is written. */
+    fun onProofShareReady(file: File)
+    fun onFinishExport()
+}
@@ -12,7 +12,11 @@ import androidx.core.content.FileProvider
 import androidx.core.content.edit
 import androidx.preference.PreferenceManager
 import androidx.work.Data
+import com.dimowner.audiorecorder.ARApplication
 import com.dimowner.audiorecorder.BuildConfig
+import com.dimowner.audiorecorder.data.database.Record
+import org.json.JSONArray
+import org.json.JSONObject
 import org.proofmode.audio.notaries.GoogleSafetyNetNotarizationProvider
 import org.proofmode.audio.notaries.SafetyNetCheck
 import org.witness.proofmode.ProofMode
@@ -21,15 +25,16 @@ import org.witness.proofmode.notaries.OpenTimestampsNotarizationProvider
 import org.witness.proofmode.storage.DefaultStorageProvider
 import org.witness.proofmode.storage.StorageProvider
 import timber.log.Timber
-import java.io.BufferedInputStream
-import java.io.BufferedOutputStream
 import java.io.File
+import java.io.FileInputStream
+import java.io.FileNotFoundException
 import java.io.FileOutputStream
-import java.io.OutputStream
+import java.io.IOException
+import java.nio.channels.Channels
+import java.nio.channels.FileChannel
 import java.text.SimpleDateFormat
+import java.util.Date
 import java.util.Locale
-import java.util.zip.ZipEntry
-import java.util.zip.ZipOutputStream
 
 object ProofModeUtils {
 
@@ -37,20 +42,91 @@ object ProofModeUtils {
     const val AUTO_GENERATED_KEY = "auto_generated"
     const val MEDIA_KEY = "audio"
     const val MEDIA_HASH = "mediaHash"
+    /** Id of the record, workers resolve the record path when they run, so a rename doesn't break them. */
+    const val RECORD_ID_KEY = "recordId"
+    const val RECORD_IDS_KEY = "recordIds"
+    const val PROGRESS_DONE_KEY = "progressDone"
+    const val PROGRESS_TOTAL_KEY = "progressTotal"
+    const val BATCH_PROOF_WORK_NAME = "batch_proof"
+    /** Records per batch work, keeps worker input data under the WorkManager size limit. */
+    const val BATCH_PROOF_SIZE = 200
+    const val DIRECT_CAPTURE_KEY = "directCapture"
+    const val C2PA_CREDENTIALS_TIME_KEY = "c2paCredentialsTime"
+    const val C2PA_ASSERTIONS_TIME_KEY = "c2paAssertionsTime"
+    const val C2PA_EMBED_TIME_KEY = "c2paEmbedTime"
+    const val MEDIA_HASH_TIME_KEY = "mediaHashTime"
     val TAG = ProofModeUtils::class.simpleName
     private const val DOCUMENT_AUDIO =
             "content://com.android.providers.media.documents/document/audio%3A"
     private const val MEDIA_AUDIO = "content://media/external/audio/media/"
+    private const val PROOF_BUNDLES_DIR = "proofs"
+    private const val PUBLIC_KEY_ENTRY = "pubkey.asc"
+    private const val HOW_TO_VERIFY_ENTRY = "HowToVerifyProofData.txt"
+    private const val MANIFEST_ENTRY = "manifest.json"
+    private const val EVIDENCE_MEDIA_DIR = "media/"
+    private const val EVIDENCE_PROOFS_DIR = "proofs/"
+    private const val COPY_BUFFER_SIZE = 1024 * 1024
+    /** Shared bundles are kept this long, the app they were shared to may still be reading them. */
+    private const val PROOF_BUNDLE_MAX_AGE_MILLS = 24 * 60 * 60 * 1000L
 
     fun getStorageProvider(context: Context): StorageProvider {
         return DefaultStorageProvider(context.applicationContext)
     }
-    fun createZipFileFromUris(context: Context,uris: List<Uri>, outputZipFile: File){
-        createZipFileWithOutputStream(context,uris,FileOutputStream(outputZipFile))
+    fun createZipFileFromUris(context: Context,uris: List<Uri>, outputZipFile: File, listener: ZipProgressListener? = null){
+        try {
+            FileOutputStream(outputZipFile).use { outputStream ->
+                writeProofBundle(context, uris, outputStream.channel, listener)
+            }
+        } catch (e: IOException) {
+            outputZipFile.delete()
+            throw e
+        }
+    }
 
+    /**
+     * Write proof bundle into the cache dir to share it. Bundles shared more than a day ago are removed.
+     */
+    fun createZipFileForSharing(context: Context, uris: List<Uri>, fileName: String,
+                                listener: ZipProgressListener? = null): File {
+        val dir = File(context.cacheDir, PROOF_BUNDLES_DIR)
+        val outdated = System.currentTimeMillis() - PROOF_BUNDLE_MAX_AGE_MILLS
+        dir.listFiles()?.filter { it.lastModified() < outdated }?.forEach { it.delete() }
+        dir.mkdirs()
+        val file = File(dir, fileName)
+        createZipFileFromUris(context, uris, file, listener)
+        return file
     }
 
-    fun createZipFileInDownloads(context: Context, uris: List<Uri>, fileName: String): Uri? {
+    fun createZipFileInDownloads(context: Context, uris: List<Uri>, fileName: String,
+                                 listener: ZipProgressListener? = null): Uri? {
+        return createZipInDownloads(context, fileName) { channel -> writeProofBundle(context, uris, channel, listener) }
+    }
+
+    /**
+     * Export several records with their proof into one archive in Downloads.
+     * Media goes to media/, proof files to proofs/<hash>/, files which are the same for all records
+     * are added once, and manifest.json lists every record with its hash and entries.
+     * Reads media files to hash them when there is no cached hash, so should not be called on the main thread.
+     */
+    fun createEvidencePackageInDownloads(context: Context, mediaFiles: List<File>, fileName: String,
+                                         listener: ZipProgressListener? = null): Uri? {
+        return createZipInDownloads(context, fileName) { channel ->
+            writeEvidencePackage(context, mediaFiles, channel, listener)
+        }
+    }
+
+    /**
+     * Size of the content behind the uri or 0 when it is unknown.
+     */
+    fun getContentLength(context: Context, uri: Uri): Long {
+        return try {
+            context.contentResolver.openFileDescriptor(uri, "r")?.use { it.statSize.coerceAtLeast(0) } ?: 0
+        } catch (e: FileNotFoundException) {
+            0
+        }
+    }
+
+    private fun createZipInDownloads(context: Context, fileName: String, writeZip: (FileChannel) -> Unit): Uri? {
         val contentValues = ContentValues().apply {
             put(MediaStore.Downloads.DISPLAY_NAME, fileName)
             put(MediaStore.Downloads.MIME_TYPE, "application/zip")
@@ -67,65 +143,156 @@ object ProofModeUtils {
         }
 
         destinationUri?.let { uri ->
-            resolver.openOutputStream(uri)?.use { outputStream ->
-                createZipFileWithOutputStream(context, uris, outputStream)
-
-                if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
-                    contentValues.clear()
-                    contentValues.put(MediaStore.Downloads.IS_PENDING, 0)
-                    resolver.update(uri, contentValues, null, null)
-                }
+            try {
+                writeZipToUri(context, uri, writeZip)
+            } catch (e: IOException) {
+                //Don't leave a broken or canceled zip in Downloads.
+                resolver.delete(uri, null, null)
+                throw e
+            }
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+                contentValues.clear()
+                contentValues.put(MediaStore.Downloads.IS_PENDING, 0)
+                resolver.update(uri, contentValues, null, null)
             }
         }
 
         return destinationUri
     }
 
-    private fun createZipFileWithOutputStream(context: Context, uris: List<Uri>, outputStream: OutputStream) {
-        val bufferSize = 8192
-        val buffer = ByteArray(bufferSize)
+    private fun writeZipToUri(context: Context, uri: Uri, writeZip: (FileChannel) -> Unit) {
+        val resolver = context.contentResolver
+        //Zip is written straight into the destination file, it needs a seekable descriptor.
+        //Only failure to get one falls back to the temp file, write errors are thrown.
+        val descriptor = try {
+            resolver.openFileDescriptor(uri, "rw")
+        } catch (e: FileNotFoundException) {
+            Timber.e(e)
+            null
+        }
+        val written = descriptor?.use {
+            FileOutputStream(it.fileDescriptor).channel.use { channel ->
+                if (isSeekable(channel)) {
+                    writeZip(channel)
+                    true
+                } else {
+                    false
+                }
+            }
+        } ?: false
+        if (!written) {
+            //Destination is a stream, write the zip into a temp file and copy it.
+            val tmp = File.createTempFile("proof", ".zip", context.cacheDir)
+            try {
+                FileOutputStream(tmp).use { writeZip(it.channel) }
+                resolver.openOutputStream(uri, "wt")?.use { outputStream ->
+                    FileInputStream(tmp).use { it.copyTo(outputStream, COPY_BUFFER_SIZE) }
+                }
+            } finally {
+                tmp.delete()
+            }
+        }
+    }
+
+    private fun isSeekable(channel: FileChannel): Boolean {
+        return try {
+            channel.position(channel.position())
+            true
+        } catch (e: IOException) {
+            false
+        }
+    }
 
-        ZipOutputStream(BufferedOutputStream(outputStream)).use { outStream ->
+    /**
+     * Write media and proof files as STORED zip entries, each copied once through a large buffer.
+     */
+    private fun writeProofBundle(context: Context, uris: List<Uri>, channel: FileChannel,
+                                 listener: ZipProgressListener?) {
+        StoredZipWriter(channel, listener).use { zip ->
             uris.forEach { uri ->
-                context.contentResolver.openInputStream(uri)?.use { inputStream ->
-                    BufferedInputStream(inputStream, bufferSize).use { bufferedInputStream ->
-                        val entryName = uri.lastPathSegment ?: uri.toString()
-                        outStream.putNextEntry(ZipEntry(entryName))
-                        var bytesRead: Int
-                        while (bufferedInputStream.read(buffer, 0, bufferSize).also { bytesRead = it } != -1) {
-                            outStream.write(buffer, 0, bytesRead)
+                addUriEntry(context, zip, uri.lastPathSegment ?: uri.toString(), uri)
+            }
+            addSharedEntries(context, zip)
+            Timber.d("Zip complete")
+        }
+    }
+
+    private fun writeEvidencePackage(context: Context, mediaFiles: List<File>, channel: FileChannel,
+                                     listener: ZipProgressListener?) {
+        val storageProvider = getStorageProvider(context)
+        val mediaHashes = ARApplication.getInjector().provideMediaHashCache(context)
+        val entries = HashSet<String>()
+        val records = JSONArray()
+        StoredZipWriter(channel, listener).use { zip ->
+            for (file in mediaFiles) {
+                var mediaEntry = EVIDENCE_MEDIA_DIR + file.name
+                var index = 1
+                while (!entries.add(mediaEntry)) {
+                    mediaEntry = EVIDENCE_MEDIA_DIR + (index++) + "_" + file.name
+                }
+                FileInputStream(file).channel.use { source -> zip.addEntry(mediaEntry, source) }
+
+                val proofs = JSONArray()
+                val hash = mediaHashes.getHash(file)
+                if (hash != null && proofExistsForHash(context, hash) != null) {
+                    for (uri in storageProvider.getProofSet(hash)) {
+                        val proofEntry = EVIDENCE_PROOFS_DIR + hash + "/" + (uri.lastPathSegment ?: continue)
+                        //Records with the same content share one proof set.
+                        if (entries.add(proofEntry)) {
+                            addUriEntry(context, zip, proofEntry, uri)
                         }
-                        outStream.closeEntry()
+                        proofs.put(proofEntry)
                     }
                 }
+                records.put(JSONObject()
+                        .put("name", file.name)
+                        .put("media", mediaEntry)
+                        .put("sha256", hash ?: JSONObject.NULL)
+                        .put("proofs", proofs))
             }
+            addSharedEntries(context, zip)
+            val manifest = JSONObject()
+                    .put("created", dateFormat.format(Date()))
+                    .put("shared", JSONArray().put(PUBLIC_KEY_ENTRY).put(HOW_TO_VERIFY_ENTRY))
+                    .put("records", records)
+            zip.addEntry(MANIFEST_ENTRY, manifest.toString(2).toByteArray())
+            Timber.d("Evidence package complete, records: %d", mediaFiles.size)
+        }
+    }
 
-            Timber.d("Adding public key")
-            // Add public key
-            val password = ""
-            val pubKey = ProofMode.getPublicKeyString(context, password)
-            var entry = ZipEntry("pubkey.asc")
-            outStream.putNextEntry(entry)
-            outStream.write(pubKey.toByteArray())
-
-            Timber.d("Adding HowToVerifyProofData.txt")
-            val howToFile = "HowToVerifyProofData.txt"
-            entry = ZipEntry(howToFile)
-            outStream.putNextEntry(entry)
-            context.assets.open(howToFile).use { inputStream ->
-                var length = inputStream.read(buffer)
-                while (length != -1) {
-                    outStream.write(buffer, 0, length)
-                    length = inputStream.read(buffer)
+    private fun addUriEntry(context: Context, zip: StoredZipWriter, entryName: String, uri: Uri) {
+        val descriptor = try {
+            context.contentResolver.openFileDescriptor(uri, "r")
+        } catch (e: FileNotFoundException) {
+            null
+        }
+        if (descriptor != null) {
+            descriptor.use {
+                FileInputStream(it.fileDescriptor).channel.use { source ->
+                    zip.addEntry(entryName, source)
                 }
             }
-
-            Timber.d("Zip complete")
+        } else {
+            context.contentResolver.openInputStream(uri)?.use { inputStream ->
+                zip.addEntry(entryName, Channels.newChannel(inputStream))
+            }
         }
     }
 
-
-
+    /**
+     * Files which are the same for every proof: public key and verification instructions.
+     */
+    private fun addSharedEntries(context: Context, zip: StoredZipWriter) {
+        Timber.d("Adding public key")
+        val password = ""
+        val pubKey = ProofMode.getPublicKeyString(context, password)
+        zip.addEntry(PUBLIC_KEY_ENTRY, pubKey.toByteArray())
+
+        Timber.d("Adding HowToVerifyProofData.txt")
+        context.assets.open(HOW_TO_VERIFY_ENTRY).use { inputStream ->
+            zip.addEntry(HOW_TO_VERIFY_ENTRY, Channels.newChannel(inputStream))
+        }
+    }
 
     fun createData(key: String, value: Any?): Data {
         val builder = Data.Builder()
@@ -134,12 +301,19 @@ object ProofModeUtils {
         }
         return builder.build()
     }
+    /**
+     * @param recordId Id of the record to generate proof for, the media uri is used when there is no record.
+     */
     fun createDataForProofWorker(
         mediaUriString:String,
-        proofWasAutogenerated:Boolean? = false):Data{
+        proofWasAutogenerated:Boolean? = false,
+        recordId:Int = Record.NO_ID):Data{
         val builder = Data.Builder()
         builder.putString(MEDIA_KEY,mediaUriString)
         builder.putBoolean(AUTO_GENERATED_KEY,proofWasAutogenerated?:false)
+        if (recordId != Record.NO_ID) {
+            builder.putInt(RECORD_ID_KEY,recordId)
+        }
         return builder.build()
 
     }
@@ -239,9 +413,15 @@ object ProofModeUtils {
         }
     }
 
+    /**
+     * Same as [proofExistsForMedia] but the file is hashed only when its cached hash is outdated.
+     */
     fun proofExistsForMediaFile(context: Context, file: File): String? {
-        val uri = getUriForFile(file, context, context.applicationContext.packageName)
-        return proofExistsForMedia(context, uri)
+        val hash = ARApplication.getInjector().provideMediaHashCache(context).getHash(file)
+        if (hash != null) {
+            return proofExistsForHash(context, hash)
+        }
+        return null
     }
 
     fun proofExistsForMedia(context: Context, mediaUri: Uri): String? {
@@ -255,11 +435,16 @@ object ProofModeUtils {
                 context.applicationContext.contentResolver.openInputStream(mediaUri)
         )
         if (hash != null) {
-            val storageProvider = getStorageProvider(context)
-            if(storageProvider.proofExists(hash)){
-                if (storageProvider.proofIdentifierExists(hash,hash+ProofMode.PROOF_FILE_TAG)) {
-                    return hash
-                }
+            return proofExistsForHash(context, hash)
+        }
+        return null
+    }
+
+    fun proofExistsForHash(context: Context, hash: String): String? {
+        val storageProvider = getStorageProvider(context)
+        if(storageProvider.proofExists(hash)){
+            if (storageProvider.proofIdentifierExists(hash,hash+ProofMode.PROOF_FILE_TAG)) {
+                return hash
             }
         }
         return null
@@ -0,0 +1,187 @@
+package org.proofmode.audio.utils
+
+import java.io.Closeable
+import java.io.IOException
+import java.io.InterruptedIOException
+import java.nio.ByteBuffer
+import java.nio.ByteOrder
+import java.nio.channels.Channels
+import java.nio.channels.FileChannel
+import java.nio.channels.ReadableByteChannel
+import java.util.Calendar
+import java.util.zip.CRC32
+
+/**
+ * Zip writer which keeps entries STORED, without compression. Proof bundles mostly contain
+ * already compressed audio, deflating it only costs CPU time.
+ * Every entry is copied in a single pass through a large buffer: CRC32 and size are collected
+ * while the data is written, then sizes and CRC are patched into the local header in place,
+ * so the output channel has to support positional writes.
+ * Optional [listener] is told about every copied chunk and can cancel writing between chunks.
+ */
+class StoredZipWriter(
+        private val out: FileChannel,
+        private val listener: ZipProgressListener? = null
+) : Closeable {
+
+    private class Entry(val name: ByteArray, val offset: Long, val crc: Long, val size: Long)
+
+    private val entries = ArrayList<Entry>()
+    private val buffer = ByteBuffer.allocate(BUFFER_SIZE)
+    private val header = ByteBuffer.allocate(HEADER_BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN)
+    private val crc = CRC32()
+    private val dosTime: Int
+    private val dosDate: Int
+    private var position = out.position()
+    private var written = 0L
+    private var finished = false
+
+    init {
+        val calendar = Calendar.getInstance()
+        dosTime = (calendar.get(Calendar.HOUR_OF_DAY) shl 11) or
+                (calendar.get(Calendar.MINUTE) shl 5) or
+                (calendar.get(Calendar.SECOND) shr 1)
+        dosDate = ((calendar.get(Calendar.YEAR) - 1980) shl 9) or
+                ((calendar.get(Calendar.MONTH) + 1) shl 5) or
+                calendar.get(Calendar.DAY_OF_MONTH)
+    }
+
+    /**
+     * Copy all data of the source channel into a new entry. Source is not closed.
+     */
+    @Throws(IOException::class)
+    fun addEntry(name: String, source: ReadableByteChannel) {
+        val nameBytes = name.toByteArray(Charsets.UTF_8)
+        val offset = position
+        writeLocalHeader(nameBytes, 0, 0)
+        crc.reset()
+        var size = 0L
+        while (true) {
+            if (listener?.isCanceled() == true) {
+                throw ZipCanceledException()
+            }
+            buffer.clear()
+            val read = source.read(buffer)
+            if (read < 0) {
+                break
+            }
+            crc.update(buffer.array(), 0, read)
+            buffer.flip()
+            writeFully(buffer)
+            size += read
+            written += read
+            listener?.onBytesWritten(written)
+        }
+        if (size > MAX_SIZE || position > MAX_SIZE) {
+            throw IOException("Zip entry $name is too large")
+        }
+        //Patch CRC32, compressed and uncompressed sizes of the local header.
+        header.clear()
+        header.putInt(crc.value.toInt()).putInt(size.toInt()).putInt(size.toInt())
+        header.flip()
+        while (header.hasRemaining()) {
+            out.write(header, offset + LOCAL_HEADER_CRC_OFFSET + header.position())
+        }
+        entries.add(Entry(nameBytes, offset, crc.value, size))
+    }
+
+    @Throws(IOException::class)
+    fun addEntry(name: String, data: ByteArray) {
+        addEntry(name, Channels.newChannel(data.inputStream()))
+    }
+
+    /**
+     * Write central directory. Output channel is not closed.
+     */
+    @Throws(IOException::class)
+    override fun close() {
+        if (finished) {
+            return
+        }
+        finished = true
+        val directoryOffset = position
+        for (entry in entries) {
+            header.clear()
+            header.putInt(CENTRAL_HEADER_SIGNATURE)
+            header.putShort(VERSION_MADE_BY)
+            header.putShort(VERSION_NEEDED)
+            header.putShort(FLAG_UTF8)
+            header.putShort(METHOD_STORED)
+            header.putShort(dosTime.toShort())
+            header.putShort(dosDate.toShort())
+            header.putInt(entry.crc.toInt())
+            header.putInt(entry.size.toInt())
+            header.putInt(entry.size.toInt())
+            header.putShort(entry.name.size.toShort())
+            header.putShort(0) //extra length
+            header.putShort(0) //comment length
+            header.putShort(0) //disk number
+            header.putShort(0) //internal attributes
+            header.putInt(0) //external attributes
+            header.putInt(entry.offset.toInt())
+            header.put(entry.name)
+            header.flip()
+            writeFully(header)
+        }
+        val directorySize = position - directoryOffset
+        header.clear()
+        header.putInt(END_OF_CENTRAL_DIRECTORY_SIGNATURE)
+        header.putShort(0) //disk number
+        header.putShort(0) //disk with central directory
+        header.putShort(entries.size.toShort())
+        header.putShort(entries.size.toShort())
+        header.putInt(directorySize.toInt())
+        header.putInt(directoryOffset.toInt())
+        header.putShort(0) //comment length
+        header.flip()
+        writeFully(header)
+        out.truncate(position)
+    }
+
+    private fun writeLocalHeader(name: ByteArray, crc: Int, size: Int) {
+        header.clear()
+        header.putInt(LOCAL_HEADER_SIGNATURE)
+        header.putShort(VERSION_NEEDED)
+        header.putShort(FLAG_UTF8)
+        header.putShort(METHOD_STORED)
+        header.putShort(dosTime.toShort())
+        header.putShort(dosDate.toShort())
+        header.putInt(crc)
+        header.putInt(size)
+        header.putInt(size)
+        header.putShort(name.size.toShort())
+        header.putShort(0) //extra length
+        header.put(name)
+        header.flip()
+        writeFully(header)
+    }
+
+    private fun writeFully(data: ByteBuffer) {
+        while (data.hasRemaining()) {
+            position += out.write(data, position)
+        }
+    }
+
+    companion object {
+        private const val BUFFER_SIZE = 1024 * 1024
+        private const val HEADER_BUFFER_SIZE = 64 * 1024
+        private const val MAX_SIZE = 0xFFFFFFFFL
+        private const val LOCAL_HEADER_SIGNATURE = 0x04034b50
+        private const val CENTRAL_HEADER_SIGNATURE = 0x02014b50
+        private const val END_OF_CENTRAL_DIRECTORY_SIGNATURE = 0x06054b50
+        private const val LOCAL_HEADER_CRC_OFFSET = 14
+        private const val VERSION_MADE_BY: Short = 20
+        private const val VERSION_NEEDED: Short = 10
+        private const val FLAG_UTF8: Short = 0x0800
+        private const val METHOD_STORED: Short = 0
+    }
+}
+
+interface ZipProgressListener {
+    fun isCanceled(): Boolean
+
+    /** Total count of entry data bytes written so far, headers are not counted. */
+    fun onBytesWritten(bytes: Long)
+}
+
+class ZipCanceledException : InterruptedIOException("Zip writing is canceled")
@@ -0,0 +1,158 @@
+package org.proofmode.audio.worker
+
+import android.content.Context
+import androidx.work.WorkManager
+import androidx.work.Worker
+import androidx.work.WorkerParameters
+import androidx.work.workDataOf
+import com.dimowner.audiorecorder.ARApplication
+import com.dimowner.audiorecorder.data.database.LocalRepository
+import org.proofmode.audio.utils.ProofModeUtils
+import org.witness.proofmode.ProofMode
+import timber.log.Timber
+import java.io.File
+import java.util.UUID
+import java.util.concurrent.Callable
+import java.util.concurrent.Executors
+import java.util.concurrent.Future
+
+/**
+ * Generates proof for a list of records. Files are hashed in parallel by a bounded pool while
+ * proof signing and notarization run on the worker thread one record after another.
+ * As in [GenerateProofWorker], the record path is resolved and the file is hashed under the record read lock,
+ * signing and notarization run without it. A record which fails is logged and skipped, so one bad record
+ * doesn't fail the batches chained after this one.
+ * Every finished record is appended to a progress file, so when the work is stopped and rescheduled
+ * it continues with the records which are not done yet. Progress files of works which will not run again,
+ * e.g. cancelled ones, are removed when the next batch starts.
+ */
+class BatchProofWorker(
+        private val context: Context,
+        workParams: WorkerParameters
+) : Worker(context.applicationContext, workParams) {
+
+    override fun doWork(): Result {
+        val progressDir = File(context.filesDir, PROGRESS_DIR)
+        removeStaleProgress(progressDir)
+        val progressFile = File(progressDir, id.toString())
+        val recordIds = inputData.getIntArray(ProofModeUtils.RECORD_IDS_KEY)
+        if (recordIds == null) {
+            progressFile.delete()
+            return Result.failure()
+        }
+        val done = readProgress(progressFile)
+        val injector = ARApplication.getInjector()
+        val localRepository = injector.provideLocalRepository(context)
+        val mediaHashes = injector.provideMediaHashCache(context)
+        val locks = injector.provideRecordFileLocks()
+
+        val pool = Executors.newFixedThreadPool(HASH_THREAD_COUNT)
+        try {
+            val pending = ArrayList<Pair<Int, Future<Pair<File, String?>?>>>()
+            for (recordId in recordIds) {
+                if (recordId !in done) {
+                    pending.add(recordId to pool.submit(Callable<Pair<File, String?>?> {
+                        locks.lockRead(recordId)
+                        try {
+                            localRepository.getRecord(recordId)?.let { record ->
+                                val file = File(record.path)
+                                file to mediaHashes.getHash(file)
+                            }
+                        } finally {
+                            locks.unlockRead(recordId)
+                        }
+                    }))
+                }
+            }
+            for ((recordId, hashFuture) in pending) {
+                if (isStopped) {
+                    //Progress file is kept for the rescheduled run.
+                    return Result.retry()
+                }
+                try {
+                    val (file, hash) = hashFuture.get() ?: (null to null)
+                    if (file != null && hash != null && ProofModeUtils.proofExistsForHash(context, hash) == null) {
+                        generateProof(recordId, file, hash, localRepository)
+                    }
+                } catch (e: InterruptedException) {
+                    return Result.retry()
+                } catch (e: Exception) {
+                    Timber.e(e, "Proof failed for record %d", recordId)
+                }
+                done.add(recordId)
+                appendProgress(progressFile, recordId)
+                setProgressAsync(workDataOf(
+                        ProofModeUtils.PROGRESS_DONE_KEY to done.size,
+                        ProofModeUtils.PROGRESS_TOTAL_KEY to recordIds.size))
+            }
+        } finally {
+            pool.shutdownNow()
+        }
+        progressFile.delete()
+        Timber.d("Batch proof finished for %d records", recordIds.size)
+        return Result.success(workDataOf(ProofModeUtils.PROGRESS_DONE_KEY to done.size))
+    }
+
+    /**
+     * When the record is renamed while its proof is generated, the proof is generated again for the new path.
+     * Proof is bound to the hash, which a rename doesn't change.
+     */
+    private fun generateProof(recordId: Int, file: File, hash: String, localRepository: LocalRepository) {
+        val uri = ProofModeUtils.getUriForFile(file, context, context.packageName)
+        if (ProofMode.generateProof(context.applicationContext, uri, hash) == null) {
+            val path = localRepository.getRecord(recordId)?.path
+            if (path != null && path != file.path) {
+                val renamed = ProofModeUtils.getUriForFile(File(path), context, context.packageName)
+                ProofMode.generateProof(context.applicationContext, renamed, hash)
+            }
+        }
+    }
+
+    /**
+     * Delete progress files of works which are finished or unknown to WorkManager.
+     */
+    private fun removeStaleProgress(dir: File) {
+        val files = dir.listFiles() ?: return
+        val workManager = WorkManager.getInstance(context)
+        for (file in files) {
+            if (file.name == id.toString()) {
+                continue
+            }
+            val workId = try {
+                UUID.fromString(file.name)
+            } catch (e: IllegalArgumentException) {
+                null
+            }
+            val info = try {
+                workId?.let { workManager.getWorkInfoById(it).get() }
+            } catch (e: Exception) {
+                Timber.e(e)
+                continue
+            }
+            if (info == null || info.state.isFinished) {
+                file.delete()
+            }
+        }
+    }
+
+    private fun readProgress(file: File): MutableSet<Int> {
+        val done = HashSet<Int>()
+        if (file.isFile) {
+            file.forEachLine { line ->
+                line.trim().toIntOrNull()?.let { done.add(it) }
+            }
+        }
+        return done
+    }
+
+    private fun appendProgress(file: File, recordId: Int) {
+        file.parentFile?.mkdirs()
+        file.appendText("$recordId\n")
+    }
+
+    companion object {
+        /** Hashing is bound by storage read speed, more threads don't make it faster. */
+        private val HASH_THREAD_COUNT = Runtime.getRuntime().availableProcessors().coerceIn(1, 4)
+        private const val PROGRESS_DIR = "proof_batches"
+    }
+}
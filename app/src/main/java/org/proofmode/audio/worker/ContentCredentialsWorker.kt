@@ -0,0 +1,65 @@
+package org.proofmode.audio.worker
+
+import android.content.Context
+import android.os.SystemClock
+import androidx.work.Data
+import androidx.work.Worker
+import androidx.work.WorkerParameters
+import com.dimowner.audiorecorder.ARApplication
+import com.dimowner.audiorecorder.data.database.Record
+import com.dimowner.audiorecorder.util.C2paUtils
+import org.proofmode.audio.utils.ProofModeUtils
+import timber.log.Timber
+import java.io.File
+
+/**
+ * Embeds C2PA content credentials into the record file and hashes the signed file.
+ * Runs before [GenerateProofWorker] in one chain: the hash is passed to the proof worker in the output data,
+ * so the media is read once after the manifest is embedded. Duration of every phase is put into the output too.
+ * The record path is resolved and the file is rewritten under the record write lock,
+ * so the record can't be renamed or decoded meanwhile.
+ */
+class ContentCredentialsWorker(
+        private val context: Context,
+        workParams: WorkerParameters
+) : Worker(context.applicationContext, workParams) {
+
+    override fun doWork(): Result {
+        val recordId = inputData.getInt(ProofModeUtils.RECORD_ID_KEY, Record.NO_ID)
+        if (recordId == Record.NO_ID) return Result.failure()
+        val isDirectCapture = inputData.getBoolean(ProofModeUtils.DIRECT_CAPTURE_KEY, true)
+        val output = Data.Builder()
+
+        val injector = ARApplication.getInjector()
+        val locks = injector.provideRecordFileLocks()
+        locks.lockWrite(recordId)
+        try {
+            val record = injector.provideLocalRepository(context).getRecord(recordId) ?: return Result.failure()
+            try {
+                val timings = C2paUtils.generateContentCredentials(context, record.path, isDirectCapture, false, null)
+                if (timings != null) {
+                    output.putLong(ProofModeUtils.C2PA_CREDENTIALS_TIME_KEY, timings.credentials)
+                    output.putLong(ProofModeUtils.C2PA_ASSERTIONS_TIME_KEY, timings.assertions)
+                    output.putLong(ProofModeUtils.C2PA_EMBED_TIME_KEY, timings.embed)
+                    Timber.d("Content credentials: identity %d ms, assertions %d ms, embed %d ms",
+                            timings.credentials, timings.assertions, timings.embed)
+                }
+            } catch (e: Exception) {
+                //Proof is still generated for the unsigned media.
+                Timber.e(e)
+            }
+
+            val hashStart = SystemClock.elapsedRealtime()
+            val hash = injector.provideMediaHashCache(context).getHash(File(record.path))
+            val hashTime = SystemClock.elapsedRealtime() - hashStart
+            output.putLong(ProofModeUtils.MEDIA_HASH_TIME_KEY, hashTime)
+            if (hash != null) {
+                output.putString(ProofModeUtils.MEDIA_HASH, hash)
+            }
+            Timber.d("Signed media hashed in %d ms", hashTime)
+        } finally {
+            locks.unlockWrite(recordId)
+        }
+        return Result.success(output.build())
+    }
+}
@@ -6,10 +6,13 @@ import android.util.Log
 import androidx.work.Worker
 import androidx.work.WorkerParameters
 import androidx.work.workDataOf
+import com.dimowner.audiorecorder.ARApplication
+import com.dimowner.audiorecorder.data.database.Record
 import org.proofmode.audio.utils.ProofModeUtils
 import org.witness.proofmode.ProofMode
 import org.witness.proofmode.service.MediaWatcher
 import timber.log.Timber
+import java.io.File
 import java.util.Date
 
 class GenerateProofWorker(
@@ -17,13 +20,51 @@ class GenerateProofWorker(
         workParams: WorkerParameters
 ) : Worker(context.applicationContext, workParams) {
     override fun doWork(): Result {
-        val audioUriString = inputData.getString(ProofModeUtils.MEDIA_KEY)
         val proofWasAutogenerated = inputData.getBoolean(ProofModeUtils.AUTO_GENERATED_KEY, false)
-        val audioUri = Uri.parse(audioUriString)
+        val recordId = inputData.getInt(ProofModeUtils.RECORD_ID_KEY, Record.NO_ID)
+        if (recordId == Record.NO_ID) {
+            val audioUri = Uri.parse(inputData.getString(ProofModeUtils.MEDIA_KEY))
+            return generateProof(audioUri, inputData.getString(ProofModeUtils.MEDIA_HASH), proofWasAutogenerated)
+        }
+        //The record path is resolved when the work runs, it could be renamed after the work was enqueued.
+        //The read lock is held only while the path is resolved and the file is hashed, not over signing
+        //and notarization, which may take long while a rename of the record waits for the lock.
+        val injector = ARApplication.getInjector()
+        val localRepository = injector.provideLocalRepository(context)
+        val locks = injector.provideRecordFileLocks()
+        locks.lockRead(recordId)
+        val (file, mediaHash) = try {
+            val record = localRepository.getRecord(recordId) ?: return Result.failure()
+            val recordFile = File(record.path)
+            recordFile to (inputData.getString(ProofModeUtils.MEDIA_HASH)
+                    ?: injector.provideMediaHashCache(context).getHash(recordFile))
+        } finally {
+            locks.unlockRead(recordId)
+        }
+        val audioUri = ProofModeUtils.getUriForFile(file, context, context.packageName)
+        val result = generateProof(audioUri, mediaHash, proofWasAutogenerated)
+        if (result is Result.Failure && localRepository.getRecord(recordId)?.path != file.path) {
+            //Renamed while the proof was generated, the proof is bound to the hash, which a rename doesn't change.
+            Timber.d("Record %d was renamed, retry proof", recordId)
+            return Result.retry()
+        }
+        return result
+    }
+
+    private fun generateProof(audioUri: Uri, mediaHash: String?, proofWasAutogenerated: Boolean): Result {
         Timber.d("Worker uri path ${audioUri.path}")
-        val existingHash = ProofModeUtils.proofExistsForMedia(context, audioUri)
+        val existingHash = if (mediaHash.isNullOrEmpty()) {
+            ProofModeUtils.proofExistsForMedia(context, audioUri)
+        } else {
+            ProofModeUtils.proofExistsForHash(context, mediaHash)
+        }
         if (existingHash.isNullOrEmpty()) {
-            val hash: String? = MediaWatcher.getInstance(context.applicationContext).processUri(audioUri,proofWasAutogenerated,Date())
+            //Known hash saves another full read of the media.
+            val hash: String? = if (mediaHash.isNullOrEmpty()) {
+                MediaWatcher.getInstance(context.applicationContext).processUri(audioUri,proofWasAutogenerated,Date())
+            } else {
+                ProofMode.generateProof(context.applicationContext, audioUri, mediaHash)
+            }
             Timber.d("Worker hash It is $proofWasAutogenerated that the proof was autogenerted")
             if (!hash.isNullOrEmpty()) {
                 return Result.success(workDataOf(ProofModeUtils.MEDIA_HASH to hash))
@@ -33,4 +74,4 @@ class GenerateProofWorker(
         }
         return Result.success(workDataOf(ProofModeUtils.MEDIA_HASH to existingHash))
     }
-}
\ No newline at end of file
+}
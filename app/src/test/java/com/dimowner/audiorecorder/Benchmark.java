@@ -0,0 +1,17 @@
+package com.dimowner.audiorecorder;
+
+import java.util.logging.Logger;
+
+/**
+ * JUnit category of benchmarks. They are excluded from the regular unit test run,
+ * {@code ./gradlew testDebugUnitTest -Pbenchmarks} runs them. Timing on a shared machine is noisy,
+ * so benchmarks report results with {@link #report(String, Object...)} instead of asserting them.
+ */
+public interface Benchmark {
+
+	Logger LOGGER = Logger.getLogger(Benchmark.class.getSimpleName());
+
+	static void report(String format, Object... args) {
+		LOGGER.info(String.format(format, args));
+	}
+}
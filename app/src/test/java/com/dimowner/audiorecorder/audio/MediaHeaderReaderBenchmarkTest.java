@@ -0,0 +1,64 @@
+package com.dimowner.audiorecorder.audio;
+
+import com.dimowner.audiorecorder.Benchmark;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import java.io.File;
+import java.io.IOException;
+
+import static com.dimowner.audiorecorder.audio.MediaTestFiles.writeSparseMp4;
+import static com.dimowner.audiorecorder.audio.MediaTestFiles.writeSparseWave;
+
+/**
+ * Cost of reading headers of synthetic RIFF, MP4 and 3GP files of 1 MB and 256 MB.
+ * Header reads seek over sample data, so the cost should not grow with the file size.
+ */
+@Category(Benchmark.class)
+public class MediaHeaderReaderBenchmarkTest {
+
+	private static final int SMALL_SIZE = 1024 * 1024;
+	private static final int LARGE_SIZE = 256 * 1024 * 1024;
+	private static final int WARMUP_ITERATIONS = 500;
+	private static final int ITERATIONS = 2000;
+
+	private File file;
+
+	@Before
+	public void setUp() throws IOException {
+		file = File.createTempFile("header", ".bin");
+	}
+
+	@After
+	public void tearDown() {
+		file.delete();
+	}
+
+	@Test
+	public void readHeaders() throws IOException {
+		for (int size : new int[] {SMALL_SIZE, LARGE_SIZE}) {
+			writeSparseWave(file, size);
+			report("RIFF", size);
+			writeSparseMp4(file, size, "mp42", "mp4a", 44100, 2);
+			report("MP4", size);
+			writeSparseMp4(file, size, "3gp4", "samr", 8000, 1);
+			report("3GP", size);
+		}
+	}
+
+	private void report(String name, int size) throws IOException {
+		long sink = 0;
+		for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+			sink += MediaHeaderReader.read(file).duration;
+		}
+		long start = System.nanoTime();
+		for (int i = 0; i < ITERATIONS; i++) {
+			sink += MediaHeaderReader.read(file).duration;
+		}
+		long nanos = (System.nanoTime() - start) / ITERATIONS;
+		Benchmark.report("Header of %s %d KB: %d us (%d)", name, size / 1024, nanos / 1000, sink % 2);
+	}
+}
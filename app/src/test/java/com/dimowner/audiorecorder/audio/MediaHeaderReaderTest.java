@@ -0,0 +1,276 @@
+package com.dimowner.audiorecorder.audio;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+import static com.dimowner.audiorecorder.audio.MediaTestFiles.*;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class MediaHeaderReaderTest {
+
+	private File file;
+
+	@Before
+	public void setUp() throws IOException {
+		file = File.createTempFile("header", ".bin");
+	}
+
+	@After
+	public void tearDown() {
+		file.delete();
+	}
+
+	@Test
+	public void readsPcmWave() throws IOException {
+		MediaHeaderReader.Header header = read(waveFile(44100 * 4, fmt(WAVE_FORMAT_PCM, 2, 44100, 16)));
+		assertNotNull(header);
+		assertEquals(MediaHeaderReader.MIME_RAW, header.mime);
+		assertEquals(44100, header.sampleRate);
+		assertEquals(2, header.channelCount);
+		assertEquals(44100 * 2 * 16, header.bitrate);
+		assertEquals(1000000, header.duration);
+		assertEquals(16, header.bitsPerSample);
+		assertEquals(4, header.blockAlign);
+		assertEquals(44, header.dataOffset);
+		assertEquals(44100 * 4, header.dataSize);
+		assertTrue(header.isPcm16());
+	}
+
+	@Test
+	public void skipsOddSizedChunkWithPadding() throws IOException {
+		//LIST chunk of 3 bytes is followed by a pad byte, which is not counted in its size.
+		MediaHeaderReader.Header header = read(waveFile(8000 * 2,
+				chunk("LIST", new byte[] {1, 2, 3}), fmt(WAVE_FORMAT_PCM, 1, 8000, 16)));
+		assertNotNull(header);
+		assertEquals(12 + 12 + 24 + 8, header.dataOffset);
+		assertEquals(1000000, header.duration);
+	}
+
+	@Test
+	public void skipsOddSizedChunkBetweenFmtAndData() throws IOException {
+		MediaHeaderReader.Header header = read(waveFile(16000 * 2,
+				fmt(WAVE_FORMAT_PCM, 1, 16000, 16), chunk("fact", new byte[5])));
+		assertNotNull(header);
+		assertEquals(12 + 24 + 14 + 8, header.dataOffset);
+		assertEquals(16000 * 2, header.dataSize);
+	}
+
+	@Test
+	public void readsExtensibleSubFormat() throws IOException {
+		MediaHeaderReader.Header pcm = read(waveFile(48000 * 4, fmtExtensible(WAVE_FORMAT_PCM, 2, 48000, 16)));
+		assertNotNull(pcm);
+		assertTrue(pcm.isPcm16());
+		assertEquals(1000000, pcm.duration);
+		assertEquals(12 + 48 + 8, pcm.dataOffset);
+
+		MediaHeaderReader.Header floats = read(waveFile(48000 * 8,
+				fmtExtensible(WAVE_FORMAT_IEEE_FLOAT, 2, 48000, 32)));
+		assertNotNull(floats);
+		assertEquals(32, floats.bitsPerSample);
+		assertFalse(floats.isPcm16());
+		assertEquals(1000000, floats.duration);
+
+		//ADPCM needs a codec.
+		assertNull(read(waveFile(1000, fmtExtensible(2, 1, 8000, 4))));
+	}
+
+	@Test
+	public void rejectsUnsupportedWave() throws IOException {
+		Object[][] cases = {
+				{"compressed format", waveFile(1000, fmt(0x55, 2, 44100, 16))},
+				{"no data chunk", wave(fmt(WAVE_FORMAT_PCM, 1, 8000, 16))},
+				{"data before fmt", wave(chunk("data", new byte[100]), fmt(WAVE_FORMAT_PCM, 1, 8000, 16))},
+				{"no fmt chunk", wave(chunk("data", new byte[100]))},
+				{"fmt too short", waveFile(100, chunk("fmt ", new byte[14]))},
+				{"zero channels", waveFile(100, fmt(WAVE_FORMAT_PCM, 0, 8000, 16))},
+				{"zero sample rate", waveFile(100, fmt(WAVE_FORMAT_PCM, 1, 0, 16))},
+				{"shorter than RIFF header", Arrays.copyOf(ascii("RIFF"), 8)},
+				{"RIFF but not WAVE", concat(ascii("RIFF"), le32(4), ascii("AVI "))},
+		};
+		assertAllNull(cases);
+	}
+
+	@Test
+	public void readsTruncatedWave() throws IOException {
+		//Size of data is 0 while the file is recorded and larger than the file when the app was killed.
+		byte[] samples = new byte[8000 * 2];
+		MediaHeaderReader.Header recorded = read(wave(fmt(WAVE_FORMAT_PCM, 1, 8000, 16),
+				chunkHeader("data", 0), samples));
+		assertNotNull(recorded);
+		assertEquals(samples.length, recorded.dataSize);
+		assertEquals(1000000, recorded.duration);
+
+		MediaHeaderReader.Header cut = read(wave(fmt(WAVE_FORMAT_PCM, 1, 8000, 16),
+				chunkHeader("data", 0xFFFFFFF0L), samples));
+		assertNotNull(cut);
+		assertEquals(samples.length, cut.dataSize);
+
+		byte[] whole = waveFile(100, fmt(WAVE_FORMAT_PCM, 1, 8000, 16));
+		Object[][] cases = {
+				{"cut in fmt chunk", Arrays.copyOf(whole, 12 + 8 + 10)},
+				{"cut before data chunk", Arrays.copyOf(whole, 12 + 24)},
+				{"cut in data chunk header", Arrays.copyOf(whole, 12 + 24 + 4)},
+		};
+		assertAllNull(cases);
+	}
+
+	@Test
+	public void readsAacMp4() throws IOException {
+		MediaHeaderReader.Header header = read(aacFile(1000, 44100, 441000, 128000));
+		assertNotNull(header);
+		assertEquals(MediaHeaderReader.MIME_AAC, header.mime);
+		assertEquals(44100, header.sampleRate);
+		assertEquals(2, header.channelCount);
+		assertEquals(128000, header.bitrate);
+		assertEquals(10000000, header.duration);
+		assertEquals(0, header.dataSize);
+	}
+
+	@Test
+	public void readsAmr3gp() throws IOException {
+		byte[] data = mp4(ftyp("3gp4"), box("mdat", new byte[320]),
+				box("moov", mvhd(0, 1000, 2000),
+						trak(mdhd(0, 8000, 16000), "soun", audioSampleEntry("samr", 0, 1, 8000))));
+		MediaHeaderReader.Header header = read(data);
+		assertNotNull(header);
+		assertEquals(MediaHeaderReader.MIME_AMR_NB, header.mime);
+		assertEquals(8000, header.sampleRate);
+		assertEquals(1, header.channelCount);
+		assertEquals(0, header.bitrate);
+		assertEquals(2000000, header.duration);
+
+		MediaHeaderReader.Header wide = read(mp4(ftyp("3gp4"),
+				box("moov", mvhd(0, 1000, 1000),
+						trak(mdhd(0, 16000, 16000), "soun", audioSampleEntry("sawb", 0, 1, 16000)))));
+		assertNotNull(wide);
+		assertEquals(MediaHeaderReader.MIME_AMR_WB, wide.mime);
+		assertEquals(1000000, wide.duration);
+	}
+
+	@Test
+	public void reads64BitTimes() throws IOException {
+		byte[] entry = audioSampleEntry("mp4a", 0, 2, 44100, esds(96000, ASC_AAC_LC_44100_STEREO));
+		//Duration which doesn't fit 32 bits: 100000 s at 48 kHz.
+		long longDuration = 48000L * 100000;
+		MediaHeaderReader.Header media = read(mp4(ftyp("mp42"),
+				box("moov", mvhd(1, 1000, 100000000L), trak(mdhd(1, 48000, longDuration), "soun", entry))));
+		assertNotNull(media);
+		assertEquals(100000L * 1000000, media.duration);
+
+		//Track duration is unknown, the duration of the movie is taken from 64-bit mvhd.
+		MediaHeaderReader.Header movie = read(mp4(ftyp("mp42"),
+				box("moov", mvhd(1, 600, 600L * 5000000), trak(mdhd(0, 44100, 0xFFFFFFFFL), "soun", entry))));
+		assertNotNull(movie);
+		assertEquals(5000000L * 1000000, movie.duration);
+	}
+
+	@Test
+	public void reads64BitBoxSize() throws IOException {
+		byte[] entry = audioSampleEntry("mp4a", 0, 1, 44100, esds(64000, ASC_AAC_LC_44100_STEREO));
+		MediaHeaderReader.Header header = read(mp4(ftyp("mp42"), largeBox("mdat", new byte[4096]),
+				box("moov", mvhd(0, 1000, 1000), trak(mdhd(0, 44100, 44100), "soun", entry))));
+		assertNotNull(header);
+		assertEquals(1000000, header.duration);
+		assertEquals(64000, header.bitrate);
+	}
+
+	@Test
+	public void readsQuickTimeSoundDescriptionVersion1() throws IOException {
+		byte[] entry = audioSampleEntry("mp4a", 1, 2, 44100, esds(128000, ASC_AAC_LC_44100_STEREO));
+		MediaHeaderReader.Header header = read(mp4(ftyp("M4A "),
+				box("moov", mvhd(0, 1000, 1000), trak(mdhd(0, 44100, 44100), "soun", entry))));
+		assertNotNull(header);
+		assertEquals(128000, header.bitrate);
+		assertEquals(2, header.channelCount);
+	}
+
+	@Test
+	public void skipsVideoTrack() throws IOException {
+		byte[] video = trak(mdhd(0, 90000, 90000), "vide", box("avc1", new byte[78]));
+		byte[] audio = trak(mdhd(0, 44100, 88200), "soun",
+				audioSampleEntry("mp4a", 0, 2, 44100, esds(128000, ASC_AAC_LC_44100_STEREO)));
+		MediaHeaderReader.Header header = read(mp4(ftyp("mp42"), box("moov", mvhd(0, 1000, 2000), video, audio)));
+		assertNotNull(header);
+		assertEquals(MediaHeaderReader.MIME_AAC, header.mime);
+		assertEquals(2000000, header.duration);
+	}
+
+	@Test
+	public void rejectsUnsupportedMp4() throws IOException {
+		byte[] aac = audioSampleEntry("mp4a", 0, 2, 44100, esds(128000, ASC_AAC_LC_44100_STEREO));
+		Object[][] cases = {
+				{"HE-AAC", mp4(ftyp("mp42"), box("moov", mvhd(0, 1000, 1000),
+						trak(mdhd(0, 44100, 44100), "soun",
+								audioSampleEntry("mp4a", 0, 2, 22050, esds(48000, ASC_HE_AAC)))))},
+				{"sound description version 2", mp4(ftyp("mp42"), box("moov", mvhd(0, 1000, 1000),
+						trak(mdhd(0, 44100, 44100), "soun", audioSampleEntry("mp4a", 2, 2, 44100))))},
+				{"unknown codec", mp4(ftyp("mp42"), box("moov", mvhd(0, 1000, 1000),
+						trak(mdhd(0, 44100, 44100), "soun", audioSampleEntry("Opus", 0, 2, 48000))))},
+				{"fragmented", mp4(ftyp("iso6"), box("moov", mvhd(0, 1000, 0),
+						trak(mdhd(0, 44100, 0), "soun", aac)))},
+				{"no audio track", mp4(ftyp("mp42"), box("moov", mvhd(0, 1000, 1000),
+						trak(mdhd(0, 90000, 90000), "vide", box("avc1", new byte[78]))))},
+				{"no moov", mp4(ftyp("mp42"), box("mdat", new byte[100]))},
+		};
+		assertAllNull(cases);
+	}
+
+	@Test
+	public void rejectsTruncatedMp4() throws IOException {
+		byte[] whole = aacFile(1000, 44100, 441000, 128000);
+		//ftyp of 24 bytes and mdat of 1008 bytes are followed by moov.
+		int moovStart = 24 + 1008;
+		Object[][] cases = {
+				{"cut in mdat", Arrays.copyOf(whole, moovStart - 500)},
+				{"cut in moov header", Arrays.copyOf(whole, moovStart + 4)},
+				{"cut in moov", Arrays.copyOf(whole, moovStart + 40)},
+				{"cut in sample entry", Arrays.copyOf(whole, whole.length - 20)},
+				{"box larger than parent", mp4(ftyp("mp42"), box("moov", mvhd(0, 1000, 1000),
+						concat(be32(1000), ascii("trak"))))},
+				{"box smaller than header", mp4(ftyp("mp42"), concat(be32(4), ascii("moov")))},
+		};
+		assertAllNull(cases);
+	}
+
+	@Test
+	public void readsHeadersOfLargeFiles() throws IOException {
+		//Sizes of 256 MB don't fit into a read buffer, samples must be skipped by seek.
+		int size = 256 * 1024 * 1024;
+		int dataSize = writeSparseWave(file, size);
+		MediaHeaderReader.Header wave = MediaHeaderReader.read(file);
+		assertNotNull(wave);
+		assertEquals(dataSize, wave.dataSize);
+		assertEquals((long) dataSize / 4 * 1000000 / 44100, wave.duration);
+
+		writeSparseMp4(file, size, "mp42", "mp4a", 44100, 2);
+		MediaHeaderReader.Header aac = MediaHeaderReader.read(file);
+		assertNotNull(aac);
+		assertEquals(MediaHeaderReader.MIME_AAC, aac.mime);
+		assertEquals(10000000, aac.duration);
+
+		writeSparseMp4(file, size, "3gp4", "samr", 8000, 1);
+		MediaHeaderReader.Header amr = MediaHeaderReader.read(file);
+		assertNotNull(amr);
+		assertEquals(MediaHeaderReader.MIME_AMR_NB, amr.mime);
+		assertEquals(10000000, amr.duration);
+	}
+
+	private void assertAllNull(Object[][] cases) throws IOException {
+		for (Object[] testCase : cases) {
+			assertNull((String) testCase[0], read((byte[]) testCase[1]));
+		}
+	}
+
+	private MediaHeaderReader.Header read(byte[] data) throws IOException {
+		return MediaHeaderReader.read(write(file, data));
+	}
+}
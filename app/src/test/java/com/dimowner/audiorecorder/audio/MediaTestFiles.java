@@ -0,0 +1,242 @@
+package com.dimowner.audiorecorder.audio;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Builds synthetic RIFF/WAVE and MP4/3GP files for header tests. Sample data is zeros, only headers matter.
+ */
+final class MediaTestFiles {
+
+	static final int WAVE_FORMAT_PCM = 1;
+	static final int WAVE_FORMAT_IEEE_FLOAT = 3;
+	static final int WAVE_FORMAT_EXTENSIBLE = 0xFFFE;
+
+	/** AAC-LC, 44100 Hz, stereo. */
+	static final byte[] ASC_AAC_LC_44100_STEREO = {0x12, 0x10};
+	/** HE-AAC, 22050 Hz core, stereo. */
+	static final byte[] ASC_HE_AAC = {0x2B, (byte) 0x90};
+
+	private MediaTestFiles() {
+	}
+
+	static File write(File file, byte[] data) throws IOException {
+		try (FileOutputStream output = new FileOutputStream(file)) {
+			output.write(data);
+		}
+		return file;
+	}
+
+	/**
+	 * Wrap chunks into RIFF/WAVE, the RIFF size is the sum of chunks.
+	 */
+	static byte[] wave(byte[]... chunks) {
+		byte[] content = concat(chunks);
+		return concat(ascii("RIFF"), le32(content.length + 4), ascii("WAVE"), content);
+	}
+
+	/**
+	 * Chunk padded to even size, the size field is the unpadded size.
+	 */
+	static byte[] chunk(String id, byte[] data) {
+		byte[] pad = new byte[data.length & 1];
+		return concat(ascii(id), le32(data.length), data, pad);
+	}
+
+	/**
+	 * Chunk header with the specified size and no data, e.g. data chunk of a file which is still recorded.
+	 */
+	static byte[] chunkHeader(String id, long size) {
+		return concat(ascii(id), le32((int) size));
+	}
+
+	static byte[] fmt(int format, int channels, int sampleRate, int bitsPerSample) {
+		int blockAlign = channels * bitsPerSample / 8;
+		return chunk("fmt ", concat(le16(format), le16(channels), le32(sampleRate),
+				le32(sampleRate * blockAlign), le16(blockAlign), le16(bitsPerSample)));
+	}
+
+	/**
+	 * WAVE_FORMAT_EXTENSIBLE fmt chunk, the first two bytes of the sub-format GUID are the actual format.
+	 */
+	static byte[] fmtExtensible(int subFormat, int channels, int sampleRate, int bitsPerSample) {
+		int blockAlign = channels * bitsPerSample / 8;
+		byte[] guidTail = {0x00, 0x00, 0x00, 0x00, 0x10, 0x00, (byte) 0x80, 0x00, 0x00, (byte) 0xAA, 0x00, 0x38,
+				(byte) 0x9B, 0x71};
+		return chunk("fmt ", concat(le16(WAVE_FORMAT_EXTENSIBLE), le16(channels), le32(sampleRate),
+				le32(sampleRate * blockAlign), le16(blockAlign), le16(bitsPerSample),
+				le16(22), le16(bitsPerSample), le32(3), le16(subFormat), guidTail));
+	}
+
+	static byte[] box(String type, byte[]... content) {
+		byte[] data = concat(content);
+		return concat(be32(data.length + 8), ascii(type), data);
+	}
+
+	/**
+	 * Box with 64-bit size, size field is 1 and the actual size follows the type.
+	 */
+	static byte[] largeBox(String type, byte[]... content) {
+		byte[] data = concat(content);
+		return concat(be32(1), ascii(type), be64(data.length + 16), data);
+	}
+
+	static byte[] fullBox(String type, int version, byte[]... content) {
+		return box(type, concat(new byte[] {(byte) version, 0, 0, 0}), concat(content));
+	}
+
+	static byte[] ftyp(String brand) {
+		return box("ftyp", ascii(brand), be32(0), ascii(brand), ascii("isom"));
+	}
+
+	static byte[] mvhd(int version, long timescale, long duration) {
+		return fullBox("mvhd", version, time(version, timescale, duration), new byte[80]);
+	}
+
+	static byte[] mdhd(int version, long timescale, long duration) {
+		return fullBox("mdhd", version, time(version, timescale, duration), new byte[4]);
+	}
+
+	static byte[] hdlr(String handler) {
+		return fullBox("hdlr", 0, be32(0), ascii(handler), new byte[12], new byte[] {0});
+	}
+
+	/**
+	 * Track with the handler and the sample entry, mdhd is the media header of the track.
+	 */
+	static byte[] trak(byte[] mdhd, String handler, byte[] sampleEntry) {
+		byte[] stsd = fullBox("stsd", 0, be32(1), sampleEntry);
+		return box("trak",
+				fullBox("tkhd", 0, new byte[80]),
+				box("mdia", mdhd, hdlr(handler),
+						box("minf", box("stbl", stsd))));
+	}
+
+	/**
+	 * Audio sample entry: reserved, data reference index, version and reserved fields,
+	 * channel count, sample size, reserved and 16.16 sample rate, then child boxes.
+	 */
+	static byte[] audioSampleEntry(String format, int version, int channels, int sampleRate, byte[]... children) {
+		byte[] fields = concat(new byte[6], le16(0), be16(version), new byte[6], be16(channels), be16(16),
+				new byte[4], be32(sampleRate << 16), version == 1 ? new byte[16] : new byte[0]);
+		return box(format, fields, concat(children));
+	}
+
+	/**
+	 * ES descriptor with decoder config and the audio specific config.
+	 */
+	static byte[] esds(int avgBitrate, byte[] audioSpecificConfig) {
+		byte[] specific = descriptor(0x05, audioSpecificConfig);
+		byte[] decoderConfig = descriptor(0x04, concat(new byte[] {0x40, 0x15}, new byte[3],
+				be32(avgBitrate), be32(avgBitrate), specific));
+		byte[] es = descriptor(0x03, concat(be16(1), new byte[] {0}, decoderConfig, descriptor(0x06, new byte[] {2})));
+		return fullBox("esds", 0, es);
+	}
+
+	static byte[] mp4(byte[]... boxes) {
+		return concat(boxes);
+	}
+
+	/**
+	 * AAC file as MediaRecorder writes it: ftyp, mdat with the samples, then moov.
+	 */
+	static byte[] aacFile(int mdatSize, long timescale, long duration, int avgBitrate) {
+		return mp4(ftyp("mp42"), box("mdat", new byte[mdatSize]),
+				box("moov", mvhd(0, 1000, duration * 1000 / timescale),
+						trak(mdhd(0, timescale, duration), "soun",
+								audioSampleEntry("mp4a", 0, 2, 44100, esds(avgBitrate, ASC_AAC_LC_44100_STEREO)))));
+	}
+
+	static byte[] waveFile(int dataSize, byte[]... chunksBeforeData) {
+		return wave(concat(chunksBeforeData), chunk("data", new byte[dataSize]));
+	}
+
+	/**
+	 * Stereo 16-bit 44100 Hz WAVE of the size with LIST chunk before fmt, as some editors write it.
+	 * Sample data is a hole, so large files take no disk space.
+	 * @return Size of sample data.
+	 */
+	static int writeSparseWave(File file, int size) throws IOException {
+		byte[] header = wave(chunk("LIST", new byte[27]), fmt(WAVE_FORMAT_PCM, 2, 44100, 16));
+		int dataSize = size - header.length - 8;
+		writeSparse(file, concat(header, chunkHeader("data", dataSize)), dataSize, new byte[0]);
+		return dataSize;
+	}
+
+	/**
+	 * File of the size with 10 seconds audio track, large sparse mdat goes before moov as MediaRecorder writes it.
+	 */
+	static void writeSparseMp4(File file, int size, String brand, String format, int sampleRate, int channels)
+			throws IOException {
+		byte[] entry = "mp4a".equals(format)
+				? audioSampleEntry(format, 0, channels, sampleRate, esds(128000, ASC_AAC_LC_44100_STEREO))
+				: audioSampleEntry(format, 0, channels, sampleRate);
+		byte[] moov = box("moov", mvhd(0, 1000, 10000),
+				trak(mdhd(0, sampleRate, sampleRate * 10L), "soun", entry));
+		byte[] ftyp = ftyp(brand);
+		int mdatSize = size - ftyp.length - moov.length - 8;
+		writeSparse(file, concat(ftyp, be32(mdatSize + 8), ascii("mdat")), mdatSize, moov);
+	}
+
+	private static void writeSparse(File file, byte[] head, int gap, byte[] tail) throws IOException {
+		try (RandomAccessFile output = new RandomAccessFile(file, "rw")) {
+			output.setLength(0);
+			output.write(head);
+			output.seek(head.length + (long) gap);
+			output.write(tail);
+			output.setLength(head.length + (long) gap + tail.length);
+		}
+	}
+
+	private static byte[] descriptor(int tag, byte[] data) {
+		//Size in the 4 byte form with continuation bits, as most muxers write it.
+		int size = data.length;
+		return concat(new byte[] {(byte) tag, (byte) (0x80 | (size >>> 21) & 0x7F), (byte) (0x80 | (size >>> 14) & 0x7F),
+				(byte) (0x80 | (size >>> 7) & 0x7F), (byte) (size & 0x7F)}, data);
+	}
+
+	private static byte[] time(int version, long timescale, long duration) {
+		if (version == 1) {
+			return concat(be64(0), be64(0), be32((int) timescale), be64(duration));
+		}
+		return concat(be32(0), be32(0), be32((int) timescale), be32((int) duration));
+	}
+
+	static byte[] ascii(String value) {
+		return value.getBytes(StandardCharsets.US_ASCII);
+	}
+
+	static byte[] le16(int value) {
+		return ByteBuffer.allocate(2).order(ByteOrder.LITTLE_ENDIAN).putShort((short) value).array();
+	}
+
+	static byte[] le32(int value) {
+		return ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN).putInt(value).array();
+	}
+
+	static byte[] be16(int value) {
+		return ByteBuffer.allocate(2).putShort((short) value).array();
+	}
+
+	static byte[] be32(int value) {
+		return ByteBuffer.allocate(4).putInt(value).array();
+	}
+
+	static byte[] be64(long value) {
+		return ByteBuffer.allocate(8).putLong(value).array();
+	}
+
+	static byte[] concat(byte[]... parts) {
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		for (byte[] part : parts) {
+			output.write(part, 0, part.length);
+		}
+		return output.toByteArray();
+	}
+}
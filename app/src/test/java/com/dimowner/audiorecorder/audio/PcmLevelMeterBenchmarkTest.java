@@ -0,0 +1,56 @@
+package com.dimowner.audiorecorder.audio;
+
+import com.dimowner.audiorecorder.Benchmark;
+
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import java.nio.ShortBuffer;
+import java.util.Random;
+
+import static com.dimowner.audiorecorder.audio.PcmLevelMeterTest.legacyLevel;
+import static com.dimowner.audiorecorder.audio.PcmLevelMeterTest.samples;
+
+/**
+ * Per-buffer cost of the level calculation: old byte-by-byte conversion through a 2-byte ByteBuffer
+ * against PcmLevelMeter reading the direct buffer the recorder fills.
+ */
+@Category(Benchmark.class)
+public class PcmLevelMeterBenchmarkTest {
+
+	/** 40 ms of 48 kHz stereo audio. */
+	private static final int BUFFER_BYTES = 48000 * 2 * 2 / 25;
+	private static final int WARMUP_ITERATIONS = 2000;
+	private static final int ITERATIONS = 10000;
+
+	@Test
+	public void compareOldAndNewPerBufferCost() {
+		byte[] data = new byte[BUFFER_BYTES];
+		new Random(1).nextBytes(data);
+		ShortBuffer samples = samples(data);
+		PcmLevelMeter meter = new PcmLevelMeter();
+
+		long sink = 0;
+		for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+			sink += legacyLevel(data);
+			meter.measure(samples, BUFFER_BYTES / 2);
+			sink += meter.getMeanAbs();
+		}
+
+		long start = System.nanoTime();
+		for (int i = 0; i < ITERATIONS; i++) {
+			sink += legacyLevel(data);
+		}
+		long legacyNanos = (System.nanoTime() - start) / ITERATIONS;
+
+		start = System.nanoTime();
+		for (int i = 0; i < ITERATIONS; i++) {
+			meter.measure(samples, BUFFER_BYTES / 2);
+			sink += meter.getMeanAbs();
+		}
+		long meterNanos = (System.nanoTime() - start) / ITERATIONS;
+
+		Benchmark.report("Level per %d bytes buffer: old = %d ns, new = %d ns (%d)",
+				BUFFER_BYTES, legacyNanos, meterNanos, sink % 2);
+	}
+}
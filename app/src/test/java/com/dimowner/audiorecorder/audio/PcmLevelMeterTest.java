@@ -0,0 +1,60 @@
+package com.dimowner.audiorecorder.audio;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+public class PcmLevelMeterTest {
+
+	@Test
+	public void matchesLegacyLevel() {
+		byte[] data = new byte[3840];
+		new Random(1).nextBytes(data);
+		PcmLevelMeter meter = new PcmLevelMeter();
+		meter.measure(samples(data), data.length / 2);
+		//Old value was sum of absolute samples divided by count/8, i.e. mean absolute multiplied by 8.
+		assertEquals(legacyLevel(data), meter.getMeanAbs() * 8, 8);
+	}
+
+	@Test
+	public void measuresOnlyCountSamples() {
+		ShortBuffer samples = ShortBuffer.wrap(new short[] {-100, 300, Short.MIN_VALUE, Short.MIN_VALUE});
+		PcmLevelMeter meter = new PcmLevelMeter();
+		meter.measure(samples, 2);
+		assertEquals(200, meter.getMeanAbs());
+		assertEquals(0, samples.position());
+
+		meter.measure(samples, 4);
+		assertEquals((100 + 300 + 32768 * 2) / 4, meter.getMeanAbs());
+
+		meter.measure(samples, 0);
+		assertEquals(0, meter.getMeanAbs());
+	}
+
+	static ShortBuffer samples(byte[] data) {
+		ByteBuffer direct = ByteBuffer.allocateDirect(data.length).order(ByteOrder.LITTLE_ENDIAN);
+		direct.put(data).clear();
+		return direct.asShortBuffer();
+	}
+
+	/**
+	 * Level calculation of the recorder before PcmLevelMeter.
+	 */
+	static int legacyLevel(byte[] data) {
+		ByteBuffer shortBuffer = ByteBuffer.allocate(2);
+		shortBuffer.order(ByteOrder.LITTLE_ENDIAN);
+		long sum = 0;
+		for (int i = 0; i < data.length; i += 2) {
+			shortBuffer.put(data[i]);
+			shortBuffer.put(data[i + 1]);
+			sum += Math.abs(shortBuffer.getShort(0));
+			shortBuffer.clear();
+		}
+		return (int) (sum / (data.length / 16));
+	}
+}
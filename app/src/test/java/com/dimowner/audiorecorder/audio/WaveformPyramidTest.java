@@ -0,0 +1,82 @@
+package com.dimowner.audiorecorder.audio;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ShortBuffer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+public class WaveformPyramidTest {
+
+	private File source;
+	private File sidecar;
+
+	@Before
+	public void setUp() throws IOException {
+		source = File.createTempFile("record", ".wav");
+		sidecar = File.createTempFile("record", ".wfp");
+		writeBytes(source, 100);
+	}
+
+	@After
+	public void tearDown() {
+		source.delete();
+		sidecar.delete();
+	}
+
+	@Test
+	public void readsWrittenPyramid() throws IOException {
+		build().writeTo(sidecar);
+		WaveformPyramid pyramid = WaveformPyramid.readFrom(sidecar, source);
+		assertNotNull(pyramid);
+		assertEquals(source.length(), pyramid.getSourceLength());
+		assertEquals(source.lastModified(), pyramid.getSourceModified());
+		assertEquals(1000, pyramid.getDuration());
+		assertEquals(16, pyramid.getLevelSize(0));
+	}
+
+	@Test
+	public void rejectsSidecarOfResizedRecord() throws IOException {
+		build().writeTo(sidecar);
+		long modified = source.lastModified();
+		writeBytes(source, 200);
+		source.setLastModified(modified);
+		assertNull(WaveformPyramid.readFrom(sidecar, source));
+	}
+
+	@Test
+	public void rejectsSidecarOfRewrittenRecord() throws IOException {
+		build().writeTo(sidecar);
+		source.setLastModified(source.lastModified() - 10000);
+		assertNull(WaveformPyramid.readFrom(sidecar, source));
+	}
+
+	@Test
+	public void rejectsMissingSidecar() {
+		sidecar.delete();
+		assertNull(WaveformPyramid.readFrom(sidecar, source));
+	}
+
+	private WaveformPyramid build() {
+		WaveformPyramid.Builder builder = new WaveformPyramid.Builder(1);
+		short[] samples = new short[16 * WaveformPyramid.LEVEL_SAMPLES_PER_BUCKET[0]];
+		for (int i = 0; i < samples.length; i++) {
+			samples[i] = (short) (i * 31);
+		}
+		builder.process(ShortBuffer.wrap(samples));
+		return builder.build(source, 1000);
+	}
+
+	private static void writeBytes(File file, int count) throws IOException {
+		try (FileOutputStream out = new FileOutputStream(file)) {
+			out.write(new byte[count]);
+		}
+	}
+}
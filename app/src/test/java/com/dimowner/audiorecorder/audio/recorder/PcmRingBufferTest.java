@@ -0,0 +1,93 @@
+package com.dimowner.audiorecorder.audio.recorder;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class PcmRingBufferTest {
+
+	@Test
+	public void capacityIsRoundedUpToPowerOfTwo() {
+		assertEquals(2, new PcmRingBuffer(1, 16).getCapacity());
+		assertEquals(4, new PcmRingBuffer(3, 16).getCapacity());
+		assertEquals(4, new PcmRingBuffer(4, 16).getCapacity());
+		assertEquals(8, new PcmRingBuffer(5, 16).getCapacity());
+	}
+
+	@Test
+	public void pollIsEmptyUntilPublished() {
+		PcmRingBuffer ring = new PcmRingBuffer(2, 16);
+		assertNull(ring.poll());
+		PcmRingBuffer.Block block = ring.claim();
+		assertNotNull(block);
+		assertNull(ring.poll());
+		block.data.putShort((short) 7);
+		ring.publish(2);
+		PcmRingBuffer.Block polled = ring.poll();
+		assertSame(block, polled);
+		assertEquals(2, polled.getLength());
+		assertEquals(0, polled.data.position());
+		assertEquals(2, polled.data.limit());
+		assertEquals(7, polled.data.getShort(0));
+	}
+
+	@Test
+	public void claimReturnsNullWhenFullAndOverrunIsCounted() {
+		PcmRingBuffer ring = new PcmRingBuffer(2, 16);
+		for (int i = 0; i < ring.getCapacity(); i++) {
+			assertNotNull(ring.claim());
+			ring.publish(16);
+		}
+		assertEquals(2, ring.size());
+		assertNull(ring.claim());
+		ring.registerOverrun(16);
+		ring.registerOverrun(10);
+		assertEquals(2, ring.getOverrunCount());
+		assertEquals(26, ring.getDroppedBytes());
+
+		ring.poll();
+		ring.release();
+		assertNotNull(ring.claim());
+	}
+
+	@Test
+	public void blocksWrapAroundInOrder() {
+		PcmRingBuffer ring = new PcmRingBuffer(4, 16);
+		for (int i = 0; i < 50; i++) {
+			PcmRingBuffer.Block block = ring.claim();
+			assertNotNull(block);
+			assertEquals(0, block.data.position());
+			block.data.putShort((short) i);
+			ring.publish(2 + i % 3);
+			if (i % 2 == 1) {
+				//Consume two blocks every second publish, so the ring wraps many times.
+				for (int j = i - 1; j <= i; j++) {
+					PcmRingBuffer.Block polled = ring.poll();
+					assertEquals(j, polled.data.getShort(0));
+					assertEquals(2 + j % 3, polled.getLength());
+					ring.release();
+				}
+			}
+		}
+		assertEquals(0, ring.size());
+		assertNull(ring.poll());
+	}
+
+	@Test
+	public void closeKeepsPublishedBlocks() {
+		PcmRingBuffer ring = new PcmRingBuffer(2, 16);
+		ring.claim();
+		ring.publish(4);
+		assertFalse(ring.isClosed());
+		ring.close();
+		assertTrue(ring.isClosed());
+		assertNotNull(ring.poll());
+		ring.release();
+		assertNull(ring.poll());
+	}
+}
@@ -0,0 +1,286 @@
+package com.dimowner.audiorecorder.audio.recorder;
+
+import com.dimowner.audiorecorder.exception.AppException;
+import com.dimowner.audiorecorder.exception.RecorderInitException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * State machine of {@link WavRecorder} with a fake PCM source instead of AudioRecord.
+ */
+public class WavRecorderStateTest {
+
+	/** 20 ms of 44100 Hz mono 16-bit audio. */
+	private static final int BUFFER_SIZE = 1764;
+	private static final long TIMEOUT_MILLS = 2000;
+	/** Parked threads should use no CPU, allow some for the JVM bookkeeping of a shared machine. */
+	private static final long PAUSED_CPU_LIMIT_NANOS = 20_000_000;
+	private static final long PAUSED_CHECK_MILLS = 300;
+
+	private final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+	private File file;
+	private FakePcmSource source;
+	private Callback callback;
+
+	@Before
+	public void setUp() throws IOException {
+		file = File.createTempFile("record", ".wav");
+		source = new FakePcmSource();
+		callback = new Callback();
+	}
+
+	@After
+	public void tearDown() {
+		file.delete();
+	}
+
+	@Test
+	public void pausedThreadsParkWithoutCpu() throws InterruptedException {
+		WavRecorder recorder = start(Runnable::run);
+		awaitTrue(() -> source.reads.get() >= 5);
+
+		recorder.pauseRecording();
+		assertTrue(recorder.isPaused());
+		Thread capture = findThread("AudioRecorder Thread");
+		Thread writer = findThread("AudioWriter Thread");
+		awaitTrue(() -> capture.getState() == Thread.State.WAITING && writer.getState() == Thread.State.WAITING);
+		assertEquals(1, source.stops.get());
+
+		int reads = source.reads.get();
+		long cpu = cpuTime(capture) + cpuTime(writer);
+		Thread.sleep(PAUSED_CHECK_MILLS);
+		long pausedCpu = cpuTime(capture) + cpuTime(writer) - cpu;
+		assertEquals(reads, source.reads.get());
+		assertTrue("Paused threads used " + pausedCpu / 1000 + " us of CPU", pausedCpu < PAUSED_CPU_LIMIT_NANOS);
+		assertEquals(Thread.State.WAITING, capture.getState());
+		assertEquals(Thread.State.WAITING, writer.getState());
+
+		recorder.resumeRecording();
+		assertTrue(recorder.isRecording());
+		awaitTrue(() -> source.reads.get() > reads + 2);
+		assertEquals(2, source.starts.get());
+
+		recorder.stopRecording();
+		awaitTrue(recorder::isIdle);
+		assertTrue(source.released);
+	}
+
+	@Test
+	public void idleOnlyAfterWriterFinishedFile() throws InterruptedException, IOException {
+		CountDownLatch reportStop = new CountDownLatch(1);
+		List<Runnable> posted = new ArrayList<>();
+		//Holds the writer thread in the stop report, as if it was still finishing the file.
+		WavRecorder recorder = start(command -> {
+			try {
+				reportStop.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			posted.add(command);
+			command.run();
+		});
+		awaitTrue(() -> source.reads.get() >= 5);
+
+		recorder.stopRecording();
+		assertFalse(recorder.isRecording());
+		assertTrue(source.released);
+		Thread.sleep(100);
+		assertFalse("Idle before the writer finished", recorder.isIdle());
+
+		//New recording is rejected until the previous one is finished.
+		recorder.startRecording(file.getAbsolutePath(), 1, 44100, 0);
+		assertTrue(callback.errors.get(0) instanceof RecorderInitException);
+
+		reportStop.countDown();
+		awaitTrue(recorder::isIdle);
+		assertEquals(1, posted.size());
+		assertEquals(file, callback.stopped);
+		assertFinalized(file);
+	}
+
+	@Test
+	public void stopWhilePaused() throws InterruptedException, IOException {
+		WavRecorder recorder = start(Runnable::run);
+		awaitTrue(() -> source.reads.get() >= 3);
+		recorder.pauseRecording();
+		recorder.stopRecording();
+		assertFalse(recorder.isPaused());
+		awaitTrue(recorder::isIdle);
+		assertTrue(source.released);
+		assertEquals(file, callback.stopped);
+		assertFinalized(file);
+		//Stop after stop does nothing.
+		recorder.stopRecording();
+		assertTrue(recorder.isIdle());
+	}
+
+	@Test
+	public void resumeFailureFinishesRecord() throws InterruptedException, IOException {
+		WavRecorder recorder = start(Runnable::run);
+		awaitTrue(() -> source.reads.get() >= 3);
+		recorder.pauseRecording();
+		awaitTrue(() -> source.stops.get() == 1);
+		source.failStart = true;
+		recorder.resumeRecording();
+		awaitTrue(recorder::isIdle);
+		assertEquals(1, callback.errors.size());
+		assertEquals(file, callback.stopped);
+		assertFinalized(file);
+	}
+
+	@Test
+	public void deadSourceFinishesRecord() throws InterruptedException, IOException {
+		WavRecorder recorder = start(Runnable::run);
+		awaitTrue(() -> source.reads.get() >= 3);
+		//AudioRecord returns errors at once when the audio server dies.
+		source.dead = true;
+		awaitTrue(recorder::isIdle);
+		assertEquals(1, callback.errors.size());
+		assertTrue(source.released);
+		assertEquals(file, callback.stopped);
+		assertFinalized(file);
+		int reads = source.reads.get();
+		Thread.sleep(50);
+		assertEquals("Dead source is read after stop", reads, source.reads.get());
+	}
+
+	private WavRecorder start(Executor executor) {
+		WavRecorder recorder = new WavRecorder(executor);
+		recorder.setRecorderCallback(callback);
+		recorder.startCapture(source, file, BUFFER_SIZE);
+		assertTrue(recorder.isRecording());
+		assertEquals(1, source.starts.get());
+		return recorder;
+	}
+
+	/**
+	 * Sizes in the header are patched when the file is closed.
+	 */
+	private static void assertFinalized(File file) throws IOException {
+		try (RandomAccessFile input = new RandomAccessFile(file, "r")) {
+			byte[] header = new byte[WavFileWriter.HEADER_SIZE];
+			input.readFully(header);
+			int dataSize = ByteBuffer.wrap(header).order(ByteOrder.LITTLE_ENDIAN).getInt(40);
+			assertTrue(dataSize > 0);
+			assertEquals(input.length() - WavFileWriter.HEADER_SIZE, dataSize);
+		}
+	}
+
+	private long cpuTime(Thread thread) {
+		return threads.getThreadCpuTime(thread.getId());
+	}
+
+	private static Thread findThread(String name) {
+		for (Thread thread : Thread.getAllStackTraces().keySet()) {
+			if (name.equals(thread.getName()) && thread.isAlive()) {
+				return thread;
+			}
+		}
+		throw new AssertionError("No thread " + name);
+	}
+
+	private static void awaitTrue(BooleanSupplier condition) throws InterruptedException {
+		long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(TIMEOUT_MILLS);
+		while (!condition.getAsBoolean()) {
+			if (System.nanoTime() > deadline) {
+				throw new AssertionError("Condition not met in " + TIMEOUT_MILLS + " ms");
+			}
+			Thread.sleep(5);
+		}
+	}
+
+	/**
+	 * Returns a buffer of constant samples every few milliseconds, like AudioRecord blocks until data is ready.
+	 */
+	private static class FakePcmSource implements PcmSource {
+
+		/** AudioRecord.ERROR_DEAD_OBJECT */
+		static final int ERROR_DEAD_OBJECT = -6;
+
+		final AtomicInteger reads = new AtomicInteger();
+		final AtomicInteger starts = new AtomicInteger();
+		final AtomicInteger stops = new AtomicInteger();
+		volatile boolean released = false;
+		volatile boolean failStart = false;
+		volatile boolean dead = false;
+
+		@Override
+		public void startRecording() {
+			if (failStart) {
+				throw new IllegalStateException("Start failed");
+			}
+			starts.incrementAndGet();
+		}
+
+		@Override
+		public void stop() {
+			stops.incrementAndGet();
+		}
+
+		@Override
+		public int read(ByteBuffer buffer, int size) {
+			if (dead) {
+				reads.incrementAndGet();
+				return ERROR_DEAD_OBJECT;
+			}
+			try {
+				Thread.sleep(2);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			for (int i = 0; i < size; i += 2) {
+				buffer.putShort(i, (short) 1000);
+			}
+			reads.incrementAndGet();
+			return size;
+		}
+
+		@Override
+		public void release() {
+			released = true;
+		}
+	}
+
+	private static class Callback implements RecorderContract.RecorderCallback {
+
+		final List<AppException> errors = new ArrayList<>();
+		volatile File stopped;
+
+		@Override public void onStartRecord(File output) {}
+		@Override public void onPauseRecord() {}
+		@Override public void onResumeRecord() {}
+		@Override public void onRecordProgress(long mills, int amp) {}
+		@Override public void onBufferOverrun(long overrunCount, long droppedBytes) {}
+
+		@Override
+		public void onStopRecord(File output) {
+			stopped = output;
+		}
+
+		@Override
+		public synchronized void onError(AppException throwable) {
+			errors.add(throwable);
+		}
+	}
+}
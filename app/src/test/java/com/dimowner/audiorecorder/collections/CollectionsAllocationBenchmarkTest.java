@@ -0,0 +1,117 @@
+package com.dimowner.audiorecorder.collections;
+
+import com.dimowner.audiorecorder.Benchmark;
+
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Allocations and time of the primitive collections against the boxed ones they replaced:
+ * the live recording waveform, which was a LinkedList read by index on every frame, and lists of record ids.
+ */
+@Category(Benchmark.class)
+public class CollectionsAllocationBenchmarkTest {
+
+	/** Samples visible on half of the waveform view. */
+	private static final int WINDOW = 540;
+	/** Ten minutes of recording at 25 amplitudes per second. */
+	private static final int UPDATES = 15000;
+	private static final int IDS = 100000;
+
+	private final com.sun.management.ThreadMXBean threads =
+			(com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+	@Test
+	public void liveWaveform() {
+		long sink = 0;
+		//Warm up both variants.
+		sink += linkedListWaveform(UPDATES / 10);
+		sink += IntRingBufferTest.slideWindow(new IntRingBuffer(WINDOW + 1), WINDOW, UPDATES / 10);
+
+		long bytes = allocatedBytes();
+		long start = System.nanoTime();
+		sink += linkedListWaveform(UPDATES);
+		long linkedNanos = System.nanoTime() - start;
+		long linkedBytes = allocatedBytes() - bytes;
+
+		//Fill the window first, so only the steady state is measured.
+		IntRingBuffer ring = new IntRingBuffer(WINDOW + 1);
+		sink += IntRingBufferTest.slideWindow(ring, WINDOW, WINDOW);
+		bytes = allocatedBytes();
+		start = System.nanoTime();
+		sink += IntRingBufferTest.slideWindow(ring, WINDOW, UPDATES);
+		long ringNanos = System.nanoTime() - start;
+		long ringBytes = allocatedBytes() - bytes;
+
+		Benchmark.report("Live waveform, %d updates of %d samples: LinkedList %d KB, %d ms; IntRingBuffer %d bytes, %d ms (%d)",
+				UPDATES, WINDOW, linkedBytes / 1024, linkedNanos / 1000000, ringBytes, ringNanos / 1000000, sink % 2);
+	}
+
+	@Test
+	public void recordIds() {
+		long sink = 0;
+		sink += boxedIds(IDS / 10).size();
+		sink += primitiveIds(IDS / 10).size();
+
+		long bytes = allocatedBytes();
+		long start = System.nanoTime();
+		List<Integer> boxed = boxedIds(IDS);
+		long boxedNanos = System.nanoTime() - start;
+		long boxedBytes = allocatedBytes() - bytes;
+
+		bytes = allocatedBytes();
+		start = System.nanoTime();
+		IntArrayList primitive = primitiveIds(IDS);
+		long primitiveNanos = System.nanoTime() - start;
+		long primitiveBytes = allocatedBytes() - bytes;
+
+		assertEquals(boxed.size(), primitive.size());
+		Benchmark.report("Record ids, %d values: ArrayList<Integer> %d KB, %d us; IntArrayList %d KB, %d us (%d)",
+				IDS, boxedBytes / 1024, boxedNanos / 1000, primitiveBytes / 1024, primitiveNanos / 1000, sink % 2);
+	}
+
+	/**
+	 * Live waveform as RecordingWaveformView kept it before IntRingBuffer.
+	 */
+	private static long linkedListWaveform(int updates) {
+		List<Integer> data = new LinkedList<>();
+		long sum = 0;
+		for (int i = 0; i < updates; i++) {
+			data.add(1000 + i % 5000);
+			if (data.size() > WINDOW) {
+				data.remove(0);
+			}
+			for (int j = 0; j < data.size(); j++) {
+				sum += data.get(data.size() - 1 - j);
+			}
+		}
+		return sum;
+	}
+
+	private static List<Integer> boxedIds(int count) {
+		List<Integer> ids = new ArrayList<>();
+		for (int i = 0; i < count; i++) {
+			ids.add(1000 + i);
+		}
+		return ids;
+	}
+
+	private static IntArrayList primitiveIds(int count) {
+		IntArrayList ids = new IntArrayList();
+		for (int i = 0; i < count; i++) {
+			ids.add(1000 + i);
+		}
+		return ids;
+	}
+
+	private long allocatedBytes() {
+		return threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+}
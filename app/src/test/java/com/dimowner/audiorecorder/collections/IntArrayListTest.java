@@ -0,0 +1,87 @@
+package com.dimowner.audiorecorder.collections;
+
+import org.junit.Test;
+
+import java.nio.IntBuffer;
+import java.nio.ReadOnlyBufferException;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class IntArrayListTest {
+
+	@Test
+	public void keepsValuesWhileGrowing() {
+		IntArrayList list = new IntArrayList(1);
+		for (int i = 0; i < 1000; i++) {
+			list.add(i);
+			assertEquals(i + 1, list.size());
+		}
+		for (int i = 0; i < 1000; i++) {
+			assertEquals(i, list.get(i));
+		}
+	}
+
+	@Test
+	public void growsFromZeroCapacity() {
+		IntArrayList list = new IntArrayList(0);
+		list.add(7);
+		list.add(8);
+		assertArrayEquals(new int[] {7, 8}, list.toArray());
+	}
+
+	@Test
+	public void toArrayIsCopy() {
+		IntArrayList list = new IntArrayList();
+		list.add(1);
+		list.add(2);
+		int[] copy = list.toArray();
+		copy[0] = 5;
+		assertEquals(1, list.get(0));
+		assertArrayEquals(new int[0], new IntArrayList().toArray());
+	}
+
+	@Test
+	public void bufferViewHasValuesOnly() {
+		IntArrayList list = new IntArrayList(8);
+		list.add(1);
+		list.add(2);
+		IntBuffer view = list.asReadOnlyBuffer();
+		assertEquals(2, view.remaining());
+		assertEquals(1, view.get(0));
+		assertEquals(2, view.get(1));
+		try {
+			view.put(0, 3);
+			fail("ReadOnlyBufferException expected");
+		} catch (ReadOnlyBufferException e) {
+			//Expected.
+		}
+	}
+
+	@Test
+	public void clearKeepsListUsable() {
+		IntArrayList list = new IntArrayList(2);
+		list.add(1);
+		list.add(2);
+		list.add(3);
+		list.clear();
+		assertTrue(list.isEmpty());
+		list.add(4);
+		assertArrayEquals(new int[] {4}, list.toArray());
+	}
+
+	@Test
+	public void rejectsIndexBeyondSize() {
+		IntArrayList list = new IntArrayList(16);
+		list.add(1);
+		try {
+			//Within capacity but not added.
+			list.get(1);
+			fail("IndexOutOfBoundsException expected");
+		} catch (IndexOutOfBoundsException e) {
+			//Expected.
+		}
+	}
+}
@@ -0,0 +1,181 @@
+package com.dimowner.audiorecorder.collections;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class IntRingBufferTest {
+
+	@Test
+	public void removesInAddOrder() {
+		IntRingBuffer buffer = new IntRingBuffer(4);
+		assertTrue(buffer.isEmpty());
+		buffer.add(1);
+		buffer.add(2);
+		buffer.add(3);
+		assertEquals(3, buffer.size());
+		assertEquals(1, buffer.removeFirst());
+		assertEquals(2, buffer.removeFirst());
+		assertEquals(3, buffer.removeFirst());
+		assertTrue(buffer.isEmpty());
+	}
+
+	@Test
+	public void readsByIndexAfterWrap() {
+		IntRingBuffer buffer = new IntRingBuffer(4);
+		for (int i = 0; i < 4; i++) {
+			buffer.add(i);
+		}
+		buffer.removeFirst();
+		buffer.removeFirst();
+		//Both values go to the start of the array.
+		buffer.add(4);
+		buffer.add(5);
+		assertEquals(4, buffer.size());
+		for (int i = 0; i < 4; i++) {
+			assertEquals(i + 2, buffer.get(i));
+		}
+	}
+
+	@Test
+	public void growsWhenWrapped() {
+		IntRingBuffer buffer = new IntRingBuffer(4);
+		for (int i = 0; i < 4; i++) {
+			buffer.add(i);
+		}
+		for (int i = 0; i < 3; i++) {
+			buffer.removeFirst();
+		}
+		for (int i = 4; i < 12; i++) {
+			buffer.add(i);
+		}
+		assertEquals(9, buffer.size());
+		for (int i = 0; i < 9; i++) {
+			assertEquals(i + 3, buffer.get(i));
+		}
+		assertArrayEquals(new int[] {3, 4, 5, 6, 7, 8, 9, 10, 11}, buffer.toArray(9));
+	}
+
+	@Test
+	public void growsFromZeroCapacity() {
+		IntRingBuffer buffer = new IntRingBuffer(0);
+		for (int i = 0; i < 100; i++) {
+			buffer.add(i);
+		}
+		assertEquals(100, buffer.size());
+		assertEquals(99, buffer.get(99));
+	}
+
+	@Test
+	public void toArrayCopiesNewestValues() {
+		IntRingBuffer buffer = new IntRingBuffer(4);
+		for (int i = 0; i < 6; i++) {
+			if (buffer.size() == 4) {
+				buffer.removeFirst();
+			}
+			buffer.add(i);
+		}
+		//Values 2..5 are split over the end and the start of the array.
+		assertArrayEquals(new int[] {2, 3, 4, 5}, buffer.toArray(4));
+		assertArrayEquals(new int[] {2, 3, 4, 5}, buffer.toArray(10));
+		assertArrayEquals(new int[] {4, 5}, buffer.toArray(2));
+		assertArrayEquals(new int[] {5}, buffer.toArray(1));
+		assertArrayEquals(new int[0], buffer.toArray(0));
+		assertArrayEquals(new int[0], buffer.toArray(-1));
+		assertArrayEquals(new int[0], new IntRingBuffer(4).toArray(4));
+	}
+
+	@Test
+	public void clearKeepsBufferUsable() {
+		IntRingBuffer buffer = new IntRingBuffer(2);
+		buffer.add(1);
+		buffer.add(2);
+		buffer.removeFirst();
+		buffer.clear();
+		assertTrue(buffer.isEmpty());
+		buffer.add(3);
+		buffer.add(4);
+		buffer.add(5);
+		assertArrayEquals(new int[] {3, 4, 5}, buffer.toArray(3));
+	}
+
+	@Test
+	public void rejectsOutOfRangeAccess() {
+		IntRingBuffer buffer = new IntRingBuffer(4);
+		expectOutOfBounds(buffer::removeFirst);
+		buffer.add(1);
+		expectOutOfBounds(() -> buffer.get(1));
+		expectOutOfBounds(() -> buffer.get(-1));
+	}
+
+	@Test
+	public void matchesDequeOnRandomOperations() {
+		Random random = new Random(1);
+		IntRingBuffer buffer = new IntRingBuffer(3);
+		ArrayDeque<Integer> expected = new ArrayDeque<>();
+		for (int i = 0; i < 10000; i++) {
+			if (!expected.isEmpty() && random.nextInt(3) == 0) {
+				assertEquals((int) expected.removeFirst(), buffer.removeFirst());
+			} else {
+				int val = random.nextInt();
+				expected.addLast(val);
+				buffer.add(val);
+			}
+			assertEquals(expected.size(), buffer.size());
+			if (i % 100 == 0) {
+				Iterator<Integer> iterator = expected.iterator();
+				for (int j = 0; j < expected.size(); j++) {
+					assertEquals((int) iterator.next(), buffer.get(j));
+				}
+			}
+		}
+	}
+
+	@Test
+	public void fullWindowAllocatesNothing() {
+		//Live waveform keeps a window of amplitudes: add one, drop the oldest, read all by index.
+		int window = 540;
+		IntRingBuffer buffer = new IntRingBuffer(window + 1);
+		long sink = slideWindow(buffer, window, window);
+		//Warm up, so the measured loop doesn't allocate for class loading or compilation.
+		sink += slideWindow(buffer, window, 1000);
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		long threadId = Thread.currentThread().getId();
+		long bytes = threads.getThreadAllocatedBytes(threadId);
+		sink += slideWindow(buffer, window, 5000);
+		bytes = threads.getThreadAllocatedBytes(threadId) - bytes;
+		//Calls of the allocation counter itself may allocate a little.
+		assertTrue("Allocated " + bytes + " bytes (" + sink % 2 + ")", bytes < 1024);
+	}
+
+	static long slideWindow(IntRingBuffer buffer, int window, int updates) {
+		long sum = 0;
+		for (int i = 0; i < updates; i++) {
+			buffer.add(1000 + i % 5000);
+			if (buffer.size() > window) {
+				buffer.removeFirst();
+			}
+			for (int j = 0; j < buffer.size(); j++) {
+				sum += buffer.get(buffer.size() - 1 - j);
+			}
+		}
+		return sum;
+	}
+
+	private static void expectOutOfBounds(Runnable action) {
+		try {
+			action.run();
+			fail("IndexOutOfBoundsException expected");
+		} catch (IndexOutOfBoundsException e) {
+			//Expected.
+		}
+	}
+}
@@ -0,0 +1,134 @@
+package com.dimowner.audiorecorder.data;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class RecordFileLocksTest {
+
+	private static final int RECORD_ID = 7;
+
+	private final RecordFileLocks locks = new RecordFileLocks();
+
+	@Test
+	public void readersShareRecord() throws InterruptedException {
+		locks.lockRead(RECORD_ID);
+		CountDownLatch locked = new CountDownLatch(1);
+		Thread reader = new Thread(() -> {
+			locks.lockRead(RECORD_ID);
+			locked.countDown();
+			locks.unlockRead(RECORD_ID);
+		});
+		reader.start();
+		assertTrue(locked.await(1, TimeUnit.SECONDS));
+		locks.unlockRead(RECORD_ID);
+		reader.join();
+	}
+
+	@Test
+	public void writerWaitsForReaderReleasedOnAnotherThread() throws InterruptedException {
+		locks.lockRead(RECORD_ID);
+		CountDownLatch locked = new CountDownLatch(1);
+		Thread writer = new Thread(() -> {
+			locks.lockWrite(RECORD_ID);
+			locked.countDown();
+			locks.unlockWrite(RECORD_ID);
+		});
+		writer.start();
+		assertFalse(locked.await(100, TimeUnit.MILLISECONDS));
+		//Decoder callbacks release the lock on a thread which didn't take it.
+		Thread release = new Thread(() -> locks.unlockRead(RECORD_ID));
+		release.start();
+		release.join();
+		assertTrue(locked.await(1, TimeUnit.SECONDS));
+		writer.join();
+	}
+
+	@Test
+	public void readerWaitsForWriter() throws InterruptedException {
+		locks.lockWrite(RECORD_ID);
+		CountDownLatch locked = new CountDownLatch(1);
+		Thread reader = new Thread(() -> {
+			locks.lockRead(RECORD_ID);
+			locked.countDown();
+			locks.unlockRead(RECORD_ID);
+		});
+		reader.start();
+		assertFalse(locked.await(100, TimeUnit.MILLISECONDS));
+		locks.unlockWrite(RECORD_ID);
+		assertTrue(locked.await(1, TimeUnit.SECONDS));
+		reader.join();
+	}
+
+	@Test
+	public void otherRecordsAreNotBlocked() throws InterruptedException {
+		locks.lockWrite(RECORD_ID);
+		CountDownLatch locked = new CountDownLatch(2);
+		Thread writer = new Thread(() -> {
+			//Ids which would share a stripe of a striped lock.
+			for (int id : new int[] {RECORD_ID + 1, RECORD_ID + 16}) {
+				locks.lockWrite(id);
+				locked.countDown();
+				locks.unlockWrite(id);
+			}
+		});
+		writer.start();
+		assertTrue(locked.await(1, TimeUnit.SECONDS));
+		locks.unlockWrite(RECORD_ID);
+		writer.join();
+	}
+
+	@Test
+	public void releasedRecordIsForgotten() {
+		locks.lockRead(RECORD_ID);
+		locks.lockRead(RECORD_ID);
+		locks.unlockRead(RECORD_ID);
+		assertTrue(locks.isLocked(RECORD_ID));
+		locks.unlockRead(RECORD_ID);
+		assertFalse(locks.isLocked(RECORD_ID));
+		locks.lockWrite(RECORD_ID);
+		locks.unlockWrite(RECORD_ID);
+		assertFalse(locks.isLocked(RECORD_ID));
+	}
+
+	@Test
+	public void doubleUnlockReadFails() {
+		locks.lockRead(RECORD_ID);
+		locks.lockRead(RECORD_ID);
+		locks.unlockRead(RECORD_ID);
+		locks.unlockRead(RECORD_ID);
+		try {
+			locks.unlockRead(RECORD_ID);
+			fail("Unlock of the record which is not locked");
+		} catch (IllegalStateException expected) {
+		}
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void unlockWriteOfReadLockFails() {
+		locks.lockRead(RECORD_ID);
+		locks.unlockWrite(RECORD_ID);
+	}
+
+	@Test
+	public void interruptIsKeptWhileWaiting() throws InterruptedException {
+		locks.lockWrite(RECORD_ID);
+		boolean[] interrupted = new boolean[1];
+		Thread reader = new Thread(() -> {
+			locks.lockRead(RECORD_ID);
+			interrupted[0] = Thread.currentThread().isInterrupted();
+			locks.unlockRead(RECORD_ID);
+		});
+		reader.start();
+		reader.interrupt();
+		Thread.sleep(50);
+		locks.unlockWrite(RECORD_ID);
+		reader.join();
+		assertTrue(interrupted[0]);
+	}
+}
@@ -0,0 +1,61 @@
+package com.dimowner.audiorecorder.data.database;
+
+import com.dimowner.audiorecorder.AppConstants;
+import com.dimowner.audiorecorder.Benchmark;
+
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import java.sql.SQLException;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Page latency by depth on a 20k records table: keyset pages against the former LIMIT/OFFSET pages.
+ */
+@Category(Benchmark.class)
+public class KeysetPageBenchmarkTest {
+
+	private static final int RECORDS = 20000;
+	private static final int[] DEPTHS = {0, 5000, 10000, RECORDS - AppConstants.DEFAULT_PER_PAGE};
+	private static final int ITERATIONS = 200;
+
+	@Test
+	public void compareOffsetAndKeysetPageLatency() throws SQLException {
+		try (RecordsTestDatabase db = new RecordsTestDatabase()) {
+			for (int i = 0; i < RECORDS / 4; i++) {
+				//Every sort value is shared by 4 records.
+				db.insert("Record " + i, i * 1000L, i, 4);
+			}
+			List<Record> all = db.query("SELECT " + SQLiteHelper.RECORDS_LIST_COLUMNS + " FROM "
+					+ SQLiteHelper.TABLE_RECORDS + " ORDER BY " + SQLiteHelper.COLUMN_DATE_ADDED + " DESC, "
+					+ SQLiteHelper.COLUMN_ID + " DESC", null);
+
+			for (int depth : DEPTHS) {
+				String offsetQuery = "SELECT " + SQLiteHelper.RECORDS_LIST_COLUMNS + " FROM " + SQLiteHelper.TABLE_RECORDS
+						+ " ORDER BY " + SQLiteHelper.COLUMN_DATE_ADDED + " DESC LIMIT " + AppConstants.DEFAULT_PER_PAGE
+						+ " OFFSET " + depth;
+				KeysetPage page = KeysetPage.forOrder(AppConstants.SORT_DATE, depth > 0 ? all.get(depth - 1) : null);
+				String keysetQuery = page.getQuery(SQLiteHelper.TABLE_RECORDS, SQLiteHelper.RECORDS_LIST_COLUMNS,
+						AppConstants.DEFAULT_PER_PAGE);
+
+				assertEquals(all.get(depth).getId(), db.query(keysetQuery, page.getArgs()).get(0).getId());
+				long offsetMicros = measure(db, offsetQuery, null);
+				long keysetMicros = measure(db, keysetQuery, page.getArgs());
+				Benchmark.report("Page at %d: offset = %d us, keyset = %d us", depth, offsetMicros, keysetMicros);
+			}
+		}
+	}
+
+	private static long measure(RecordsTestDatabase db, String query, String[] args) throws SQLException {
+		for (int i = 0; i < ITERATIONS / 4; i++) {
+			db.query(query, args);
+		}
+		long start = System.nanoTime();
+		for (int i = 0; i < ITERATIONS; i++) {
+			db.query(query, args);
+		}
+		return (System.nanoTime() - start) / ITERATIONS / 1000;
+	}
+}
@@ -0,0 +1,126 @@
+package com.dimowner.audiorecorder.data.database;
+
+import com.dimowner.audiorecorder.AppConstants;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class KeysetPageTest {
+
+	private static final int[] ORDERS = {
+			AppConstants.SORT_DATE, AppConstants.SORT_DATE_DESC,
+			AppConstants.SORT_NAME, AppConstants.SORT_NAME_DESC,
+			AppConstants.SORT_DURATION, AppConstants.SORT_DURATION_DESC
+	};
+
+	private RecordsTestDatabase db;
+
+	@Before
+	public void setUp() throws SQLException {
+		db = new RecordsTestDatabase();
+		//Runs of equal sort values longer than a page, so pages start and end in the middle of ties.
+		String[] names = {"b", "a", "c"};
+		for (int i = 0; i < 12; i++) {
+			db.insert(names[i % names.length], (i % 4) * 1000, i % 5, 7 + i % 3 * 20);
+		}
+	}
+
+	@After
+	public void tearDown() throws SQLException {
+		db.close();
+	}
+
+	@Test
+	public void firstPageHasNoArgs() {
+		KeysetPage page = KeysetPage.forOrder(AppConstants.SORT_DATE, null);
+		assertNull(page.getArgs());
+		assertFalse(page.getQuery(SQLiteHelper.TABLE_RECORDS, SQLiteHelper.COLUMN_ID, 10).contains("WHERE"));
+	}
+
+	@Test
+	public void ordersMapToColumnAndDirection() {
+		assertPage(AppConstants.SORT_DATE, SQLiteHelper.COLUMN_DATE_ADDED, false);
+		assertPage(AppConstants.SORT_DATE_DESC, SQLiteHelper.COLUMN_DATE_ADDED, true);
+		assertPage(AppConstants.SORT_NAME, SQLiteHelper.COLUMN_NAME, true);
+		assertPage(AppConstants.SORT_NAME_DESC, SQLiteHelper.COLUMN_NAME, false);
+		assertPage(AppConstants.SORT_DURATION, SQLiteHelper.COLUMN_DURATION, false);
+		assertPage(AppConstants.SORT_DURATION_DESC, SQLiteHelper.COLUMN_DURATION, true);
+	}
+
+	@Test
+	public void pagesThroughTiesWithoutGapsOrRepeats() throws SQLException {
+		for (int order : ORDERS) {
+			for (int limit : new int[] {1, 7, AppConstants.DEFAULT_PER_PAGE}) {
+				List<Record> all = db.query("SELECT * FROM " + SQLiteHelper.TABLE_RECORDS, null);
+				all.sort(comparator(order));
+				List<Integer> expected = new ArrayList<>();
+				for (Record record : all) {
+					expected.add(record.getId());
+				}
+
+				List<Integer> paged = new ArrayList<>();
+				Set<Integer> seen = new HashSet<>();
+				Record last = null;
+				List<Record> page;
+				do {
+					page = db.queryPage(KeysetPage.forOrder(order, last), limit);
+					for (Record record : page) {
+						assertTrue("Repeated record in order " + order, seen.add(record.getId()));
+						paged.add(record.getId());
+					}
+					if (!page.isEmpty()) {
+						last = page.get(page.size() - 1);
+					}
+				} while (page.size() == limit);
+				assertEquals("Order " + order + ", limit " + limit, expected, paged);
+			}
+		}
+	}
+
+	@Test
+	public void nextPageSeeksIndexWithoutSorting() throws SQLException {
+		Record last = db.query("SELECT * FROM " + SQLiteHelper.TABLE_RECORDS + " WHERE _id = 100", null).get(0);
+		for (int order : ORDERS) {
+			KeysetPage page = KeysetPage.forOrder(order, last);
+			List<String> plan = db.explain(page.getQuery(SQLiteHelper.TABLE_RECORDS,
+					SQLiteHelper.RECORDS_LIST_COLUMNS, AppConstants.DEFAULT_PER_PAGE), page.getArgs());
+			String details = plan.toString();
+			assertTrue("Order " + order + ": " + details, details.contains("SEARCH " + SQLiteHelper.TABLE_RECORDS
+					+ " USING INDEX records_" + page.column + "_idx (" + page.column));
+			assertFalse("Order " + order + ": " + details, details.contains("TEMP B-TREE"));
+		}
+	}
+
+	private static void assertPage(int order, String column, boolean ascending) {
+		KeysetPage page = KeysetPage.forOrder(order, null);
+		assertEquals(column, page.column);
+		assertEquals(ascending, page.ascending);
+	}
+
+	private static Comparator<Record> comparator(int order) {
+		KeysetPage page = KeysetPage.forOrder(order, null);
+		Comparator<Record> byColumn;
+		if (SQLiteHelper.COLUMN_NAME.equals(page.column)) {
+			byColumn = Comparator.comparing(Record::getName);
+		} else if (SQLiteHelper.COLUMN_DURATION.equals(page.column)) {
+			byColumn = Comparator.comparingLong(Record::getDuration);
+		} else {
+			byColumn = Comparator.comparingLong(Record::getAdded);
+		}
+		Comparator<Record> comparator = byColumn.thenComparingInt(Record::getId);
+		return page.ascending ? comparator : comparator.reversed();
+	}
+}
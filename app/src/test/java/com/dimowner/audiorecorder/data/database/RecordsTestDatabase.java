@@ -0,0 +1,100 @@
+package com.dimowner.audiorecorder.data.database;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * In-memory SQLite database with the app records schema, run on the JVM through JDBC,
+ * so queries built for android.database.sqlite can be checked against the same engine.
+ */
+class RecordsTestDatabase implements AutoCloseable {
+
+	private final Connection connection;
+
+	RecordsTestDatabase() throws SQLException {
+		connection = DriverManager.getConnection("jdbc:sqlite::memory:");
+		try (Statement statement = connection.createStatement()) {
+			statement.execute(SQLiteHelper.CREATE_RECORDS_TABLE_SCRIPT);
+			for (String script : SQLiteHelper.CREATE_INDEXES_SCRIPTS) {
+				if (script.contains(" ON " + SQLiteHelper.TABLE_RECORDS + " ")) {
+					statement.execute(script);
+				}
+			}
+		}
+	}
+
+	void insert(String name, long duration, long added, int count) throws SQLException {
+		connection.setAutoCommit(false);
+		try (PreparedStatement insert = connection.prepareStatement("INSERT INTO " + SQLiteHelper.TABLE_RECORDS
+				+ " (" + SQLiteHelper.COLUMN_NAME + ", " + SQLiteHelper.COLUMN_DURATION + ", "
+				+ SQLiteHelper.COLUMN_CREATION_DATE + ", " + SQLiteHelper.COLUMN_DATE_ADDED + ", "
+				+ SQLiteHelper.COLUMN_PATH + ", " + SQLiteHelper.COLUMN_DATA + ", " + SQLiteHelper.COLUMN_DATA_STR
+				+ ") VALUES (?, ?, 0, ?, '', x'', x'')")) {
+			for (int i = 0; i < count; i++) {
+				insert.setString(1, name);
+				insert.setLong(2, duration);
+				insert.setLong(3, added);
+				insert.executeUpdate();
+			}
+		}
+		connection.commit();
+		connection.setAutoCommit(true);
+	}
+
+	/**
+	 * Run the query with string arguments the same way SQLiteDatabase.rawQuery binds them.
+	 */
+	List<Record> query(String query, String[] args) throws SQLException {
+		try (PreparedStatement statement = connection.prepareStatement(query)) {
+			if (args != null) {
+				for (int i = 0; i < args.length; i++) {
+					statement.setString(i + 1, args[i]);
+				}
+			}
+			List<Record> records = new ArrayList<>();
+			try (ResultSet rs = statement.executeQuery()) {
+				while (rs.next()) {
+					records.add(new Record(rs.getInt(SQLiteHelper.COLUMN_ID), rs.getString(SQLiteHelper.COLUMN_NAME),
+							rs.getLong(SQLiteHelper.COLUMN_DURATION), 0, rs.getLong(SQLiteHelper.COLUMN_DATE_ADDED), 0,
+							"", "", 0, 0, 0, 0, false, false, new int[0]));
+				}
+			}
+			return records;
+		}
+	}
+
+	List<Record> queryPage(KeysetPage page, int limit) throws SQLException {
+		return query(page.getQuery(SQLiteHelper.TABLE_RECORDS, SQLiteHelper.RECORDS_LIST_COLUMNS, limit), page.getArgs());
+	}
+
+	/**
+	 * Details of EXPLAIN QUERY PLAN of the query, one entry per plan step.
+	 */
+	List<String> explain(String query, String[] args) throws SQLException {
+		try (PreparedStatement statement = connection.prepareStatement("EXPLAIN QUERY PLAN " + query)) {
+			if (args != null) {
+				for (int i = 0; i < args.length; i++) {
+					statement.setString(i + 1, args[i]);
+				}
+			}
+			List<String> plan = new ArrayList<>();
+			try (ResultSet rs = statement.executeQuery()) {
+				while (rs.next()) {
+					plan.add(rs.getString("detail"));
+				}
+			}
+			return plan;
+		}
+	}
+
+	@Override
+	public void close() throws SQLException {
+		connection.close();
+	}
+}